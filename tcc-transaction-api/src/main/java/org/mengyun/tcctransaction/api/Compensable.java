@@ -5,6 +5,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 标记可补偿方法注解
@@ -53,9 +55,14 @@ public @interface Compensable {
 
     class DefaultTransactionContextEditor implements TransactionContextEditor {
 
+        /**
+         * 方法 -> 事务上下文参数位置，避免每次调用扫描参数类型
+         */
+        private static final ConcurrentMap<Method, Integer> positionCache = new ConcurrentHashMap<Method, Integer>();
+
         @Override
         public TransactionContext get(Object target, Method method, Object[] args) {
-            int position = getTransactionContextParamPosition(method.getParameterTypes());
+            int position = getTransactionContextParamPosition(method);
 
             if (position >= 0) {
                 return (TransactionContext) args[position];
@@ -67,12 +74,29 @@ public @interface Compensable {
         @Override
         public void set(TransactionContext transactionContext, Object target, Method method, Object[] args) {
 
-            int position = getTransactionContextParamPosition(method.getParameterTypes());
+            int position = getTransactionContextParamPosition(method);
             if (position >= 0) {
                 args[position] = transactionContext;
             }
         }
 
+        /**
+         * 获得事务上下文参数位置，按方法缓存
+         *
+         * @param method 方法
+         * @return 参数位置，没有时返回 -1
+         */
+        public static int getTransactionContextParamPosition(Method method) {
+
+            Integer position = positionCache.get(method);
+
+            if (position == null) {
+                position = getTransactionContextParamPosition(method.getParameterTypes());
+                positionCache.putIfAbsent(method, position);
+            }
+            return position;
+        }
+
         public static int getTransactionContextParamPosition(Class<?>[] parameterTypes) {
 
             int position = -1;
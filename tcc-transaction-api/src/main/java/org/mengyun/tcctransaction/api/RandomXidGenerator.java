@@ -0,0 +1,15 @@
+package org.mengyun.tcctransaction.api;
+
+import java.util.UUID;
+
+/**
+ * 随机编号生成器
+ * 使用 UUID.randomUUID() 生成，与旧版本的编号方式一致。
+ */
+public class RandomXidGenerator implements XidGenerator {
+
+    @Override
+    public byte[] generate() {
+        return UuidUtils.uuidToByteArray(UUID.randomUUID());
+    }
+}
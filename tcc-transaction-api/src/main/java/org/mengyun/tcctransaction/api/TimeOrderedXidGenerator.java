@@ -0,0 +1,63 @@
+package org.mengyun.tcctransaction.api;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按时间有序的编号生成器
+ * 编号格式：毫秒时间戳(6 字节) + 毫秒内序号(2 字节) + 节点编号(8 字节)。
+ * 同一进程内编号单调递增，新编号集中在索引右侧插入；节点编号默认在进程启动时随机生成一次。
+ * 同一毫秒内序号用完或时钟回拨时，沿用上一个时间戳继续递增，不会重复。
+ */
+public class TimeOrderedXidGenerator implements XidGenerator {
+
+    private static final int SEQUENCE_BITS = 16;
+
+    /**
+     * 时间戳与序号，高 48 位为毫秒时间戳，低 16 位为序号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 节点编号
+     */
+    private volatile long nodeId;
+
+    public TimeOrderedXidGenerator() {
+        this(new SecureRandom().nextLong());
+    }
+
+    public TimeOrderedXidGenerator(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public void setNodeId(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public byte[] generate() {
+
+        ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
+        bb.putLong(nextTimestamp());
+        bb.putLong(nodeId);
+        return bb.array();
+    }
+
+    private long nextTimestamp() {
+
+        while (true) {
+            long current = state.get();
+            long next = Math.max(System.currentTimeMillis() << SEQUENCE_BITS, current + 1);
+
+            if (state.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+}
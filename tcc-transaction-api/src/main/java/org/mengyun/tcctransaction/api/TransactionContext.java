@@ -1,56 +1,86 @@
 package org.mengyun.tcctransaction.api;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 事务上下文
+ * 不可变对象，可直接共享，需要逐项设置时使用 {@link Builder}。
  * Created by changmingxie on 10/30/15.
  */
 public class TransactionContext implements Serializable {
 
     private static final long serialVersionUID = -8199390103169700387L;
-    private TransactionXid xid;
 
-    private int status;
+    private final TransactionXid xid;
 
-    private Map<String, String> attachments = new ConcurrentHashMap<String, String>();
+    private final int status;
 
-    public TransactionContext() {
+    /**
+     * 保存可修改的副本，序列化框架可按普通 Map 读写；对外只提供只读视图
+     */
+    private final Map<String, String> attachments;
 
+    public TransactionContext(TransactionXid xid, int status) {
+        this(xid, status, null);
     }
 
-    public TransactionContext(TransactionXid xid, int status) {
+    public TransactionContext(TransactionXid xid, int status, Map<String, String> attachments) {
         this.xid = xid;
         this.status = status;
-    }
 
-    public void setXid(TransactionXid xid) {
-        this.xid = xid;
+        this.attachments = attachments == null ? new HashMap<String, String>() : new HashMap<String, String>(attachments);
     }
 
     public TransactionXid getXid() {
-        return xid.clone();
-    }
-
-    public void setAttachments(Map<String, String> attachments) {
-        if (attachments != null && !attachments.isEmpty()) {
-            this.attachments.putAll(attachments);
-        }
+        return xid;
     }
 
     public Map<String, String> getAttachments() {
-        return attachments;
-    }
-
-    public void setStatus(int status) {
-        this.status = status;
+        return Collections.unmodifiableMap(attachments);
     }
 
     public int getStatus() {
         return status;
     }
 
+    /**
+     * 事务上下文构建器
+     */
+    public static class Builder {
+
+        private TransactionXid xid;
+
+        private int status;
 
+        private Map<String, String> attachments = new HashMap<String, String>();
+
+        public Builder setXid(TransactionXid xid) {
+            this.xid = xid;
+            return this;
+        }
+
+        public Builder setStatus(int status) {
+            this.status = status;
+            return this;
+        }
+
+        public Builder setAttachments(Map<String, String> attachments) {
+            if (attachments != null && !attachments.isEmpty()) {
+                this.attachments.putAll(attachments);
+            }
+            return this;
+        }
+
+        public Builder setAttachment(String key, String value) {
+            this.attachments.put(key, value);
+            return this;
+        }
+
+        public TransactionContext build() {
+            return new TransactionContext(xid, status, attachments);
+        }
+    }
 }
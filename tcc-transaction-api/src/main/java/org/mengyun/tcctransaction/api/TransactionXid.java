@@ -3,12 +3,15 @@ package org.mengyun.tcctransaction.api;
 
 import javax.transaction.xa.Xid;
 import java.io.Serializable;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.ServiceLoader;
 import java.util.UUID;
 
 /**
  * 事务编号( TransactionXid )，用于唯一标识一个事务。
+ * 不可变对象，可在线程、缓存间直接共享；构造时复制传入的编号，读取编号时返回副本。
+ * 需要逐项设置编号时使用 {@link Builder}。
  *
  * Created by changmingxie on 10/26/15.
  */
@@ -16,42 +19,57 @@ public class TransactionXid implements Xid, Serializable {
 
     private static final long serialVersionUID = -6817267250789142043L;
 
+    /**
+     * 编号生成器，优先使用 ServiceLoader 发现的实现
+     */
+    private static volatile XidGenerator xidGenerator = loadXidGenerator();
+
     /**
      * xid 格式标识符
      */
-    private int formatId = 1;
+    private final int formatId;
 
     /**
      * 全局事务编号
      */
-    private byte[] globalTransactionId;
+    private final byte[] globalTransactionId;
 
     /**
      * 分支事务编号
      */
-    private byte[] branchQualifier;
+    private final byte[] branchQualifier;
 
-    public TransactionXid() {
-        globalTransactionId = uuidToByteArray(UUID.randomUUID());
-        branchQualifier = uuidToByteArray(UUID.randomUUID());
-    }
+    /**
+     * 缓存的字符串形式，不参与序列化
+     */
+    private transient volatile String xidString;
 
-    public void setGlobalTransactionId(byte[] globalTransactionId) {
-        this.globalTransactionId = globalTransactionId;
-    }
+    /**
+     * 缓存的存储键字节，不参与序列化
+     */
+    private transient volatile byte[] keyBytes;
 
-    public void setBranchQualifier(byte[] branchQualifier) {
-        this.branchQualifier = branchQualifier;
+    /**
+     * 缓存的哈希值，0 表示未计算
+     */
+    private transient int hash;
+
+    public TransactionXid() {
+        this.formatId = 1;
+        this.globalTransactionId = xidGenerator.generate();
+        this.branchQualifier = xidGenerator.generate();
     }
 
     public TransactionXid(byte[] globalTransactionId) {
-        this.globalTransactionId = globalTransactionId;
-        branchQualifier = uuidToByteArray(UUID.randomUUID());
+        this.formatId = 1;
+        this.globalTransactionId = copyOf(globalTransactionId);
+        this.branchQualifier = xidGenerator.generate();
     }
 
     public TransactionXid(byte[] globalTransactionId, byte[] branchQualifier) {
-        this.globalTransactionId = globalTransactionId;
-        this.branchQualifier = branchQualifier;
+        this.formatId = 1;
+        this.globalTransactionId = copyOf(globalTransactionId);
+        this.branchQualifier = copyOf(branchQualifier);
     }
 
     @Override
@@ -59,50 +77,80 @@ public class TransactionXid implements Xid, Serializable {
         return formatId;
     }
 
+    /**
+     * 全局事务编号的副本
+     */
     @Override
     public byte[] getGlobalTransactionId() {
-        return globalTransactionId;
+        return copyOf(globalTransactionId);
     }
 
+    /**
+     * 分支事务编号的副本
+     */
     @Override
     public byte[] getBranchQualifier() {
-        return branchQualifier;
+        return copyOf(branchQualifier);
     }
 
+    /**
+     * 字符串形式，首次调用时计算并缓存
+     */
     @Override
     public String toString() {
 
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(UUID.nameUUIDFromBytes(globalTransactionId).toString());
-        stringBuilder.append(":").append(UUID.nameUUIDFromBytes(branchQualifier).toString());
+        String value = xidString;
+
+        if (value == null) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(UUID.nameUUIDFromBytes(globalTransactionId).toString());
+            stringBuilder.append(":").append(UUID.nameUUIDFromBytes(branchQualifier).toString());
+
+            value = stringBuilder.toString();
+            xidString = value;
+        }
 
-        return stringBuilder.toString();
+        return value;
     }
 
-    public TransactionXid clone() {
+    /**
+     * 存储键字节，即 toString() 的字节形式，首次调用时计算并缓存
+     * 返回的数组为共享缓存，调用方不能修改；不以 get 开头，避免被 JSON 等按属性序列化
+     *
+     * @return 存储键字节
+     */
+    public byte[] toKeyBytes() {
 
-        byte[] cloneGlobalTransactionId = null;
-        byte[] cloneBranchQualifier = null;
+        byte[] value = keyBytes;
 
-        if (globalTransactionId != null) {
-            cloneGlobalTransactionId = new byte[globalTransactionId.length];
-            System.arraycopy(globalTransactionId, 0, cloneGlobalTransactionId, 0, globalTransactionId.length);
+        if (value == null) {
+            value = toString().getBytes();
+            keyBytes = value;
         }
 
-        if (branchQualifier != null) {
-            cloneBranchQualifier = new byte[branchQualifier.length];
-            System.arraycopy(branchQualifier, 0, cloneBranchQualifier, 0, branchQualifier.length);
-        }
+        return value;
+    }
 
-        return new TransactionXid(cloneGlobalTransactionId, cloneBranchQualifier);
+    /**
+     * 不可变对象，直接返回自身
+     */
+    public TransactionXid clone() {
+        return this;
     }
 
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + this.getFormatId();
-        result = prime * result + Arrays.hashCode(branchQualifier);
-        result = prime * result + Arrays.hashCode(globalTransactionId);
+
+        int result = hash;
+
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + this.getFormatId();
+            result = prime * result + Arrays.hashCode(branchQualifier);
+            result = prime * result + Arrays.hashCode(globalTransactionId);
+            hash = result;
+        }
+
         return result;
     }
 
@@ -125,19 +173,56 @@ public class TransactionXid implements Xid, Serializable {
         return true;
     }
 
-    private static byte[] uuidToByteArray(UUID uuid) {
-        ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
-        bb.putLong(uuid.getMostSignificantBits());
-        bb.putLong(uuid.getLeastSignificantBits());
-        return bb.array();
+    public static void setXidGenerator(XidGenerator xidGenerator) {
+        TransactionXid.xidGenerator = xidGenerator;
     }
 
-    private static UUID byteArrayToUUID(byte[] bytes) {
-        ByteBuffer bb = ByteBuffer.wrap(bytes);
-        long firstLong = bb.getLong();
-        long secondLong = bb.getLong();
-        return new UUID(firstLong, secondLong);
+    public static XidGenerator getXidGenerator() {
+        return xidGenerator;
     }
-}
 
+    private static byte[] copyOf(byte[] bytes) {
+
+        if (bytes == null) {
+            return null;
+        }
+
+        byte[] copy = new byte[bytes.length];
+        System.arraycopy(bytes, 0, copy, 0, bytes.length);
+        return copy;
+    }
+
+    private static XidGenerator loadXidGenerator() {
+
+        Iterator<XidGenerator> iterator = ServiceLoader.load(XidGenerator.class).iterator();
+
+        if (iterator.hasNext()) {
+            return iterator.next();
+        }
+        return new TimeOrderedXidGenerator();
+    }
+
+    /**
+     * 事务编号构建器
+     */
+    public static class Builder {
+
+        private byte[] globalTransactionId;
+
+        private byte[] branchQualifier;
 
+        public Builder setGlobalTransactionId(byte[] globalTransactionId) {
+            this.globalTransactionId = globalTransactionId;
+            return this;
+        }
+
+        public Builder setBranchQualifier(byte[] branchQualifier) {
+            this.branchQualifier = branchQualifier;
+            return this;
+        }
+
+        public TransactionXid build() {
+            return new TransactionXid(globalTransactionId, branchQualifier);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.mengyun.tcctransaction.api;
+
+/**
+ * 事务编号生成器
+ * 生成全局事务编号、分支事务编号，默认使用 {@link TimeOrderedXidGenerator}。
+ * 可通过 {@link TransactionXid#setXidGenerator(XidGenerator)} 或
+ * META-INF/services/org.mengyun.tcctransaction.api.XidGenerator 替换。
+ */
+public interface XidGenerator {
+
+    /**
+     * 生成编号
+     *
+     * @return 16 字节编号
+     */
+    byte[] generate();
+}
@@ -0,0 +1,57 @@
+package org.mengyun.tcctransaction;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * 使用调用描述编号的调用上下文
+ * 序列化时写入调用描述编号、方法签名和参数，读取时从 {@link InvocationDescriptorRegistry} 按编号查找类、方法名、参数类型，
+ * 编号未注册时按方法签名加载。签名已保存到调用描述存储时不写入。
+ * Kryo 由 {@link org.mengyun.tcctransaction.serializer.InvocationDescriptorKryoSerializer} 读写，
+ * JDK 序列化替换为 {@link Reference}；Protostuff 按声明类型 InvocationContext 完整写入。
+ */
+public class DescriptorInvocationContext extends InvocationContext {
+
+    private static final long serialVersionUID = 2745139514394213271L;
+
+    private final transient InvocationDescriptor descriptor;
+
+    public DescriptorInvocationContext(InvocationDescriptor descriptor, Object... args) {
+        super(descriptor.getTargetClass(), descriptor.getMethodName(), descriptor.parameterTypes(), args);
+        this.descriptor = descriptor;
+    }
+
+    public InvocationDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new Reference(descriptor.getId(),
+                InvocationDescriptorRegistry.isStored(descriptor) ? null : descriptor.getSignature(), getArgs());
+    }
+
+    /**
+     * JDK 序列化结构，包含调用描述编号、方法签名和参数
+     * 方法签名为之后增加的字段，之前写入的数据中为空；签名已保存到调用描述存储时也为空，此时按编号查找
+     */
+    static class Reference implements Serializable {
+
+        private static final long serialVersionUID = -3350384373560123794L;
+
+        private final int descriptorId;
+
+        private final Object[] args;
+
+        private final String signature;
+
+        Reference(int descriptorId, String signature, Object[] args) {
+            this.descriptorId = descriptorId;
+            this.signature = signature;
+            this.args = args;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return new DescriptorInvocationContext(InvocationDescriptorRegistry.get(descriptorId, signature), args);
+        }
+    }
+}
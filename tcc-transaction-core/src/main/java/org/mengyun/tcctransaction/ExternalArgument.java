@@ -0,0 +1,44 @@
+package org.mengyun.tcctransaction;
+
+import java.io.Serializable;
+
+/**
+ * 单独存储的调用参数
+ * 参数序列化后超过阈值时存入 {@link org.mengyun.tcctransaction.repository.LargeArgumentStore}，
+ * 调用上下文中只保存参数内容的摘要，参数值不参与序列化。
+ */
+public class ExternalArgument implements Serializable {
+
+    private static final long serialVersionUID = 3919735092637478147L;
+
+    /**
+     * 参数内容的 SHA-256 摘要
+     */
+    private byte[] hash;
+
+    /**
+     * 参数值，反序列化后为空，执行时从存储加载
+     */
+    private transient volatile Object value;
+
+    public ExternalArgument() {
+
+    }
+
+    public ExternalArgument(byte[] hash, Object value) {
+        this.hash = hash;
+        this.value = value;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,72 @@
+package org.mengyun.tcctransaction;
+
+import java.util.Arrays;
+
+/**
+ * 调用描述
+ * 类、方法名、参数类型组成的方法签名，由 {@link InvocationDescriptorRegistry} 分配编号。
+ */
+public final class InvocationDescriptor {
+
+    /**
+     * 编号
+     */
+    private final int id;
+
+    /**
+     * 类
+     */
+    private final Class targetClass;
+
+    /**
+     * 方法名
+     */
+    private final String methodName;
+
+    /**
+     * 参数类型数组
+     */
+    private final Class[] parameterTypes;
+
+    /**
+     * 方法签名
+     */
+    private final String signature;
+
+    InvocationDescriptor(int id, Class targetClass, String methodName, Class[] parameterTypes, String signature) {
+        this.id = id;
+        this.targetClass = targetClass;
+        this.methodName = methodName;
+        this.parameterTypes = parameterTypes;
+        this.signature = signature;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Class getTargetClass() {
+        return targetClass;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public Class[] getParameterTypes() {
+        return Arrays.copyOf(parameterTypes, parameterTypes.length);
+    }
+
+    Class[] parameterTypes() {
+        return parameterTypes;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    @Override
+    public String toString() {
+        return signature;
+    }
+}
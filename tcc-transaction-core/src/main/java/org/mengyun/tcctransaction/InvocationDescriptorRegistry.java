@@ -0,0 +1,287 @@
+package org.mengyun.tcctransaction;
+
+import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.repository.InvocationDescriptorStore;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 调用描述注册表
+ * 编号由方法签名的摘要计算得到，与注册顺序、节点无关，同一业务域的所有节点编号一致。
+ * 执行 Try 方法登记参与者时自动注册，Spring 环境在容器启动时注册所有 @Compensable 方法的确认、取消方法。
+ * 编号未注册时（非 Spring 环境，或恢复早于容器启动完成）需要方法签名加载类：
+ * 设置了 {@link InvocationDescriptorStore} 时签名按业务域保存一次，参与者只写入编号和参数，读取时从存储中查找签名；
+ * 未设置或保存失败时参与者同时写入签名。
+ */
+public class InvocationDescriptorRegistry {
+
+    static final Logger logger = Logger.getLogger(InvocationDescriptorRegistry.class.getSimpleName());
+
+    private static volatile InvocationDescriptorStore store;
+
+    /**
+     * 签名已保存到存储的编号
+     */
+    private static final Set<Integer> storedIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * 编号 -> 调用描述
+     */
+    private static final ConcurrentMap<Integer, InvocationDescriptor> descriptorsById = new ConcurrentHashMap<Integer, InvocationDescriptor>();
+
+    /**
+     * 方法签名 -> 调用描述
+     */
+    private static final ConcurrentMap<String, InvocationDescriptor> descriptorsBySignature = new ConcurrentHashMap<String, InvocationDescriptor>();
+
+    /**
+     * 参数类型签名 -> 参数类型数组，同一方法的确认、取消描述共用一个数组
+     */
+    private static final ConcurrentMap<String, Class[]> parameterTypesBySignature = new ConcurrentHashMap<String, Class[]>();
+
+    /**
+     * 基本类型名 -> 类型，Class.forName 不能加载基本类型
+     */
+    private static final Map<String, Class> PRIMITIVE_CLASSES = new HashMap<String, Class>();
+
+    static {
+        for (Class type : new Class[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class, void.class}) {
+            PRIMITIVE_CLASSES.put(type.getName(), type);
+        }
+    }
+
+    private InvocationDescriptorRegistry() {
+
+    }
+
+    public static void setStore(InvocationDescriptorStore store) {
+        InvocationDescriptorRegistry.store = store;
+        storedIds.clear();
+    }
+
+    public static InvocationDescriptorStore getStore() {
+        return store;
+    }
+
+    /**
+     * 确认方法签名已保存到存储，首次调用时保存
+     *
+     * @param descriptor 调用描述
+     * @return 已保存时返回 true，此时序列化可以不写入签名；未设置存储或保存失败时返回 false
+     */
+    public static boolean isStored(InvocationDescriptor descriptor) {
+
+        if (storedIds.contains(descriptor.getId())) {
+            return true;
+        }
+
+        InvocationDescriptorStore currentStore = store;
+
+        if (currentStore == null) {
+            return false;
+        }
+
+        try {
+            currentStore.save(descriptor.getId(), descriptor.getSignature());
+        } catch (RuntimeException e) {
+            logger.warn(String.format("save invocation descriptor failed, signature will be written with args, signature:%s",
+                    descriptor.getSignature()), e);
+            return false;
+        }
+
+        storedIds.add(descriptor.getId());
+        return true;
+    }
+
+    /**
+     * 注册调用描述，已注册时返回已有的描述
+     *
+     * @param targetClass    类
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型数组
+     * @return 调用描述
+     */
+    public static InvocationDescriptor register(Class targetClass, String methodName, Class[] parameterTypes) {
+
+        String signature = getSignature(targetClass, methodName, parameterTypes);
+
+        InvocationDescriptor descriptor = descriptorsBySignature.get(signature);
+
+        if (descriptor != null) {
+            return descriptor;
+        }
+
+        descriptor = new InvocationDescriptor(computeId(signature), targetClass, methodName,
+                internParameterTypes(signature.substring(signature.indexOf('(')), parameterTypes), signature);
+
+        InvocationDescriptor existing = descriptorsById.putIfAbsent(descriptor.getId(), descriptor);
+
+        if (existing != null) {
+
+            if (!existing.getSignature().equals(signature)) {
+                throw new SystemException(String.format("invocation descriptor id conflict, id:%d, signatures:%s, %s",
+                        descriptor.getId(), existing.getSignature(), signature));
+            }
+            descriptor = existing;
+        }
+
+        descriptorsBySignature.putIfAbsent(signature, descriptor);
+
+        return descriptor;
+    }
+
+    /**
+     * 按编号查找调用描述
+     *
+     * @param id 编号
+     * @return 调用描述
+     */
+    public static InvocationDescriptor get(int id) {
+
+        InvocationDescriptor descriptor = descriptorsById.get(id);
+
+        if (descriptor == null) {
+            throw new SystemException(String.format("invocation descriptor not registered, id:%d", id));
+        }
+        return descriptor;
+    }
+
+    /**
+     * 按编号查找调用描述，未注册时按方法签名加载类并注册
+     *
+     * @param id        编号
+     * @param signature 方法签名，为空时从存储中查找
+     * @return 调用描述
+     */
+    public static InvocationDescriptor get(int id, String signature) {
+
+        InvocationDescriptor descriptor = descriptorsById.get(id);
+
+        if (descriptor != null) {
+            return descriptor;
+        }
+
+        if (signature == null) {
+
+            InvocationDescriptorStore currentStore = store;
+
+            if (currentStore != null) {
+                signature = currentStore.findSignature(id);
+            }
+
+            if (signature == null) {
+                return get(id);
+            }
+        }
+
+        descriptor = resolve(signature);
+
+        if (descriptor.getId() != id) {
+            throw new SystemException(String.format("invocation descriptor id mismatch, id:%d, signature:%s, computed id:%d",
+                    id, signature, descriptor.getId()));
+        }
+        return descriptor;
+    }
+
+    /**
+     * 按方法签名加载类、参数类型并注册
+     *
+     * @param signature 方法签名，类名#方法名(参数类型,...)
+     * @return 调用描述
+     */
+    static InvocationDescriptor resolve(String signature) {
+
+        int methodIndex = signature.indexOf('#');
+        int parameterIndex = signature.indexOf('(', methodIndex);
+
+        if (methodIndex <= 0 || parameterIndex < 0 || !signature.endsWith(")")) {
+            throw new SystemException("illegal invocation signature:" + signature);
+        }
+
+        String parameterSignature = signature.substring(parameterIndex + 1, signature.length() - 1);
+        String[] parameterNames = parameterSignature.length() == 0 ? new String[0] : parameterSignature.split(",");
+
+        Class[] parameterTypes = new Class[parameterNames.length];
+
+        try {
+            Class targetClass = loadClass(signature.substring(0, methodIndex));
+
+            for (int i = 0; i < parameterNames.length; i++) {
+                parameterTypes[i] = loadClass(parameterNames[i]);
+            }
+
+            return register(targetClass, signature.substring(methodIndex + 1, parameterIndex), parameterTypes);
+
+        } catch (ClassNotFoundException e) {
+            throw new SystemException(String.format("load class failed, invocation signature:%s", signature), e);
+        }
+    }
+
+    private static Class loadClass(String name) throws ClassNotFoundException {
+
+        Class primitiveClass = PRIMITIVE_CLASSES.get(name);
+
+        if (primitiveClass != null) {
+            return primitiveClass;
+        }
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+        if (classLoader == null) {
+            classLoader = InvocationDescriptorRegistry.class.getClassLoader();
+        }
+
+        return Class.forName(name, false, classLoader);
+    }
+
+    static String getSignature(Class targetClass, String methodName, Class[] parameterTypes) {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(targetClass.getName()).append("#").append(methodName).append("(");
+
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    builder.append(",");
+                }
+                builder.append(parameterTypes[i].getName());
+            }
+        }
+
+        return builder.append(")").toString();
+    }
+
+    private static Class[] internParameterTypes(String parameterSignature, Class[] parameterTypes) {
+
+        Class[] interned = parameterTypesBySignature.get(parameterSignature);
+
+        if (interned == null) {
+            Class[] copy = parameterTypes == null ? new Class[0] : parameterTypes.clone();
+            interned = parameterTypesBySignature.putIfAbsent(parameterSignature, copy);
+            if (interned == null) {
+                interned = copy;
+            }
+        }
+        return interned;
+    }
+
+    private static int computeId(String signature) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(signature.getBytes("UTF-8"));
+            return ((digest[0] & 0x7F) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8) | (digest[3] & 0xFF);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new SystemException(e);
+        }
+    }
+}
@@ -35,9 +35,9 @@ public class Participant implements Serializable {
     private InvocationContext cancelInvocationContext;
 
     /**
-     * 执行器
+     * 执行器，无状态，所有参与者共享同一实例
      */
-    private Terminator terminator = new Terminator();
+    private Terminator terminator = Terminator.INSTANCE;
 
     /**
      * 事务上下文编辑
@@ -65,6 +65,13 @@ public class Participant implements Serializable {
         this.xid = xid;
     }
 
+    /**
+     * 反序列化得到的执行器替换为共享实例
+     */
+    void useSharedTerminator() {
+        this.terminator = Terminator.INSTANCE;
+    }
+
     /**
      * 回滚事务
      */
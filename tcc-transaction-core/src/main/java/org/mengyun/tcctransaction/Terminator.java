@@ -3,10 +3,11 @@ package org.mengyun.tcctransaction;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionContextEditor;
 import org.mengyun.tcctransaction.support.FactoryBuilder;
+import org.mengyun.tcctransaction.support.LargeArguments;
+import org.mengyun.tcctransaction.support.MethodInvoker;
 import org.mengyun.tcctransaction.utils.StringUtils;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
 
 /**
  * 执行器
@@ -16,6 +17,10 @@ public class Terminator implements Serializable {
 
     private static final long serialVersionUID = -164958655471605778L;
 
+    /**
+     * 共享实例，执行器无状态
+     */
+    public static final Terminator INSTANCE = new Terminator();
 
     public Terminator() {
 
@@ -33,22 +38,25 @@ public class Terminator implements Serializable {
                  */
                 Object target = FactoryBuilder.factoryOf(invocationContext.getTargetClass()).getInstance();
 
-                Method method = null;
+                /**
+                 * 获取方法调用器，按类和方法签名缓存
+                 */
+                MethodInvoker invoker = MethodInvoker.of(target.getClass(), invocationContext.getMethodName(), invocationContext.getParameterTypes());
 
                 /**
-                 * 获取方法
+                 * 还原单独存储的参数
                  */
-                method = target.getClass().getMethod(invocationContext.getMethodName(), invocationContext.getParameterTypes());
+                Object[] args = LargeArguments.resolve(invocationContext.getArgs());
 
                 /**
                  * 设置 事务上下文 到方法参数
                  */
-                FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance().set(transactionContext, target, method, invocationContext.getArgs());
+                FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance().set(transactionContext, target, invoker.getMethod(), args);
 
                 /**
                  * 执行方法
                  */
-                return method.invoke(target, invocationContext.getArgs());
+                return invoker.invoke(target, args);
 
             } catch (Exception e) {
                 throw new SystemException(e);
@@ -56,4 +64,8 @@ public class Terminator implements Serializable {
         }
         return null;
     }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
 }
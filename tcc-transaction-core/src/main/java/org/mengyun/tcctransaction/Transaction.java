@@ -7,8 +7,14 @@ import org.mengyun.tcctransaction.api.TransactionXid;
 import org.mengyun.tcctransaction.common.TransactionType;
 
 import javax.transaction.xa.Xid;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -16,12 +22,31 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 事务对象
+ * 内存中使用紧凑结构：时间为毫秒数，参与者为数组，附带属性在首次使用时创建。
+ * 序列化时转换为 {@link SerialForm}，与之前的字段结构一致，存储数据前后兼容。
  * Created by changmingxie on 10/26/15.
  */
 public class Transaction implements Serializable {
 
     private static final long serialVersionUID = 7291423944314337931L;
 
+    /**
+     * JDK 序列化字段，与之前的字段结构一致
+     */
+    private static final ObjectStreamField[] serialPersistentFields = new ObjectStreamField[]{
+            new ObjectStreamField("xid", TransactionXid.class),
+            new ObjectStreamField("status", TransactionStatus.class),
+            new ObjectStreamField("transactionType", TransactionType.class),
+            new ObjectStreamField("retriedCount", int.class),
+            new ObjectStreamField("createTime", Date.class),
+            new ObjectStreamField("lastUpdateTime", Date.class),
+            new ObjectStreamField("version", long.class),
+            new ObjectStreamField("participants", List.class),
+            new ObjectStreamField("attachments", Map.class)
+    };
+
+    private static final Participant[] EMPTY_PARTICIPANTS = new Participant[0];
+
     /**
      * 事务编号
      */
@@ -43,29 +68,35 @@ public class Transaction implements Serializable {
     private volatile int retriedCount = 0;
 
     /**
-     * 创建时间
+     * 创建时间，毫秒
      */
-    private Date createTime = new Date();
+    private long createTime = System.currentTimeMillis();
 
     /**
-     * 最后更新时间
+     * 最后更新时间，毫秒
      */
-    private Date lastUpdateTime = new Date();
+    private long lastUpdateTime = createTime;
 
     /**
      * 版本号
      */
     private long version = 1;
 
+    /**
+     * 下次重试时间，毫秒，0 表示未安排，按最后更新时间 + 恢复间隔重试
+     * 不写入事务内容，由存储单独保存
+     */
+    private long nextRetryTime = 0;
+
     /**
      * 参与者集合
      */
-    private List<Participant> participants = new ArrayList<Participant>();
+    private Participant[] participants = EMPTY_PARTICIPANTS;
 
     /**
-     * 附带属性映射
+     * 附带属性映射，首次使用时创建
      */
-    private Map<String, Object> attachments = new ConcurrentHashMap<String, Object>();
+    private volatile Map<String, Object> attachments;
 
     public Transaction() {
 
@@ -102,21 +133,46 @@ public class Transaction implements Serializable {
      * @param participant 参与者
      */
     public void enlistParticipant(Participant participant) {
-        participants.add(participant);
+        participant.useSharedTerminator();
+
+        Participant[] newParticipants = Arrays.copyOf(participants, participants.length + 1);
+        newParticipants[participants.length] = participant;
+        participants = newParticipants;
+    }
+
+    /**
+     * 替换全部参与者
+     * 参与者单独存储时，以存储的参与者为准，不与事务内容中的参与者合并
+     *
+     * @param participants 参与者
+     */
+    public void replaceParticipants(List<Participant> participants) {
+        Participant[] newParticipants = participants.toArray(new Participant[participants.size()]);
+        for (Participant participant : newParticipants) {
+            participant.useSharedTerminator();
+        }
+        this.participants = newParticipants;
     }
 
 
     public Xid getXid() {
-        return xid.clone();
+        return xid;
     }
 
     public TransactionStatus getStatus() {
         return status;
     }
 
-
+    /**
+     * 参与者列表
+     * 与之前一样可以修改，修改直接作用于事务
+     */
     public List<Participant> getParticipants() {
-        return participants;
+        return new ParticipantList();
+    }
+
+    public int getParticipantCount() {
+        return participants.length;
     }
 
     public TransactionType getTransactionType() {
@@ -160,7 +216,20 @@ public class Transaction implements Serializable {
     }
 
     public Map<String, Object> getAttachments() {
-        return attachments;
+
+        Map<String, Object> value = attachments;
+
+        if (value == null) {
+            synchronized (this) {
+                value = attachments;
+                if (value == null) {
+                    value = new ConcurrentHashMap<String, Object>();
+                    attachments = value;
+                }
+            }
+        }
+
+        return value;
     }
 
     public long getVersion() {
@@ -176,20 +245,227 @@ public class Transaction implements Serializable {
     }
 
     public Date getLastUpdateTime() {
-        return lastUpdateTime;
+        return new Date(lastUpdateTime);
     }
 
     public void setLastUpdateTime(Date date) {
-        this.lastUpdateTime = date;
+        this.lastUpdateTime = date.getTime();
+    }
+
+    public long getLastUpdateTimeMillis() {
+        return lastUpdateTime;
+    }
+
+    public void setLastUpdateTimeMillis(long lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
     }
 
     public Date getCreateTime() {
+        return new Date(createTime);
+    }
+
+    public long getCreateTimeMillis() {
         return createTime;
     }
 
+    public long getNextRetryTimeMillis() {
+        return nextRetryTime;
+    }
+
+    public void setNextRetryTimeMillis(long nextRetryTime) {
+        this.nextRetryTime = nextRetryTime;
+    }
+
     public void updateTime() {
-        this.lastUpdateTime = new Date();
+        this.lastUpdateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 复制不含参与者的事务
+     * 参与者单独存储时，事务内容只保存事务本身
+     *
+     * @return 事务副本
+     */
+    public Transaction copyWithoutParticipants() {
+        Transaction transaction = new Transaction();
+        transaction.xid = this.xid;
+        transaction.status = this.status;
+        transaction.transactionType = this.transactionType;
+        transaction.retriedCount = this.retriedCount;
+        transaction.createTime = this.createTime;
+        transaction.lastUpdateTime = this.lastUpdateTime;
+        transaction.version = this.version;
+        transaction.nextRetryTime = this.nextRetryTime;
+        transaction.attachments = this.attachments;
+        return transaction;
+    }
+
+    /**
+     * 转换为序列化结构
+     * 未使用的附带属性写为空映射，与之前的数据保持一致
+     *
+     * @return 序列化结构
+     */
+    public SerialForm toSerialForm() {
+        SerialForm form = new SerialForm();
+        form.xid = this.xid;
+        form.status = this.status;
+        form.transactionType = this.transactionType;
+        form.retriedCount = this.retriedCount;
+        form.createTime = new Date(this.createTime);
+        form.lastUpdateTime = new Date(this.lastUpdateTime);
+        form.version = this.version;
+        form.participants = new ArrayList<Participant>(Arrays.asList(this.participants));
+        form.attachments = this.attachments == null ? new ConcurrentHashMap<String, Object>() : this.attachments;
+        return form;
     }
 
+    /**
+     * 由序列化结构创建事务
+     *
+     * @param form 序列化结构
+     * @return 事务
+     */
+    public static Transaction fromSerialForm(SerialForm form) {
+        Transaction transaction = new Transaction();
+        transaction.readSerialForm(form);
+        return transaction;
+    }
+
+    private void readSerialForm(SerialForm form) {
+        this.xid = form.xid;
+        this.status = form.status;
+        this.transactionType = form.transactionType;
+        this.retriedCount = form.retriedCount;
+        this.createTime = form.createTime == null ? 0L : form.createTime.getTime();
+        this.lastUpdateTime = form.lastUpdateTime == null ? 0L : form.lastUpdateTime.getTime();
+        this.version = form.version;
+        this.attachments = form.attachments == null || form.attachments.isEmpty() ? null : form.attachments;
+
+        this.participants = EMPTY_PARTICIPANTS;
+
+        if (form.participants != null && !form.participants.isEmpty()) {
+            Participant[] newParticipants = form.participants.toArray(new Participant[form.participants.size()]);
+            for (Participant participant : newParticipants) {
+                participant.useSharedTerminator();
+            }
+            this.participants = newParticipants;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        SerialForm form = toSerialForm();
+
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("xid", form.xid);
+        fields.put("status", form.status);
+        fields.put("transactionType", form.transactionType);
+        fields.put("retriedCount", form.retriedCount);
+        fields.put("createTime", form.createTime);
+        fields.put("lastUpdateTime", form.lastUpdateTime);
+        fields.put("version", form.version);
+        fields.put("participants", form.participants);
+        fields.put("attachments", form.attachments);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        ObjectInputStream.GetField fields = in.readFields();
+
+        SerialForm form = new SerialForm();
+        form.xid = (TransactionXid) fields.get("xid", null);
+        form.status = (TransactionStatus) fields.get("status", null);
+        form.transactionType = (TransactionType) fields.get("transactionType", null);
+        form.retriedCount = fields.get("retriedCount", 0);
+        form.createTime = (Date) fields.get("createTime", null);
+        form.lastUpdateTime = (Date) fields.get("lastUpdateTime", null);
+        form.version = fields.get("version", 1L);
+        form.participants = (List<Participant>) fields.get("participants", null);
+        form.attachments = (Map<String, Object>) fields.get("attachments", null);
+
+        readSerialForm(form);
+    }
+
+    /**
+     * 参与者列表，读写事务的参与者数组
+     */
+    private class ParticipantList extends AbstractList<Participant> {
+
+        @Override
+        public Participant get(int index) {
+            return participants[index];
+        }
+
+        @Override
+        public int size() {
+            return participants.length;
+        }
+
+        @Override
+        public Participant set(int index, Participant participant) {
+            participant.useSharedTerminator();
 
+            Participant[] newParticipants = participants.clone();
+            Participant previous = newParticipants[index];
+            newParticipants[index] = participant;
+            participants = newParticipants;
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Participant participant) {
+            if (index < 0 || index > participants.length) {
+                throw new IndexOutOfBoundsException("index:" + index + ", size:" + participants.length);
+            }
+
+            participant.useSharedTerminator();
+
+            Participant[] newParticipants = new Participant[participants.length + 1];
+            System.arraycopy(participants, 0, newParticipants, 0, index);
+            newParticipants[index] = participant;
+            System.arraycopy(participants, index, newParticipants, index + 1, participants.length - index);
+            participants = newParticipants;
+            modCount++;
+        }
+
+        @Override
+        public Participant remove(int index) {
+            Participant previous = participants[index];
+
+            Participant[] newParticipants = new Participant[participants.length - 1];
+            System.arraycopy(participants, 0, newParticipants, 0, index);
+            System.arraycopy(participants, index + 1, newParticipants, index, participants.length - index - 1);
+            participants = newParticipants.length == 0 ? EMPTY_PARTICIPANTS : newParticipants;
+            modCount++;
+            return previous;
+        }
+    }
+
+    /**
+     * 事务序列化结构
+     * 字段名称、类型、顺序与之前的 Transaction 一致，Kryo、Protostuff 按此结构读写，数据格式不变。
+     * 不能调整字段。
+     */
+    public static class SerialForm {
+
+        private TransactionXid xid;
+
+        private TransactionStatus status;
+
+        private TransactionType transactionType;
+
+        private int retriedCount;
+
+        private Date createTime;
+
+        private Date lastUpdateTime;
+
+        private long version;
+
+        private List<Participant> participants;
+
+        private Map<String, Object> attachments;
+    }
 }
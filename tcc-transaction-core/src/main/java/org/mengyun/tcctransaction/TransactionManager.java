@@ -4,6 +4,7 @@ import org.apache.log4j.Logger;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.recover.RetryScheduler;
 
 import java.util.Deque;
 import java.util.LinkedList;
@@ -27,6 +28,11 @@ public class TransactionManager {
 
     private ExecutorService executorService;
 
+    /**
+     * 重试调度器，确认、取消失败时调度重试，为空时等待定时恢复
+     */
+    private volatile RetryScheduler retryScheduler;
+
     public void setTransactionRepository(TransactionRepository transactionRepository) {
         this.transactionRepository = transactionRepository;
     }
@@ -35,6 +41,10 @@ public class TransactionManager {
         this.executorService = executorService;
     }
 
+    public void setRetryScheduler(RetryScheduler retryScheduler) {
+        this.retryScheduler = retryScheduler;
+    }
+
     public TransactionManager() {
     }
 
@@ -121,6 +131,7 @@ public class TransactionManager {
                 logger.debug("async submit cost time:" + (System.currentTimeMillis() - statTime));
             } catch (Throwable commitException) {
                 logger.warn("compensable transaction async submit confirm failed, recovery job will try to confirm later.", commitException);
+                scheduleRetry(transaction);
                 throw new ConfirmingException(commitException);
             }
         } else {
@@ -152,6 +163,7 @@ public class TransactionManager {
                 });
             } catch (Throwable rollbackException) {
                 logger.warn("compensable transaction async rollback failed, recovery job will try to rollback later.", rollbackException);
+                scheduleRetry(transaction);
                 throw new CancellingException(rollbackException);
             }
         } else {
@@ -167,6 +179,7 @@ public class TransactionManager {
             transactionRepository.delete(transaction);
         } catch (Throwable commitException) {
             logger.warn("compensable transaction confirm failed, recovery job will try to confirm later.", commitException);
+            scheduleRetry(transaction);
             throw new ConfirmingException(commitException);
         }
     }
@@ -177,10 +190,24 @@ public class TransactionManager {
             transactionRepository.delete(transaction);
         } catch (Throwable rollbackException) {
             logger.warn("compensable transaction rollback failed, recovery job will try to rollback later.", rollbackException);
+            scheduleRetry(transaction);
             throw new CancellingException(rollbackException);
         }
     }
 
+    private void scheduleRetry(Transaction transaction) {
+
+        RetryScheduler scheduler = retryScheduler;
+
+        if (scheduler != null) {
+            try {
+                scheduler.scheduleFailed(transaction);
+            } catch (Throwable e) {
+                logger.warn("schedule retry failed, recovery job will try later.", e);
+            }
+        }
+    }
+
     public Transaction getCurrentTransaction() {
         if (isTransactionActive()) {
             // 获得头部元素
@@ -231,7 +258,7 @@ public class TransactionManager {
         Transaction transaction = this.getCurrentTransaction();
         // 添加参与者
         transaction.enlistParticipant(participant);
-        // 更新 事务
-        transactionRepository.update(transaction);
+        // 追加 参与者
+        transactionRepository.appendParticipant(transaction, participant);
     }
 }
@@ -26,6 +26,16 @@ public interface TransactionRepository {
      */
     int update(Transaction transaction);
 
+    /**
+     * 追加参与者
+     * 参与者已添加到事务中，存储器只需持久化该参与者
+     *
+     * @param transaction 事务
+     * @param participant 参与者
+     * @return 更新数量
+     */
+    int appendParticipant(Transaction transaction, Participant participant);
+
     /**
      * 删除事务
      *
@@ -49,4 +59,21 @@ public interface TransactionRepository {
      * @return 事务集合
      */
     List<Transaction> findAllUnmodifiedSince(Date date);
+
+    /**
+     * 获取超过指定时间的事务摘要集合，不反序列化事务内容
+     *
+     * @param date 指定时间
+     * @return 事务摘要集合
+     */
+    List<TransactionSummary> findAllSummariesUnmodifiedSince(Date date);
+
+    /**
+     * 获取到达重试时间的事务摘要集合，不反序列化事务内容
+     * 未安排重试时间的事务，按最后更新时间 + 恢复间隔计算
+     *
+     * @param date 指定时间
+     * @return 事务摘要集合
+     */
+    List<TransactionSummary> findAllSummariesDueBefore(Date date);
 }
@@ -0,0 +1,110 @@
+package org.mengyun.tcctransaction;
+
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.Date;
+
+/**
+ * 事务摘要
+ * 只包含事务头部信息，不含参与者，读取时无需反序列化事务内容。
+ * 恢复任务先按摘要过滤，再加载需要恢复的完整事务。
+ */
+public class TransactionSummary {
+
+    /**
+     * 事务编号
+     */
+    private final TransactionXid xid;
+
+    /**
+     * 事务状态
+     */
+    private final TransactionStatus status;
+
+    /**
+     * 事务类型
+     */
+    private final TransactionType transactionType;
+
+    /**
+     * 重试次数
+     */
+    private final int retriedCount;
+
+    /**
+     * 创建时间
+     */
+    private final Date createTime;
+
+    /**
+     * 最后更新时间
+     */
+    private final Date lastUpdateTime;
+
+    /**
+     * 版本号
+     */
+    private final long version;
+
+    /**
+     * 下次重试时间，毫秒，0 表示未安排
+     */
+    private final long nextRetryTime;
+
+    public TransactionSummary(TransactionXid xid, TransactionStatus status, TransactionType transactionType,
+                              int retriedCount, Date createTime, Date lastUpdateTime, long version) {
+        this(xid, status, transactionType, retriedCount, createTime, lastUpdateTime, version, 0L);
+    }
+
+    public TransactionSummary(TransactionXid xid, TransactionStatus status, TransactionType transactionType,
+                              int retriedCount, Date createTime, Date lastUpdateTime, long version, long nextRetryTime) {
+        this.xid = xid;
+        this.status = status;
+        this.transactionType = transactionType;
+        this.retriedCount = retriedCount;
+        this.createTime = createTime;
+        this.lastUpdateTime = lastUpdateTime;
+        this.version = version;
+        this.nextRetryTime = nextRetryTime;
+    }
+
+    public TransactionSummary(Transaction transaction) {
+        this((TransactionXid) transaction.getXid(), transaction.getStatus(), transaction.getTransactionType(),
+                transaction.getRetriedCount(), transaction.getCreateTime(), transaction.getLastUpdateTime(), transaction.getVersion(),
+                transaction.getNextRetryTimeMillis());
+    }
+
+    public TransactionXid getXid() {
+        return xid;
+    }
+
+    public TransactionStatus getStatus() {
+        return status;
+    }
+
+    public TransactionType getTransactionType() {
+        return transactionType;
+    }
+
+    public int getRetriedCount() {
+        return retriedCount;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public Date getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getNextRetryTimeMillis() {
+        return nextRetryTime;
+    }
+}
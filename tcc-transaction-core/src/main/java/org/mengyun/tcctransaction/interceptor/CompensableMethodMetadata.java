@@ -0,0 +1,193 @@
+package org.mengyun.tcctransaction.interceptor;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.mengyun.tcctransaction.InvocationDescriptor;
+import org.mengyun.tcctransaction.InvocationDescriptorRegistry;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.Propagation;
+import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.support.FactoryBuilder;
+import org.mengyun.tcctransaction.utils.CompensableMethodUtils;
+import org.mengyun.tcctransaction.utils.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 可补偿方法元数据
+ * 每个切点方法、目标类只解析一次 @Compensable 注解、事务上下文编辑器、声明类型等信息并缓存，拦截时只做查表。
+ * 切点方法相同而目标类不同时，注解方法、声明类型可能不同，因此按切点方法 + 目标类缓存。
+ */
+public final class CompensableMethodMetadata {
+
+    /**
+     * 切点方法 -> 目标类 -> 元数据
+     */
+    private static final ConcurrentMap<Method, ConcurrentMap<Class, CompensableMethodMetadata>> metadataCache = new ConcurrentHashMap<Method, ConcurrentMap<Class, CompensableMethodMetadata>>();
+
+    /**
+     * 带 @Compensable 注解的方法
+     */
+    private final Method method;
+
+    /**
+     * 切点方法
+     */
+    private final Method signatureMethod;
+
+    private final Propagation propagation;
+
+    private final String confirmMethodName;
+
+    private final String cancelMethodName;
+
+    private final boolean asyncConfirm;
+
+    private final boolean asyncCancel;
+
+    private final Class<? extends TransactionContextEditor> transactionContextEditorClass;
+
+    private final TransactionContextEditor transactionContextEditor;
+
+    /**
+     * 确认、取消方法所在的类
+     */
+    private final Class declaringType;
+
+    private final Class[] parameterTypes;
+
+    /**
+     * 切点方法返回类型的空值
+     */
+    private final Object nullReturnValue;
+
+    private volatile InvocationDescriptor confirmDescriptor;
+
+    private volatile InvocationDescriptor cancelDescriptor;
+
+    private CompensableMethodMetadata(Method method, Method signatureMethod, Class targetClass) {
+
+        Compensable compensable = method.getAnnotation(Compensable.class);
+
+        this.method = method;
+        this.signatureMethod = signatureMethod;
+        this.propagation = compensable.propagation();
+        this.confirmMethodName = compensable.confirmMethod();
+        this.cancelMethodName = compensable.cancelMethod();
+        this.asyncConfirm = compensable.asyncConfirm();
+        this.asyncCancel = compensable.asyncCancel();
+        this.transactionContextEditorClass = compensable.transactionContextEditor();
+        this.transactionContextEditor = FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance();
+        this.parameterTypes = method.getParameterTypes();
+        this.declaringType = ReflectionUtils.getDeclaringType(targetClass, method.getName(), parameterTypes);
+        this.nullReturnValue = ReflectionUtils.getNullValue(signatureMethod.getReturnType());
+    }
+
+    /**
+     * 获得切点对应的元数据
+     *
+     * @param pjp 切面点
+     * @return 元数据，找不到带 @Compensable 注解的方法时返回 null
+     */
+    public static CompensableMethodMetadata of(ProceedingJoinPoint pjp) {
+
+        Method signatureMethod = ((MethodSignature) pjp.getSignature()).getMethod();
+        Class targetClass = pjp.getTarget().getClass();
+
+        ConcurrentMap<Class, CompensableMethodMetadata> metadataByClass = metadataCache.get(signatureMethod);
+
+        if (metadataByClass == null) {
+            metadataCache.putIfAbsent(signatureMethod, new ConcurrentHashMap<Class, CompensableMethodMetadata>());
+            metadataByClass = metadataCache.get(signatureMethod);
+        }
+
+        CompensableMethodMetadata metadata = metadataByClass.get(targetClass);
+
+        if (metadata == null) {
+
+            Method method = CompensableMethodUtils.getCompensableMethod(pjp);
+
+            if (method == null || method.getAnnotation(Compensable.class) == null) {
+                return null;
+            }
+
+            metadataByClass.putIfAbsent(targetClass, new CompensableMethodMetadata(method, signatureMethod, targetClass));
+            metadata = metadataByClass.get(targetClass);
+        }
+
+        return metadata;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Method getSignatureMethod() {
+        return signatureMethod;
+    }
+
+    public Propagation getPropagation() {
+        return propagation;
+    }
+
+    public String getConfirmMethodName() {
+        return confirmMethodName;
+    }
+
+    public String getCancelMethodName() {
+        return cancelMethodName;
+    }
+
+    public boolean isAsyncConfirm() {
+        return asyncConfirm;
+    }
+
+    public boolean isAsyncCancel() {
+        return asyncCancel;
+    }
+
+    public Class<? extends TransactionContextEditor> getTransactionContextEditorClass() {
+        return transactionContextEditorClass;
+    }
+
+    public TransactionContextEditor getTransactionContextEditor() {
+        return transactionContextEditor;
+    }
+
+    public Class getDeclaringType() {
+        return declaringType;
+    }
+
+    /**
+     * 参数类型数组，调用方不能修改
+     */
+    public Class[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public Object getNullReturnValue() {
+        return nullReturnValue;
+    }
+
+    /**
+     * 确认方法调用描述，首次使用时注册
+     */
+    public InvocationDescriptor getConfirmDescriptor() {
+        if (confirmDescriptor == null) {
+            confirmDescriptor = InvocationDescriptorRegistry.register(declaringType, confirmMethodName, parameterTypes);
+        }
+        return confirmDescriptor;
+    }
+
+    /**
+     * 取消方法调用描述，首次使用时注册
+     */
+    public InvocationDescriptor getCancelDescriptor() {
+        if (cancelDescriptor == null) {
+            cancelDescriptor = InvocationDescriptorRegistry.register(declaringType, cancelMethodName, parameterTypes);
+        }
+        return cancelDescriptor;
+    }
+}
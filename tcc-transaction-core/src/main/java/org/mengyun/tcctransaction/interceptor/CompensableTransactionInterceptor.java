@@ -4,22 +4,17 @@ import com.alibaba.fastjson.JSON;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.log4j.Logger;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.mengyun.tcctransaction.NoExistedTransactionException;
 import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionManager;
-import org.mengyun.tcctransaction.api.Compensable;
 import org.mengyun.tcctransaction.api.Propagation;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.common.MethodType;
-import org.mengyun.tcctransaction.support.FactoryBuilder;
 import org.mengyun.tcctransaction.utils.CompensableMethodUtils;
-import org.mengyun.tcctransaction.utils.ReflectionUtils;
 import org.mengyun.tcctransaction.utils.TransactionUtils;
 
-import java.lang.reflect.Method;
 import java.util.Set;
 
 /**
@@ -43,23 +38,25 @@ public class CompensableTransactionInterceptor {
 
     public Object interceptCompensableMethod(ProceedingJoinPoint pjp) throws Throwable {
 
-        // 获得带 @Compensable 注解的方法
-        Method method = CompensableMethodUtils.getCompensableMethod(pjp);
+        // 获得带 @Compensable 注解的方法元数据
+        CompensableMethodMetadata metadata = CompensableMethodMetadata.of(pjp);
+        if (metadata == null) {
+            throw new SystemException(String.format("join point not found method, point is : %s", pjp.getSignature().getName()));
+        }
 
-        Compensable compensable = method.getAnnotation(Compensable.class);
-        Propagation propagation = compensable.propagation();
+        Propagation propagation = metadata.getPropagation();
         // 获得 事务上下文
-        TransactionContext transactionContext = FactoryBuilder.factoryOf(compensable.transactionContextEditor()).getInstance().get(pjp.getTarget(), method, pjp.getArgs());
+        TransactionContext transactionContext = metadata.getTransactionContextEditor().get(pjp.getTarget(), metadata.getMethod(), pjp.getArgs());
 
-        boolean asyncConfirm = compensable.asyncConfirm();
+        boolean asyncConfirm = metadata.isAsyncConfirm();
 
-        boolean asyncCancel = compensable.asyncCancel();
+        boolean asyncCancel = metadata.isAsyncCancel();
         // 当前线程是否在事务中
         boolean isTransactionActive = transactionManager.isTransactionActive();
 
         // 判断事务上下文是否合法
         if (!TransactionUtils.isLegalTransactionContext(isTransactionActive, propagation, transactionContext)) {
-            throw new SystemException("no active compensable transaction while propagation is mandatory for method " + method.getName());
+            throw new SystemException("no active compensable transaction while propagation is mandatory for method " + metadata.getMethod().getName());
         }
 
         // 计算方法类型
@@ -68,16 +65,16 @@ public class CompensableTransactionInterceptor {
         // 处理
         switch (methodType) {
             case ROOT: // 发起 TCC 整体流程
-                return rootMethodProceed(pjp, asyncConfirm, asyncCancel);
+                return rootMethodProceed(pjp, metadata, asyncConfirm, asyncCancel);
             case PROVIDER: // 服务提供者参与 TCC 整体流程
-                return providerMethodProceed(pjp, transactionContext, asyncConfirm, asyncCancel);
+                return providerMethodProceed(pjp, metadata, transactionContext, asyncConfirm, asyncCancel);
             default: // 执行方法原逻辑，不进行事务处理。
-                return pjp.proceed();
+                return proceed(pjp, metadata, transactionContext);
         }
     }
 
 
-    private Object rootMethodProceed(ProceedingJoinPoint pjp, boolean asyncConfirm, boolean asyncCancel) throws Throwable {
+    private Object rootMethodProceed(ProceedingJoinPoint pjp, CompensableMethodMetadata metadata, boolean asyncConfirm, boolean asyncCancel) throws Throwable {
 
         Object returnValue = null;
 
@@ -90,7 +87,7 @@ public class CompensableTransactionInterceptor {
 
             try {
                 // 执行方法原逻辑( 即 Try 逻辑 )。
-                returnValue = pjp.proceed();
+                returnValue = proceed(pjp, metadata, null);
             } catch (Throwable tryingException) {
 
                 // 判断异常是否为延迟取消回滚异常，部分异常不适合立即回滚事务。
@@ -116,7 +113,7 @@ public class CompensableTransactionInterceptor {
         return returnValue;
     }
 
-    private Object providerMethodProceed(ProceedingJoinPoint pjp, TransactionContext transactionContext, boolean asyncConfirm, boolean asyncCancel) throws Throwable {
+    private Object providerMethodProceed(ProceedingJoinPoint pjp, CompensableMethodMetadata metadata, TransactionContext transactionContext, boolean asyncConfirm, boolean asyncCancel) throws Throwable {
 
         Transaction transaction = null;
         try {
@@ -126,7 +123,7 @@ public class CompensableTransactionInterceptor {
                     // 传播发起分支事务
                     transaction = transactionManager.propagationNewBegin(transactionContext);
                     // 执行方法原逻辑( 即 Try 逻辑 )。
-                    return pjp.proceed();
+                    return proceed(pjp, metadata, transactionContext);
                 case CONFIRMING:
                     try {
                         // 传播获取分支事务
@@ -156,9 +153,20 @@ public class CompensableTransactionInterceptor {
         }
 
         // Confirm/Cancel 相关方法，是通过 AOP 切面调用，只调用，不处理返回值，但是又不能没有返回值，因此直接返回空。
-        Method method = ((MethodSignature) (pjp.getSignature())).getMethod();
+        return metadata.getNullReturnValue();
+    }
 
-        return ReflectionUtils.getNullValue(method.getReturnType());
+    /**
+     * 执行方法原逻辑
+     *
+     * @param pjp                切面点
+     * @param metadata           方法元数据
+     * @param transactionContext 调用方传入的事务上下文
+     * @return 返回值
+     * @throws Throwable 方法抛出的异常
+     */
+    protected Object proceed(ProceedingJoinPoint pjp, CompensableMethodMetadata metadata, TransactionContext transactionContext) throws Throwable {
+        return pjp.proceed();
     }
 
     private boolean isDelayCancelException(Throwable throwable) {
@@ -0,0 +1,32 @@
+package org.mengyun.tcctransaction.interceptor;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+
+/**
+ * 合并拦截器对应的切面，替代 {@link CompensableTransactionAspect} 和 {@link ResourceCoordinatorAspect}，不能同时使用
+ */
+@Aspect
+public abstract class FusedCompensableAspect {
+
+    private FusedCompensableInterceptor fusedCompensableInterceptor;
+
+    public void setFusedCompensableInterceptor(FusedCompensableInterceptor fusedCompensableInterceptor) {
+        this.fusedCompensableInterceptor = fusedCompensableInterceptor;
+    }
+
+    @Pointcut("@annotation(org.mengyun.tcctransaction.api.Compensable)")
+    public void compensableService() {
+
+    }
+
+    @Around("compensableService()")
+    public Object interceptCompensableMethod(ProceedingJoinPoint pjp) throws Throwable {
+
+        return fusedCompensableInterceptor.interceptCompensableMethod(pjp);
+    }
+
+    public abstract int getOrder();
+}
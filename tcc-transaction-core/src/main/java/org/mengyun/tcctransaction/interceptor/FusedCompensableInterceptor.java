@@ -0,0 +1,23 @@
+package org.mengyun.tcctransaction.interceptor;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.mengyun.tcctransaction.api.TransactionContext;
+
+/**
+ * 合并的可补偿方法拦截器
+ * 在一次拦截中完成事务处理和添加事务参与者，方法元数据、事务上下文只获取一次，两步共用。
+ * 需要在两个切面之间织入其它切面时，仍使用 {@link CompensableTransactionAspect} 和 {@link ResourceCoordinatorAspect}。
+ */
+public class FusedCompensableInterceptor extends CompensableTransactionInterceptor {
+
+    private ResourceCoordinatorInterceptor resourceCoordinatorInterceptor;
+
+    public void setResourceCoordinatorInterceptor(ResourceCoordinatorInterceptor resourceCoordinatorInterceptor) {
+        this.resourceCoordinatorInterceptor = resourceCoordinatorInterceptor;
+    }
+
+    @Override
+    protected Object proceed(ProceedingJoinPoint pjp, CompensableMethodMetadata metadata, TransactionContext transactionContext) throws Throwable {
+        return resourceCoordinatorInterceptor.interceptTransactionContextMethod(pjp, metadata, transactionContext);
+    }
+}
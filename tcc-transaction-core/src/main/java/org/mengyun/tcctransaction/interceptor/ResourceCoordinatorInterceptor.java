@@ -1,20 +1,15 @@
 package org.mengyun.tcctransaction.interceptor;
 
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.reflect.MethodSignature;
+import org.mengyun.tcctransaction.DescriptorInvocationContext;
 import org.mengyun.tcctransaction.InvocationContext;
 import org.mengyun.tcctransaction.Participant;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionManager;
-import org.mengyun.tcctransaction.api.Compensable;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.api.TransactionXid;
-import org.mengyun.tcctransaction.support.FactoryBuilder;
-import org.mengyun.tcctransaction.utils.CompensableMethodUtils;
-import org.mengyun.tcctransaction.utils.ReflectionUtils;
-
-import java.lang.reflect.Method;
+import org.mengyun.tcctransaction.support.LargeArguments;
 
 /**
  * Created by changmingxie on 11/8/15.
@@ -23,11 +18,20 @@ public class ResourceCoordinatorInterceptor {
 
     private TransactionManager transactionManager;
 
+    /**
+     * 参与者是否只保存调用描述编号和参数
+     * 旧版本无法读取该格式，所有节点升级后再开启
+     */
+    private boolean invocationDescriptorEnabled = false;
 
     public void setTransactionManager(TransactionManager transactionManager) {
         this.transactionManager = transactionManager;
     }
 
+    public void setInvocationDescriptorEnabled(boolean invocationDescriptorEnabled) {
+        this.invocationDescriptorEnabled = invocationDescriptorEnabled;
+    }
+
     public Object interceptTransactionContextMethod(ProceedingJoinPoint pjp) throws Throwable {
 
         Transaction transaction = transactionManager.getCurrentTransaction();
@@ -36,8 +40,14 @@ public class ResourceCoordinatorInterceptor {
 
             switch (transaction.getStatus()) {
                 case TRYING:
+                    // 获得 @Compensable 方法元数据
+                    CompensableMethodMetadata metadata = CompensableMethodMetadata.of(pjp);
+                    if (metadata == null) {
+                        throw new RuntimeException(String.format("join point not found method, point is : %s", pjp.getSignature().getName()));
+                    }
                     // 添加事务参与者
-                    enlistParticipant(pjp);
+                    enlistParticipant(pjp, metadata, transaction,
+                            metadata.getTransactionContextEditor().get(pjp.getTarget(), metadata.getMethod(), pjp.getArgs()));
                     break;
                 case CONFIRMING:
                     break;
@@ -50,39 +60,57 @@ public class ResourceCoordinatorInterceptor {
         return pjp.proceed(pjp.getArgs());
     }
 
-    private void enlistParticipant(ProceedingJoinPoint pjp) throws IllegalAccessException, InstantiationException {
+    /**
+     * 已获得方法元数据和事务上下文时添加事务参与者并执行方法原逻辑，供合并拦截器使用
+     *
+     * @param pjp                切面点
+     * @param metadata           方法元数据
+     * @param transactionContext 调用方传入的事务上下文
+     * @return 返回值
+     * @throws Throwable 方法抛出的异常
+     */
+    Object interceptTransactionContextMethod(ProceedingJoinPoint pjp, CompensableMethodMetadata metadata, TransactionContext transactionContext) throws Throwable {
 
-        // 获得 @Compensable 注解
-        Method method = CompensableMethodUtils.getCompensableMethod(pjp);
-        if (method == null) {
-            throw new RuntimeException(String.format("join point not found method, point is : %s", pjp.getSignature().getName()));
+        Transaction transaction = transactionManager.getCurrentTransaction();
+
+        if (transaction != null && transaction.getStatus() == TransactionStatus.TRYING) {
+            // 添加事务参与者
+            enlistParticipant(pjp, metadata, transaction, transactionContext);
         }
-        Compensable compensable = method.getAnnotation(Compensable.class);
 
-        // 获得 确认执行业务方法 和 取消执行业务方法
-        String confirmMethodName = compensable.confirmMethod();
-        String cancelMethodName = compensable.cancelMethod();
+        // 执行方法原逻辑
+        return pjp.proceed(pjp.getArgs());
+    }
+
+    private void enlistParticipant(ProceedingJoinPoint pjp, CompensableMethodMetadata metadata, Transaction transaction, TransactionContext transactionContext) {
 
-        // 获取 当前线程事务第一个(头部)元素
-        Transaction transaction = transactionManager.getCurrentTransaction();
         // 创建 事务编号
         TransactionXid xid = new TransactionXid(transaction.getXid().getGlobalTransactionId());
 
-        if (FactoryBuilder.factoryOf(compensable.transactionContextEditor()).getInstance().get(pjp.getTarget(), method, pjp.getArgs()) == null) {
-            FactoryBuilder.factoryOf(compensable.transactionContextEditor()).getInstance().set(new TransactionContext(xid, TransactionStatus.TRYING.getId()), pjp.getTarget(), ((MethodSignature) pjp.getSignature()).getMethod(), pjp.getArgs());
+        if (transactionContext == null) {
+            metadata.getTransactionContextEditor().set(new TransactionContext(xid, TransactionStatus.TRYING.getId()), pjp.getTarget(), metadata.getSignatureMethod(), pjp.getArgs());
         }
 
-        // 获得类
-        Class targetClass = ReflectionUtils.getDeclaringType(pjp.getTarget().getClass(), method.getName(), method.getParameterTypes());
+        // 参数只获取一次，确认、取消调用上下文共用，超过阈值的参数单独存储
+        Object[] args = LargeArguments.externalize(pjp.getArgs());
 
         // 创建 确认执行方法调用上下文 和 取消执行方法调用上下文
-        InvocationContext confirmInvocation = new InvocationContext(targetClass,
-                confirmMethodName,
-                method.getParameterTypes(), pjp.getArgs());
+        InvocationContext confirmInvocation;
+        InvocationContext cancelInvocation;
 
-        InvocationContext cancelInvocation = new InvocationContext(targetClass,
-                cancelMethodName,
-                method.getParameterTypes(), pjp.getArgs());
+        if (invocationDescriptorEnabled) {
+            confirmInvocation = new DescriptorInvocationContext(metadata.getConfirmDescriptor(), args);
+
+            cancelInvocation = new DescriptorInvocationContext(metadata.getCancelDescriptor(), args);
+        } else {
+            confirmInvocation = new InvocationContext(metadata.getDeclaringType(),
+                    metadata.getConfirmMethodName(),
+                    metadata.getParameterTypes(), args);
+
+            cancelInvocation = new InvocationContext(metadata.getDeclaringType(),
+                    metadata.getCancelMethodName(),
+                    metadata.getParameterTypes(), args);
+        }
 
         // 创建 事务参与者
         Participant participant =
@@ -90,7 +118,7 @@ public class ResourceCoordinatorInterceptor {
                         xid,
                         confirmInvocation,
                         cancelInvocation,
-                        compensable.transactionContextEditor());
+                        metadata.getTransactionContextEditorClass());
 
         // 添加 事务参与者 到 事务
         transactionManager.enlistParticipant(participant);
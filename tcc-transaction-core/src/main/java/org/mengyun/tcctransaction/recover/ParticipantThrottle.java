@@ -0,0 +1,225 @@
+package org.mengyun.tcctransaction.recover;
+
+/**
+ * 单个参与者目标的恢复限流、熔断
+ * 令牌桶限制每秒调用次数，调用成功且不慢时速率线性增加，失败或慢调用时速率减半，恢复中的服务流量逐步增加。
+ * 连续失败达到阈值时熔断，熔断期间不调用；到期后放行一次探测调用，成功则关闭熔断并从最小速率重新增长，失败则继续熔断。
+ */
+public class ParticipantThrottle {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String key;
+
+    private final RecoveryThrottle config;
+
+    /**
+     * 当前速率，每秒调用次数
+     */
+    private double rate;
+
+    private double tokens;
+
+    private long lastRefillTime = System.currentTimeMillis();
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedTime;
+
+    /**
+     * 半开状态下探测调用是否进行中
+     */
+    private boolean probing;
+
+    private long probeStartTime;
+
+    /**
+     * 平均耗时，单位：毫秒，指数加权
+     */
+    private double averageLatency;
+
+    /**
+     * 成功率，指数加权
+     */
+    private double successRate = 1;
+
+    ParticipantThrottle(String key, RecoveryThrottle config) {
+        this.key = key;
+        this.config = config;
+        this.rate = config.getInitialRate();
+        this.tokens = 1;
+    }
+
+    /**
+     * 获取一次调用许可
+     *
+     * @return 熔断中或令牌不足时返回 false
+     */
+    public synchronized boolean tryAcquire() {
+
+        long now = System.currentTimeMillis();
+
+        if (state == State.OPEN) {
+            if (now - openedTime < config.getOpenSeconds() * 1000L) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+
+        if (state == State.HALF_OPEN) {
+            // 探测调用未执行（如前一个参与者失败）时不会记录结果，超过熔断时长后允许重新探测
+            if (probing && now - probeStartTime < config.getOpenSeconds() * 1000L) {
+                return false;
+            }
+            probing = true;
+            probeStartTime = now;
+            return true;
+        }
+
+        tokens = Math.min(Math.max(1, rate), tokens + (now - lastRefillTime) * rate / 1000);
+        lastRefillTime = now;
+
+        if (tokens < 1) {
+            return false;
+        }
+
+        tokens--;
+        return true;
+    }
+
+    /**
+     * 获取一次调用许可，令牌不足时等待
+     *
+     * @param maxWaitMillis 最长等待时间，单位：毫秒
+     * @return 熔断中或等待超时返回 false
+     * @throws InterruptedException 等待被中断
+     */
+    public boolean acquire(long maxWaitMillis) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+
+        while (true) {
+
+            long waitMillis;
+
+            synchronized (this) {
+                if (tryAcquire()) {
+                    return true;
+                }
+
+                if (state != State.CLOSED) {
+                    return false;
+                }
+
+                waitMillis = Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / rate));
+            }
+
+            if (System.currentTimeMillis() + waitMillis > deadline) {
+                return false;
+            }
+
+            Thread.sleep(waitMillis);
+        }
+    }
+
+    /**
+     * 归还未使用的调用许可
+     * 同一事务的其它参与者未获取到许可、放弃调用时调用，归还令牌或半开状态的探测名额
+     */
+    public synchronized void release() {
+
+        if (state == State.HALF_OPEN) {
+            probing = false;
+        } else if (state == State.CLOSED) {
+            tokens = Math.min(Math.max(1, rate), tokens + 1);
+        }
+    }
+
+    /**
+     * 记录调用结果
+     *
+     * @param success       是否成功
+     * @param latencyMillis 耗时，单位：毫秒
+     */
+    public synchronized void record(boolean success, long latencyMillis) {
+
+        averageLatency = averageLatency == 0 ? latencyMillis : averageLatency * 0.8 + latencyMillis * 0.2;
+        successRate = successRate * 0.8 + (success ? 0.2 : 0);
+
+        if (state == State.HALF_OPEN) {
+            probing = false;
+            if (success) {
+                close();
+            } else {
+                open();
+            }
+            return;
+        }
+
+        if (success) {
+            consecutiveFailures = 0;
+
+            if (latencyMillis <= config.getSlowCallMillis()) {
+                rate = Math.min(config.getMaxRate(), rate + config.getRateIncrease());
+            } else {
+                rate = Math.max(config.getMinRate(), rate * config.getRateDecreaseFactor());
+            }
+        } else {
+            rate = Math.max(config.getMinRate(), rate * config.getRateDecreaseFactor());
+
+            if (++consecutiveFailures >= config.getFailureThreshold()) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 熔断剩余时间
+     *
+     * @return 单位：毫秒，未熔断时返回 0
+     */
+    public synchronized long getRemainingOpenMillis() {
+        return state == State.OPEN ? Math.max(0, openedTime + config.getOpenSeconds() * 1000L - System.currentTimeMillis()) : 0;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedTime = System.currentTimeMillis();
+        RecoveryThrottle.logger.warn(String.format("recovery circuit opened for %s, consecutive failures:%d, success rate:%.2f, average latency:%.0fms",
+                key, consecutiveFailures, successRate, averageLatency));
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        rate = config.getMinRate();
+        tokens = 0;
+        lastRefillTime = System.currentTimeMillis();
+        RecoveryThrottle.logger.info(String.format("recovery circuit closed for %s", key));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized double getSuccessRate() {
+        return successRate;
+    }
+
+    public synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+}
@@ -36,4 +36,14 @@ public interface RecoverConfig {
     public void setDelayCancelExceptions(Set<Class<? extends Exception>> delayRecoverExceptions);
 
     public int getAsyncTerminateThreadPoolSize();
+
+    /**
+     * @return 恢复线程数量，即同时恢复的事务数量
+     */
+    public int getRecoverThreadPoolSize();
+
+    /**
+     * @return 单个事务恢复的超时时间，单位：秒，小于等于 0 表示不限制
+     */
+    public int getRecoverTimeout();
 }
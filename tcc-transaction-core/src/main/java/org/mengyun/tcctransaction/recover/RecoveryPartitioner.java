@@ -0,0 +1,159 @@
+package org.mengyun.tcctransaction.recover;
+
+import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.RecoveryLeaseStore;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 事务恢复分区
+ * 事务按编号哈希分到固定数量的分区，存活节点按编号排序后轮流分配分区，节点只恢复持有租约的分区。
+ * 每轮恢复前刷新：登记心跳，获取或续约分配给本节点的分区，释放不再分配给本节点的分区。
+ * 节点加入或退出后分配随之变化，原持有节点释放或租约过期后，新节点才能获取，同一分区不会同时被两个节点恢复。
+ */
+public class RecoveryPartitioner {
+
+    static final Logger logger = Logger.getLogger(RecoveryPartitioner.class.getSimpleName());
+
+    private RecoveryLeaseStore leaseStore;
+
+    /**
+     * 节点编号，默认为 进程名 + 随机后缀，重启后不同
+     */
+    private String nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * 分区数量，所有节点必须一致
+     */
+    private int partitionCount = 64;
+
+    /**
+     * 租约时长，单位：秒，需大于恢复间隔
+     */
+    private int leaseSeconds = 300;
+
+    /**
+     * 本节点持有租约的分区
+     */
+    private volatile Set<Integer> ownedPartitions = Collections.emptySet();
+
+    /**
+     * 本节点租约到期时间，刷新失败时超过该时间不再认为持有分区
+     */
+    private volatile long leaseExpireTime;
+
+    public void setLeaseStore(RecoveryLeaseStore leaseStore) {
+        this.leaseStore = leaseStore;
+    }
+
+    public RecoveryLeaseStore getLeaseStore() {
+        return leaseStore;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void setLeaseSeconds(int leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    /**
+     * 刷新本节点持有的分区
+     *
+     * @return 持有租约的分区
+     */
+    public Set<Integer> refresh() {
+
+        long leaseMillis = leaseSeconds * 1000L;
+        long startTime = System.currentTimeMillis();
+
+        leaseStore.heartbeat(nodeId, leaseMillis);
+
+        List<String> liveNodes = new ArrayList<String>(leaseStore.findLiveNodes());
+
+        if (!liveNodes.contains(nodeId)) {
+            liveNodes.add(nodeId);
+        }
+
+        Collections.sort(liveNodes);
+
+        int nodeIndex = liveNodes.indexOf(nodeId);
+        int nodeCount = liveNodes.size();
+
+        Set<Integer> owned = new HashSet<Integer>();
+
+        for (int partition = 0; partition < partitionCount; partition++) {
+
+            if (partition % nodeCount == nodeIndex) {
+
+                if (leaseStore.tryAcquire(partition, nodeId, leaseMillis)) {
+                    owned.add(partition);
+                }
+
+            } else if (ownedPartitions.contains(partition)) {
+                // 分配给其它节点，释放后由其获取
+                leaseStore.release(partition, nodeId);
+            }
+        }
+
+        if (!owned.equals(ownedPartitions)) {
+            logger.info(String.format("recovery partitions changed, node:%s, live nodes:%d, owned partitions:%s", nodeId, nodeCount, owned));
+        }
+
+        ownedPartitions = owned;
+        leaseExpireTime = startTime + leaseMillis;
+
+        return owned;
+    }
+
+    /**
+     * 本节点是否负责恢复该事务
+     *
+     * @param xid 事务编号
+     * @return 事务所在分区是否由本节点持有，租约已过期时返回 false
+     */
+    public boolean owns(TransactionXid xid) {
+        return System.currentTimeMillis() < leaseExpireTime && ownedPartitions.contains(partitionOf(xid));
+    }
+
+    public int partitionOf(TransactionXid xid) {
+        int hash = xid.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % partitionCount;
+    }
+
+    /**
+     * 释放所有分区并移除节点，其它节点下一轮即可接管
+     */
+    public void leave() {
+
+        for (Integer partition : ownedPartitions) {
+            leaseStore.release(partition, nodeId);
+        }
+
+        ownedPartitions = Collections.emptySet();
+        leaseExpireTime = 0;
+
+        leaseStore.removeNode(nodeId);
+    }
+}
@@ -0,0 +1,116 @@
+package org.mengyun.tcctransaction.recover;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一轮事务恢复的进度
+ */
+public class RecoveryProgress {
+
+    /**
+     * 本轮待处理的事务数量
+     */
+    private final int total;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private volatile long endTime;
+
+    /**
+     * 恢复成功
+     */
+    private final AtomicInteger succeeded = new AtomicInteger();
+
+    /**
+     * 恢复失败
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * 超时
+     */
+    private final AtomicInteger timedOut = new AtomicInteger();
+
+    /**
+     * 超过重试次数、未到重试时间或已删除，未执行恢复
+     */
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    /**
+     * 超过重试次数，移入死信区
+     */
+    private final AtomicInteger deadLettered = new AtomicInteger();
+
+    public RecoveryProgress(int total) {
+        this.total = total;
+    }
+
+    void succeed() {
+        succeeded.incrementAndGet();
+    }
+
+    void fail() {
+        failed.incrementAndGet();
+    }
+
+    void timeout() {
+        timedOut.incrementAndGet();
+    }
+
+    void skip() {
+        skipped.incrementAndGet();
+    }
+
+    void deadLetter() {
+        deadLettered.incrementAndGet();
+    }
+
+    void finish() {
+        endTime = System.currentTimeMillis();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getTimedOut() {
+        return timedOut.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getDeadLettered() {
+        return deadLettered.get();
+    }
+
+    public int getCompleted() {
+        return getSucceeded() + getFailed() + getTimedOut() + getSkipped() + getDeadLettered();
+    }
+
+    public boolean isFinished() {
+        return endTime > 0;
+    }
+
+    /**
+     * @return 耗时，单位：毫秒
+     */
+    public long getElapsedMillis() {
+        return (isFinished() ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("completed:%d/%d, succeeded:%d, failed:%d, timed out:%d, skipped:%d, dead lettered:%d, elapsed:%dms",
+                getCompleted(), total, getSucceeded(), getFailed(), getTimedOut(), getSkipped(), getDeadLettered(), getElapsedMillis());
+    }
+}
@@ -0,0 +1,158 @@
+package org.mengyun.tcctransaction.recover;
+
+import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.InvocationContext;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 事务恢复限流
+ * 按参与者目标（确认、取消方法所在类 + 方法名）分组，每组独立限流、熔断，见 {@link ParticipantThrottle}。
+ * 下游服务故障恢复后，积压的事务按逐步增加的速率重放，避免再次压垮服务。
+ */
+public class RecoveryThrottle {
+
+    static final Logger logger = Logger.getLogger(RecoveryThrottle.class.getSimpleName());
+
+    /**
+     * 分组 -> 限流
+     */
+    private final ConcurrentMap<String, ParticipantThrottle> throttles = new ConcurrentHashMap<String, ParticipantThrottle>();
+
+    /**
+     * 初始速率，每秒调用次数
+     */
+    private double initialRate = 5;
+
+    private double minRate = 1;
+
+    private double maxRate = 100;
+
+    /**
+     * 每次正常调用后增加的速率
+     */
+    private double rateIncrease = 1;
+
+    /**
+     * 失败或慢调用后速率乘以的系数
+     */
+    private double rateDecreaseFactor = 0.5;
+
+    /**
+     * 慢调用阈值，单位：毫秒
+     */
+    private long slowCallMillis = 1000;
+
+    /**
+     * 连续失败次数达到该值时熔断
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * 熔断时长，单位：秒
+     */
+    private int openSeconds = 30;
+
+    /**
+     * 令牌不足时最长等待时间，单位：毫秒，超过后推迟恢复
+     */
+    private long maxWaitMillis = 5000;
+
+    /**
+     * 获得调用目标的限流
+     *
+     * @param invocationContext 确认或取消调用
+     * @return 限流
+     */
+    public ParticipantThrottle getThrottle(InvocationContext invocationContext) {
+
+        String key = invocationContext.getTargetClass().getName() + "#" + invocationContext.getMethodName();
+
+        ParticipantThrottle throttle = throttles.get(key);
+
+        if (throttle == null) {
+            throttles.putIfAbsent(key, new ParticipantThrottle(key, this));
+            throttle = throttles.get(key);
+        }
+
+        return throttle;
+    }
+
+    public Collection<ParticipantThrottle> getThrottles() {
+        return throttles.values();
+    }
+
+    public double getInitialRate() {
+        return initialRate;
+    }
+
+    public void setInitialRate(double initialRate) {
+        this.initialRate = initialRate;
+    }
+
+    public double getMinRate() {
+        return minRate;
+    }
+
+    public void setMinRate(double minRate) {
+        this.minRate = minRate;
+    }
+
+    public double getMaxRate() {
+        return maxRate;
+    }
+
+    public void setMaxRate(double maxRate) {
+        this.maxRate = maxRate;
+    }
+
+    public double getRateIncrease() {
+        return rateIncrease;
+    }
+
+    public void setRateIncrease(double rateIncrease) {
+        this.rateIncrease = rateIncrease;
+    }
+
+    public double getRateDecreaseFactor() {
+        return rateDecreaseFactor;
+    }
+
+    public void setRateDecreaseFactor(double rateDecreaseFactor) {
+        this.rateDecreaseFactor = rateDecreaseFactor;
+    }
+
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public void setSlowCallMillis(long slowCallMillis) {
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public int getOpenSeconds() {
+        return openSeconds;
+    }
+
+    public void setOpenSeconds(int openSeconds) {
+        this.openSeconds = openSeconds;
+    }
+}
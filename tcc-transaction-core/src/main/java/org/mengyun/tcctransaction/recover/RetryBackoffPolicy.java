@@ -0,0 +1,91 @@
+package org.mengyun.tcctransaction.recover;
+
+import java.util.Random;
+
+/**
+ * 重试退避策略
+ * 每次恢复失败后，下次重试间隔按倍数增长，不超过最大间隔，并加入随机抖动，避免大量事务同时到期。
+ * 第 n 次重试后的间隔为 baseDelay * multiplier ^ (n - 1)。
+ */
+public class RetryBackoffPolicy {
+
+    private static final Random random = new Random();
+
+    /**
+     * 首次重试间隔，单位：秒
+     */
+    private int baseDelaySeconds = 120;
+
+    /**
+     * 间隔增长倍数
+     */
+    private double multiplier = 2;
+
+    /**
+     * 最大重试间隔，单位：秒
+     */
+    private int maxDelaySeconds = 3600;
+
+    /**
+     * 随机抖动比例，间隔在 [1 - jitterRatio, 1 + jitterRatio] 倍之间浮动
+     */
+    private double jitterRatio = 0.2;
+
+    public RetryBackoffPolicy() {
+    }
+
+    public RetryBackoffPolicy(int baseDelaySeconds) {
+        this.baseDelaySeconds = baseDelaySeconds;
+    }
+
+    /**
+     * 计算下次重试间隔
+     *
+     * @param retriedCount 已重试次数
+     * @return 间隔，单位：毫秒
+     */
+    public long nextRetryDelayMillis(int retriedCount) {
+
+        double delay = baseDelaySeconds * Math.pow(multiplier, Math.max(0, retriedCount - 1));
+
+        if (jitterRatio > 0) {
+            delay = delay * (1 - jitterRatio + 2 * jitterRatio * random.nextDouble());
+        }
+
+        delay = Math.min(delay, maxDelaySeconds);
+
+        return (long) (delay * 1000);
+    }
+
+    public int getBaseDelaySeconds() {
+        return baseDelaySeconds;
+    }
+
+    public void setBaseDelaySeconds(int baseDelaySeconds) {
+        this.baseDelaySeconds = baseDelaySeconds;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    public int getMaxDelaySeconds() {
+        return maxDelaySeconds;
+    }
+
+    public void setMaxDelaySeconds(int maxDelaySeconds) {
+        this.maxDelaySeconds = maxDelaySeconds;
+    }
+
+    public double getJitterRatio() {
+        return jitterRatio;
+    }
+
+    public void setJitterRatio(double jitterRatio) {
+        this.jitterRatio = jitterRatio;
+    }
+}
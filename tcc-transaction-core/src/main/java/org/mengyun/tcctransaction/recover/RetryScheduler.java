@@ -0,0 +1,287 @@
+package org.mengyun.tcctransaction.recover;
+
+import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 事务重试调度器
+ * 以时间轮保存本节点已知的待重试事务（确认、取消失败，恢复失败）及其重试时间，到期时立即交给 {@link TransactionRecovery} 恢复，
+ * 不必等待下一轮定时扫描。定时扫描仍然保留，频率可调低，用于兜底其它节点或重启前遗留的事务。
+ * <p>
+ * 时间轮：tickMillis 一格，wheelSize 格一圈，事务按到期格放入对应槽位，超过一圈的记录剩余圈数。
+ * 槽位只由工作线程访问，新增事务先放入并发队列，每格开始时转移到槽位。
+ * 同一事务只保留最后一次调度，待调度数量超过上限时丢弃，由定时扫描兜底。
+ */
+public class RetryScheduler {
+
+    static final Logger logger = Logger.getLogger(RetryScheduler.class.getSimpleName());
+
+    /**
+     * 每格时长，单位：毫秒
+     */
+    private long tickMillis = 1000;
+
+    /**
+     * 每圈格数，2 的幂
+     */
+    private int wheelSize = 512;
+
+    /**
+     * 待调度事务数量上限
+     */
+    private int maxPendingRetries = 100000;
+
+    /**
+     * 确认、取消失败后首次重试的延迟，单位：秒
+     */
+    private int firstRetryDelaySeconds = 10;
+
+    private TransactionRecovery transactionRecovery;
+
+    /**
+     * 事务编号 -> 最后一次调度
+     */
+    private final ConcurrentMap<TransactionXid, Entry> pendingEntries = new ConcurrentHashMap<TransactionXid, Entry>();
+
+    private final Queue<Entry> newEntries = new ConcurrentLinkedQueue<Entry>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private volatile Thread worker;
+
+    private volatile boolean stopped;
+
+    /**
+     * 确认、取消失败后调度重试
+     * 分支事务由根事务驱动恢复，不调度
+     *
+     * @param transaction 事务
+     */
+    public void scheduleFailed(Transaction transaction) {
+
+        if (transaction.getTransactionType() == TransactionType.BRANCH) {
+            return;
+        }
+
+        schedule((TransactionXid) transaction.getXid(), System.currentTimeMillis() + firstRetryDelaySeconds * 1000L);
+    }
+
+    /**
+     * 调度重试，已调度的事务改为新的重试时间
+     *
+     * @param xid           事务编号
+     * @param dueTimeMillis 重试时间
+     * @return 是否已调度，超过上限或已停止时返回 false
+     */
+    public boolean schedule(TransactionXid xid, long dueTimeMillis) {
+
+        if (stopped) {
+            return false;
+        }
+
+        Entry entry = new Entry(xid, dueTimeMillis);
+
+        Entry previous = pendingEntries.put(xid, entry);
+
+        if (previous != null) {
+            previous.cancelled = true;
+        } else if (pendingCount.incrementAndGet() > maxPendingRetries) {
+            pendingEntries.remove(xid, entry);
+            pendingCount.decrementAndGet();
+            logger.warn(String.format("too many pending retries, leave it to the recovery job. txid:%s", xid));
+            return false;
+        }
+
+        newEntries.add(entry);
+
+        ensureStarted();
+
+        return true;
+    }
+
+    /**
+     * 取消调度
+     *
+     * @param xid 事务编号
+     */
+    public void cancel(TransactionXid xid) {
+
+        Entry entry = pendingEntries.remove(xid);
+
+        if (entry != null) {
+            entry.cancelled = true;
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 待调度事务编号的只读视图
+     */
+    public Set<TransactionXid> getPendingXids() {
+        return Collections.unmodifiableSet(pendingEntries.keySet());
+    }
+
+    /**
+     * @return 待调度事务数量
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public void stop() {
+
+        stopped = true;
+
+        Thread thread = worker;
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void ensureStarted() {
+
+        if (worker == null) {
+            synchronized (this) {
+                if (worker == null && !stopped) {
+                    Thread thread = new Thread(new Worker(), "tcc-retry-scheduler");
+                    thread.setDaemon(true);
+                    thread.start();
+                    worker = thread;
+                }
+            }
+        }
+    }
+
+    private void fire(Entry entry) {
+
+        if (!pendingEntries.remove(entry.xid, entry)) {
+            return;
+        }
+
+        pendingCount.decrementAndGet();
+
+        try {
+            transactionRecovery.recoverScheduled(entry.xid);
+        } catch (Throwable e) {
+            logger.error(String.format("submit scheduled retry failed, txid:%s", entry.xid), e);
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+
+            int mask = wheelSize - 1;
+
+            @SuppressWarnings("unchecked")
+            LinkedList<Entry>[] wheel = new LinkedList[wheelSize];
+
+            for (int i = 0; i < wheelSize; i++) {
+                wheel[i] = new LinkedList<Entry>();
+            }
+
+            long startTime = System.currentTimeMillis();
+            long tick = 0;
+
+            while (!stopped) {
+
+                // 等待当前格结束
+                long deadline = startTime + (tick + 1) * tickMillis;
+                long sleepMillis = deadline - System.currentTimeMillis();
+
+                if (sleepMillis > 0) {
+                    try {
+                        Thread.sleep(sleepMillis);
+                    } catch (InterruptedException e) {
+                        if (stopped) {
+                            break;
+                        }
+                    }
+                    continue;
+                }
+
+                // 新增事务放入槽位，已过期的放入当前格
+                Entry entry;
+                while ((entry = newEntries.poll()) != null) {
+
+                    if (entry.cancelled) {
+                        continue;
+                    }
+
+                    long dueTick = Math.max((entry.dueTimeMillis - startTime) / tickMillis, tick);
+                    entry.remainingRounds = (dueTick - tick) / wheelSize;
+                    wheel[(int) (dueTick & mask)].add(entry);
+                }
+
+                // 处理当前格
+                Iterator<Entry> iterator = wheel[(int) (tick & mask)].iterator();
+
+                while (iterator.hasNext()) {
+
+                    entry = iterator.next();
+
+                    if (entry.cancelled) {
+                        iterator.remove();
+                    } else if (entry.remainingRounds <= 0) {
+                        iterator.remove();
+                        fire(entry);
+                    } else {
+                        entry.remainingRounds--;
+                    }
+                }
+
+                tick++;
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final TransactionXid xid;
+
+        private final long dueTimeMillis;
+
+        private long remainingRounds;
+
+        private volatile boolean cancelled;
+
+        Entry(TransactionXid xid, long dueTimeMillis) {
+            this.xid = xid;
+            this.dueTimeMillis = dueTimeMillis;
+        }
+    }
+
+    public void setTransactionRecovery(TransactionRecovery transactionRecovery) {
+        this.transactionRecovery = transactionRecovery;
+    }
+
+    public void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    public void setWheelSize(int wheelSize) {
+        this.wheelSize = Integer.highestOneBit(Math.max(1, wheelSize - 1) << 1);
+    }
+
+    public void setMaxPendingRetries(int maxPendingRetries) {
+        this.maxPendingRetries = maxPendingRetries;
+    }
+
+    public void setFirstRetryDelaySeconds(int firstRetryDelaySeconds) {
+        this.firstRetryDelaySeconds = firstRetryDelaySeconds;
+    }
+}
@@ -3,19 +3,50 @@ package org.mengyun.tcctransaction.recover;
 import com.alibaba.fastjson.JSON;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.InvocationContext;
 import org.mengyun.tcctransaction.OptimisticLockException;
+import org.mengyun.tcctransaction.Participant;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.TransactionSummary;
 import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
 import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.CachableTransactionRepository;
+import org.mengyun.tcctransaction.repository.DeadLetterRepository;
+import org.mengyun.tcctransaction.support.LargeArguments;
 import org.mengyun.tcctransaction.support.TransactionConfigurator;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 事务恢复逻辑
+ * 每轮恢复由多个线程并行执行，并发数量、单个事务的超时时间可配置，单个参与者挂起不会阻塞整轮恢复。
+ * 设置 {@link RecoveryPartitioner} 时，集群中各节点只恢复自己持有分区内的事务，调度重试同样如此，失去分区时取消其调度。
+ * 每次恢复前按 {@link RetryBackoffPolicy} 安排下次重试时间，只加载到达重试时间的事务。
+ * 存储器支持死信区时，超过最大重试次数的事务移入死信区，之后不再加载。
+ * 设置 {@link RetryScheduler} 时，恢复失败的事务按重试时间调度，到期立即重试，定时扫描作为兜底。
+ * 设置 {@link RecoveryThrottle} 时，按参与者目标限流、熔断，被限流的事务推迟恢复，不计重试次数。
  * Created by changmingxie on 11/10/15.
  */
 public class TransactionRecovery {
@@ -24,84 +55,841 @@ public class TransactionRecovery {
 
     private TransactionConfigurator transactionConfigurator;
 
+    private volatile ExecutorService recoveryExecutor;
+
+    private volatile ScheduledExecutorService timeoutScheduler;
+
+    private volatile RecoveryProgress currentProgress;
+
+    /**
+     * 恢复分区，为空时恢复所有事务
+     */
+    private RecoveryPartitioner recoveryPartitioner;
+
+    /**
+     * 重试退避策略，为空时以恢复间隔作为首次重试间隔
+     */
+    private volatile RetryBackoffPolicy backoffPolicy;
+
+    /**
+     * 重试调度器，为空时只由定时扫描恢复
+     */
+    private RetryScheduler retryScheduler;
+
+    /**
+     * 参与者限流，为空时不限流
+     */
+    private RecoveryThrottle recoveryThrottle;
+
+    /**
+     * 调度重试正在执行的任务名额，与定时扫描分开计数
+     */
+    private volatile Semaphore scheduledPermits;
+
+    /**
+     * 超时后仍未结束的恢复线程数量，线程退出时减少
+     * 超时的任务释放名额但仍占用线程，达到上限时不再提交新的任务，避免线程持续增长
+     */
+    private final AtomicInteger abandonedWorkers = new AtomicInteger();
+
+    /**
+     * 调度重试连续因名额不足推迟的次数，按次数退避，获取到名额后清零
+     */
+    private final AtomicInteger scheduledRejections = new AtomicInteger();
+
+    /**
+     * 调度重试名额不足时的推迟间隔
+     */
+    private final RetryBackoffPolicy busyBackoffPolicy = createBusyBackoffPolicy();
+
     /**
      * 启动恢复事务逻辑
      */
     public void startRecover() {
 
-        // 加载异常事务集合
-        List<Transaction> transactions = loadErrorTransactions();
+        // 刷新本节点负责的分区，失败时跳过本轮，避免与其它节点重复恢复
+        if (recoveryPartitioner != null) {
+            try {
+                recoveryPartitioner.refresh();
+            } catch (Exception e) {
+                logger.error("refresh recovery partitions failed, skip this round", e);
+                return;
+            } finally {
+                cancelUnownedRetries();
+            }
+        }
+
+        // 加载异常事务摘要集合，按摘要过滤后再加载完整事务
+        List<TransactionSummary> summaries = loadErrorTransactionSummaries();
 
         // 恢复异常事务集合
-        recoverErrorTransactions(transactions);
+        recoverErrorTransactions(summaries);
+
+        // 清理过期的大参数
+        removeExpiredLargeArguments();
     }
 
-    private List<Transaction> loadErrorTransactions() {
+    private void removeExpiredLargeArguments() {
+        try {
+            int count = LargeArguments.removeExpired();
+            if (count > 0) {
+                logger.info(String.format("removed %d expired large arguments", count));
+            }
+        } catch (Throwable e) {
+            logger.warn("remove expired large arguments failed", e);
+        }
+    }
 
+    private List<TransactionSummary> loadErrorTransactionSummaries() {
 
         long currentTimeInMillis = Calendar.getInstance().getTimeInMillis();
 
         TransactionRepository transactionRepository = transactionConfigurator.getTransactionRepository();
+
+        List<TransactionSummary> summaries = transactionRepository.findAllSummariesDueBefore(new Date(currentTimeInMillis));
+
+        if (recoveryPartitioner == null) {
+            return summaries;
+        }
+
+        // 只恢复本节点持有分区内的事务
+        List<TransactionSummary> owned = new ArrayList<TransactionSummary>();
+
+        for (TransactionSummary summary : summaries) {
+            if (recoveryPartitioner.owns(summary.getXid())) {
+                owned.add(summary);
+            }
+        }
+
+        return owned;
+    }
+
+    private void recoverErrorTransactions(List<TransactionSummary> summaries) {
+
+        RecoveryProgress progress = new RecoveryProgress(summaries.size());
+        currentProgress = progress;
+
         RecoverConfig recoverConfig = transactionConfigurator.getRecoverConfig();
+        int poolSize = getPoolSize();
+        // 正在执行的恢复任务数量上限，超时的任务释放名额，不阻塞本轮恢复
+        Semaphore permits = new Semaphore(poolSize);
+        // 无法提交任务时，本轮剩余事务留到下一轮
+        boolean delayed = false;
+
+        try {
+            for (TransactionSummary summary : summaries) {
+
+                if (delayed) {
+                    progress.skip();
+                    continue;
+                }
+
+                if (isRetryExhausted(summary)) {
+                    if (moveToDeadLetter(summary)) {
+                        progress.deadLetter();
+                    } else {
+                        progress.skip();
+                    }
+                    continue;
+                }
+
+                if (!isRecoverable(summary)) {
+                    progress.skip();
+                    continue;
+                }
+
+                permits.acquire();
+
+                if (!submit(new RecoveryTask(summary, null, progress, permits, recoverConfig.getRecoverTimeout()))) {
+                    permits.release();
+                    progress.skip();
+                    delayed = true;
+                }
+            }
+
+            // 等待本轮所有任务完成或超时
+            permits.acquire(poolSize);
+            permits.release(poolSize);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn(String.format("recover interrupted, progress:%s", progress));
+        } finally {
+            progress.finish();
+        }
+
+        if (progress.getTotal() > 0) {
+            logger.info(String.format("recover finished, progress:%s", progress));
+        }
+    }
+
+    /**
+     * 按摘要判断是否需要恢复
+     *
+     * @param summary 事务摘要
+     * @return 是否恢复
+     */
+    private boolean isRecoverable(TransactionSummary summary) {
+
+        // 分支事务超过最大可重试时间
+        if (summary.getTransactionType().equals(TransactionType.BRANCH)
+                && (summary.getCreateTime().getTime() +
+                transactionConfigurator.getRecoverConfig().getMaxRetryCount() *
+                        transactionConfigurator.getRecoverConfig().getRecoverDuration() * 1000
+                > System.currentTimeMillis())) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 恢复调度到期的事务
+     * 名额不足时按连续推迟次数退避，重试时间已被其它节点推迟时按新的时间调度
+     *
+     * @param xid 事务编号
+     */
+    public void recoverScheduled(final TransactionXid xid) {
+
+        // 分区已由其它节点持有，由其恢复
+        if (!isOwned(xid)) {
+            return;
+        }
+
+        final Semaphore permits = getScheduledPermits();
+
+        if (!permits.tryAcquire()) {
+            delayScheduled(xid);
+            return;
+        }
+
+        scheduledRejections.set(0);
+
+        boolean submitted = submit(new Runnable() {
+            @Override
+            public void run() {
+
+                Transaction transaction = null;
+
+                try {
+                    transaction = reloadTransaction(xid);
+                } catch (Throwable e) {
+                    logger.warn(String.format("load scheduled transaction failed, leave it to the recovery job. txid:%s", xid), e);
+                }
+
+                TransactionSummary summary = transaction == null ? null : new TransactionSummary(transaction);
+
+                if (summary == null || !isScheduledRecoverable(summary)) {
+                    permits.release();
+                    return;
+                }
+
+                new RecoveryTask(summary, transaction, new RecoveryProgress(1), permits,
+                        transactionConfigurator.getRecoverConfig().getRecoverTimeout()).run();
+            }
+        });
+
+        if (!submitted) {
+            permits.release();
+            delayScheduled(xid);
+        }
+    }
+
+    /**
+     * 推迟调度重试，连续推迟时间隔逐步增加，避免名额不足时反复调度
+     */
+    private void delayScheduled(TransactionXid xid) {
+        long delay = busyBackoffPolicy.nextRetryDelayMillis(scheduledRejections.incrementAndGet());
+        retryScheduler.schedule(xid, System.currentTimeMillis() + delay);
+    }
+
+    /**
+     * 从 1 秒开始翻倍，最长 30 秒，抖动较大以分散同时推迟的事务
+     */
+    private static RetryBackoffPolicy createBusyBackoffPolicy() {
+        RetryBackoffPolicy policy = new RetryBackoffPolicy(1);
+        policy.setMaxDelaySeconds(30);
+        policy.setJitterRatio(0.5);
+        return policy;
+    }
+
+    /**
+     * 从存储器重新加载事务，不使用缓存中可能与执行中事务共享的对象
+     */
+    private Transaction reloadTransaction(TransactionXid xid) {
+
+        TransactionRepository transactionRepository = transactionConfigurator.getTransactionRepository();
+
+        if (transactionRepository instanceof CachableTransactionRepository) {
+            return ((CachableTransactionRepository) transactionRepository).reloadByXid(xid);
+        }
+
+        return transactionRepository.findByXid(xid);
+    }
+
+    private boolean isOwned(TransactionXid xid) {
+        return recoveryPartitioner == null || recoveryPartitioner.owns(xid);
+    }
+
+    /**
+     * 取消不再持有分区的事务调度，分区变化或租约过期后调用
+     */
+    private void cancelUnownedRetries() {
+
+        if (retryScheduler == null) {
+            return;
+        }
+
+        for (TransactionXid xid : retryScheduler.getPendingXids()) {
+            if (!isOwned(xid)) {
+                retryScheduler.cancel(xid);
+            }
+        }
+    }
+
+    private boolean isScheduledRecoverable(TransactionSummary summary) {
+
+        // 加载期间租约可能已过期
+        if (!isOwned(summary.getXid())) {
+            return false;
+        }
+
+        if (summary.getNextRetryTimeMillis() > System.currentTimeMillis() + 1000) {
+            retryScheduler.schedule(summary.getXid(), summary.getNextRetryTimeMillis());
+            return false;
+        }
+
+        if (isRetryExhausted(summary)) {
+            moveToDeadLetter(summary);
+            return false;
+        }
+
+        return isRecoverable(summary);
+    }
+
+    private Semaphore getScheduledPermits() {
+
+        if (scheduledPermits == null) {
+            synchronized (this) {
+                if (scheduledPermits == null) {
+                    scheduledPermits = new Semaphore(getPoolSize());
+                }
+            }
+        }
+        return scheduledPermits;
+    }
+
+    /**
+     * 是否超过最大重试次数
+     *
+     * @param summary 事务摘要
+     * @return 是否超过
+     */
+    private boolean isRetryExhausted(TransactionSummary summary) {
+        return summary.getRetriedCount() > transactionConfigurator.getRecoverConfig().getMaxRetryCount();
+    }
+
+    /**
+     * 超过最大重试次数的事务移入死信区，此时需要人工介入解决
+     * 存储器不支持死信区时只打印异常，事务留在原处
+     *
+     * @param summary 事务摘要
+     * @return 是否已移入
+     */
+    private boolean moveToDeadLetter(TransactionSummary summary) {
+
+        TransactionRepository transactionRepository = transactionConfigurator.getTransactionRepository();
+
+        if (!(transactionRepository instanceof DeadLetterRepository)) {
+            logger.error(String.format("recover failed with max retry count,will not try again. txid:%s, status:%s,retried count:%d", summary.getXid(), summary.getStatus().getId(), summary.getRetriedCount()));
+            return false;
+        }
+
+        try {
+            if (((DeadLetterRepository) transactionRepository).moveToDeadLetter(summary) > 0) {
+                logger.error(String.format("recover failed with max retry count, moved to dead letter. txid:%s, status:%s,retried count:%d", summary.getXid(), summary.getStatus().getId(), summary.getRetriedCount()));
+                return true;
+            }
+        } catch (Exception e) {
+            logger.warn(String.format("move to dead letter failed, txid:%s", summary.getXid()), e);
+        }
+
+        return false;
+    }
+
+    /**
+     * 恢复单个事务
+     *
+     * @param summary     事务摘要
+     * @param transaction 已加载的事务，为空时按摘要加载
+     * @return 是否恢复成功，事务已被删除时返回 null
+     */
+    private Boolean recoverErrorTransaction(TransactionSummary summary, Transaction transaction) {
+
+        // 加载完整事务，已被删除时跳过
+        if (transaction == null) {
+            transaction = transactionConfigurator.getTransactionRepository().findByXid(summary.getXid());
+        }
+
+        if (transaction == null) {
+            return null;
+        }
+
+        boolean confirm = transaction.getStatus().equals(TransactionStatus.CONFIRMING);
+        boolean cancel = !confirm && (transaction.getStatus().equals(TransactionStatus.CANCELLING)
+                || transaction.getTransactionType().equals(TransactionType.ROOT));
+
+        // 参与者限流或熔断中，推迟恢复
+        List<ParticipantThrottle> acquiredThrottles = Collections.emptyList();
 
-        return transactionRepository.findAllUnmodifiedSince(new Date(currentTimeInMillis - recoverConfig.getRecoverDuration() * 1000));
+        if (confirm || cancel) {
+            acquiredThrottles = acquireParticipantPermits(transaction, confirm);
+
+            if (acquiredThrottles == null) {
+                return null;
+            }
+        }
+
+        boolean terminating = false;
+
+        // Confirm、Cancel
+        try {
+            // 增加重试次数
+            // 当单个事务超过最大重试次数时，不再重试，只打印异常，此时需要人工介入解决。可以接入 ELK 收集日志监控报警。
+            transaction.addRetriedCount();
+
+            // 安排下次重试时间，本次失败时按退避间隔重试
+            transaction.setNextRetryTimeMillis(System.currentTimeMillis() + getBackoffPolicy().nextRetryDelayMillis(transaction.getRetriedCount()));
+
+            // Confirm
+            if (confirm) {
+
+                transaction.changeStatus(TransactionStatus.CONFIRMING);
+                transactionConfigurator.getTransactionRepository().update(transaction);
+                terminating = true;
+                terminate(transaction, true, acquiredThrottles);
+                transactionConfigurator.getTransactionRepository().delete(transaction);
+
+                // Cancel
+            } else if (cancel) {
+
+                transaction.changeStatus(TransactionStatus.CANCELLING);
+                transactionConfigurator.getTransactionRepository().update(transaction);
+                terminating = true;
+                terminate(transaction, false, acquiredThrottles);
+                transactionConfigurator.getTransactionRepository().delete(transaction);
+            }
+
+            return true;
+
+        } catch (Throwable throwable) {
+
+            // 未调用参与者，归还许可
+            if (!terminating) {
+                releaseParticipantPermits(acquiredThrottles);
+            }
+
+            // 按已安排的重试时间调度
+            if (retryScheduler != null) {
+                retryScheduler.schedule((TransactionXid) transaction.getXid(), transaction.getNextRetryTimeMillis());
+            }
+
+            if (throwable instanceof OptimisticLockException
+                    || ExceptionUtils.getRootCause(throwable) instanceof OptimisticLockException) {
+                logger.warn(String.format("optimisticLockException happened while recover. txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)), throwable);
+            } else {
+                logger.error(String.format("recover failed, txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)), throwable);
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * 获取各参与者的调用许可，任一参与者被限流或熔断时推迟恢复
+     * 先检查是否有目标熔断中，再依次获取许可，未全部获取时归还已获取的许可。
+     * 同一事务对同一目标只获取一次许可，半开状态下同一事务的多个参与者共用一次探测。
+     *
+     * @param transaction 事务
+     * @param confirm     确认或取消
+     * @return 已获取许可的限流，未全部获取时返回 null
+     */
+    private List<ParticipantThrottle> acquireParticipantPermits(Transaction transaction, boolean confirm) {
+
+        if (recoveryThrottle == null) {
+            return Collections.emptyList();
+        }
+
+        Set<ParticipantThrottle> throttles = new LinkedHashSet<ParticipantThrottle>();
+
+        for (Participant participant : transaction.getParticipants()) {
+
+            InvocationContext invocationContext = getInvocationContext(participant, confirm);
+
+            if (invocationContext != null) {
+                throttles.add(recoveryThrottle.getThrottle(invocationContext));
+            }
+        }
+
+        // 熔断中的目标不消耗其它目标的许可
+        for (ParticipantThrottle throttle : throttles) {
+            if (throttle.getRemainingOpenMillis() > 0) {
+                delayThrottled(transaction, throttle);
+                return null;
+            }
+        }
+
+        List<ParticipantThrottle> acquiredThrottles = new ArrayList<ParticipantThrottle>();
+
+        for (ParticipantThrottle throttle : throttles) {
+
+            boolean acquired;
+
+            try {
+                acquired = throttle.acquire(recoveryThrottle.getMaxWaitMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+
+            if (!acquired) {
+                releaseParticipantPermits(acquiredThrottles);
+                delayThrottled(transaction, throttle);
+                return null;
+            }
+
+            acquiredThrottles.add(throttle);
+        }
+
+        return acquiredThrottles;
+    }
+
+    private void releaseParticipantPermits(List<ParticipantThrottle> acquiredThrottles) {
+        for (ParticipantThrottle throttle : acquiredThrottles) {
+            throttle.release();
+        }
+    }
+
+    private void delayThrottled(Transaction transaction, ParticipantThrottle throttle) {
+
+        if (retryScheduler != null) {
+            retryScheduler.schedule((TransactionXid) transaction.getXid(),
+                    System.currentTimeMillis() + Math.max(1000, throttle.getRemainingOpenMillis()));
+        }
+
+        logger.debug(String.format("recover throttled by %s, txid:%s", throttle.getKey(), transaction.getXid()));
+    }
+
+    /**
+     * 确认或取消各参与者，设置限流时每个目标记录一次调用结果
+     * 许可按目标获取，同一目标的多个参与者全部成功才记为成功，耗时取其中最长的一次；
+     * 之前的参与者失败、未调用到的目标归还许可。
+     *
+     * @param transaction       事务
+     * @param confirm           确认或取消
+     * @param acquiredThrottles 已获取许可的限流
+     */
+    private void terminate(Transaction transaction, boolean confirm, List<ParticipantThrottle> acquiredThrottles) {
+
+        if (recoveryThrottle == null) {
+            if (confirm) {
+                transaction.commit();
+            } else {
+                transaction.rollback();
+            }
+            return;
+        }
+
+        // 已调用的目标 -> 最长耗时
+        Map<ParticipantThrottle, Long> latencies = new HashMap<ParticipantThrottle, Long>();
+        ParticipantThrottle failedThrottle = null;
+
+        try {
+            for (Participant participant : transaction.getParticipants()) {
+
+                InvocationContext invocationContext = getInvocationContext(participant, confirm);
+                ParticipantThrottle throttle = invocationContext == null ? null : recoveryThrottle.getThrottle(invocationContext);
+
+                long startTime = System.currentTimeMillis();
+                boolean success = false;
+
+                try {
+                    if (confirm) {
+                        participant.commit();
+                    } else {
+                        participant.rollback();
+                    }
+                    success = true;
+                } finally {
+                    if (throttle != null) {
+                        long latency = System.currentTimeMillis() - startTime;
+                        Long maxLatency = latencies.get(throttle);
+                        latencies.put(throttle, maxLatency == null ? latency : Math.max(maxLatency, latency));
+
+                        if (!success) {
+                            failedThrottle = throttle;
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (ParticipantThrottle throttle : acquiredThrottles) {
+
+                Long latency = latencies.get(throttle);
+
+                if (latency == null) {
+                    throttle.release();
+                } else {
+                    throttle.record(throttle != failedThrottle, latency);
+                }
+            }
+        }
+    }
+
+    private InvocationContext getInvocationContext(Participant participant, boolean confirm) {
+        return confirm ? participant.getConfirmInvocationContext() : participant.getCancelInvocationContext();
+    }
+
+    /**
+     * 提交恢复任务
+     * 超时未结束的线程达到上限，或线程池已满时不提交
+     *
+     * @param task 任务
+     * @return 是否已提交
+     */
+    private boolean submit(Runnable task) {
+
+        int abandoned = abandonedWorkers.get();
+
+        if (abandoned >= getMaxAbandonedWorkers()) {
+            logger.warn(String.format("too many timed out recover workers still running:%d, delay recover", abandoned));
+            return false;
+        }
+
+        try {
+            getRecoveryExecutor().execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            logger.warn("recover executor is full, delay recover");
+            return false;
+        }
+    }
+
+    private int getPoolSize() {
+        return Math.max(1, transactionConfigurator.getRecoverConfig().getRecoverThreadPoolSize());
+    }
+
+    /**
+     * 超时未结束线程数量上限，与恢复线程数相同
+     */
+    private int getMaxAbandonedWorkers() {
+        return getPoolSize();
+    }
+
+    /**
+     * @return 超时后仍未结束的恢复线程数量
+     */
+    public int getAbandonedWorkerCount() {
+        return abandonedWorkers.get();
+    }
+
+    private ExecutorService getRecoveryExecutor() {
+
+        if (recoveryExecutor == null) {
+            synchronized (this) {
+                if (recoveryExecutor == null) {
+                    // 定时扫描、调度重试各自的名额，加上超时未结束线程的上限
+                    int maxThreads = getPoolSize() * 2 + getMaxAbandonedWorkers();
+                    recoveryExecutor = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(), new RecoveryThreadFactory("tcc-recovery-worker-"));
+                    timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new RecoveryThreadFactory("tcc-recovery-timeout-"));
+                }
+            }
+        }
+        return recoveryExecutor;
+    }
+
+    private RetryBackoffPolicy getBackoffPolicy() {
+
+        if (backoffPolicy == null) {
+            backoffPolicy = new RetryBackoffPolicy(transactionConfigurator.getRecoverConfig().getRecoverDuration());
+        }
+        return backoffPolicy;
+    }
+
+    /**
+     * 当前或最近一轮恢复的进度
+     *
+     * @return 进度，尚未执行恢复时返回 null
+     */
+    public RecoveryProgress getCurrentProgress() {
+        return currentProgress;
+    }
+
+    /**
+     * 关闭恢复线程池
+     */
+    public void shutdown() {
+
+        if (retryScheduler != null) {
+            retryScheduler.stop();
+        }
+
+        if (recoveryPartitioner != null) {
+            try {
+                recoveryPartitioner.leave();
+            } catch (Exception e) {
+                logger.warn("release recovery partitions failed", e);
+            }
+        }
+
+        if (recoveryExecutor != null) {
+            recoveryExecutor.shutdownNow();
+            timeoutScheduler.shutdownNow();
+        }
     }
 
-    private void recoverErrorTransactions(List<Transaction> transactions) {
+    /**
+     * 单个事务的恢复任务
+     * 执行结束或超时只计一次，并释放一个名额；超时时中断执行线程，线程退出前计入超时未结束线程。
+     * 执行线程在锁内登记、清除，只在本任务仍占用线程时中断，线程结束本任务前清除中断标记，不影响之后执行的任务。
+     */
+    private class RecoveryTask implements Runnable {
+
+        private final TransactionSummary summary;
+
+        private final Transaction transaction;
+
+        private final RecoveryProgress progress;
+
+        private final Semaphore permits;
+
+        private final int timeout;
 
+        private final AtomicBoolean completed = new AtomicBoolean(false);
 
-        for (Transaction transaction : transactions) {
+        /**
+         * 执行本任务的线程，任务结束后为空，由 this 保护
+         */
+        private Thread worker;
 
-            // 超过最大重试次数
-            if (transaction.getRetriedCount() > transactionConfigurator.getRecoverConfig().getMaxRetryCount()) {
+        RecoveryTask(TransactionSummary summary, Transaction transaction, RecoveryProgress progress, Semaphore permits, int timeout) {
+            this.summary = summary;
+            this.transaction = transaction;
+            this.progress = progress;
+            this.permits = permits;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void run() {
 
-                logger.error(String.format("recover failed with max retry count,will not try again. txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)));
-                continue;
+            synchronized (this) {
+                worker = Thread.currentThread();
             }
 
-            // 分支事务超过最大可重试时间
-            if (transaction.getTransactionType().equals(TransactionType.BRANCH)
-                    && (transaction.getCreateTime().getTime() +
-                    transactionConfigurator.getRecoverConfig().getMaxRetryCount() *
-                            transactionConfigurator.getRecoverConfig().getRecoverDuration() * 1000
-                    > System.currentTimeMillis())) {
-                continue;
+            ScheduledFuture<?> timeoutFuture = null;
+
+            if (timeout > 0) {
+                timeoutFuture = timeoutScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (completed.compareAndSet(false, true)) {
+                            logger.warn(String.format("recover timed out after %d seconds, txid:%s", timeout, summary.getXid()));
+                            abandonedWorkers.incrementAndGet();
+                            progress.timeout();
+                            permits.release();
+                            interruptWorker();
+                        }
+                    }
+                }, timeout, TimeUnit.SECONDS);
             }
 
-            // Confirm、Cancel
+            Boolean result = null;
+
             try {
-                // 增加重试次数
-                // 当单个事务超过最大重试次数时，不再重试，只打印异常，此时需要人工介入解决。可以接入 ELK 收集日志监控报警。
-                transaction.addRetriedCount();
-
-                // Confirm
-                if (transaction.getStatus().equals(TransactionStatus.CONFIRMING)) {
-
-                    transaction.changeStatus(TransactionStatus.CONFIRMING);
-                    transactionConfigurator.getTransactionRepository().update(transaction);
-                    transaction.commit();
-                    transactionConfigurator.getTransactionRepository().delete(transaction);
-
-                    // Cancel
-                } else if (transaction.getStatus().equals(TransactionStatus.CANCELLING)
-                        || transaction.getTransactionType().equals(TransactionType.ROOT)) {
-
-                    transaction.changeStatus(TransactionStatus.CANCELLING);
-                    transactionConfigurator.getTransactionRepository().update(transaction);
-                    transaction.rollback();
-                    transactionConfigurator.getTransactionRepository().delete(transaction);
+                result = recoverErrorTransaction(summary, transaction);
+            } catch (Throwable e) {
+                logger.error(String.format("recover failed, txid:%s", summary.getXid()), e);
+                result = false;
+            } finally {
+                if (timeoutFuture != null) {
+                    timeoutFuture.cancel(false);
                 }
 
-            } catch (Throwable throwable) {
+                synchronized (this) {
+                    worker = null;
+                }
+                // 清除超时时设置的中断标记
+                Thread.interrupted();
 
-                if (throwable instanceof OptimisticLockException
-                        || ExceptionUtils.getRootCause(throwable) instanceof OptimisticLockException) {
-                    logger.warn(String.format("optimisticLockException happened while recover. txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)), throwable);
+                if (completed.compareAndSet(false, true)) {
+                    if (result == null) {
+                        progress.skip();
+                    } else if (result) {
+                        progress.succeed();
+                    } else {
+                        progress.fail();
+                    }
+                    permits.release();
                 } else {
-                    logger.error(String.format("recover failed, txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)), throwable);
+                    // 已超时，线程退出
+                    abandonedWorkers.decrementAndGet();
                 }
             }
         }
+
+        private synchronized void interruptWorker() {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private static class RecoveryThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private final String namePrefix;
+
+        RecoveryThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public void setRecoveryPartitioner(RecoveryPartitioner recoveryPartitioner) {
+        this.recoveryPartitioner = recoveryPartitioner;
+    }
+
+    public RecoveryPartitioner getRecoveryPartitioner() {
+        return recoveryPartitioner;
+    }
+
+    public void setRecoveryThrottle(RecoveryThrottle recoveryThrottle) {
+        this.recoveryThrottle = recoveryThrottle;
+    }
+
+    public RecoveryThrottle getRecoveryThrottle() {
+        return recoveryThrottle;
+    }
+
+    public void setRetryScheduler(RetryScheduler retryScheduler) {
+        this.retryScheduler = retryScheduler;
+    }
+
+    public RetryScheduler getRetryScheduler() {
+        return retryScheduler;
+    }
+
+    public void setBackoffPolicy(RetryBackoffPolicy backoffPolicy) {
+        this.backoffPolicy = backoffPolicy;
     }
 
     public void setTransactionConfigurator(TransactionConfigurator transactionConfigurator) {
@@ -4,11 +4,14 @@ package org.mengyun.tcctransaction.repository;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import org.mengyun.tcctransaction.OptimisticLockException;
+import org.mengyun.tcctransaction.Participant;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.TransactionSummary;
 import org.mengyun.tcctransaction.api.TransactionXid;
 
 import javax.transaction.xa.Xid;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -26,6 +29,11 @@ public abstract class CachableTransactionRepository implements TransactionReposi
      */
     private int expireDuration = 120;
 
+    /**
+     * 恢复间隔，单位：秒，用于计算未安排重试时间的事务何时到期
+     */
+    private int recoverDuration = 120;
+
     /**
      * 缓存
      */
@@ -61,6 +69,14 @@ public abstract class CachableTransactionRepository implements TransactionReposi
         return result;
     }
 
+    /**
+     * 默认整体更新事务，支持单独存储参与者的存储器可覆盖
+     */
+    @Override
+    public int appendParticipant(Transaction transaction, Participant participant) {
+        return update(transaction);
+    }
+
     @Override
     public int delete(Transaction transaction) {
         int result = 0;
@@ -89,6 +105,26 @@ public abstract class CachableTransactionRepository implements TransactionReposi
         return transaction;
     }
 
+    /**
+     * 从存储器重新加载事务并替换缓存
+     * 不返回缓存中的对象，缓存中的对象可能正被执行中的事务使用
+     *
+     * @param transactionXid 事务编号
+     * @return 事务，不存在时返回 null
+     */
+    public Transaction reloadByXid(TransactionXid transactionXid) {
+
+        removeFromCache(transactionXid);
+
+        Transaction transaction = doFindOne(transactionXid);
+
+        if (transaction != null) {
+            putToCache(transaction);
+        }
+
+        return transaction;
+    }
+
     @Override
     public List<Transaction> findAllUnmodifiedSince(Date date) {
 
@@ -101,6 +137,31 @@ public abstract class CachableTransactionRepository implements TransactionReposi
         return transactions;
     }
 
+    @Override
+    public List<TransactionSummary> findAllSummariesUnmodifiedSince(Date date) {
+
+        List<TransactionSummary> summaries = doFindAllSummariesUnmodifiedSince(date);
+
+        // 移除缓存，之后按编号获取时从存储器读取最新事务
+        for (TransactionSummary summary : summaries) {
+            transactionXidCompensableTransactionCache.invalidate(summary.getXid());
+        }
+
+        return summaries;
+    }
+
+    @Override
+    public List<TransactionSummary> findAllSummariesDueBefore(Date date) {
+
+        List<TransactionSummary> summaries = doFindAllSummariesDueBefore(date);
+
+        for (TransactionSummary summary : summaries) {
+            transactionXidCompensableTransactionCache.invalidate(summary.getXid());
+        }
+
+        return summaries;
+    }
+
     public CachableTransactionRepository() {
         transactionXidCompensableTransactionCache = CacheBuilder.newBuilder().expireAfterAccess(expireDuration, TimeUnit.SECONDS).maximumSize(1000).build();
     }
@@ -123,6 +184,15 @@ public abstract class CachableTransactionRepository implements TransactionReposi
         transactionXidCompensableTransactionCache.invalidate(transaction.getXid());
     }
 
+    /**
+     * 移除事务从缓存
+     *
+     * @param xid 事务编号
+     */
+    protected void removeFromCache(Xid xid) {
+        transactionXidCompensableTransactionCache.invalidate(xid);
+    }
+
     /**
      * 获得事务从缓存中
      *
@@ -137,6 +207,28 @@ public abstract class CachableTransactionRepository implements TransactionReposi
         this.expireDuration = durationInSeconds;
     }
 
+    public void setRecoverDuration(int recoverDuration) {
+        this.recoverDuration = recoverDuration;
+    }
+
+    public int getRecoverDuration() {
+        return recoverDuration;
+    }
+
+    /**
+     * 计算事务的重试时间
+     *
+     * @param transaction 事务
+     * @return 已安排的重试时间，未安排时为 最后更新时间 + 恢复间隔
+     */
+    protected long getDueTimeMillis(Transaction transaction) {
+        return getDueTimeMillis(transaction.getNextRetryTimeMillis(), transaction.getLastUpdateTime());
+    }
+
+    protected long getDueTimeMillis(long nextRetryTime, Date lastUpdateTime) {
+        return nextRetryTime > 0 ? nextRetryTime : lastUpdateTime.getTime() + recoverDuration * 1000L;
+    }
+
     protected abstract int doCreate(Transaction transaction);
 
     protected abstract int doUpdate(Transaction transaction);
@@ -146,4 +238,42 @@ public abstract class CachableTransactionRepository implements TransactionReposi
     protected abstract Transaction doFindOne(Xid xid);
 
     protected abstract List<Transaction> doFindAllUnmodifiedSince(Date date);
+
+    /**
+     * 获取事务摘要集合
+     * 默认加载完整事务后转换，存储器可覆盖为只读取头部信息
+     *
+     * @param date 指定时间
+     * @return 事务摘要集合
+     */
+    protected List<TransactionSummary> doFindAllSummariesUnmodifiedSince(Date date) {
+
+        List<TransactionSummary> summaries = new ArrayList<TransactionSummary>();
+
+        for (Transaction transaction : doFindAllUnmodifiedSince(date)) {
+            summaries.add(new TransactionSummary(transaction));
+        }
+
+        return summaries;
+    }
+
+    /**
+     * 获取到达重试时间的事务摘要集合
+     * 默认读取全部摘要后过滤，存储器可覆盖为按重试时间查询
+     *
+     * @param date 指定时间
+     * @return 事务摘要集合
+     */
+    protected List<TransactionSummary> doFindAllSummariesDueBefore(Date date) {
+
+        List<TransactionSummary> summaries = new ArrayList<TransactionSummary>();
+
+        for (TransactionSummary summary : doFindAllSummariesUnmodifiedSince(new Date(Long.MAX_VALUE))) {
+            if (getDueTimeMillis(summary.getNextRetryTimeMillis(), summary.getLastUpdateTime()) <= date.getTime()) {
+                summaries.add(summary);
+            }
+        }
+
+        return summaries;
+    }
 }
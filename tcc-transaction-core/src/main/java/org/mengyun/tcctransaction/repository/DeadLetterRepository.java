@@ -0,0 +1,28 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.TransactionSummary;
+import org.mengyun.tcctransaction.api.TransactionXid;
+
+/**
+ * 死信事务存储
+ * 超过最大重试次数的事务整体移入死信区，恢复任务不再扫描；人工处理后可重新放回恢复队列。
+ * 移入、放回均为原子操作，事务不会同时出现在两处，也不会丢失。
+ */
+public interface DeadLetterRepository {
+
+    /**
+     * 移入死信区
+     *
+     * @param summary 事务摘要，版本与存储不一致时不移动
+     * @return 移动数量
+     */
+    int moveToDeadLetter(TransactionSummary summary);
+
+    /**
+     * 从死信区放回，重置重试次数并立即到达重试时间
+     *
+     * @param xid 事务编号
+     * @return 放回数量
+     */
+    int requeue(TransactionXid xid);
+}
@@ -1,15 +1,17 @@
 package org.mengyun.tcctransaction.repository;
 
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionSummary;
 import org.mengyun.tcctransaction.common.TransactionType;
 import org.mengyun.tcctransaction.repository.helper.TransactionSerializer;
 import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
-import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 
 import javax.transaction.xa.Xid;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -30,10 +32,19 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
 
     private ObjectSerializer serializer = new KryoPoolSerializer();
 
+    /**
+     * 是否写入带头部的存储格式，默认 false 写入旧版本 Map 格式，所有节点升级后再开启
+     */
+    private boolean envelopeEnabled = false;
+
     public void setSerializer(ObjectSerializer serializer) {
         this.serializer = serializer;
     }
 
+    public void setEnvelopeEnabled(boolean envelopeEnabled) {
+        this.envelopeEnabled = envelopeEnabled;
+    }
+
     public void setRootPath(String rootPath) {
         this.rootPath = rootPath;
     }
@@ -86,7 +97,7 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
         List<Transaction> allUnmodifiedSince = new ArrayList<Transaction>();
 
         for (Transaction transaction : allTransactions) {
-            if (transaction.getLastUpdateTime().compareTo(date) < 0) {
+            if (transaction.getLastUpdateTimeMillis() < date.getTime()) {
                 allUnmodifiedSince.add(transaction);
             }
         }
@@ -95,6 +106,30 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
     }
 
 
+    @Override
+    protected List<TransactionSummary> doFindAllSummariesUnmodifiedSince(Date date) {
+
+        List<TransactionSummary> summaries = new ArrayList<TransactionSummary>();
+        File[] files = new File(rootPath).listFiles();
+
+        if (files == null) {
+            return summaries;
+        }
+
+        for (File file : files) {
+            byte[] content = readContent(file);
+
+            if (content != null) {
+                TransactionSummary summary = TransactionSerializer.deserializeSummary(serializer, content);
+                if (summary.getLastUpdateTime().compareTo(date) < 0) {
+                    summaries.add(summary);
+                }
+            }
+        }
+
+        return summaries;
+    }
+
     protected List<Transaction> doFindAll() {
 
         List<Transaction> transactions = new ArrayList<Transaction>();
@@ -110,7 +145,7 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
     }
 
     private String getFullFileName(Xid xid) {
-        return String.format("%s/%s", rootPath, xid);
+        return rootPath + "/" + xid;
     }
 
     private void makeDirIfNecessary() {
@@ -143,17 +178,17 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
         FileChannel channel = null;
         RandomAccessFile raf = null;
 
-        byte[] content = TransactionSerializer.serialize(serializer, transaction);
+        byte[] content = TransactionSerializer.serialize(serializer, transaction, envelopeEnabled);
         try {
             raf = new RandomAccessFile(file, "rw");
             channel = raf.getChannel();
-            ByteBuffer buffer = ByteBuffer.allocate(content.length);
-            buffer.put(content);
-            buffer.flip();
+            ByteBuffer buffer = ByteBuffer.wrap(content);
 
             while (buffer.hasRemaining()) {
                 channel.write(buffer);
             }
+            // 更新后的内容可能比原文件短，截断残留数据
+            channel.truncate(content.length);
 
             channel.force(true);
         } catch (Exception e) {
@@ -171,17 +206,36 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
 
     private Transaction readTransaction(File file) {
 
+        byte[] content = readContent(file);
+
+        if (content != null) {
+            return TransactionSerializer.deserialize(serializer, content);
+        }
+
+        return null;
+    }
+
+    private byte[] readContent(File file) {
+
         FileInputStream fis = null;
         try {
             fis = new FileInputStream(file);
 
             byte[] content = new byte[(int) file.length()];
 
-            fis.read(content);
-
-            if (content != null) {
-                return TransactionSerializer.deserialize(serializer, content);
+            int offset = 0;
+            while (offset < content.length) {
+                int count = fis.read(content, offset, content.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
             }
+
+            return content;
+        } catch (FileNotFoundException e) {
+            // 已被删除
+            return null;
         } catch (Exception e) {
             throw new TransactionIOException(e);
         } finally {
@@ -193,7 +247,5 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
                 }
             }
         }
-
-        return null;
     }
 }
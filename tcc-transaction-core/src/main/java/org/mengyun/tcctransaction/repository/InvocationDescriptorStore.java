@@ -0,0 +1,25 @@
+package org.mengyun.tcctransaction.repository;
+
+/**
+ * 调用描述存储
+ * 按业务域保存调用描述编号与方法签名的对应关系。签名保存后参与者只写入编号和参数，
+ * 编号在本节点未注册时（恢复早于容器启动完成、非 Spring 环境）从存储中查找签名并加载。
+ */
+public interface InvocationDescriptorStore {
+
+    /**
+     * 保存编号与方法签名，已存在且签名相同时忽略
+     *
+     * @param id        编号
+     * @param signature 方法签名
+     */
+    void save(int id, String signature);
+
+    /**
+     * 查找方法签名
+     *
+     * @param id 编号
+     * @return 方法签名，不存在时返回 null
+     */
+    String findSignature(int id);
+}
@@ -0,0 +1,140 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.SystemException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * JDBC 调用描述存储
+ * 表结构见 db.sql 中的 TCC_INVOCATION_DESCRIPTOR，每个业务域的每个确认、取消方法一行。
+ */
+public class JdbcInvocationDescriptorStore implements InvocationDescriptorStore {
+
+    /**
+     * 数据源
+     */
+    private DataSource dataSource;
+
+    /**
+     * 业务域
+     */
+    private String domain;
+
+    /**
+     * 表名
+     */
+    private String tableName = "TCC_INVOCATION_DESCRIPTOR";
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public void save(int id, String signature) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+
+            stmt = connection.prepareStatement("INSERT INTO " + tableName + " (DOMAIN,DESCRIPTOR_ID,SIGNATURE,CREATE_TIME) VALUES (?,?,?,?)");
+            stmt.setString(1, domain);
+            stmt.setInt(2, id);
+            stmt.setString(3, signature);
+            stmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            // 其它节点已写入
+            String existing = findSignature(id);
+
+            if (existing == null) {
+                throw new TransactionIOException(e);
+            }
+
+            if (!existing.equals(signature)) {
+                throw new SystemException(String.format("invocation descriptor id conflict, id:%d, signatures:%s, %s",
+                        id, existing, signature));
+            }
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    @Override
+    public String findSignature(int id) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+
+            stmt = connection.prepareStatement("SELECT SIGNATURE FROM " + tableName + " WHERE DOMAIN = ? AND DESCRIPTOR_ID = ?");
+            stmt.setString(1, domain);
+            stmt.setInt(2, id);
+
+            ResultSet resultSet = stmt.executeQuery();
+
+            return resultSet.next() ? resultSet.getString(1) : null;
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    protected Connection getConnection() {
+        try {
+            return this.dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    protected void releaseConnection(Connection con) {
+        try {
+            if (con != null && !con.isClosed()) {
+                con.close();
+            }
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    private void closeStatement(Statement stmt) {
+        try {
+            if (stmt != null && !stmt.isClosed()) {
+                stmt.close();
+            }
+        } catch (Exception ex) {
+            throw new TransactionIOException(ex);
+        }
+    }
+}
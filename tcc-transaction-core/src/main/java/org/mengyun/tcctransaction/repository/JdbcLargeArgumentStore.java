@@ -0,0 +1,187 @@
+package org.mengyun.tcctransaction.repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * JDBC 大参数存储
+ * 表结构见 db.sql 中的 TCC_LARGE_ARGUMENT，CREATE_TIME 为最后引用时间，每次引用时刷新，超过保留时间的参数由 {@link #removeExpired()} 删除。
+ */
+public class JdbcLargeArgumentStore implements LargeArgumentStore {
+
+    /**
+     * 数据源
+     */
+    private DataSource dataSource;
+
+    /**
+     * 表名
+     */
+    private String tableName = "TCC_LARGE_ARGUMENT";
+
+    /**
+     * 保留时间，单位：秒，默认 7 天
+     */
+    private int retentionSeconds = 7 * 24 * 3600;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public int getRetentionSeconds() {
+        return retentionSeconds;
+    }
+
+    public void setRetentionSeconds(int retentionSeconds) {
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    /**
+     * 已存在时刷新 CREATE_TIME，否则写入
+     */
+    @Override
+    public void put(byte[] hash, byte[] content) {
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        Connection connection = null;
+
+        try {
+            connection = getConnection();
+
+            if (refresh(connection, hash, now) > 0) {
+                return;
+            }
+
+            try {
+                insert(connection, hash, content, now);
+            } catch (SQLException e) {
+                // 相同内容已由其它事务写入，刷新其引用时间
+                if (refresh(connection, hash, now) <= 0) {
+                    throw e;
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    @Override
+    public int removeExpired() {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+
+            stmt = connection.prepareStatement("DELETE FROM " + tableName + " WHERE CREATE_TIME < ?");
+            stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis() - retentionSeconds * 1000L));
+
+            return stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    private int refresh(Connection connection, byte[] hash, Timestamp now) throws SQLException {
+
+        PreparedStatement stmt = null;
+
+        try {
+            stmt = connection.prepareStatement("UPDATE " + tableName + " SET CREATE_TIME = ? WHERE ARGUMENT_HASH = ?");
+            stmt.setTimestamp(1, now);
+            stmt.setBytes(2, hash);
+            return stmt.executeUpdate();
+        } finally {
+            closeStatement(stmt);
+        }
+    }
+
+    private void insert(Connection connection, byte[] hash, byte[] content, Timestamp now) throws SQLException {
+
+        PreparedStatement stmt = null;
+
+        try {
+            stmt = connection.prepareStatement("INSERT INTO " + tableName + " (ARGUMENT_HASH,CONTENT,CREATE_TIME) VALUES (?,?,?)");
+            stmt.setBytes(1, hash);
+            stmt.setBytes(2, content);
+            stmt.setTimestamp(3, now);
+            stmt.executeUpdate();
+        } finally {
+            closeStatement(stmt);
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] hash) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+
+            stmt = connection.prepareStatement("SELECT CONTENT FROM " + tableName + " WHERE ARGUMENT_HASH = ?");
+            stmt.setBytes(1, hash);
+
+            ResultSet resultSet = stmt.executeQuery();
+
+            return resultSet.next() ? resultSet.getBytes(1) : null;
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    protected Connection getConnection() {
+        try {
+            return this.dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    protected void releaseConnection(Connection con) {
+        try {
+            if (con != null && !con.isClosed()) {
+                con.close();
+            }
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    private void closeStatement(Statement stmt) {
+        try {
+            if (stmt != null && !stmt.isClosed()) {
+                stmt.close();
+            }
+        } catch (Exception ex) {
+            throw new TransactionIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.mengyun.tcctransaction.repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC 事务恢复租约存储
+ * 表结构见 db.sql 中的 TCC_RECOVERY_LEASE，节点心跳和分区租约各占一行，过期时间使用应用节点时钟。
+ */
+public class JdbcRecoveryLeaseStore implements RecoveryLeaseStore {
+
+    private static final String NODE_KEY_PREFIX = "NODE:";
+
+    private static final String PARTITION_KEY_PREFIX = "PARTITION:";
+
+    /**
+     * 数据源
+     */
+    private DataSource dataSource;
+
+    /**
+     * 业务域，必填；Spring 环境未设置时使用 JDBC 事务存储的业务域
+     */
+    private String domain;
+
+    /**
+     * 表名
+     */
+    private String tableName = "TCC_RECOVERY_LEASE";
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public void heartbeat(String nodeId, long leaseMillis) {
+        acquire(NODE_KEY_PREFIX + nodeId, nodeId, leaseMillis, true);
+    }
+
+    @Override
+    public void removeNode(String nodeId) {
+        release(NODE_KEY_PREFIX + nodeId, nodeId);
+    }
+
+    @Override
+    public List<String> findLiveNodes() {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+
+            stmt = connection.prepareStatement("SELECT OWNER FROM " + tableName + " WHERE DOMAIN = ? AND LEASE_KEY LIKE ? AND EXPIRE_TIME > ?");
+            stmt.setString(1, domain);
+            stmt.setString(2, NODE_KEY_PREFIX + "%");
+            stmt.setLong(3, System.currentTimeMillis());
+
+            ResultSet resultSet = stmt.executeQuery();
+
+            List<String> nodes = new ArrayList<String>();
+
+            while (resultSet.next()) {
+                nodes.add(resultSet.getString(1));
+            }
+
+            return nodes;
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(int partition, String nodeId, long leaseMillis) {
+        return acquire(PARTITION_KEY_PREFIX + partition, nodeId, leaseMillis, false);
+    }
+
+    @Override
+    public void release(int partition, String nodeId) {
+        release(PARTITION_KEY_PREFIX + partition, nodeId);
+    }
+
+    /**
+     * 租约属于该节点或已过期时更新，不存在时插入；插入冲突说明已被其它节点获取
+     */
+    private boolean acquire(String leaseKey, String owner, long leaseMillis, boolean force) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        long now = System.currentTimeMillis();
+
+        try {
+            connection = getConnection();
+
+            if (force) {
+                stmt = connection.prepareStatement("UPDATE " + tableName + " SET OWNER = ?, EXPIRE_TIME = ? WHERE DOMAIN = ? AND LEASE_KEY = ?");
+            } else {
+                stmt = connection.prepareStatement("UPDATE " + tableName + " SET OWNER = ?, EXPIRE_TIME = ? WHERE DOMAIN = ? AND LEASE_KEY = ? AND (OWNER = ? OR EXPIRE_TIME <= ?)");
+                stmt.setString(5, owner);
+                stmt.setLong(6, now);
+            }
+            stmt.setString(1, owner);
+            stmt.setLong(2, now + leaseMillis);
+            stmt.setString(3, domain);
+            stmt.setString(4, leaseKey);
+
+            if (stmt.executeUpdate() > 0) {
+                return true;
+            }
+
+            closeStatement(stmt);
+
+            stmt = connection.prepareStatement("INSERT INTO " + tableName + " (DOMAIN,LEASE_KEY,OWNER,EXPIRE_TIME) VALUES (?,?,?,?)");
+            stmt.setString(1, domain);
+            stmt.setString(2, leaseKey);
+            stmt.setString(3, owner);
+            stmt.setLong(4, now + leaseMillis);
+
+            try {
+                return stmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                // 主键冲突，租约已被其它节点获取
+                return false;
+            }
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    private void release(String leaseKey, String owner) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+
+            stmt = connection.prepareStatement("DELETE FROM " + tableName + " WHERE DOMAIN = ? AND LEASE_KEY = ? AND OWNER = ?");
+            stmt.setString(1, domain);
+            stmt.setString(2, leaseKey);
+            stmt.setString(3, owner);
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    protected Connection getConnection() {
+        try {
+            return this.dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    protected void releaseConnection(Connection con) {
+        try {
+            if (con != null && !con.isClosed()) {
+                con.close();
+            }
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    private void closeStatement(Statement stmt) {
+        try {
+            if (stmt != null && !stmt.isClosed()) {
+                stmt.close();
+            }
+        } catch (Exception ex) {
+            throw new TransactionIOException(ex);
+        }
+    }
+}
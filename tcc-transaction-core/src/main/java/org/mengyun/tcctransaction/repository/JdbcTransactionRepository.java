@@ -1,11 +1,15 @@
 package org.mengyun.tcctransaction.repository;
 
 
+import org.mengyun.tcctransaction.OptimisticLockException;
+import org.mengyun.tcctransaction.Participant;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionSummary;
 import org.mengyun.tcctransaction.api.TransactionStatus;
-import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
-import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
 import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 import org.mengyun.tcctransaction.utils.CollectionUtils;
 import org.mengyun.tcctransaction.utils.StringUtils;
 
@@ -14,18 +18,30 @@ import javax.transaction.xa.Xid;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by changmingxie on 10/30/15.
  */
-public class JdbcTransactionRepository extends CachableTransactionRepository {
+public class JdbcTransactionRepository extends CachableTransactionRepository implements DeadLetterRepository {
 
     /**
      * 领域 称为模块名，应用名，用于唯一标识一个资源
      */
     private String domain;
 
+    /**
+     * 事务表、死信表共有的列
+     */
+    private static final String TRANSACTION_COLUMNS = "DOMAIN,GLOBAL_TX_ID,BRANCH_QUALIFIER,CONTENT,STATUS,TRANSACTION_TYPE,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION,NEXT_RETRY_TIME";
+
+    /**
+     * 查询事务时的列，与 {@link #constructTransactions(ResultSet, List)} 中的下标对应
+     */
+    private static final String SELECT_TRANSACTION_COLUMNS = "GLOBAL_TX_ID, BRANCH_QUALIFIER, CONTENT,STATUS,TRANSACTION_TYPE,CREATE_TIME,LAST_UPDATE_TIME,RETRIED_COUNT,VERSION,NEXT_RETRY_TIME,RETRY_SCHEDULED";
+
     /**
      * 表后缀
      */
@@ -41,6 +57,17 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
      */
     private ObjectSerializer serializer = new KryoPoolSerializer();
 
+    /**
+     * 参与者单独存储
+     * 开启后每个参与者以 事务编号 + 序号 单独存储一行，添加参与者时只追加该行，不再重写整个事务内容
+     */
+    private boolean participantTableEnabled = false;
+
+    /**
+     * 批量查询参与者时，每次查询的事务数量
+     */
+    private int participantQueryBatchSize = 100;
+
     public String getDomain() {
         return domain;
     }
@@ -69,41 +96,220 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         return dataSource;
     }
 
+    public boolean isParticipantTableEnabled() {
+        return participantTableEnabled;
+    }
+
+    public void setParticipantTableEnabled(boolean participantTableEnabled) {
+        this.participantTableEnabled = participantTableEnabled;
+    }
+
+    public void setParticipantQueryBatchSize(int participantQueryBatchSize) {
+        this.participantQueryBatchSize = participantQueryBatchSize;
+    }
+
+    /**
+     * 在同一个数据库事务中追加参与者，并更新事务的版本号、最后更新时间
+     */
+    @Override
+    public int appendParticipant(Transaction transaction, Participant participant) {
+
+        if (!participantTableEnabled) {
+            return super.appendParticipant(transaction, participant);
+        }
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        boolean localTransaction = false;
+        int result = 0;
+
+        long lastUpdateTime = transaction.getLastUpdateTimeMillis();
+        long currentVersion = transaction.getVersion();
+
+        transaction.updateTime();
+        transaction.updateVersion();
+
+        try {
+            connection = this.getConnection();
+
+            localTransaction = beginLocalTransaction(connection);
+
+            StringBuilder builder = new StringBuilder();
+            builder.append("UPDATE " + getTableName() + " SET " +
+                    "LAST_UPDATE_TIME = ?,VERSION = VERSION+1,NEXT_RETRY_TIME = ?,RETRY_SCHEDULED = ? WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
+
+            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+
+            stmt = connection.prepareStatement(builder.toString());
+
+            stmt.setTimestamp(1, new Timestamp(transaction.getLastUpdateTimeMillis()));
+            stmt.setLong(2, getDueTimeMillis(transaction));
+            stmt.setBoolean(3, isRetryScheduled(transaction));
+            stmt.setBytes(4, transaction.getXid().getGlobalTransactionId());
+            stmt.setBytes(5, transaction.getXid().getBranchQualifier());
+            stmt.setLong(6, currentVersion);
+
+            if (StringUtils.isNotEmpty(domain)) {
+                stmt.setString(7, domain);
+            }
+
+            result = stmt.executeUpdate();
+
+            if (result > 0) {
+                insertParticipant(connection, transaction, participant, transaction.getParticipantCount() - 1);
+            }
+
+            if (localTransaction) {
+                if (result > 0) {
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+            }
+
+        } catch (SQLException e) {
+            result = 0;
+            if (localTransaction) {
+                rollbackQuietly(connection);
+            }
+            throw new TransactionIOException(e);
+        } finally {
+            if (result <= 0) {
+                transaction.setLastUpdateTimeMillis(lastUpdateTime);
+                transaction.setVersion(currentVersion);
+                // 更新失败，移除缓存。下次访问，从存储器读取
+                removeFromCache(transaction);
+            }
+            closeStatement(stmt);
+            if (localTransaction) {
+                restoreAutoCommit(connection);
+            }
+            this.releaseConnection(connection);
+        }
+
+        if (result <= 0) {
+            throw new OptimisticLockException();
+        }
+
+        putToCache(transaction);
+        return result;
+    }
+
+    /**
+     * 迁移开启参与者单独存储前写入的事务
+     * 开启参与者单独存储后执行一次，将事务内容中的参与者写入参与者表，并改写事务内容为不含参与者
+     * 未迁移的事务在读取时也会迁移
+     *
+     * @return 迁移的事务数量
+     */
+    public int migrateParticipants() {
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = this.getConnection();
+
+            StringBuilder builder = new StringBuilder();
+
+            builder.append("SELECT " + SELECT_TRANSACTION_COLUMNS);
+            builder.append("  FROM " + getTableName() + " T WHERE NOT EXISTS (SELECT 1 FROM " + getParticipantTableName() +
+                    " P WHERE P.GLOBAL_TX_ID = T.GLOBAL_TX_ID AND P.BRANCH_QUALIFIER = T.BRANCH_QUALIFIER)");
+            builder.append(StringUtils.isNotEmpty(domain) ? " AND T.DOMAIN = ?" : "");
+
+            stmt = connection.prepareStatement(builder.toString());
+
+            if (StringUtils.isNotEmpty(domain)) {
+                stmt.setString(1, domain);
+            }
+
+            ResultSet resultSet = stmt.executeQuery();
+
+            this.constructTransactions(resultSet, transactions);
+
+            int count = 0;
+
+            for (Transaction transaction : transactions) {
+                if (transaction.getParticipantCount() > 0) {
+                    migrateParticipants(connection, transaction);
+                    count++;
+                }
+            }
+
+            return count;
+
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            this.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * 事务与参与者在同一个数据库事务中写入
+     */
     protected int doCreate(Transaction transaction) {
 
         Connection connection = null;
         PreparedStatement stmt = null;
+        boolean localTransaction = false;
 
         try {
             connection = this.getConnection();
 
+            localTransaction = participantTableEnabled && beginLocalTransaction(connection);
+
             StringBuilder builder = new StringBuilder();
             builder.append("INSERT INTO " + getTableName() +
-                    "(GLOBAL_TX_ID,BRANCH_QUALIFIER,TRANSACTION_TYPE,CONTENT,STATUS,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION");
-            builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN ) VALUES (?,?,?,?,?,?,?,?,?,?)" : ") VALUES (?,?,?,?,?,?,?,?,?)");
+                    "(GLOBAL_TX_ID,BRANCH_QUALIFIER,TRANSACTION_TYPE,CONTENT,STATUS,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION,NEXT_RETRY_TIME,RETRY_SCHEDULED");
+            builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN ) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)" : ") VALUES (?,?,?,?,?,?,?,?,?,?,?)");
 
             stmt = connection.prepareStatement(builder.toString());
 
             stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
             stmt.setBytes(2, transaction.getXid().getBranchQualifier());
             stmt.setInt(3, transaction.getTransactionType().getId());
-            stmt.setBytes(4, serializer.serialize(transaction));
+            stmt.setBytes(4, serializeContent(transaction));
             stmt.setInt(5, transaction.getStatus().getId());
             stmt.setInt(6, transaction.getRetriedCount());
-            stmt.setTimestamp(7, new java.sql.Timestamp(transaction.getCreateTime().getTime()));
-            stmt.setTimestamp(8, new java.sql.Timestamp(transaction.getLastUpdateTime().getTime()));
+            stmt.setTimestamp(7, new java.sql.Timestamp(transaction.getCreateTimeMillis()));
+            stmt.setTimestamp(8, new java.sql.Timestamp(transaction.getLastUpdateTimeMillis()));
             stmt.setLong(9, transaction.getVersion());
+            stmt.setLong(10, getDueTimeMillis(transaction));
+            stmt.setBoolean(11, isRetryScheduled(transaction));
 
             if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(10, domain);
+                stmt.setString(12, domain);
             }
 
-            return stmt.executeUpdate();
+            int result = stmt.executeUpdate();
+
+            if (participantTableEnabled) {
+                List<Participant> participants = transaction.getParticipants();
+                for (int i = 0; i < participants.size(); i++) {
+                    insertParticipant(connection, transaction, participants.get(i), i);
+                }
+            }
+
+            if (localTransaction) {
+                connection.commit();
+            }
+
+            return result;
 
         } catch (SQLException e) {
+            if (localTransaction) {
+                rollbackQuietly(connection);
+            }
             throw new TransactionIOException(e);
         } finally {
             closeStatement(stmt);
+            if (localTransaction) {
+                restoreAutoCommit(connection);
+            }
             this.releaseConnection(connection);
         }
     }
@@ -112,7 +318,7 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         Connection connection = null;
         PreparedStatement stmt = null;
 
-        java.util.Date lastUpdateTime = transaction.getLastUpdateTime();
+        long lastUpdateTime = transaction.getLastUpdateTimeMillis();
         long currentVersion = transaction.getVersion();
 
         transaction.updateTime();
@@ -123,23 +329,25 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
 
             StringBuilder builder = new StringBuilder();
             builder.append("UPDATE " + getTableName() + " SET " +
-                    "CONTENT = ?,STATUS = ?,LAST_UPDATE_TIME = ?, RETRIED_COUNT = ?,VERSION = VERSION+1 WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
+                    "CONTENT = ?,STATUS = ?,LAST_UPDATE_TIME = ?, RETRIED_COUNT = ?,VERSION = VERSION+1,NEXT_RETRY_TIME = ?,RETRY_SCHEDULED = ? WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
 
             builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
 
             stmt = connection.prepareStatement(builder.toString());
 
-            stmt.setBytes(1, serializer.serialize(transaction));
+            stmt.setBytes(1, serializeContent(transaction));
             stmt.setInt(2, transaction.getStatus().getId());
-            stmt.setTimestamp(3, new Timestamp(transaction.getLastUpdateTime().getTime()));
+            stmt.setTimestamp(3, new Timestamp(transaction.getLastUpdateTimeMillis()));
 
             stmt.setInt(4, transaction.getRetriedCount());
-            stmt.setBytes(5, transaction.getXid().getGlobalTransactionId());
-            stmt.setBytes(6, transaction.getXid().getBranchQualifier());
-            stmt.setLong(7, currentVersion);
+            stmt.setLong(5, getDueTimeMillis(transaction));
+            stmt.setBoolean(6, isRetryScheduled(transaction));
+            stmt.setBytes(7, transaction.getXid().getGlobalTransactionId());
+            stmt.setBytes(8, transaction.getXid().getBranchQualifier());
+            stmt.setLong(9, currentVersion);
 
             if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(8, domain);
+                stmt.setString(10, domain);
             }
 
             int result = stmt.executeUpdate();
@@ -147,7 +355,7 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
             return result;
 
         } catch (Throwable e) {
-            transaction.setLastUpdateTime(lastUpdateTime);
+            transaction.setLastUpdateTimeMillis(lastUpdateTime);
             transaction.setVersion(currentVersion);
             throw new TransactionIOException(e);
         } finally {
@@ -163,6 +371,11 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         try {
             connection = this.getConnection();
 
+            // 先删除参与者，中途失败时事务仍可被恢复任务再次处理
+            if (participantTableEnabled) {
+                deleteParticipants(connection, transaction);
+            }
+
             StringBuilder builder = new StringBuilder();
             builder.append("DELETE FROM " + getTableName() +
                     " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
@@ -211,7 +424,7 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
 
             StringBuilder builder = new StringBuilder();
 
-            builder.append("SELECT GLOBAL_TX_ID, BRANCH_QUALIFIER, CONTENT,STATUS,TRANSACTION_TYPE,CREATE_TIME,LAST_UPDATE_TIME,RETRIED_COUNT,VERSION");
+            builder.append("SELECT " + SELECT_TRANSACTION_COLUMNS);
             builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN" : "");
             builder.append("  FROM " + getTableName() + " WHERE LAST_UPDATE_TIME < ?");
             builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
@@ -227,6 +440,10 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
             ResultSet resultSet = stmt.executeQuery();
 
             this.constructTransactions(resultSet, transactions);
+
+            if (participantTableEnabled) {
+                this.fillParticipants(connection, transactions);
+            }
         } catch (Throwable e) {
             throw new TransactionIOException(e);
         } finally {
@@ -237,6 +454,73 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         return transactions;
     }
 
+    @Override
+    protected List<TransactionSummary> doFindAllSummariesUnmodifiedSince(java.util.Date date) {
+        return doFindSummaries("LAST_UPDATE_TIME < ?", new Timestamp(date.getTime()));
+    }
+
+    /**
+     * 按重试时间查询，使用 (DOMAIN, NEXT_RETRY_TIME) 索引
+     * 增加重试时间列之前写入、未设置重试时间的记录，按最后更新时间 + 恢复间隔查询
+     */
+    @Override
+    protected List<TransactionSummary> doFindAllSummariesDueBefore(java.util.Date date) {
+        return doFindSummaries("(NEXT_RETRY_TIME <= ? OR (NEXT_RETRY_TIME IS NULL AND LAST_UPDATE_TIME < ?))",
+                date.getTime(), new Timestamp(date.getTime() - getRecoverDuration() * 1000L));
+    }
+
+    private List<TransactionSummary> doFindSummaries(String condition, Object... parameters) {
+
+        List<TransactionSummary> summaries = new ArrayList<TransactionSummary>();
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = this.getConnection();
+
+            StringBuilder builder = new StringBuilder();
+
+            builder.append("SELECT GLOBAL_TX_ID, BRANCH_QUALIFIER, STATUS, TRANSACTION_TYPE, CREATE_TIME, LAST_UPDATE_TIME, RETRIED_COUNT, VERSION, NEXT_RETRY_TIME, RETRY_SCHEDULED");
+            builder.append("  FROM " + getTableName() + " WHERE " + condition);
+            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+
+            stmt = connection.prepareStatement(builder.toString());
+
+            int i = 0;
+
+            for (Object parameter : parameters) {
+                stmt.setObject(++i, parameter);
+            }
+
+            if (StringUtils.isNotEmpty(domain)) {
+                stmt.setString(++i, domain);
+            }
+
+            ResultSet resultSet = stmt.executeQuery();
+
+            while (resultSet.next()) {
+                summaries.add(new TransactionSummary(
+                        new TransactionXid(resultSet.getBytes(1), resultSet.getBytes(2)),
+                        TransactionStatus.valueOf(resultSet.getInt(3)),
+                        TransactionType.valueOf(resultSet.getInt(4)),
+                        resultSet.getInt(7),
+                        resultSet.getTimestamp(5),
+                        resultSet.getTimestamp(6),
+                        resultSet.getLong(8),
+                        // 与完整事务一致，未安排重试时间的记录为 0
+                        resultSet.getBoolean(10) ? resultSet.getLong(9) : 0L));
+            }
+        } catch (Throwable e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            this.releaseConnection(connection);
+        }
+
+        return summaries;
+    }
+
     protected List<Transaction> doFind(List<Xid> xids) {
 
         List<Transaction> transactions = new ArrayList<Transaction>();
@@ -252,7 +536,7 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
             connection = this.getConnection();
 
             StringBuilder builder = new StringBuilder();
-            builder.append("SELECT GLOBAL_TX_ID, BRANCH_QUALIFIER, CONTENT,STATUS,TRANSACTION_TYPE,CREATE_TIME,LAST_UPDATE_TIME,RETRIED_COUNT,VERSION");
+            builder.append("SELECT " + SELECT_TRANSACTION_COLUMNS);
             builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN" : "");
             builder.append("  FROM " + getTableName() + " WHERE");
 
@@ -282,6 +566,10 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
             ResultSet resultSet = stmt.executeQuery();
 
             this.constructTransactions(resultSet, transactions);
+
+            if (participantTableEnabled) {
+                this.fillParticipants(connection, transactions);
+            }
         } catch (Throwable e) {
             throw new TransactionIOException(e);
         } finally {
@@ -292,19 +580,374 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         return transactions;
     }
 
+    /**
+     * NEXT_RETRY_TIME 总是写入到期时间以便按索引查询，是否为恢复任务安排的重试时间由 RETRY_SCHEDULED 区分
+     */
+    private static boolean isRetryScheduled(Transaction transaction) {
+        return transaction.getNextRetryTimeMillis() > 0;
+    }
+
     protected void constructTransactions(ResultSet resultSet, List<Transaction> transactions) throws SQLException {
         while (resultSet.next()) {
             byte[] transactionBytes = resultSet.getBytes(3);
             Transaction transaction = (Transaction) serializer.deserialize(transactionBytes);
             transaction.changeStatus(TransactionStatus.valueOf(resultSet.getInt(4)));
-            transaction.setLastUpdateTime(resultSet.getDate(7));
+            transaction.setLastUpdateTime(resultSet.getTimestamp(7));
             transaction.setVersion(resultSet.getLong(9));
             transaction.resetRetriedCount(resultSet.getInt(8));
+
+            // 未安排重试时存储的是 最后更新时间 + 恢复间隔，不写回事务，之后的更新仍按新的最后更新时间计算
+            if (resultSet.getBoolean(11)) {
+                transaction.setNextRetryTimeMillis(resultSet.getLong(10));
+            }
+
             transactions.add(transaction);
         }
     }
 
 
+    /**
+     * 加载参与者并按序号替换事务中的参与者
+     * 参与者表中没有记录而事务内容中存在参与者时，为开启参与者单独存储前写入的事务，迁移其参与者，见 {@link #migrateParticipants()}
+     *
+     * @param connection  连接
+     * @param transactions 事务集合
+     */
+    protected void fillParticipants(Connection connection, List<Transaction> transactions) throws SQLException {
+
+        for (int from = 0; from < transactions.size(); from += participantQueryBatchSize) {
+
+            List<Transaction> batch = transactions.subList(from, Math.min(from + participantQueryBatchSize, transactions.size()));
+
+            Map<Xid, List<Participant>> participantsMap = findParticipants(connection, batch);
+
+            for (Transaction transaction : batch) {
+
+                List<Participant> participants = participantsMap.get(transaction.getXid());
+
+                if (!CollectionUtils.isEmpty(participants)) {
+                    transaction.replaceParticipants(participants);
+                } else if (transaction.getParticipantCount() > 0) {
+                    migrateParticipants(connection, transaction);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在同一个数据库事务中将事务内容中的参与者写入参与者表，并改写事务内容为不含参与者
+     * 改写事务内容时锁定事务记录，并发迁移同一事务时后者等待前者提交，之后写入参与者遇到重复记录，
+     * 此时回滚并以参与者表中的记录为准。连接已处于外部事务中时，由外部事务处理重复记录异常。
+     *
+     * @param connection  连接
+     * @param transaction 事务内容中含参与者的事务
+     */
+    private void migrateParticipants(Connection connection, Transaction transaction) throws SQLException {
+
+        PreparedStatement stmt = null;
+        boolean localTransaction = beginLocalTransaction(connection);
+
+        try {
+            StringBuilder builder = new StringBuilder();
+            builder.append("UPDATE " + getTableName() + " SET CONTENT = ? WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
+            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+
+            stmt = connection.prepareStatement(builder.toString());
+
+            stmt.setBytes(1, serializer.serialize(transaction.copyWithoutParticipants()));
+            stmt.setBytes(2, transaction.getXid().getGlobalTransactionId());
+            stmt.setBytes(3, transaction.getXid().getBranchQualifier());
+
+            if (StringUtils.isNotEmpty(domain)) {
+                stmt.setString(4, domain);
+            }
+
+            // 事务已被删除
+            if (stmt.executeUpdate() == 0) {
+                if (localTransaction) {
+                    connection.rollback();
+                }
+                return;
+            }
+
+            List<Participant> participants = transaction.getParticipants();
+            for (int i = 0; i < participants.size(); i++) {
+                insertParticipant(connection, transaction, participants.get(i), i);
+            }
+
+            if (localTransaction) {
+                connection.commit();
+            }
+
+        } catch (SQLException e) {
+
+            if (!localTransaction || !isDuplicateKey(e)) {
+                if (localTransaction) {
+                    rollbackQuietly(connection);
+                }
+                throw e;
+            }
+
+            // 已被并发迁移
+            connection.rollback();
+
+            List<Participant> participants = findParticipants(connection, Arrays.asList(transaction)).get(transaction.getXid());
+
+            if (!CollectionUtils.isEmpty(participants)) {
+                transaction.replaceParticipants(participants);
+            }
+        } finally {
+            closeStatement(stmt);
+            if (localTransaction) {
+                restoreAutoCommit(connection);
+            }
+        }
+    }
+
+    private boolean isDuplicateKey(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
+    private Map<Xid, List<Participant>> findParticipants(Connection connection, List<Transaction> transactions) throws SQLException {
+
+        Map<Xid, List<Participant>> participantsMap = new HashMap<Xid, List<Participant>>();
+
+        PreparedStatement stmt = null;
+
+        try {
+            StringBuilder builder = new StringBuilder();
+            builder.append("SELECT GLOBAL_TX_ID, BRANCH_QUALIFIER, CONTENT FROM " + getParticipantTableName() + " WHERE");
+
+            for (Transaction transaction : transactions) {
+                builder.append(" ( GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? ) OR");
+            }
+            builder.delete(builder.length() - 2, builder.length());
+
+            builder.append(" ORDER BY SEQUENCE");
+
+            stmt = connection.prepareStatement(builder.toString());
+
+            int i = 0;
+
+            for (Transaction transaction : transactions) {
+                stmt.setBytes(++i, transaction.getXid().getGlobalTransactionId());
+                stmt.setBytes(++i, transaction.getXid().getBranchQualifier());
+            }
+
+            ResultSet resultSet = stmt.executeQuery();
+
+            while (resultSet.next()) {
+                Xid xid = new TransactionXid(resultSet.getBytes(1), resultSet.getBytes(2));
+
+                List<Participant> participants = participantsMap.get(xid);
+                if (participants == null) {
+                    participants = new ArrayList<Participant>();
+                    participantsMap.put(xid, participants);
+                }
+                participants.add((Participant) serializer.deserialize(resultSet.getBytes(3)));
+            }
+        } finally {
+            closeStatement(stmt);
+        }
+
+        return participantsMap;
+    }
+
+    private int insertParticipant(Connection connection, Transaction transaction, Participant participant, int sequence) throws SQLException {
+
+        PreparedStatement stmt = null;
+
+        try {
+            StringBuilder builder = new StringBuilder();
+            builder.append("INSERT INTO " + getParticipantTableName() +
+                    "(GLOBAL_TX_ID,BRANCH_QUALIFIER,SEQUENCE,CONTENT,CREATE_TIME");
+            builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN ) VALUES (?,?,?,?,?,?)" : ") VALUES (?,?,?,?,?)");
+
+            stmt = connection.prepareStatement(builder.toString());
+
+            stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
+            stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+            stmt.setInt(3, sequence);
+            stmt.setBytes(4, serializer.serialize(participant));
+            stmt.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+
+            if (StringUtils.isNotEmpty(domain)) {
+                stmt.setString(6, domain);
+            }
+
+            return stmt.executeUpdate();
+        } finally {
+            closeStatement(stmt);
+        }
+    }
+
+    private int deleteParticipants(Connection connection, Transaction transaction) throws SQLException {
+
+        PreparedStatement stmt = null;
+
+        try {
+            stmt = connection.prepareStatement("DELETE FROM " + getParticipantTableName() +
+                    " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
+
+            stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
+            stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+
+            return stmt.executeUpdate();
+        } finally {
+            closeStatement(stmt);
+        }
+    }
+
+    @Override
+    public int moveToDeadLetter(TransactionSummary summary) {
+
+        String condition = " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?"
+                + (StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+
+        return moveBetweenTables(getTableName(), getDeadLetterTableName(), TRANSACTION_COLUMNS, condition,
+                summary.getXid(), summary.getVersion());
+    }
+
+    @Override
+    public int requeue(TransactionXid xid) {
+
+        String condition = " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?"
+                + (StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+
+        // 重置重试次数，立即到达重试时间
+        String selectColumns = TRANSACTION_COLUMNS
+                .replace("RETRIED_COUNT", "0")
+                .replace("NEXT_RETRY_TIME", String.valueOf(System.currentTimeMillis()));
+
+        return moveBetweenTables(getDeadLetterTableName(), getTableName(), selectColumns, condition, xid, null);
+    }
+
+    /**
+     * 在同一个数据库事务中复制记录到目标表并从源表删除
+     * 连接已处于外部事务中时，由外部事务提交或回滚
+     * 参与者表中的记录按事务编号关联，不需要移动
+     */
+    private int moveBetweenTables(String sourceTable, String targetTable, String selectColumns, String condition,
+                                  TransactionXid xid, Long version) {
+
+        Connection connection = null;
+        PreparedStatement insertStmt = null;
+        PreparedStatement deleteStmt = null;
+        boolean localTransaction = false;
+
+        try {
+            connection = this.getConnection();
+
+            localTransaction = beginLocalTransaction(connection);
+
+            insertStmt = connection.prepareStatement("INSERT INTO " + targetTable + "(" + TRANSACTION_COLUMNS + ") SELECT "
+                    + selectColumns + " FROM " + sourceTable + condition);
+            setXidCondition(insertStmt, xid, version);
+
+            deleteStmt = connection.prepareStatement("DELETE FROM " + sourceTable + condition);
+            setXidCondition(deleteStmt, xid, version);
+
+            int result = insertStmt.executeUpdate();
+
+            if (result == 0) {
+                if (localTransaction) {
+                    connection.rollback();
+                }
+                return 0;
+            }
+
+            // 复制、删除数量不一致，说明期间被更新或删除，放弃移动
+            if (deleteStmt.executeUpdate() != result) {
+                throw new SQLException("transaction changed while moving from " + sourceTable + " to " + targetTable + ", xid:" + xid);
+            }
+
+            if (localTransaction) {
+                connection.commit();
+            }
+
+            removeFromCache(xid);
+            return result;
+
+        } catch (SQLException e) {
+            if (localTransaction) {
+                rollbackQuietly(connection);
+            }
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(insertStmt);
+            closeStatement(deleteStmt);
+            if (localTransaction) {
+                restoreAutoCommit(connection);
+            }
+            this.releaseConnection(connection);
+        }
+    }
+
+    private void setXidCondition(PreparedStatement stmt, TransactionXid xid, Long version) throws SQLException {
+
+        int index = 1;
+
+        stmt.setBytes(index++, xid.getGlobalTransactionId());
+        stmt.setBytes(index++, xid.getBranchQualifier());
+
+        if (version != null) {
+            stmt.setLong(index++, version);
+        }
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(index, domain);
+        }
+    }
+
+    /**
+     * 连接未处于外部事务中时开启本地事务，由调用方提交或回滚
+     *
+     * @param connection 连接
+     * @return 是否开启了本地事务
+     */
+    private boolean beginLocalTransaction(Connection connection) throws SQLException {
+
+        boolean localTransaction = connection.getAutoCommit();
+
+        if (localTransaction) {
+            connection.setAutoCommit(false);
+        }
+
+        return localTransaction;
+    }
+
+    private void rollbackQuietly(Connection connection) {
+        try {
+            if (connection != null) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            // 保留原异常
+        }
+    }
+
+    private void restoreAutoCommit(Connection connection) {
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    /**
+     * 序列化事务内容
+     * 参与者单独存储时，事务内容不含参与者
+     *
+     * @param transaction 事务
+     * @return 事务内容
+     */
+    private byte[] serializeContent(Transaction transaction) {
+        return serializer.serialize(participantTableEnabled ? transaction.copyWithoutParticipants() : transaction);
+    }
+
     protected Connection getConnection() {
         try {
             return this.dataSource.getConnection();
@@ -336,4 +979,12 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
     private String getTableName() {
         return StringUtils.isNotEmpty(tbSuffix) ? "TCC_TRANSACTION" + tbSuffix : "TCC_TRANSACTION";
     }
+
+    private String getDeadLetterTableName() {
+        return StringUtils.isNotEmpty(tbSuffix) ? "TCC_TRANSACTION_DEAD_LETTER" + tbSuffix : "TCC_TRANSACTION_DEAD_LETTER";
+    }
+
+    private String getParticipantTableName() {
+        return StringUtils.isNotEmpty(tbSuffix) ? "TCC_TRANSACTION_PARTICIPANT" + tbSuffix : "TCC_TRANSACTION_PARTICIPANT";
+    }
 }
@@ -0,0 +1,33 @@
+package org.mengyun.tcctransaction.repository;
+
+/**
+ * 大参数存储
+ * 按参数内容的摘要存取序列化后的参数，相同内容只存储一份。
+ * 参数可能被多个事务引用，删除事务时不删除参数；每次被新事务引用时刷新保留时间，超过保留时间未被引用的参数由 {@link #removeExpired()} 或存储的过期机制清理。
+ * 保留时间需大于事务最长存活时间（含全部重试）与 {@link org.mengyun.tcctransaction.support.LargeArguments} 本地刷新间隔之和。
+ */
+public interface LargeArgumentStore {
+
+    /**
+     * 保存参数，摘要已存在时刷新保留时间
+     *
+     * @param hash    摘要
+     * @param content 序列化后的参数
+     */
+    void put(byte[] hash, byte[] content);
+
+    /**
+     * 读取参数
+     *
+     * @param hash 摘要
+     * @return 序列化后的参数，不存在时返回 null
+     */
+    byte[] get(byte[] hash);
+
+    /**
+     * 清理超过保留时间未被引用的参数
+     *
+     * @return 清理的参数数量，由存储自动过期时返回 0
+     */
+    int removeExpired();
+}
@@ -0,0 +1,49 @@
+package org.mengyun.tcctransaction.repository;
+
+import java.util.List;
+
+/**
+ * 事务恢复租约存储
+ * 保存节点心跳和分区租约，与事务存储使用同一存储。
+ * 分区租约同一时间只属于一个节点，过期后其它节点才能获取；持有者可在过期前续约。
+ */
+public interface RecoveryLeaseStore {
+
+    /**
+     * 节点心跳，登记节点存活到 当前时间 + 租约时长
+     *
+     * @param nodeId      节点编号
+     * @param leaseMillis 租约时长，毫秒
+     */
+    void heartbeat(String nodeId, long leaseMillis);
+
+    /**
+     * 移除节点，节点正常退出时调用
+     *
+     * @param nodeId 节点编号
+     */
+    void removeNode(String nodeId);
+
+    /**
+     * @return 存活的节点编号
+     */
+    List<String> findLiveNodes();
+
+    /**
+     * 获取或续约分区租约
+     *
+     * @param partition   分区
+     * @param nodeId      节点编号
+     * @param leaseMillis 租约时长，毫秒
+     * @return 是否持有租约，分区租约属于其它节点且未过期时返回 false
+     */
+    boolean tryAcquire(int partition, String nodeId, long leaseMillis);
+
+    /**
+     * 释放分区租约，租约不属于该节点时忽略
+     *
+     * @param partition 分区
+     * @param nodeId    节点编号
+     */
+    void release(int partition, String nodeId);
+}
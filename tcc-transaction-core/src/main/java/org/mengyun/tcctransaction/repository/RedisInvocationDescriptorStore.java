@@ -0,0 +1,80 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.repository.helper.JedisCallback;
+import org.mengyun.tcctransaction.repository.helper.RedisHelper;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Redis 调用描述存储
+ * 每个业务域一个哈希，键为 前缀 + 业务域，字段为编号，值为方法签名。
+ */
+public class RedisInvocationDescriptorStore implements InvocationDescriptorStore {
+
+    private JedisPool jedisPool;
+
+    private String keyPrefix = "TCC:DESC:";
+
+    /**
+     * 业务域
+     */
+    private String domain;
+
+    public void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    public JedisPool getJedisPool() {
+        return jedisPool;
+    }
+
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    @Override
+    public void save(final int id, final String signature) {
+
+        String existing = RedisHelper.execute(jedisPool, new JedisCallback<String>() {
+            @Override
+            public String doInJedis(Jedis jedis) {
+
+                String field = String.valueOf(id);
+
+                if (jedis.hsetnx(getKey(), field, signature) == 1) {
+                    return signature;
+                }
+                return jedis.hget(getKey(), field);
+            }
+        });
+
+        if (!signature.equals(existing)) {
+            throw new SystemException(String.format("invocation descriptor id conflict, id:%d, signatures:%s, %s",
+                    id, existing, signature));
+        }
+    }
+
+    @Override
+    public String findSignature(final int id) {
+
+        return RedisHelper.execute(jedisPool, new JedisCallback<String>() {
+            @Override
+            public String doInJedis(Jedis jedis) {
+                return jedis.hget(getKey(), String.valueOf(id));
+            }
+        });
+    }
+
+    private String getKey() {
+        return keyPrefix + domain;
+    }
+}
@@ -0,0 +1,91 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.repository.helper.JedisCallback;
+import org.mengyun.tcctransaction.repository.helper.RedisHelper;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Redis 大参数存储
+ * 键为 前缀 + 摘要，可设置过期时间自动清理，每次引用时重新设置过期时间。
+ */
+public class RedisLargeArgumentStore implements LargeArgumentStore {
+
+    private JedisPool jedisPool;
+
+    private String keyPrefix = "TCC:ARG:";
+
+    /**
+     * 编码后的键前缀
+     */
+    private byte[] keyPrefixBytes = keyPrefix.getBytes();
+
+    /**
+     * 过期时间，秒，0 表示不过期，需大于事务最长存活时间
+     */
+    private int expireSeconds = 0;
+
+    public void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    public JedisPool getJedisPool() {
+        return jedisPool;
+    }
+
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+        this.keyPrefixBytes = keyPrefix.getBytes();
+    }
+
+    public void setExpireSeconds(int expireSeconds) {
+        this.expireSeconds = expireSeconds;
+    }
+
+    @Override
+    public void put(byte[] hash, final byte[] content) {
+
+        final byte[] key = getKey(hash);
+
+        RedisHelper.execute(jedisPool, new JedisCallback<Long>() {
+            @Override
+            public Long doInJedis(Jedis jedis) {
+
+                Long result = jedis.setnx(key, content);
+
+                if (expireSeconds > 0) {
+                    jedis.expire(key, expireSeconds);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * 由 Redis 过期机制清理
+     */
+    @Override
+    public int removeExpired() {
+        return 0;
+    }
+
+    @Override
+    public byte[] get(byte[] hash) {
+
+        final byte[] key = getKey(hash);
+
+        return RedisHelper.execute(jedisPool, new JedisCallback<byte[]>() {
+            @Override
+            public byte[] doInJedis(Jedis jedis) {
+                return jedis.get(key);
+            }
+        });
+    }
+
+    private byte[] getKey(byte[] hash) {
+        byte[] key = new byte[keyPrefixBytes.length + hash.length];
+        System.arraycopy(keyPrefixBytes, 0, key, 0, keyPrefixBytes.length);
+        System.arraycopy(hash, 0, key, keyPrefixBytes.length, hash.length);
+        return key;
+    }
+}
@@ -0,0 +1,118 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.repository.helper.JedisCallback;
+import org.mengyun.tcctransaction.repository.helper.RedisHelper;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redis 事务恢复租约存储
+ * 分区租约为 前缀 + 分区 的键，值为持有节点，由 Redis 过期时间控制租约；节点心跳保存在有序集合中，分值为过期时间。
+ */
+public class RedisRecoveryLeaseStore implements RecoveryLeaseStore {
+
+    /**
+     * 不存在或属于该节点时设置并续约
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "local owner = redis.call('get', KEYS[1]) " +
+                    "if owner == false or owner == ARGV[1] then " +
+                    "redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end " +
+                    "return 0";
+
+    /**
+     * 属于该节点时删除
+     */
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0";
+
+    private JedisPool jedisPool;
+
+    private String keyPrefix = "TCC:LEASE:";
+
+    public void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    public JedisPool getJedisPool() {
+        return jedisPool;
+    }
+
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public void heartbeat(final String nodeId, final long leaseMillis) {
+
+        RedisHelper.execute(jedisPool, new JedisCallback<Long>() {
+            @Override
+            public Long doInJedis(Jedis jedis) {
+                return jedis.zadd(getNodesKey(), System.currentTimeMillis() + leaseMillis, nodeId);
+            }
+        });
+    }
+
+    @Override
+    public void removeNode(final String nodeId) {
+
+        RedisHelper.execute(jedisPool, new JedisCallback<Long>() {
+            @Override
+            public Long doInJedis(Jedis jedis) {
+                return jedis.zrem(getNodesKey(), nodeId);
+            }
+        });
+    }
+
+    @Override
+    public List<String> findLiveNodes() {
+
+        return RedisHelper.execute(jedisPool, new JedisCallback<List<String>>() {
+            @Override
+            public List<String> doInJedis(Jedis jedis) {
+
+                long now = System.currentTimeMillis();
+
+                // 清理过期节点
+                jedis.zremrangeByScore(getNodesKey(), Double.NEGATIVE_INFINITY, now);
+
+                return new ArrayList<String>(jedis.zrangeByScore(getNodesKey(), now, Double.POSITIVE_INFINITY));
+            }
+        });
+    }
+
+    @Override
+    public boolean tryAcquire(final int partition, final String nodeId, final long leaseMillis) {
+
+        Object result = RedisHelper.execute(jedisPool, new JedisCallback<Object>() {
+            @Override
+            public Object doInJedis(Jedis jedis) {
+                return jedis.eval(ACQUIRE_SCRIPT, 1, getPartitionKey(partition), nodeId, String.valueOf(leaseMillis));
+            }
+        });
+
+        return Long.valueOf(1L).equals(result);
+    }
+
+    @Override
+    public void release(final int partition, final String nodeId) {
+
+        RedisHelper.execute(jedisPool, new JedisCallback<Object>() {
+            @Override
+            public Object doInJedis(Jedis jedis) {
+                return jedis.eval(RELEASE_SCRIPT, 1, getPartitionKey(partition), nodeId);
+            }
+        });
+    }
+
+    private String getNodesKey() {
+        return keyPrefix + "NODES";
+    }
+
+    private String getPartitionKey(int partition) {
+        return keyPrefix + "PARTITION:" + partition;
+    }
+}
@@ -1,17 +1,25 @@
 package org.mengyun.tcctransaction.repository;
 
 import org.apache.log4j.Logger;
+import org.apache.commons.lang3.time.DateUtils;
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionSummary;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.utils.ByteUtils;
 import org.mengyun.tcctransaction.repository.helper.ExpandTransactionSerializer;
 import org.mengyun.tcctransaction.repository.helper.JedisCallback;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
 import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
-import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 import org.mengyun.tcctransaction.utils.RedisUtils;
 import redis.clients.jedis.*;
 
 import javax.transaction.xa.Xid;
+import java.text.ParseException;
 import java.util.*;
 
 /**
@@ -22,7 +30,7 @@ import java.util.*;
  * appendonly yes
  * appendfsync always
  */
-public class RedisTransactionRepository extends CachableTransactionRepository {
+public class RedisTransactionRepository extends CachableTransactionRepository implements DeadLetterRepository {
 
     static final Logger logger = Logger.getLogger(RedisTransactionRepository.class.getSimpleName());
 
@@ -30,12 +38,55 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
 
     private String keyPrefix = "TCC:";
 
+    /**
+     * 编码后的键前缀
+     */
+    private byte[] keyPrefixBytes = keyPrefix.getBytes();
+
+    /**
+     * 死信键前缀，不匹配事务键前缀，恢复任务扫描不到
+     */
+    private byte[] deadLetterKeyPrefixBytes = getDeadLetterKeyPrefix(keyPrefix).getBytes();
+
+    /**
+     * 版本一致时移入死信区
+     */
+    private static final byte[] MOVE_TO_DEAD_LETTER_SCRIPT = ("if redis.call('hget', KEYS[1], 'VERSION') == ARGV[1] "
+            + "and redis.call('exists', KEYS[2]) == 0 then redis.call('rename', KEYS[1], KEYS[2]); return 1; end; return 0;").getBytes();
+
+    /**
+     * 放回事务键，重置重试次数、重试时间
+     */
+    private static final byte[] REQUEUE_SCRIPT = ("if redis.call('exists', KEYS[1]) == 1 and redis.call('exists', KEYS[2]) == 0 then "
+            + "redis.call('rename', KEYS[1], KEYS[2]); "
+            + "redis.call('hmset', KEYS[2], 'RETRIED_COUNT', ARGV[1], 'NEXT_RETRY_TIME', ARGV[2]); return 1; end; return 0;").getBytes();
+
     private int fetchKeySize = 1000;
 
     private boolean supportScan;
 
+    /**
+     * 事务摘要字段
+     */
+    private static final byte[][] SUMMARY_FIELDS = new byte[][]{
+            "GLOBAL_TX_ID".getBytes(), "BRANCH_QUALIFIER".getBytes(), "STATUS".getBytes(), "TRANSACTION_TYPE".getBytes(),
+            "RETRIED_COUNT".getBytes(), "CREATE_TIME".getBytes(), "LAST_UPDATE_TIME".getBytes(), "VERSION".getBytes(),
+            "NEXT_RETRY_TIME".getBytes()};
+
     public void setKeyPrefix(String keyPrefix) {
         this.keyPrefix = keyPrefix;
+        this.keyPrefixBytes = keyPrefix.getBytes();
+        this.deadLetterKeyPrefixBytes = getDeadLetterKeyPrefix(keyPrefix).getBytes();
+    }
+
+    /**
+     * 死信键前缀
+     *
+     * @param keyPrefix 事务键前缀
+     * @return DEAD_LETTER: + 事务键前缀
+     */
+    public static String getDeadLetterKeyPrefix(String keyPrefix) {
+        return "DEAD_LETTER:" + keyPrefix;
     }
 
     private ObjectSerializer serializer = new KryoPoolSerializer();
@@ -80,7 +131,7 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
                     }
 
                     Object result = jedis.eval("if redis.call('exists', KEYS[1]) == 0 then redis.call('hmset', KEYS[1], unpack(ARGV)); return 1; end; return 0;".getBytes(),
-                            Arrays.asList(RedisHelper.getRedisKey(keyPrefix, transaction.getXid())), params);
+                            Arrays.asList(RedisHelper.getRedisKey(keyPrefixBytes, transaction.getXid())), params);
 
                     return (Long) result;
                 }
@@ -112,7 +163,7 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
 
                     Object result = jedis.eval(String.format("if redis.call('hget',KEYS[1],'VERSION') == '%s' then redis.call('hmset', KEYS[1], unpack(ARGV)); return 1; end; return 0;",
                             transaction.getVersion() - 1).getBytes(),
-                            Arrays.asList(RedisHelper.getRedisKey(keyPrefix, transaction.getXid())), params);
+                            Arrays.asList(RedisHelper.getRedisKey(keyPrefixBytes, transaction.getXid())), params);
 
                     return (Long) result;
                 }
@@ -124,6 +175,50 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
         }
     }
 
+    @Override
+    public int moveToDeadLetter(final TransactionSummary summary) {
+
+        try {
+            Long result = RedisHelper.execute(jedisPool, new JedisCallback<Long>() {
+                @Override
+                public Long doInJedis(Jedis jedis) {
+
+                    return (Long) jedis.eval(MOVE_TO_DEAD_LETTER_SCRIPT,
+                            Arrays.asList(RedisHelper.getRedisKey(keyPrefixBytes, summary.getXid()),
+                                    RedisHelper.getRedisKey(deadLetterKeyPrefixBytes, summary.getXid())),
+                            Arrays.asList(ByteUtils.longToBytes(summary.getVersion())));
+                }
+            });
+
+            removeFromCache(summary.getXid());
+
+            return result.intValue();
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    @Override
+    public int requeue(final TransactionXid xid) {
+
+        try {
+            Long result = RedisHelper.execute(jedisPool, new JedisCallback<Long>() {
+                @Override
+                public Long doInJedis(Jedis jedis) {
+
+                    return (Long) jedis.eval(REQUEUE_SCRIPT,
+                            Arrays.asList(RedisHelper.getRedisKey(deadLetterKeyPrefixBytes, xid),
+                                    RedisHelper.getRedisKey(keyPrefixBytes, xid)),
+                            Arrays.asList(ByteUtils.intToBytes(0), ByteUtils.longToBytes(System.currentTimeMillis())));
+                }
+            });
+
+            return result.intValue();
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
     @Override
     protected int doDelete(final Transaction transaction) {
         try {
@@ -132,7 +227,7 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
                 @Override
                 public Long doInJedis(Jedis jedis) {
 
-                    return jedis.del(RedisHelper.getRedisKey(keyPrefix, transaction.getXid()));
+                    return jedis.del(RedisHelper.getRedisKey(keyPrefixBytes, transaction.getXid()));
                 }
             });
 
@@ -150,7 +245,7 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
             Map<byte[], byte[]> content = RedisHelper.execute(jedisPool, new JedisCallback<Map<byte[], byte[]>>() {
                 @Override
                 public Map<byte[], byte[]> doInJedis(Jedis jedis) {
-                    return jedis.hgetAll(RedisHelper.getRedisKey(keyPrefix, xid));
+                    return jedis.hgetAll(RedisHelper.getRedisKey(keyPrefixBytes, xid));
                 }
             });
             logger.info("redis find cost time :" + (System.currentTimeMillis() - startTime));
@@ -172,7 +267,7 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
         List<Transaction> allUnmodifiedSince = new ArrayList<Transaction>();
 
         for (Transaction transaction : allTransactions) {
-            if (transaction.getLastUpdateTime().compareTo(date) < 0) {
+            if (transaction.getLastUpdateTimeMillis() < date.getTime()) {
                 allUnmodifiedSince.add(transaction);
             }
         }
@@ -180,38 +275,71 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
         return allUnmodifiedSince;
     }
 
-    //    @Override
-    protected List<Transaction> doFindAll() {
+    @Override
+    protected List<TransactionSummary> doFindAllSummariesUnmodifiedSince(Date date) {
 
         try {
+            final Set<byte[]> keys = findAllKeys();
 
-            final Set<byte[]> keys = RedisHelper.execute(jedisPool, new JedisCallback<Set<byte[]>>() {
+            List<Object> result = RedisHelper.execute(jedisPool, new JedisCallback<List<Object>>() {
                 @Override
-                public Set<byte[]> doInJedis(Jedis jedis) {
+                public List<Object> doInJedis(Jedis jedis) {
 
-                    if (supportScan) {
-                        List<String> allKeys = new ArrayList<String>();
-                        String cursor = "0";
-                        do {
-                            ScanResult<String> scanResult = jedis.scan(cursor, new ScanParams().match(keyPrefix + "*").count(fetchKeySize));
-                            allKeys.addAll(scanResult.getResult());
-                            cursor = scanResult.getStringCursor();
-                        } while (!cursor.equals("0"));
-
-                        Set<byte[]> allKeySet = new HashSet<byte[]>();
+                    Pipeline pipeline = jedis.pipelined();
 
-                        for (String key : allKeys) {
-                            allKeySet.add(key.getBytes());
-                        }
-                        logger.info(String.format("find all key by scan command with pattern:%s allKeySet.size()=%d", keyPrefix + "*", allKeySet.size()));
-                        return allKeySet;
-                    } else {
-                        return jedis.keys((keyPrefix + "*").getBytes());
+                    for (final byte[] key : keys) {
+                        pipeline.hmget(key, SUMMARY_FIELDS);
                     }
-
+                    return pipeline.syncAndReturnAll();
                 }
             });
 
+            List<TransactionSummary> summaries = new ArrayList<TransactionSummary>();
+
+            for (Object data : result) {
+
+                List<byte[]> values = (List<byte[]>) data;
+
+                // 已被删除的事务各字段为空
+                if (values == null || values.get(0) == null) {
+                    continue;
+                }
+
+                TransactionSummary summary = new TransactionSummary(
+                        new TransactionXid(values.get(0), values.get(1)),
+                        TransactionStatus.valueOf(ByteUtils.bytesToInt(values.get(2))),
+                        TransactionType.valueOf(ByteUtils.bytesToInt(values.get(3))),
+                        ByteUtils.bytesToInt(values.get(4)),
+                        parseDate(values.get(5)),
+                        parseDate(values.get(6)),
+                        ByteUtils.bytesToLong(values.get(7)),
+                        values.get(8) == null ? 0L : ByteUtils.bytesToLong(values.get(8)));
+
+                if (summary.getLastUpdateTime().compareTo(date) < 0) {
+                    summaries.add(summary);
+                }
+            }
+
+            return summaries;
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    private Date parseDate(byte[] value) {
+        try {
+            return DateUtils.parseDate(new String(value), "yyyy-MM-dd HH:mm:ss");
+        } catch (ParseException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    //    @Override
+    protected List<Transaction> doFindAll() {
+
+        try {
+
+            final Set<byte[]> keys = findAllKeys();
 
             return RedisHelper.execute(jedisPool, new JedisCallback<List<Transaction>>() {
                 @Override
@@ -243,5 +371,33 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
         }
     }
 
+    private Set<byte[]> findAllKeys() {
+
+        return RedisHelper.execute(jedisPool, new JedisCallback<Set<byte[]>>() {
+            @Override
+            public Set<byte[]> doInJedis(Jedis jedis) {
+
+                if (supportScan) {
+                    List<String> allKeys = new ArrayList<String>();
+                    String cursor = "0";
+                    do {
+                        ScanResult<String> scanResult = jedis.scan(cursor, new ScanParams().match(keyPrefix + "*").count(fetchKeySize));
+                        allKeys.addAll(scanResult.getResult());
+                        cursor = scanResult.getStringCursor();
+                    } while (!cursor.equals("0"));
 
+                    Set<byte[]> allKeySet = new HashSet<byte[]>();
+
+                    for (String key : allKeys) {
+                        allKeySet.add(key.getBytes());
+                    }
+                    logger.info(String.format("find all key by scan command with pattern:%s allKeySet.size()=%d", keyPrefix + "*", allKeySet.size()));
+                    return allKeySet;
+                } else {
+                    return jedis.keys((keyPrefix + "*").getBytes());
+                }
+
+            }
+        });
+    }
 }
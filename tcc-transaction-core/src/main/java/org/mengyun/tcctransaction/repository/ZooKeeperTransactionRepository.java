@@ -3,11 +3,12 @@ package org.mengyun.tcctransaction.repository;
 import org.apache.zookeeper.*;
 import org.apache.zookeeper.data.Stat;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionSummary;
 import org.mengyun.tcctransaction.common.TransactionType;
 import org.mengyun.tcctransaction.repository.helper.TransactionSerializer;
 import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
-import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 
 import javax.transaction.xa.Xid;
 import java.util.ArrayList;
@@ -29,6 +30,11 @@ public class ZooKeeperTransactionRepository extends CachableTransactionRepositor
 
     private ObjectSerializer serializer = new KryoPoolSerializer();
 
+    /**
+     * 是否写入带头部的存储格式，默认 false 写入旧版本 Map 格式，所有节点升级后再开启
+     */
+    private boolean envelopeEnabled = false;
+
     public ZooKeeperTransactionRepository() {
         super();
     }
@@ -37,6 +43,10 @@ public class ZooKeeperTransactionRepository extends CachableTransactionRepositor
         this.serializer = serializer;
     }
 
+    public void setEnvelopeEnabled(boolean envelopeEnabled) {
+        this.envelopeEnabled = envelopeEnabled;
+    }
+
     public void setZkRootPath(String zkRootPath) {
         this.zkRootPath = zkRootPath;
     }
@@ -54,7 +64,7 @@ public class ZooKeeperTransactionRepository extends CachableTransactionRepositor
 
         try {
             getZk().create(getTxidPath(transaction.getXid()),
-                    TransactionSerializer.serialize(serializer, transaction), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                    TransactionSerializer.serialize(serializer, transaction, envelopeEnabled), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
             return 1;
         } catch (Exception e) {
             throw new TransactionIOException(e);
@@ -68,7 +78,7 @@ public class ZooKeeperTransactionRepository extends CachableTransactionRepositor
 
             transaction.updateTime();
             transaction.updateVersion();
-            Stat stat = getZk().setData(getTxidPath(transaction.getXid()), TransactionSerializer.serialize(serializer, transaction), (int) transaction.getVersion() - 2);
+            Stat stat = getZk().setData(getTxidPath(transaction.getXid()), TransactionSerializer.serialize(serializer, transaction, envelopeEnabled), (int) transaction.getVersion() - 2);
             return 1;
         } catch (Exception e) {
             throw new TransactionIOException(e);
@@ -110,7 +120,7 @@ public class ZooKeeperTransactionRepository extends CachableTransactionRepositor
         List<Transaction> allUnmodifiedSince = new ArrayList<Transaction>();
 
         for (Transaction transaction : allTransactions) {
-            if (transaction.getLastUpdateTime().compareTo(date) < 0) {
+            if (transaction.getLastUpdateTimeMillis() < date.getTime()) {
                 allUnmodifiedSince.add(transaction);
             }
         }
@@ -118,6 +128,35 @@ public class ZooKeeperTransactionRepository extends CachableTransactionRepositor
         return allUnmodifiedSince;
     }
 
+    @Override
+    protected List<TransactionSummary> doFindAllSummariesUnmodifiedSince(Date date) {
+
+        List<TransactionSummary> summaries = new ArrayList<TransactionSummary>();
+
+        List<String> znodePaths = null;
+        try {
+            znodePaths = getZk().getChildren(zkRootPath, false);
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+
+        for (String znodePath : znodePaths) {
+            try {
+                byte[] content = getZk().getData(getTxidPath(znodePath), false, new Stat());
+                TransactionSummary summary = TransactionSerializer.deserializeSummary(serializer, content);
+                if (summary.getLastUpdateTime().compareTo(date) < 0) {
+                    summaries.add(summary);
+                }
+            } catch (KeeperException.NoNodeException e) {
+                // 已被删除
+            } catch (Exception e) {
+                throw new TransactionIOException(e);
+            }
+        }
+
+        return summaries;
+    }
+
     protected List<Transaction> doFindAll() {
 
         List<Transaction> transactions = new ArrayList<Transaction>();
@@ -173,7 +212,7 @@ public class ZooKeeperTransactionRepository extends CachableTransactionRepositor
     }
 
     private String getTxidPath(Xid xid) {
-        return String.format("%s/%s", zkRootPath, xid);
+        return zkRootPath + "/" + xid;
     }
 
     private String getTxidPath(String znodePath) {
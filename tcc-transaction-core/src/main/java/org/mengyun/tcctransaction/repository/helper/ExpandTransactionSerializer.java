@@ -30,6 +30,7 @@ public class ExpandTransactionSerializer {
         map.put("CREATE_TIME".getBytes(), DateFormatUtils.format(transaction.getCreateTime(), "yyyy-MM-dd HH:mm:ss").getBytes());
         map.put("LAST_UPDATE_TIME".getBytes(), DateFormatUtils.format(transaction.getLastUpdateTime(), "yyyy-MM-dd HH:mm:ss").getBytes());
         map.put("VERSION".getBytes(), ByteUtils.longToBytes(transaction.getVersion()));
+        map.put("NEXT_RETRY_TIME".getBytes(), ByteUtils.longToBytes(transaction.getNextRetryTimeMillis()));
         map.put("CONTENT".getBytes(), serializer.serialize(transaction));
         map.put("CONTENT_VIEW".getBytes(), JSON.toJSONString(transaction).getBytes());
         return map;
@@ -55,6 +56,11 @@ public class ExpandTransactionSerializer {
         }
 
         transaction.setVersion(ByteUtils.bytesToLong(propertyMap.get("VERSION")));
+
+        byte[] nextRetryTime = propertyMap.get("NEXT_RETRY_TIME");
+        if (nextRetryTime != null) {
+            transaction.setNextRetryTimeMillis(ByteUtils.bytesToLong(nextRetryTime));
+        }
         return transaction;
     }
 }
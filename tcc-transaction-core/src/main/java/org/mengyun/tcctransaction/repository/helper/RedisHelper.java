@@ -1,5 +1,6 @@
 package org.mengyun.tcctransaction.repository.helper;
 
+import org.mengyun.tcctransaction.api.TransactionXid;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
@@ -12,7 +13,18 @@ public class RedisHelper {
 
 
     public static byte[] getRedisKey(String keyPrefix, Xid xid) {
-        return new StringBuilder().append(keyPrefix).append(xid.toString()).toString().getBytes();
+        return getRedisKey(keyPrefix.getBytes(), xid);
+    }
+
+    /**
+     * 使用预先编码的键前缀生成键，事务编号使用缓存的键字节
+     *
+     * @param keyPrefix 编码后的键前缀
+     * @param xid       事务编号
+     * @return 键
+     */
+    public static byte[] getRedisKey(byte[] keyPrefix, Xid xid) {
+        return concat(keyPrefix, getKeyBytes(xid));
     }
 
     public static byte[] getRedisKey(String keyPrefix, String globalTransactionId, String branchQualifier) {
@@ -30,13 +42,28 @@ public class RedisHelper {
     }
 
     public static byte[] getVersionKey(String keyPrefix, Xid xid) {
-        return new StringBuilder().append("VER:").append(keyPrefix).append(xid.toString()).toString().getBytes();
+        return concat(new StringBuilder().append("VER:").append(keyPrefix).toString().getBytes(), getKeyBytes(xid));
     }
 
     public static byte[] getVersionKey(String keyPrefix, String globalTransactionId, String branchQualifier) {
         return new StringBuilder().append("VER:").append(keyPrefix).append(globalTransactionId).append(":").append(branchQualifier).toString().getBytes();
     }
 
+    private static byte[] getKeyBytes(Xid xid) {
+
+        if (xid instanceof TransactionXid) {
+            return ((TransactionXid) xid).toKeyBytes();
+        }
+        return xid.toString().getBytes();
+    }
+
+    private static byte[] concat(byte[] prefix, byte[] key) {
+        byte[] bytes = new byte[prefix.length + key.length];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        System.arraycopy(key, 0, bytes, prefix.length, key.length);
+        return bytes;
+    }
+
     public static <T> T execute(JedisPool jedisPool, JedisCallback<T> callback) {
         Jedis jedis = null;
         try {
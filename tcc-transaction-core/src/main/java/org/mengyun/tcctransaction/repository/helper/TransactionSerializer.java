@@ -1,18 +1,210 @@
 package org.mengyun.tcctransaction.repository.helper;
 
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionSummary;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
 import org.mengyun.tcctransaction.serializer.ObjectSerializer;
 
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * 事务存储格式
+ * 魔数(4 字节) + 版本(1 字节) + 定长头部 + 事务内容，头部字段无需反序列化事务内容即可读取。
+ * 头部：全局事务编号、分支事务编号(长度 1 字节 + 内容)、状态、类型、重试次数、创建时间、最后更新时间、版本号。
+ * 版本 2 在事务内容之后附加下次重试时间(8 字节)；版本 1 没有该字段，读取时视为未安排重试。
+ * 兼容读取旧版本以 Map 整体序列化的数据。
+ * <p>
+ * 默认仍写入 Map 格式，与未升级的节点互相兼容；滚动发布时先在所有节点升级，全部发布后再开启 envelope 写入新格式。
+ *
  * Created by changming.xie on 9/15/16.
  */
 public class TransactionSerializer {
 
+    /**
+     * 魔数 "TCTX"
+     */
+    static final int MAGIC = 0x54435458;
+
+    static final byte FORMAT_VERSION = 2;
+
+    /**
+     * 没有下次重试时间的版本
+     */
+    private static final byte FORMAT_VERSION_WITHOUT_NEXT_RETRY_TIME = 1;
+
+    private static final int NEXT_RETRY_TIME_LENGTH = 8;
+
+    /**
+     * 除事务编号外的头部长度：魔数、版本、编号长度、状态、类型、重试次数、创建时间、最后更新时间、版本号、内容长度
+     */
+    private static final int FIXED_HEADER_LENGTH = 4 + 1 + 1 + 1 + 4 + 4 + 4 + 8 + 8 + 8 + 4;
+
+    /**
+     * 以 Map 格式序列化，与旧版本兼容
+     *
+     * @param serializer  序列化
+     * @param transaction 事务
+     * @return 数据
+     */
     public static byte[] serialize(ObjectSerializer serializer, Transaction transaction) {
+        return serialize(serializer, transaction, false);
+    }
+
+    /**
+     * 序列化事务
+     *
+     * @param serializer  序列化
+     * @param transaction 事务
+     * @param envelope    是否写入带头部的新格式，false 时写入 Map 格式
+     * @return 数据
+     */
+    public static byte[] serialize(ObjectSerializer serializer, Transaction transaction, boolean envelope) {
+
+        if (!envelope) {
+            return serializeLegacy(serializer, transaction);
+        }
+
+        byte[] globalTransactionId = transaction.getXid().getGlobalTransactionId();
+        byte[] branchQualifier = transaction.getXid().getBranchQualifier();
+        byte[] content = serializer.serialize(transaction);
+
+        if (globalTransactionId.length > 0xFF || branchQualifier.length > 0xFF) {
+            throw new SystemException("xid is too long to serialize");
+        }
+
+        byte[] bytes = new byte[FIXED_HEADER_LENGTH + globalTransactionId.length + branchQualifier.length + content.length + NEXT_RETRY_TIME_LENGTH];
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(MAGIC);
+        buffer.put(FORMAT_VERSION);
+        buffer.put((byte) globalTransactionId.length);
+        buffer.put(globalTransactionId);
+        buffer.put((byte) branchQualifier.length);
+        buffer.put(branchQualifier);
+        buffer.putInt(transaction.getStatus().getId());
+        buffer.putInt(transaction.getTransactionType().getId());
+        buffer.putInt(transaction.getRetriedCount());
+        buffer.putLong(transaction.getCreateTimeMillis());
+        buffer.putLong(transaction.getLastUpdateTimeMillis());
+        buffer.putLong(transaction.getVersion());
+        buffer.putInt(content.length);
+        buffer.put(content);
+        buffer.putLong(transaction.getNextRetryTimeMillis());
+
+        return bytes;
+    }
+
+    public static Transaction deserialize(ObjectSerializer serializer, byte[] value) {
+
+        if (!isEnvelope(value)) {
+            return deserializeLegacy(serializer, value);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        buffer.position(5);
+
+        skipBytes(buffer);
+        skipBytes(buffer);
+        int status = buffer.getInt();
+        buffer.getInt();
+        int retriedCount = buffer.getInt();
+        buffer.getLong();
+        long lastUpdateTime = buffer.getLong();
+        long version = buffer.getLong();
+
+        byte[] content = new byte[buffer.getInt()];
+        buffer.get(content);
+
+        Transaction transaction = (Transaction) serializer.deserialize(content);
+        transaction.changeStatus(TransactionStatus.valueOf(status));
+        transaction.resetRetriedCount(retriedCount);
+        transaction.setLastUpdateTimeMillis(lastUpdateTime);
+        transaction.setVersion(version);
+        transaction.setNextRetryTimeMillis(readNextRetryTime(value[4], buffer));
+        return transaction;
+    }
+
+    /**
+     * 只读取头部信息，不反序列化事务内容
+     * 旧格式数据没有独立头部，需完整反序列化
+     *
+     * @param serializer 序列化
+     * @param value      数据
+     * @return 事务摘要
+     */
+    public static TransactionSummary deserializeSummary(ObjectSerializer serializer, byte[] value) {
+
+        if (!isEnvelope(value)) {
+            return new TransactionSummary(deserializeLegacy(serializer, value));
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        buffer.position(5);
+
+        byte[] globalTransactionId = readBytes(buffer);
+        byte[] branchQualifier = readBytes(buffer);
+
+        TransactionStatus status = TransactionStatus.valueOf(buffer.getInt());
+        TransactionType transactionType = TransactionType.valueOf(buffer.getInt());
+        int retriedCount = buffer.getInt();
+        Date createTime = new Date(buffer.getLong());
+        Date lastUpdateTime = new Date(buffer.getLong());
+        long version = buffer.getLong();
+
+        // 跳过事务内容
+        int contentLength = buffer.getInt();
+        buffer.position(buffer.position() + contentLength);
+
+        return new TransactionSummary(new TransactionXid(globalTransactionId, branchQualifier),
+                status, transactionType, retriedCount, createTime, lastUpdateTime, version, readNextRetryTime(value[4], buffer));
+    }
+
+    private static long readNextRetryTime(byte formatVersion, ByteBuffer buffer) {
+        return formatVersion == FORMAT_VERSION_WITHOUT_NEXT_RETRY_TIME ? 0L : buffer.getLong();
+    }
+
+    /**
+     * 是否为带魔数的存储格式
+     *
+     * @param value 数据
+     * @return 是否为新格式
+     */
+    static boolean isEnvelope(byte[] value) {
+        if (value == null || value.length < FIXED_HEADER_LENGTH) {
+            return false;
+        }
+
+        if (ByteBuffer.wrap(value).getInt() != MAGIC) {
+            return false;
+        }
+
+        if (value[4] != FORMAT_VERSION && value[4] != FORMAT_VERSION_WITHOUT_NEXT_RETRY_TIME) {
+            throw new SystemException("unsupported transaction format version:" + value[4]);
+        }
+        return true;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void skipBytes(ByteBuffer buffer) {
+        int length = buffer.get() & 0xFF;
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Map 格式，下次重试时间为附加键，旧版本读取时忽略
+     */
+    private static byte[] serializeLegacy(ObjectSerializer serializer, Transaction transaction) {
         Map<String, Object> map = new HashMap<String, Object>();
 
         map.put("GLOBAL_TX_ID", transaction.getXid().getGlobalTransactionId());
@@ -24,11 +216,12 @@ public class TransactionSerializer {
         map.put("LAST_UPDATE_TIME", transaction.getLastUpdateTime());
         map.put("VERSION", transaction.getVersion());
         map.put("CONTENT", serializer.serialize(transaction));
+        map.put("NEXT_RETRY_TIME", transaction.getNextRetryTimeMillis());
 
         return serializer.serialize(map);
     }
 
-    public static Transaction deserialize(ObjectSerializer serializer, byte[] value) {
+    private static Transaction deserializeLegacy(ObjectSerializer serializer, byte[] value) {
 
         Map<String, Object> map = (Map<String, Object>) serializer.deserialize(value);
 
@@ -37,6 +230,9 @@ public class TransactionSerializer {
         transaction.resetRetriedCount((Integer) map.get("RETRIED_COUNT"));
         transaction.setLastUpdateTime((Date) map.get("LAST_UPDATE_TIME"));
         transaction.setVersion((Long) map.get("VERSION"));
+
+        Long nextRetryTime = (Long) map.get("NEXT_RETRY_TIME");
+        transaction.setNextRetryTimeMillis(nextRetryTime == null ? 0L : nextRetryTime);
         return transaction;
     }
 }
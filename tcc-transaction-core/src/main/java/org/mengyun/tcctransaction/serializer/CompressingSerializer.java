@@ -0,0 +1,183 @@
+package org.mengyun.tcctransaction.serializer;
+
+import org.mengyun.tcctransaction.SystemException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩序列化装饰器
+ * 序列化结果超过阈值时压缩存储，小于阈值或压缩无收益时原样存储。
+ * 压缩数据格式：头部标记(0x00) + 压缩算法(1 字节) + 原始长度(4 字节) + 压缩数据。
+ * JDK、Kryo 序列化的非空对象不会以 0x00 开头，因此未压缩的历史数据仍可正常读取。
+ */
+public class CompressingSerializer<T> implements ObjectSerializer<T> {
+
+    /**
+     * 压缩数据头部标记
+     */
+    static final byte HEADER_MARKER = 0x00;
+
+    /**
+     * 压缩算法：deflate
+     */
+    static final byte ALGORITHM_DEFLATE = 0x01;
+
+    static final int HEADER_LENGTH = 6;
+
+    /**
+     * deflate 的最大压缩比约为 1032:1，原始长度超过 压缩数据长度 * 该值 时头部必然已损坏
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * 被装饰的序列化
+     */
+    private ObjectSerializer<T> delegate;
+
+    /**
+     * 压缩阈值，序列化结果小于该字节数时不压缩
+     */
+    private int threshold = 512;
+
+    /**
+     * 压缩级别，默认优先速度
+     */
+    private int level = Deflater.BEST_SPEED;
+
+    /**
+     * 解压后的最大长度，头部记录的原始长度超过该值时视为数据损坏，避免按损坏的长度分配内存
+     */
+    private int maxDecompressedLength = 64 * 1024 * 1024;
+
+    public CompressingSerializer() {
+        this(new KryoPoolSerializer<T>());
+    }
+
+    public CompressingSerializer(ObjectSerializer<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setDelegate(ObjectSerializer<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public void setMaxDecompressedLength(int maxDecompressedLength) {
+        this.maxDecompressedLength = maxDecompressedLength;
+    }
+
+    @Override
+    public byte[] serialize(T object) {
+
+        byte[] bytes = delegate.serialize(object);
+
+        if (bytes == null || bytes.length < threshold) {
+            return bytes;
+        }
+
+        byte[] compressed = compress(bytes);
+
+        return compressed.length < bytes.length ? compressed : bytes;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) {
+
+        if (isCompressed(bytes)) {
+            return delegate.deserialize(decompress(bytes));
+        }
+
+        return delegate.deserialize(bytes);
+    }
+
+    @Override
+    public T clone(T object) {
+        return delegate.clone(object);
+    }
+
+    /**
+     * 是否为压缩数据
+     *
+     * @param bytes 数据
+     * @return 是否压缩
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes != null && bytes.length > HEADER_LENGTH
+                && bytes[0] == HEADER_MARKER && bytes[1] == ALGORITHM_DEFLATE;
+    }
+
+    private byte[] compress(byte[] bytes) {
+
+        Deflater deflater = new Deflater(level);
+
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(HEADER_LENGTH + bytes.length / 2);
+            outputStream.write(HEADER_MARKER);
+            outputStream.write(ALGORITHM_DEFLATE);
+            outputStream.write(bytes.length >>> 24);
+            outputStream.write(bytes.length >>> 16);
+            outputStream.write(bytes.length >>> 8);
+            outputStream.write(bytes.length);
+
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                outputStream.write(buffer, 0, count);
+            }
+
+            return outputStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] decompress(byte[] bytes) {
+
+        int length = ((bytes[2] & 0xFF) << 24) | ((bytes[3] & 0xFF) << 16) | ((bytes[4] & 0xFF) << 8) | (bytes[5] & 0xFF);
+
+        if (length < 0 || length > maxDecompressedLength
+                || length > (long) (bytes.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO) {
+            throw new SystemException("corrupted compressed data, illegal original length:" + length);
+        }
+
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+
+            byte[] result = new byte[length];
+            int offset = 0;
+
+            while (offset < length && !inflater.finished()) {
+                int count = inflater.inflate(result, offset, length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += count;
+            }
+
+            if (offset != length) {
+                throw new SystemException("corrupted compressed data, expected " + length + " bytes but got " + offset);
+            }
+
+            return result;
+        } catch (DataFormatException e) {
+            throw new SystemException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
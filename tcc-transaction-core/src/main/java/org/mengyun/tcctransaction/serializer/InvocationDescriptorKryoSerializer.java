@@ -0,0 +1,58 @@
+package org.mengyun.tcctransaction.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.mengyun.tcctransaction.DescriptorInvocationContext;
+import org.mengyun.tcctransaction.InvocationDescriptorRegistry;
+
+/**
+ * 调用上下文 Kryo 序列化
+ * 写入调用描述编号、方法签名和参数，不写入类型信息。方法签名用于编号未注册时加载，
+ * 已保存到 {@link org.mengyun.tcctransaction.repository.InvocationDescriptorStore} 时写入空值（1 字节），读取时从存储中查找；
+ * 未保存时同一对象图中相同方法的签名只写入一次，之后写入引用。
+ */
+public class InvocationDescriptorKryoSerializer extends Serializer<DescriptorInvocationContext> {
+
+    /**
+     * 为 Kryo 设置调用上下文序列化，已注册的保留原编号
+     *
+     * @param kryo Kryo
+     */
+    public static void install(Kryo kryo) {
+
+        Registration registration = kryo.getClassResolver().getRegistration(DescriptorInvocationContext.class);
+
+        if (registration != null) {
+            registration.setSerializer(new InvocationDescriptorKryoSerializer());
+        } else {
+            kryo.addDefaultSerializer(DescriptorInvocationContext.class, InvocationDescriptorKryoSerializer.class);
+        }
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, DescriptorInvocationContext context) {
+        output.writeInt(context.getDescriptor().getId(), true);
+        kryo.writeObjectOrNull(output, signatureOf(context), String.class);
+        kryo.writeClassAndObject(output, context.getArgs());
+    }
+
+    @Override
+    public DescriptorInvocationContext read(Kryo kryo, Input input, Class<DescriptorInvocationContext> type) {
+        int descriptorId = input.readInt(true);
+        String signature = kryo.readObjectOrNull(input, String.class);
+        Object[] args = (Object[]) kryo.readClassAndObject(input);
+        return new DescriptorInvocationContext(InvocationDescriptorRegistry.get(descriptorId, signature), args);
+    }
+
+    private static String signatureOf(DescriptorInvocationContext context) {
+        return InvocationDescriptorRegistry.isStored(context.getDescriptor()) ? null : context.getDescriptor().getSignature();
+    }
+
+    @Override
+    public DescriptorInvocationContext copy(Kryo kryo, DescriptorInvocationContext original) {
+        return new DescriptorInvocationContext(original.getDescriptor(), kryo.copy(original.getArgs()));
+    }
+}
@@ -1,21 +1,30 @@
 package org.mengyun.tcctransaction.serializer;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoCallback;
 import com.esotericsoftware.kryo.pool.KryoFactory;
 import com.esotericsoftware.kryo.pool.KryoPool;
+import org.apache.log4j.Logger;
 import org.objenesis.strategy.StdInstantiatorStrategy;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by changming.xie on 9/18/17.
  */
 public class KryoPoolSerializer<T> implements ObjectSerializer<T> {
 
+    static final Logger logger = Logger.getLogger(KryoPoolSerializer.class.getSimpleName());
 
     static KryoFactory factory = new KryoFactory() {
         public Kryo create() {
@@ -31,62 +40,278 @@ public class KryoPoolSerializer<T> implements ObjectSerializer<T> {
     };
 
 
-    KryoPool pool = new KryoPool.Builder(factory).softReferences().build();
+    /**
+     * 缓冲区初始大小
+     */
+    private static final int BUFFER_SIZE = 4096;
 
-    private int initPoolSize = 300;
+    /**
+     * 线程复用缓冲区的最大保留大小，超过后丢弃，避免偶发的大事务长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    /**
+     * 线程复用的输出缓冲区，按需扩容
+     */
+    private static final ThreadLocal<Output> OUTPUT_LOCAL = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output(BUFFER_SIZE, -1);
+        }
+    };
+
+    /**
+     * 线程复用的输入
+     */
+    private static final ThreadLocal<Input> INPUT_LOCAL = new ThreadLocal<Input>() {
+        @Override
+        protected Input initialValue() {
+            return new Input();
+        }
+    };
+
+    /**
+     * 池中保留的 Kryo 实例上限，按 CPU 核数确定，超出的实例归还时丢弃
+     */
+    private static final int POOL_CAPACITY = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * 进程内共享的 Kryo 池，每个创建工厂一个，首次使用时创建
+     */
+    private static final ConcurrentMap<KryoFactory, KryoPool> POOLS = new ConcurrentHashMap<KryoFactory, KryoPool>();
+
+    /**
+     * 已创建的 Kryo 实例数
+     */
+    private static final AtomicLong KRYO_CREATED_COUNT = new AtomicLong();
+
+    /**
+     * 创建 Kryo 实例累计耗时(纳秒)
+     */
+    private static final AtomicLong KRYO_CREATE_NANOS = new AtomicLong();
+
+    private final KryoFactory kryoFactory;
+
+    private volatile KryoPool pool;
 
     public KryoPoolSerializer() {
-        init();
+        this(factory);
     }
 
+    /**
+     * @param initPoolSize 预创建的实例数，不超过池上限
+     * @deprecated Kryo 池改为进程内共享并按需创建，无需预创建
+     */
+    @Deprecated
     public KryoPoolSerializer(int initPoolSize) {
-        this.initPoolSize = initPoolSize;
-        init();
+        this(factory, initPoolSize);
+    }
+
+    /**
+     * 使用指定的 Kryo 创建工厂，如 {@link KryoRegistrationProfile}
+     *
+     * @param kryoFactory Kryo 创建工厂
+     */
+    public KryoPoolSerializer(KryoFactory kryoFactory) {
+        this.kryoFactory = kryoFactory;
     }
 
-    private void init() {
+    /**
+     * @param kryoFactory  Kryo 创建工厂
+     * @param initPoolSize 预创建的实例数，不超过池上限
+     * @deprecated Kryo 池改为进程内共享并按需创建，无需预创建
+     */
+    @Deprecated
+    public KryoPoolSerializer(KryoFactory kryoFactory, int initPoolSize) {
+        this.kryoFactory = kryoFactory;
 
-        for (int i = 0; i < initPoolSize; i++) {
-            Kryo kryo = pool.borrow();
+        KryoPool pool = getPool();
+        List<Kryo> kryos = new ArrayList<Kryo>();
+        for (int i = 0; i < Math.min(initPoolSize, POOL_CAPACITY); i++) {
+            kryos.add(pool.borrow());
+        }
+        for (Kryo kryo : kryos) {
             pool.release(kryo);
         }
     }
 
+    /**
+     * 已创建的 Kryo 实例数
+     */
+    public static long getKryoCreatedCount() {
+        return KRYO_CREATED_COUNT.get();
+    }
+
+    /**
+     * 创建 Kryo 实例累计耗时(毫秒)，用于观察启动耗时
+     */
+    public static long getKryoCreateTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(KRYO_CREATE_NANOS.get());
+    }
+
+    private KryoPool getPool() {
+
+        if (this.pool != null) {
+            return this.pool;
+        }
+
+        KryoPool pool = POOLS.get(kryoFactory);
+
+        if (pool == null) {
+            pool = new KryoPool.Builder(new MeasuredKryoFactory(kryoFactory))
+                    .queue(new ArrayBlockingQueue<Kryo>(POOL_CAPACITY))
+                    .softReferences()
+                    .build();
+
+            KryoPool existing = POOLS.putIfAbsent(kryoFactory, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+
+        this.pool = pool;
+        return pool;
+    }
+
     @Override
     public byte[] serialize(final T object) {
 
-        return pool.run(new KryoCallback<byte[]>() {
+        return getPool().run(new KryoCallback<byte[]>() {
             public byte[] execute(Kryo kryo) {
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                Output output = new Output(byteArrayOutputStream);
+                Output output = OUTPUT_LOCAL.get();
+                output.clear();
+
+                try {
+                    kryo.writeClassAndObject(output, object);
+                    return output.toBytes();
+                } finally {
+                    if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+                        OUTPUT_LOCAL.remove();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 序列化，结果以指定头部开头
+     *
+     * @param object 对象
+     * @param header 头部
+     * @return 头部 + 序列化数据
+     */
+    public byte[] serialize(final T object, final byte[] header) {
+
+        return getPool().run(new KryoCallback<byte[]>() {
+            public byte[] execute(Kryo kryo) {
+                Output output = OUTPUT_LOCAL.get();
+                output.clear();
+
+                try {
+                    output.writeBytes(header);
+                    kryo.writeClassAndObject(output, object);
+                    return output.toBytes();
+                } finally {
+                    if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+                        OUTPUT_LOCAL.remove();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 序列化到调用方提供的缓冲区，从缓冲区当前位置开始写入，写入后位置后移
+     *
+     * @param object 对象
+     * @param buffer 缓冲区
+     * @return 写入字节数
+     * @throws com.esotericsoftware.kryo.KryoException 缓冲区剩余空间不足时
+     */
+    public int serialize(final T object, final ByteBuffer buffer) {
+
+        return getPool().run(new KryoCallback<Integer>() {
+            public Integer execute(Kryo kryo) {
+                ByteBuffer target = buffer.slice();
+                ByteBufferOutput output = new ByteBufferOutput(target, target.capacity());
 
                 kryo.writeClassAndObject(output, object);
                 output.flush();
 
-                return byteArrayOutputStream.toByteArray();
+                int length = output.position();
+                buffer.position(buffer.position() + length);
+                return length;
             }
         });
     }
 
     @Override
     public T deserialize(final byte[] bytes) {
+        return deserialize(bytes, 0);
+    }
+
+    /**
+     * 从指定偏移位置反序列化
+     *
+     * @param bytes  数据
+     * @param offset 序列化数据开始位置
+     * @return 对象
+     */
+    public T deserialize(final byte[] bytes, final int offset) {
 
-        return pool.run(new KryoCallback<T>() {
+        return getPool().run(new KryoCallback<T>() {
             public T execute(Kryo kryo) {
-                ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-                Input input = new Input(byteArrayInputStream);
+                Input input = INPUT_LOCAL.get();
+                input.setBuffer(bytes, offset, bytes.length - offset);
 
-                return (T) kryo.readClassAndObject(input);
+                try {
+                    return (T) kryo.readClassAndObject(input);
+                } finally {
+                    input.setBuffer(EMPTY_BYTES);
+                }
             }
         });
     }
 
     @Override
     public T clone(final T object) {
-        return pool.run(new KryoCallback<T>() {
+        return getPool().run(new KryoCallback<T>() {
             public T execute(Kryo kryo) {
                 return kryo.copy(object);
             }
         });
     }
+
+    /**
+     * 统计 Kryo 实例创建次数及耗时，并设置事务、调用上下文序列化
+     */
+    static class MeasuredKryoFactory implements KryoFactory {
+
+        private final KryoFactory delegate;
+
+        MeasuredKryoFactory(KryoFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Kryo create() {
+
+            long startTime = System.nanoTime();
+
+            Kryo kryo = delegate.create();
+            TransactionKryoSerializer.install(kryo);
+            InvocationDescriptorKryoSerializer.install(kryo);
+
+            long costTime = System.nanoTime() - startTime;
+            long count = KRYO_CREATED_COUNT.incrementAndGet();
+            long totalTime = KRYO_CREATE_NANOS.addAndGet(costTime);
+
+            logger.debug(String.format("kryo instance created, cost time:%dus, created count:%d, total cost time:%dms",
+                    TimeUnit.NANOSECONDS.toMicros(costTime), count, TimeUnit.NANOSECONDS.toMillis(totalTime)));
+
+            return kryo;
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package org.mengyun.tcctransaction.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.pool.KryoFactory;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
+import org.mengyun.tcctransaction.DescriptorInvocationContext;
+import org.mengyun.tcctransaction.ExternalArgument;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Terminator;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Kryo 注册配置
+ * 以固定编号预注册框架类型、常用 JDK 类型及业务 DTO 类型，序列化时写入类型编号而非类名。
+ * 框架类型的对象图为树结构，关闭其引用跟踪；业务类型及业务参数中可能出现的 JDK 类型（集合、字符串、日期等）仍保留引用跟踪，
+ * 共享或循环引用的参数可以正确还原。确认业务参数中这些 JDK 类型不存在共享、循环引用时，可开启 jdkReferencesDisabled 进一步减小数据。
+ * <p>
+ * 注意：编号写入存储数据，业务 DTO 类型只能在列表末尾追加，不能调整顺序或删除。
+ * 与未注册的默认配置数据格式不兼容，切换前需确保存储中没有未完成的事务。
+ */
+public class KryoRegistrationProfile implements KryoFactory {
+
+    /**
+     * 框架类型起始编号，Kryo 默认注册的基本类型占用 0 ~ 9
+     */
+    public static final int FRAMEWORK_ID_BASE = 20;
+
+    /**
+     * 业务 DTO 类型起始编号
+     */
+    public static final int USER_ID_BASE = 100;
+
+    /**
+     * 框架类型，按编号顺序注册，只能在末尾追加
+     */
+    private static final Class[] FRAMEWORK_CLASSES = new Class[]{
+            Transaction.class,
+            Participant.class,
+            InvocationContext.class,
+            TransactionXid.class,
+            TransactionContext.class,
+            TransactionStatus.class,
+            TransactionType.class,
+            Terminator.class,
+            Class.class,
+            Class[].class,
+            Object[].class,
+            byte[].class,
+            Date.class,
+            ArrayList.class,
+            LinkedList.class,
+            HashMap.class,
+            HashSet.class,
+            ConcurrentHashMap.class,
+            BigDecimal.class,
+            BigInteger.class,
+            java.sql.Timestamp.class,
+            String[].class,
+            int[].class,
+            long[].class,
+            DescriptorInvocationContext.class,
+            ExternalArgument.class
+    };
+
+    /**
+     * 对象图为树结构的框架类型，不做引用跟踪
+     */
+    private static final Set<Class> TREE_CLASSES = new HashSet<Class>();
+
+    /**
+     * 关闭引用跟踪的 JDK 类型，仅在开启 jdkReferencesDisabled 时生效
+     */
+    private static final Set<Class> JDK_TREE_CLASSES = new HashSet<Class>();
+
+    static {
+        Collections.addAll(TREE_CLASSES,
+                Transaction.class,
+                Participant.class,
+                InvocationContext.class,
+                TransactionXid.class,
+                TransactionContext.class,
+                TransactionStatus.class,
+                TransactionType.class,
+                Terminator.class,
+                DescriptorInvocationContext.class,
+                ExternalArgument.class,
+                Class.class);
+
+        Collections.addAll(JDK_TREE_CLASSES,
+                Class[].class,
+                byte[].class,
+                String.class,
+                Date.class,
+                ArrayList.class,
+                HashMap.class,
+                ConcurrentHashMap.class);
+    }
+
+    /**
+     * 是否关闭常用 JDK 类型的引用跟踪，默认 false
+     * 开启后业务参数中共享的集合会被复制为多份，循环引用会导致栈溢出，数据格式也随之变化
+     */
+    private boolean jdkReferencesDisabled = false;
+
+    /**
+     * 业务 DTO 类型，编号从 USER_ID_BASE 开始依次分配
+     */
+    private List<Class> registeredClasses = new ArrayList<Class>();
+
+    public void setRegisteredClasses(List<Class> registeredClasses) {
+        this.registeredClasses = registeredClasses;
+    }
+
+    public List<Class> getRegisteredClasses() {
+        return registeredClasses;
+    }
+
+    public boolean isJdkReferencesDisabled() {
+        return jdkReferencesDisabled;
+    }
+
+    public void setJdkReferencesDisabled(boolean jdkReferencesDisabled) {
+        this.jdkReferencesDisabled = jdkReferencesDisabled;
+    }
+
+    @Override
+    public Kryo create() {
+
+        Kryo kryo = new Kryo(new TreeAwareReferenceResolver(jdkReferencesDisabled));
+        kryo.setReferences(true);
+        kryo.setRegistrationRequired(false);
+        //Fix the NPE bug when deserializing Collections.
+        ((Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy())
+                .setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
+
+        for (int i = 0; i < FRAMEWORK_CLASSES.length; i++) {
+            kryo.register(FRAMEWORK_CLASSES[i], FRAMEWORK_ID_BASE + i);
+        }
+
+        for (int i = 0; i < registeredClasses.size(); i++) {
+            kryo.register(registeredClasses.get(i), USER_ID_BASE + i);
+        }
+
+        return kryo;
+    }
+
+    /**
+     * 框架树结构类型不做引用跟踪，其它类型沿用默认策略
+     */
+    static class TreeAwareReferenceResolver extends MapReferenceResolver {
+
+        private final boolean jdkReferencesDisabled;
+
+        TreeAwareReferenceResolver(boolean jdkReferencesDisabled) {
+            this.jdkReferencesDisabled = jdkReferencesDisabled;
+        }
+
+        @Override
+        public boolean useReferences(Class type) {
+            return !TREE_CLASSES.contains(type)
+                    && !(jdkReferencesDisabled && JDK_TREE_CLASSES.contains(type))
+                    && super.useReferences(type);
+        }
+    }
+}
@@ -21,6 +21,10 @@ public class KryoTransactionSerializer<T> implements ObjectSerializer<T> {
             ((Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy())
                     .setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
 
+            // 与 KryoPoolSerializer 一致，事务、调用上下文的数据格式不因序列化实现不同而变化
+            TransactionKryoSerializer.install(kryo);
+            InvocationDescriptorKryoSerializer.install(kryo);
+
             return kryo;
         }
     };
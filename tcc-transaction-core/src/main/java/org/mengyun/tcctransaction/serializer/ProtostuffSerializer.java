@@ -0,0 +1,117 @@
+package org.mengyun.tcctransaction.serializer;
+
+import io.protostuff.GraphIOUtil;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+
+/**
+ * Protostuff 运行时 Schema 序列化
+ * 事务按 {@link Transaction.SerialForm} 结构、参与者使用缓存的 Schema 直接序列化，其它类型包装后序列化并记录类型。
+ * 数据格式：类型标识(1 字节) + Protostuff 数据，支持循环引用。
+ */
+public class ProtostuffSerializer<T> implements ObjectSerializer<T> {
+
+    private static final byte TYPE_TRANSACTION = 1;
+
+    private static final byte TYPE_PARTICIPANT = 2;
+
+    private static final byte TYPE_OTHER = 3;
+
+    private static final Schema<Transaction.SerialForm> TRANSACTION_SCHEMA = RuntimeSchema.getSchema(Transaction.SerialForm.class);
+
+    private static final Schema<Participant> PARTICIPANT_SCHEMA = RuntimeSchema.getSchema(Participant.class);
+
+    private static final Schema<Wrapper> WRAPPER_SCHEMA = RuntimeSchema.getSchema(Wrapper.class);
+
+    /**
+     * 线程复用的缓冲区
+     */
+    private static final ThreadLocal<LinkedBuffer> BUFFER_LOCAL = new ThreadLocal<LinkedBuffer>() {
+        @Override
+        protected LinkedBuffer initialValue() {
+            return LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        }
+    };
+
+    @Override
+    public byte[] serialize(T object) {
+
+        if (object == null) {
+            return null;
+        }
+
+        LinkedBuffer buffer = BUFFER_LOCAL.get();
+
+        try {
+            byte type;
+            byte[] body;
+
+            if (object instanceof Transaction) {
+                type = TYPE_TRANSACTION;
+                body = GraphIOUtil.toByteArray(((Transaction) object).toSerialForm(), TRANSACTION_SCHEMA, buffer);
+            } else if (object instanceof Participant) {
+                type = TYPE_PARTICIPANT;
+                body = GraphIOUtil.toByteArray((Participant) object, PARTICIPANT_SCHEMA, buffer);
+            } else {
+                type = TYPE_OTHER;
+                body = GraphIOUtil.toByteArray(new Wrapper(object), WRAPPER_SCHEMA, buffer);
+            }
+
+            byte[] bytes = new byte[body.length + 1];
+            bytes[0] = type;
+            System.arraycopy(body, 0, bytes, 1, body.length);
+            return bytes;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) {
+
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        switch (bytes[0]) {
+            case TYPE_TRANSACTION:
+                Transaction.SerialForm form = TRANSACTION_SCHEMA.newMessage();
+                GraphIOUtil.mergeFrom(bytes, 1, bytes.length - 1, form, TRANSACTION_SCHEMA);
+                return (T) Transaction.fromSerialForm(form);
+            case TYPE_PARTICIPANT:
+                Participant participant = PARTICIPANT_SCHEMA.newMessage();
+                GraphIOUtil.mergeFrom(bytes, 1, bytes.length - 1, participant, PARTICIPANT_SCHEMA);
+                return (T) participant;
+            case TYPE_OTHER:
+                Wrapper wrapper = WRAPPER_SCHEMA.newMessage();
+                GraphIOUtil.mergeFrom(bytes, 1, bytes.length - 1, wrapper, WRAPPER_SCHEMA);
+                return (T) wrapper.value;
+            default:
+                throw new SystemException("unknown protostuff payload type:" + bytes[0]);
+        }
+    }
+
+    @Override
+    public T clone(T object) {
+        return deserialize(serialize(object));
+    }
+
+    /**
+     * 非事务、参与者类型的包装，运行时 Schema 会记录值的实际类型
+     */
+    static class Wrapper {
+
+        Object value;
+
+        Wrapper() {
+        }
+
+        Wrapper(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.mengyun.tcctransaction.serializer;
+
+import org.mengyun.tcctransaction.SystemException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 序列化注册表
+ * 按配置的编码编号序列化，并在数据前写入编码编号；反序列化时按数据中的编号选择序列化。
+ * 数据格式：头部标记(0x00) + 编码编号(1 字节，最高位为 1) + 序列化数据。
+ * 没有编号前缀的历史数据使用 legacySerializer 反序列化，可在线切换编码，存量数据逐步迁移。
+ * <p>
+ * 默认兼容模式：两种格式都能读取，写入时使用 legacySerializer 且不带编号，与未使用注册表的节点互相兼容。
+ * 滚动发布时先在所有节点使用兼容模式，全部发布后再设置 codecId 写入带编号的数据。
+ * <p>
+ * 编号写入存储数据，已使用的编号不能再指向其它序列化。
+ */
+public class SerializerRegistry<T> implements ObjectSerializer<T> {
+
+    /**
+     * 使用 legacySerializer 写入不带编号的数据
+     */
+    public static final int LEGACY = 0;
+
+    public static final int JDK = 1;
+
+    public static final int KRYO = 2;
+
+    public static final int PROTOSTUFF = 3;
+
+    static final byte HEADER_MARKER = 0x00;
+
+    static final int CODEC_FLAG = 0x80;
+
+    static final int MAX_CODEC_ID = 0x7F;
+
+    /**
+     * 编码编号 -> 序列化
+     */
+    private final Map<Integer, ObjectSerializer> serializers = new ConcurrentHashMap<Integer, ObjectSerializer>();
+
+    /**
+     * 序列化使用的编码编号，默认 {@link #LEGACY}
+     */
+    private int codecId = LEGACY;
+
+    /**
+     * 没有编号前缀的历史数据使用的序列化
+     */
+    private ObjectSerializer legacySerializer;
+
+    public SerializerRegistry() {
+        KryoPoolSerializer kryoPoolSerializer = new KryoPoolSerializer();
+
+        register(JDK, new JdkSerializationSerializer());
+        register(KRYO, kryoPoolSerializer);
+        register(PROTOSTUFF, new ProtostuffSerializer());
+
+        this.legacySerializer = kryoPoolSerializer;
+    }
+
+    /**
+     * 注册序列化
+     *
+     * @param id         编码编号，1 ~ 127
+     * @param serializer 序列化
+     */
+    public void register(int id, ObjectSerializer serializer) {
+        if (id < 1 || id > MAX_CODEC_ID) {
+            throw new IllegalArgumentException("codec id must be between 1 and " + MAX_CODEC_ID + ", but was " + id);
+        }
+        serializers.put(id, serializer);
+    }
+
+    public void setSerializers(Map<Integer, ObjectSerializer> serializers) {
+        for (Map.Entry<Integer, ObjectSerializer> entry : serializers.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 设置写入使用的编码编号
+     *
+     * @param codecId 编码编号，{@link #LEGACY} 表示写入不带编号的数据
+     */
+    public void setCodecId(int codecId) {
+        this.codecId = codecId;
+    }
+
+    public int getCodecId() {
+        return codecId;
+    }
+
+    public void setLegacySerializer(ObjectSerializer legacySerializer) {
+        this.legacySerializer = legacySerializer;
+    }
+
+    @Override
+    public byte[] serialize(T object) {
+
+        if (codecId == LEGACY) {
+            return (byte[]) legacySerializer.serialize(object);
+        }
+
+        ObjectSerializer serializer = getSerializer(codecId);
+        byte[] header = new byte[]{HEADER_MARKER, (byte) (CODEC_FLAG | codecId)};
+
+        // Kryo 直接在缓冲区中写入头部，避免复制
+        if (serializer instanceof KryoPoolSerializer) {
+            return ((KryoPoolSerializer) serializer).serialize(object, header);
+        }
+
+        byte[] payload = serializer.serialize(object);
+
+        if (payload == null) {
+            return null;
+        }
+
+        byte[] bytes = new byte[payload.length + header.length];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        System.arraycopy(payload, 0, bytes, header.length, payload.length);
+        return bytes;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) {
+
+        if (!hasCodecId(bytes)) {
+            return (T) legacySerializer.deserialize(bytes);
+        }
+
+        ObjectSerializer serializer = getSerializer(bytes[1] & MAX_CODEC_ID);
+
+        // Kryo 从偏移位置读取，避免复制
+        if (serializer instanceof KryoPoolSerializer) {
+            return (T) ((KryoPoolSerializer) serializer).deserialize(bytes, 2);
+        }
+
+        byte[] payload = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 2, payload, 0, payload.length);
+
+        return (T) serializer.deserialize(payload);
+    }
+
+    @Override
+    public T clone(T object) {
+        return (T) (codecId == LEGACY ? legacySerializer : getSerializer(codecId)).clone(object);
+    }
+
+    /**
+     * 是否带有编码编号前缀
+     *
+     * @param bytes 数据
+     * @return 是否带编号
+     */
+    public static boolean hasCodecId(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == HEADER_MARKER && (bytes[1] & CODEC_FLAG) != 0;
+    }
+
+    private ObjectSerializer getSerializer(int id) {
+
+        ObjectSerializer serializer = serializers.get(id);
+
+        if (serializer == null) {
+            throw new SystemException("no serializer registered for codec id:" + id);
+        }
+        return serializer;
+    }
+}
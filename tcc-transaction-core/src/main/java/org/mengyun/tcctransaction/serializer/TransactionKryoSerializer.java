@@ -0,0 +1,54 @@
+package org.mengyun.tcctransaction.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import org.mengyun.tcctransaction.Transaction;
+
+/**
+ * 事务 Kryo 序列化
+ * 按 {@link Transaction.SerialForm} 的字段读写，与默认 FieldSerializer 直接序列化之前的 Transaction 数据格式一致。
+ * 反序列化时 Kryo 引用表中登记的是序列化结构而非事务本身，事务对象图中不应再引用事务自身。
+ */
+public class TransactionKryoSerializer extends Serializer<Transaction> {
+
+    private final FieldSerializer<Transaction.SerialForm> formSerializer;
+
+    public TransactionKryoSerializer(Kryo kryo) {
+        this.formSerializer = new FieldSerializer<Transaction.SerialForm>(kryo, Transaction.SerialForm.class);
+    }
+
+    /**
+     * 为 Kryo 设置事务序列化，已注册的保留原编号
+     *
+     * @param kryo Kryo
+     */
+    public static void install(Kryo kryo) {
+
+        Registration registration = kryo.getClassResolver().getRegistration(Transaction.class);
+
+        if (registration != null) {
+            registration.setSerializer(new TransactionKryoSerializer(kryo));
+        } else {
+            kryo.addDefaultSerializer(Transaction.class, TransactionKryoSerializer.class);
+        }
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, Transaction transaction) {
+        formSerializer.write(kryo, output, transaction.toSerialForm());
+    }
+
+    @Override
+    public Transaction read(Kryo kryo, Input input, Class<Transaction> type) {
+        return Transaction.fromSerialForm(formSerializer.read(kryo, input, Transaction.SerialForm.class));
+    }
+
+    @Override
+    public Transaction copy(Kryo kryo, Transaction original) {
+        return Transaction.fromSerialForm(formSerializer.copy(kryo, original.toSerialForm()));
+    }
+}
@@ -1,6 +1,7 @@
 package org.mengyun.tcctransaction.support;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -14,66 +15,110 @@ public final class FactoryBuilder {
 
     }
 
-    private static List<BeanFactory> beanFactories = new ArrayList<BeanFactory>();
-
-    private static ConcurrentHashMap<Class, SingeltonFactory> classFactoryMap = new ConcurrentHashMap<Class, SingeltonFactory>();
+    /**
+     * 已注册的 BeanFactory 及按其解析的单例工厂，注册 BeanFactory 时整体替换，已解析的工厂随之失效
+     */
+    private static volatile Registry registry = new Registry(new ArrayList<BeanFactory>());
 
     public static <T> SingeltonFactory<T> factoryOf(Class<T> clazz) {
 
-        if (!classFactoryMap.containsKey(clazz)) {
+        Registry current = registry;
 
-            for (BeanFactory beanFactory : beanFactories) {
-                if (beanFactory.isFactoryOf(clazz)) {
-                    classFactoryMap.putIfAbsent(clazz, new SingeltonFactory<T>(clazz, beanFactory.getBean(clazz)));
-                }
-            }
+        SingeltonFactory<T> factory = current.classFactoryMap.get(clazz);
 
-            if (!classFactoryMap.containsKey(clazz)) {
-                classFactoryMap.putIfAbsent(clazz, new SingeltonFactory<T>(clazz));
-            }
+        if (factory == null) {
+            current.classFactoryMap.putIfAbsent(clazz, new SingeltonFactory<T>(clazz, current.beanFactories));
+            factory = current.classFactoryMap.get(clazz);
         }
 
-        return classFactoryMap.get(clazz);
+        return factory;
     }
 
-    public static void registerBeanFactory(BeanFactory beanFactory) {
+    public static synchronized void registerBeanFactory(BeanFactory beanFactory) {
+        List<BeanFactory> beanFactories = new ArrayList<BeanFactory>(registry.beanFactories);
         beanFactories.add(beanFactory);
+        registry = new Registry(beanFactories);
+    }
+
+    /**
+     * BeanFactory 列表与单例工厂的快照
+     */
+    private static class Registry {
+
+        private final List<BeanFactory> beanFactories;
+
+        private final ConcurrentHashMap<Class, SingeltonFactory> classFactoryMap = new ConcurrentHashMap<Class, SingeltonFactory>();
+
+        private Registry(List<BeanFactory> beanFactories) {
+            this.beanFactories = beanFactories;
+        }
     }
 
+    /**
+     * 单例工厂
+     * 首次获取时从 BeanFactory 查找，找不到时创建实例，每个工厂单独加锁。
+     */
     public static class SingeltonFactory<T> {
 
         private volatile T instance = null;
 
         private String className;
 
+        private final Class<T> clazz;
+
+        private final List<BeanFactory> beanFactories;
+
         public SingeltonFactory(Class<T> clazz, T instance) {
             this.className = clazz.getName();
+            this.clazz = clazz;
             this.instance = instance;
+            this.beanFactories = Collections.emptyList();
         }
 
         public SingeltonFactory(Class<T> clazz) {
+            this(clazz, Collections.<BeanFactory>emptyList());
+        }
+
+        SingeltonFactory(Class<T> clazz, List<BeanFactory> beanFactories) {
             this.className = clazz.getName();
+            this.clazz = clazz;
+            this.beanFactories = beanFactories;
         }
 
         public T getInstance() {
 
-            if (instance == null) {
-                synchronized (SingeltonFactory.class) {
-                    if (instance == null) {
-                        try {
-                            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            T result = instance;
 
-                            Class<?> clazz = loader.loadClass(className);
-
-                            instance = (T) clazz.newInstance();
-                        } catch (Exception e) {
-                            throw new RuntimeException("Failed to create an instance of " + className, e);
-                        }
+            if (result == null) {
+                synchronized (this) {
+                    result = instance;
+                    if (result == null) {
+                        result = createInstance();
+                        instance = result;
                     }
                 }
             }
 
-            return instance;
+            return result;
+        }
+
+        private T createInstance() {
+
+            for (BeanFactory beanFactory : beanFactories) {
+                if (beanFactory.isFactoryOf(clazz)) {
+                    return beanFactory.getBean(clazz);
+                }
+            }
+
+            try {
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+                Class<?> loadedClass = loader.loadClass(className);
+
+                return (T) loadedClass.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create an instance of " + className, e);
+            }
         }
 
         @Override
@@ -0,0 +1,244 @@
+package org.mengyun.tcctransaction.support;
+
+import org.mengyun.tcctransaction.ExternalArgument;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.repository.LargeArgumentStore;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.mengyun.tcctransaction.serializer.SerializerRegistry;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 大参数单独存储
+ * 登记参与者时，序列化后超过阈值的参数写入 {@link LargeArgumentStore}，调用上下文中替换为 {@link ExternalArgument}，
+ * 之后每次更新事务只写入摘要；执行确认、取消方法时再还原参数。未设置存储时不做处理。
+ * 相同内容在刷新间隔内只写入一次存储，超过间隔后再次引用时重新写入以刷新存储中的保留时间，避免仍被引用的参数被清理。
+ */
+public class LargeArguments {
+
+    /**
+     * 本地记录已写入存储的摘要数量上限
+     */
+    private static final int STORED_HASH_CACHE_SIZE = 10000;
+
+    private static volatile LargeArgumentStore store;
+
+    /**
+     * 单独存储的参数大小阈值，字节
+     */
+    private static volatile int threshold = 4096;
+
+    private static volatile ObjectSerializer serializer = new SerializerRegistry();
+
+    /**
+     * 本地跳过重复写入的时长，单位：秒，需远小于存储的保留时间
+     */
+    private static volatile int refreshSeconds = 3600;
+
+    /**
+     * 清理过期参数的间隔，单位：秒
+     */
+    private static volatile int cleanupSeconds = 3600;
+
+    private static volatile long lastCleanupTime = 0;
+
+    /**
+     * 已写入存储的摘要 -> 写入时间，刷新间隔内相同内容不重复写入
+     */
+    private static final Map<String, Long> storedHashes = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > STORED_HASH_CACHE_SIZE;
+                }
+            });
+
+    private LargeArguments() {
+
+    }
+
+    public static void setStore(LargeArgumentStore store) {
+        LargeArguments.store = store;
+    }
+
+    public static LargeArgumentStore getStore() {
+        return store;
+    }
+
+    public static void setThreshold(int threshold) {
+        LargeArguments.threshold = threshold;
+    }
+
+    public static void setSerializer(ObjectSerializer serializer) {
+        LargeArguments.serializer = serializer;
+    }
+
+    public static void setRefreshSeconds(int refreshSeconds) {
+        LargeArguments.refreshSeconds = refreshSeconds;
+    }
+
+    public static void setCleanupSeconds(int cleanupSeconds) {
+        LargeArguments.cleanupSeconds = cleanupSeconds;
+    }
+
+    /**
+     * 清理存储中过期的参数，距上次清理不足清理间隔时跳过
+     * 由事务恢复任务定期调用
+     *
+     * @return 清理的参数数量
+     */
+    public static int removeExpired() {
+
+        LargeArgumentStore currentStore = store;
+
+        if (currentStore == null) {
+            return 0;
+        }
+
+        synchronized (LargeArguments.class) {
+
+            long now = System.currentTimeMillis();
+
+            if (now - lastCleanupTime < cleanupSeconds * 1000L) {
+                return 0;
+            }
+
+            lastCleanupTime = now;
+        }
+
+        return currentStore.removeExpired();
+    }
+
+    /**
+     * 将超过阈值的参数写入存储并替换为摘要引用
+     *
+     * @param args 参数
+     * @return 没有需要替换的参数时返回原数组，否则返回新数组
+     */
+    public static Object[] externalize(Object[] args) {
+
+        LargeArgumentStore currentStore = store;
+
+        if (currentStore == null || args == null) {
+            return args;
+        }
+
+        Object[] result = args;
+
+        for (int i = 0; i < args.length; i++) {
+
+            if (!isCandidate(args[i])) {
+                continue;
+            }
+
+            byte[] content = serializer.serialize(args[i]);
+
+            if (content == null || content.length < threshold) {
+                continue;
+            }
+
+            byte[] hash = sha256(content);
+            String hashKey = toHex(hash);
+
+            long now = System.currentTimeMillis();
+            Long storedTime = storedHashes.get(hashKey);
+
+            if (storedTime == null || now - storedTime >= refreshSeconds * 1000L) {
+                currentStore.put(hash, content);
+                storedHashes.put(hashKey, now);
+            }
+
+            if (result == args) {
+                result = args.clone();
+            }
+            result[i] = new ExternalArgument(hash, args[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * 还原参数
+     *
+     * @param args 参数
+     * @return 没有摘要引用时返回原数组，否则返回还原后的新数组
+     */
+    public static Object[] resolve(Object[] args) {
+
+        if (args == null) {
+            return null;
+        }
+
+        Object[] result = args;
+
+        for (int i = 0; i < args.length; i++) {
+
+            if (!(args[i] instanceof ExternalArgument)) {
+                continue;
+            }
+
+            if (result == args) {
+                result = args.clone();
+            }
+            result[i] = load((ExternalArgument) args[i]);
+        }
+
+        return result;
+    }
+
+    private static Object load(ExternalArgument argument) {
+
+        Object value = argument.getValue();
+
+        if (value != null) {
+            return value;
+        }
+
+        LargeArgumentStore currentStore = store;
+
+        if (currentStore == null) {
+            throw new SystemException("large argument store not configured, argument hash:" + toHex(argument.getHash()));
+        }
+
+        byte[] content = currentStore.get(argument.getHash());
+
+        if (content == null) {
+            throw new SystemException("large argument not found, argument hash:" + toHex(argument.getHash()));
+        }
+
+        value = serializer.deserialize(content);
+        argument.setValue(value);
+        return value;
+    }
+
+    private static boolean isCandidate(Object arg) {
+        return arg != null
+                && !(arg instanceof TransactionContext)
+                && !(arg instanceof Number)
+                && !(arg instanceof Boolean)
+                && !(arg instanceof Character)
+                && !(arg instanceof Enum)
+                && !(arg instanceof String && ((String) arg).length() * 3 < threshold);
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
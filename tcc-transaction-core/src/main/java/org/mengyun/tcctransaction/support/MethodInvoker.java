@@ -0,0 +1,239 @@
+package org.mengyun.tcctransaction.support;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+import org.apache.commons.lang3.ClassUtils;
+import org.mengyun.tcctransaction.utils.ReflectionUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 方法调用器
+ * 按 类 + 方法名 + 参数类型 缓存解析结果，确认、取消方法每次执行只做查表。
+ * 公有类的公有方法使用生成的字节码直接调用，其它方法回退为反射调用。
+ * 两种方式都将业务方法抛出的异常包装为 {@link InvocationTargetException}，与反射调用一致。
+ * 目标对象、参数个数或类型不匹配时生成的字节码调用改为反射调用，抛出 {@link IllegalArgumentException} 等异常而不包装。
+ */
+public abstract class MethodInvoker {
+
+    /**
+     * 类 + 方法签名 -> 调用器
+     */
+    private static final ConcurrentMap<Key, MethodInvoker> invokers = new ConcurrentHashMap<Key, MethodInvoker>();
+
+    /**
+     * 类 -> 生成的方法访问类，每个类只生成一次
+     */
+    private static final ConcurrentMap<Class, MethodAccess> methodAccesses = new ConcurrentHashMap<Class, MethodAccess>();
+
+    /**
+     * 是否使用生成的字节码直接调用
+     */
+    private static volatile boolean generatedInvokerEnabled = true;
+
+    protected final Method method;
+
+    protected MethodInvoker(Method method) {
+        this.method = method;
+    }
+
+    public static void setGeneratedInvokerEnabled(boolean generatedInvokerEnabled) {
+        MethodInvoker.generatedInvokerEnabled = generatedInvokerEnabled;
+        invokers.clear();
+    }
+
+    /**
+     * 获得调用器
+     *
+     * @param targetClass    目标对象的类
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型数组
+     * @return 调用器
+     * @throws NoSuchMethodException 方法不存在
+     */
+    public static MethodInvoker of(Class targetClass, String methodName, Class[] parameterTypes) throws NoSuchMethodException {
+
+        Key key = new Key(targetClass, methodName, parameterTypes);
+
+        MethodInvoker invoker = invokers.get(key);
+
+        if (invoker == null) {
+            invokers.putIfAbsent(key, create(targetClass, targetClass.getMethod(methodName, parameterTypes)));
+            invoker = invokers.get(key);
+        }
+
+        return invoker;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * 执行方法
+     *
+     * @param target 目标对象
+     * @param args   参数
+     * @return 返回值
+     * @throws IllegalAccessException    无访问权限
+     * @throws InvocationTargetException 方法抛出异常
+     */
+    public abstract Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException;
+
+    private static MethodInvoker create(Class targetClass, Method method) {
+
+        if (generatedInvokerEnabled && isDirectlyAccessible(targetClass, method)) {
+            try {
+                MethodAccess access = methodAccesses.get(targetClass);
+
+                if (access == null) {
+                    methodAccesses.putIfAbsent(targetClass, MethodAccess.get(targetClass));
+                    access = methodAccesses.get(targetClass);
+                }
+
+                return new GeneratedMethodInvoker(method, access, access.getIndex(method.getName(), method.getParameterTypes()));
+            } catch (RuntimeException e) {
+                // 无法生成时回退为反射调用
+            }
+        }
+
+        ReflectionUtils.makeAccessible(method);
+        return new ReflectionMethodInvoker(method);
+    }
+
+    private static boolean isDirectlyAccessible(Class targetClass, Method method) {
+        return Modifier.isPublic(targetClass.getModifiers())
+                && Modifier.isPublic(method.getModifiers())
+                && !Modifier.isStatic(method.getModifiers())
+                && !Proxy.isProxyClass(targetClass);
+    }
+
+    /**
+     * 反射调用
+     */
+    static class ReflectionMethodInvoker extends MethodInvoker {
+
+        ReflectionMethodInvoker(Method method) {
+            super(method);
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+            return method.invoke(target, args);
+        }
+    }
+
+    /**
+     * 生成的字节码按方法编号直接调用
+     * 生成的字节码不校验参数，捕获的异常都视为业务方法抛出，因此调用前先校验目标对象和参数，
+     * 不匹配时交给反射调用处理基本类型拓宽转换或抛出 {@link IllegalArgumentException}
+     */
+    static class GeneratedMethodInvoker extends MethodInvoker {
+
+        private final MethodAccess access;
+
+        private final int index;
+
+        /**
+         * 参数类型，基本类型替换为包装类型
+         */
+        private final Class[] argumentTypes;
+
+        /**
+         * 参数是否为基本类型
+         */
+        private final boolean[] primitives;
+
+        GeneratedMethodInvoker(Method method, MethodAccess access, int index) {
+            super(method);
+            this.access = access;
+            this.index = index;
+
+            Class[] parameterTypes = method.getParameterTypes();
+            this.argumentTypes = new Class[parameterTypes.length];
+            this.primitives = new boolean[parameterTypes.length];
+
+            for (int i = 0; i < parameterTypes.length; i++) {
+                primitives[i] = parameterTypes[i].isPrimitive();
+                argumentTypes[i] = primitives[i] ? ClassUtils.primitiveToWrapper(parameterTypes[i]) : parameterTypes[i];
+            }
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+
+            if (!isInvocable(target, args)) {
+                return method.invoke(target, args);
+            }
+
+            try {
+                return access.invoke(target, index, args);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        private boolean isInvocable(Object target, Object[] args) {
+
+            if (!method.getDeclaringClass().isInstance(target)) {
+                return false;
+            }
+
+            int length = args == null ? 0 : args.length;
+
+            if (length != argumentTypes.length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (args[i] == null ? primitives[i] : !argumentTypes[i].isInstance(args[i])) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    static final class Key {
+
+        private final Class targetClass;
+
+        private final String methodName;
+
+        private final Class[] parameterTypes;
+
+        private final int hash;
+
+        Key(Class targetClass, String methodName, Class[] parameterTypes) {
+            this.targetClass = targetClass;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+            this.hash = (targetClass.hashCode() * 31 + methodName.hashCode()) * 31 + Arrays.hashCode(parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return targetClass == other.targetClass
+                    && methodName.equals(other.methodName)
+                    && Arrays.equals(parameterTypes, other.parameterTypes);
+        }
+    }
+}
@@ -4,12 +4,15 @@ package org.mengyun.tcctransaction.dubbo.context;
 //import com.alibaba.dubbo.rpc.RpcContext;
 import org.apache.dubbo.rpc.RpcContext;
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
 import org.apache.dubbo.common.utils.StringUtils;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionXid;
 import org.mengyun.tcctransaction.dubbo.constants.TransactionContextConstants;
 
 import java.lang.reflect.Method;
+import java.util.Map;
 
 /**
  * Created by changming.xie on 1/19/17.
@@ -21,7 +24,7 @@ public class DubboTransactionContextEditor implements TransactionContextEditor {
         String context = RpcContext.getContext().getAttachment(TransactionContextConstants.TRANSACTION_CONTEXT);
 
         if (StringUtils.isNotEmpty(context)) {
-            return JSON.parseObject(context, TransactionContext.class);
+            return parseTransactionContext(context);
         }
 
         return null;
@@ -32,4 +35,33 @@ public class DubboTransactionContextEditor implements TransactionContextEditor {
 
         RpcContext.getContext().setAttachment(TransactionContextConstants.TRANSACTION_CONTEXT, JSON.toJSONString(transactionContext));
     }
+
+    /**
+     * 事务上下文为不可变对象，按字段解析后通过构建器创建，JSON 格式与之前保持一致
+     */
+    private TransactionContext parseTransactionContext(String context) {
+
+        JSONObject json = JSON.parseObject(context);
+        JSONObject xid = json.getJSONObject("xid");
+
+        TransactionContext.Builder builder = new TransactionContext.Builder()
+                .setStatus(json.getIntValue("status"));
+
+        if (xid != null) {
+            builder.setXid(new TransactionXid.Builder()
+                    .setGlobalTransactionId(xid.getBytes("globalTransactionId"))
+                    .setBranchQualifier(xid.getBytes("branchQualifier"))
+                    .build());
+        }
+
+        JSONObject attachments = json.getJSONObject("attachments");
+
+        if (attachments != null) {
+            for (Map.Entry<String, Object> entry : attachments.entrySet()) {
+                builder.setAttachment(entry.getKey(), entry.getValue() == null ? null : entry.getValue().toString());
+            }
+        }
+
+        return builder.build();
+    }
 }
@@ -8,4 +8,12 @@ public class LuaScriptConstant {
             "\treturn 0\n" +
             "end";
 
+    public static String RENAME_KEY1_TO_KEY2_AND_RESET_RETRY="if redis.call(\"exists\",KEYS[1])==1 and redis.call(\"exists\",KEYS[2])==0 then\n" +
+            "\tredis.call(\"rename\",KEYS[1],KEYS[2])\n" +
+            "\tredis.call(\"hmset\",KEYS[2],\"RETRIED_COUNT\",ARGV[1],\"NEXT_RETRY_TIME\",ARGV[2])\n" +
+            "\treturn 1\n" +
+            "else\n" +
+            "\treturn 0\n" +
+            "end";
+
 }
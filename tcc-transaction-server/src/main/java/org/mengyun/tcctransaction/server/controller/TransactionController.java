@@ -8,6 +8,7 @@ import org.mengyun.tcctransaction.server.vo.TransactionVo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -72,6 +73,68 @@ public class TransactionController {
         return modelAndView;
     }
 
+    /**
+     * 死信事务列表
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "deadletter")
+    public ModelAndView deadLetters(@RequestParam(value = "domain", required = false) String domain,
+                                    @RequestParam(value = "pagenum", required = false) Integer pageNum) {
+
+        logger.info("query dead letters with domain:{},pageNum:{}", domain, pageNum);
+
+        if (StringUtils.isEmpty(domain)) {
+            return manager();
+        }
+
+        if (pageNum == null) {
+            pageNum = DEFAULT_PAGE_NUM;
+        }
+
+        ModelAndView modelAndView = new ModelAndView("manager");
+
+        PageDto<TransactionVo> pageDto = daoRepository.getDao(domain).findDeadLetterPageDto(pageNum, DEFAULT_PAGE_SIZE);
+
+        Integer totalCount = pageDto.getTotalCount();
+
+        Integer pages = totalCount / DEFAULT_PAGE_SIZE;
+        if (totalCount % DEFAULT_PAGE_SIZE > 0) {
+            pages++;
+        }
+        modelAndView.addObject("pages", pages);
+
+        modelAndView.addObject("transactionVos", pageDto.getData());
+        modelAndView.addObject("pageNum", pageNum);
+        modelAndView.addObject("pageSize", DEFAULT_PAGE_SIZE);
+        modelAndView.addObject("domains", daoRepository.getDomains());
+        modelAndView.addObject("currentDomain", domain);
+        modelAndView.addObject("deadLetter", true);
+        modelAndView.addObject("urlWithoutPaging", "management?deadletter=true&domain=" + domain);
+        return modelAndView;
+    }
+
+    @RequestMapping(value = "/deadletter/requeue", method = RequestMethod.PUT)
+    @ResponseBody
+    public CommonResponse<Void> requeue(String domain, String globalTxId, String branchQualifier) {
+
+        logger.info("request /deadletter/requeue with domain: {} globalTxId: {} branchQualifier: {} ",
+                new Object[]{domain, globalTxId, branchQualifier});
+
+        boolean requeued;
+
+        try {
+            requeued = daoRepository.getDao(domain).requeue(globalTxId, branchQualifier);
+        } catch (RuntimeException e) {
+            logger.error("requeue dead letter transaction failed", e);
+            return new CommonResponse<Void>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "重新恢复失败：" + e.getMessage(), null);
+        }
+
+        if (!requeued) {
+            return new CommonResponse<Void>(HttpStatus.CONFLICT.value(), "死信事务不存在或恢复队列中已存在该事务", null);
+        }
+
+        return new CommonResponse<Void>();
+    }
+
     @RequestMapping(value = "/retry/reset", method = RequestMethod.PUT)
     @ResponseBody
     public CommonResponse<Void> reset(String domain, String globalTxId, String branchQualifier) {
@@ -35,18 +35,29 @@ public class JdbcTransactionDao implements TransactionDao {
         this.domain = domain;
     }
 
+    private static String DEAD_LETTER_KEY_NAME_SPACE = "TCC_TRANSACTION_DEAD_LETTER";
+
+    private static String TRANSACTION_COLUMNS = "DOMAIN,GLOBAL_TX_ID,BRANCH_QUALIFIER,CONTENT,STATUS,TRANSACTION_TYPE,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION,NEXT_RETRY_TIME";
+
     private String getTableName() {
         return KEY_NAME_SPACE + "_" + tableSuffix;
     }
 
+    private String getDeadLetterTableName() {
+        return DEAD_LETTER_KEY_NAME_SPACE + "_" + tableSuffix;
+    }
+
     @Override
     public List<TransactionVo> findTransactions(Integer pageNum, int pageSize) {
+        return findTransactions(getTableName(), pageNum, pageSize);
+    }
+
+    private List<TransactionVo> findTransactions(String tableName, Integer pageNum, int pageSize) {
 
         Connection connection = getConnection();
         List<TransactionVo> transactionVos = new ArrayList<TransactionVo>();
         PreparedStatement preparedStatement = null;
         try {
-            String tableName = getTableName();
             String sql = "select DOMAIN," +
                     "GLOBAL_TX_ID," +
                     "BRANCH_QUALIFIER," +
@@ -85,6 +96,10 @@ public class JdbcTransactionDao implements TransactionDao {
 
     @Override
     public Integer countOfFindTransactions() {
+        return countOfFindTransactions(getTableName());
+    }
+
+    private Integer countOfFindTransactions(String tableName) {
 
         Connection connection = getConnection();
         PageVo<TransactionVo> pageVo = new PageVo<TransactionVo>();
@@ -93,8 +108,6 @@ public class JdbcTransactionDao implements TransactionDao {
         PreparedStatement preparedStatement = null;
 
         try {
-            String tableName = getTableName();
-
             preparedStatement = connection.prepareStatement("select COUNT(*) as count from " + tableName);
             ResultSet resultSet = preparedStatement.executeQuery();
             if (resultSet.next()) {
@@ -197,6 +210,58 @@ public class JdbcTransactionDao implements TransactionDao {
         }
     }
 
+    @Override
+    public boolean requeue(String globalTxId, String branchQualifier) {
+
+        Connection connection = getConnection();
+        PreparedStatement insertStatement = null;
+        PreparedStatement deleteStatement = null;
+        try {
+            connection.setAutoCommit(false);
+
+            String condition = " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?";
+
+            // 重置重试次数，立即到达重试时间
+            String selectColumns = TRANSACTION_COLUMNS
+                    .replace("RETRIED_COUNT", "0")
+                    .replace("NEXT_RETRY_TIME", String.valueOf(System.currentTimeMillis()));
+
+            insertStatement = connection.prepareStatement("INSERT INTO " + getTableName() + "(" + TRANSACTION_COLUMNS + ") SELECT "
+                    + selectColumns + " FROM " + getDeadLetterTableName() + condition);
+            insertStatement.setBytes(1, DatatypeConverter.parseHexBinary(globalTxId));
+            insertStatement.setBytes(2, DatatypeConverter.parseHexBinary(branchQualifier));
+
+            deleteStatement = connection.prepareStatement("DELETE FROM " + getDeadLetterTableName() + condition);
+            deleteStatement.setBytes(1, DatatypeConverter.parseHexBinary(globalTxId));
+            deleteStatement.setBytes(2, DatatypeConverter.parseHexBinary(branchQualifier));
+
+            int inserted = insertStatement.executeUpdate();
+            int deleted = deleteStatement.executeUpdate();
+
+            if (inserted > 0 && inserted == deleted) {
+                connection.commit();
+                return true;
+            }
+
+            connection.rollback();
+            return false;
+        } catch (Exception e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ignore) {
+            }
+            throw new RuntimeException("requeue error", e);
+        } finally {
+            closeStatement(insertStatement);
+            closeStatement(deleteStatement);
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignore) {
+            }
+            releaseConnection(connection);
+        }
+    }
+
     @Override
     public String getDomain() {
         return domain;
@@ -251,4 +316,14 @@ public class JdbcTransactionDao implements TransactionDao {
         return new PageDto<TransactionVo>(transactionVos, pageNum, pageSize, countOfFindTransactions);
 
     }
+
+    @Override
+    public PageDto<TransactionVo> findDeadLetterPageDto(Integer pageNum, int pageSize) {
+
+        List<TransactionVo> transactionVos = findTransactions(getDeadLetterTableName(), pageNum, pageSize);
+
+        Integer countOfFindTransactions = countOfFindTransactions(getDeadLetterTableName());
+
+        return new PageDto<TransactionVo>(transactionVos, pageNum, pageSize, countOfFindTransactions);
+    }
 }
@@ -2,6 +2,7 @@ package org.mengyun.tcctransaction.server.dao;
 
 import org.apache.commons.lang3.time.DateUtils;
 import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.repository.RedisTransactionRepository;
 import org.mengyun.tcctransaction.repository.TransactionIOException;
 import org.mengyun.tcctransaction.repository.helper.JedisCallback;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
@@ -34,6 +35,13 @@ public class RedisTransactionDao implements TransactionDao {
         return keySuffix + ":";
     }
 
+    /**
+     * 与 RedisTransactionRepository 的死信键前缀一致
+     */
+    private String getDeadLetterKeyPrefix() {
+        return RedisTransactionRepository.getDeadLetterKeyPrefix(getKeyPrefix());
+    }
+
 
     @Override
     public List<TransactionVo> findTransactions(final Integer pageNum, final int pageSize) {
@@ -228,6 +236,23 @@ public class RedisTransactionDao implements TransactionDao {
         });
     }
 
+    @Override
+    public boolean requeue(final String globalTxId, final String branchQualifier) {
+        return RedisHelper.execute(jedisPool, new JedisCallback<Boolean>() {
+            @Override
+            public Boolean doInJedis(Jedis jedis) {
+
+                byte[] deadLetterKey = RedisHelper.getRedisKey(getDeadLetterKeyPrefix(), globalTxId, branchQualifier);
+                byte[] key = RedisHelper.getRedisKey(getKeyPrefix(), globalTxId, branchQualifier);
+
+                Long result = (Long) jedis.eval(LuaScriptConstant.RENAME_KEY1_TO_KEY2_AND_RESET_RETRY.getBytes(),
+                        2, deadLetterKey, key, ByteUtils.intToBytes(0), ByteUtils.longToBytes(System.currentTimeMillis()));
+
+                return result == 1;
+            }
+        });
+    }
+
     @Override
     public String getDomain() {
         return domain;
@@ -251,6 +276,15 @@ public class RedisTransactionDao implements TransactionDao {
 
     @Override
     public PageDto<TransactionVo> findTransactionPageDto(Integer pageNum, int pageSize) {
+        return findTransactionPageDto(getKeyPrefix(), pageNum, pageSize);
+    }
+
+    @Override
+    public PageDto<TransactionVo> findDeadLetterPageDto(Integer pageNum, int pageSize) {
+        return findTransactionPageDto(getDeadLetterKeyPrefix(), pageNum, pageSize);
+    }
+
+    private PageDto<TransactionVo> findTransactionPageDto(String keyPrefix, Integer pageNum, int pageSize) {
 
         PageDto<TransactionVo> pageDto = new PageDto<TransactionVo>();
 
@@ -265,7 +299,7 @@ public class RedisTransactionDao implements TransactionDao {
 
         List<byte[]> allKeys = new ArrayList<byte[]>();
 
-        String pattern = getKeyPrefix() + "*";
+        String pattern = keyPrefix + "*";
 
         if (isSupportScanCommand(jedis)) {
             logger.info("redis server support scan command.");
@@ -25,5 +25,17 @@ public interface TransactionDao {
     public String getDomain();
 
     public PageDto<TransactionVo> findTransactionPageDto(Integer pageNum, int pageSize);
+
+    /**
+     * 分页查询死信事务
+     */
+    public PageDto<TransactionVo> findDeadLetterPageDto(Integer pageNum, int pageSize);
+
+    /**
+     * 死信事务放回恢复队列，重置重试次数
+     *
+     * @return 是否放回，死信事务不存在或恢复队列中已存在同一事务时返回 false
+     */
+    public boolean requeue(String globalTxId, String branchQualifier);
 }
 
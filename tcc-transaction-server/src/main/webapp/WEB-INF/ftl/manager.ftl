@@ -32,13 +32,14 @@
             &emsp;&emsp;
             <div class="form-group">
                 <button class="btn btn-info j-add">查询</button>
+                <button class="btn btn-warning j-dead-letter">死信</button>
             </div>
 
         </div>
         <br/>
 
         <div class="table-responsive">
-            <p>查询结果</p>
+            <p>[#if deadLetter??]死信事务[#else]查询结果[/#if]</p>
             <table class="table table-hover table-striped table-bordered">
                 <thead>
                 <tr>
@@ -88,10 +89,14 @@
                         [/#if]
                     </td>
                     <td>
+                    [#if deadLetter??]
+                        <button class="btn btn-info btn-xs j-requeue" data-url="" data-echo="">重新恢复</button>
+                    [#else]
                         <button class="btn btn-info btn-xs j-edit" data-url="" data-echo="">重置</button>
                         <button class="btn btn-info btn-xs j-delete" data-url="" data-echo="">删除</button>
                         <button class="btn btn-info btn-xs j-cancel" data-url="" data-echo="">取消</button>
                         <button class="btn btn-info btn-xs j-confirm" data-url="" data-echo="">确认</button>
+                    [/#if]
                     </td>
                 </tr>
                 [/#list]
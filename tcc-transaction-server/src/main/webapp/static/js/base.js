@@ -15,6 +15,15 @@ jQuery(document).ready(function($) {
 		location.href = 'management?domain='+searchValue+'&pagenum=1';
 	});
 
+	$('.j-dead-letter').click(function(event) {
+		var searchValue = iptSearch.val();
+		if($.trim(searchValue) === '') {
+			return;
+		}
+
+		location.href = 'management?deadletter=true&domain='+searchValue+'&pagenum=1';
+	});
+
 		iptSearch.keyup(function(event) {
 			if(event.keyCode === 13) {
 				btnSearch.click();
@@ -169,4 +178,42 @@ jQuery(document).ready(function($) {
 
     });
 
+    $('.table > tbody').on('click', '.j-requeue', function () {
+        var $this = $(this),
+            globalTxId,
+            branchQualifier,
+            domain,
+            url;
+
+        globalTxId = $this.parent().siblings().eq(1).text();
+        branchQualifier = $this.parent().siblings().eq(2).text();
+        domain = (location.href.match(/domain=([^&]+)/) || [,''])[1];
+        if(!domain) {
+            return;
+        }
+
+        url = 'management/deadletter/requeue';
+        $.ajax({
+            url: url,
+            type: 'PUT',
+            dataType: 'json',
+            data: {
+                domain:domain,
+                globalTxId: globalTxId,
+                branchQualifier: branchQualifier
+            }
+        })
+            .done(function(result) {
+                if(result.code === 200) {
+                    location.reload();
+                } else {
+                    alert(result.message);
+                }
+            })
+            .fail(function() {
+                console.log(arguments);
+            });
+
+    });
+
 });
\ No newline at end of file
@@ -10,6 +10,70 @@ CREATE TABLE `TCC_TRANSACTION` (
   `CREATE_TIME` datetime DEFAULT NULL,
   `LAST_UPDATE_TIME` datetime DEFAULT NULL,
   `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0,
   PRIMARY KEY (`TRANSACTION_ID`),
-  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
-) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
\ No newline at end of file
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN_NEXT_RETRY_TIME` (`DOMAIN`,`NEXT_RETRY_TIME`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
+
+CREATE TABLE `TCC_TRANSACTION_PARTICIPANT` (
+  `PARTICIPANT_ID` int(11) NOT NULL AUTO_INCREMENT,
+  `DOMAIN` varchar(100) DEFAULT NULL,
+  `GLOBAL_TX_ID` varbinary(32) NOT NULL,
+  `BRANCH_QUALIFIER` varbinary(32) NOT NULL,
+  `SEQUENCE` int(11) NOT NULL,
+  `CONTENT` varbinary(8000) DEFAULT NULL,
+  `CREATE_TIME` datetime DEFAULT NULL,
+  PRIMARY KEY (`PARTICIPANT_ID`),
+  UNIQUE KEY `UX_TX_BQ_SEQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`,`SEQUENCE`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
+
+CREATE TABLE `TCC_TRANSACTION_DEAD_LETTER` (
+  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
+  `DOMAIN` varchar(100) DEFAULT NULL,
+  `GLOBAL_TX_ID` varbinary(32) NOT NULL,
+  `BRANCH_QUALIFIER` varbinary(32) NOT NULL,
+  `CONTENT` varbinary(8000) DEFAULT NULL,
+  `STATUS` int(11) DEFAULT NULL,
+  `TRANSACTION_TYPE` int(11) DEFAULT NULL,
+  `RETRIED_COUNT` int(11) DEFAULT NULL,
+  `CREATE_TIME` datetime DEFAULT NULL,
+  `LAST_UPDATE_TIME` datetime DEFAULT NULL,
+  `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  PRIMARY KEY (`TRANSACTION_ID`),
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN` (`DOMAIN`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
+
+-- CREATE_TIME 为最后引用时间，每次被事务引用时刷新，超过保留时间后由恢复任务删除
+CREATE TABLE `TCC_LARGE_ARGUMENT` (
+  `ARGUMENT_HASH` varbinary(32) NOT NULL,
+  `CONTENT` longblob NOT NULL,
+  `CREATE_TIME` datetime NOT NULL,
+  PRIMARY KEY (`ARGUMENT_HASH`),
+  KEY `IX_CREATE_TIME` (`CREATE_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- 调用描述编号与方法签名，参与者只保存编号时用于未注册编号的加载
+CREATE TABLE `TCC_INVOCATION_DESCRIPTOR` (
+  `DOMAIN` varchar(100) NOT NULL,
+  `DESCRIPTOR_ID` int(11) NOT NULL,
+  `SIGNATURE` varchar(2000) NOT NULL,
+  `CREATE_TIME` datetime NOT NULL,
+  PRIMARY KEY (`DOMAIN`,`DESCRIPTOR_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `TCC_RECOVERY_LEASE` (
+  `DOMAIN` varchar(100) NOT NULL,
+  `LEASE_KEY` varchar(128) NOT NULL,
+  `OWNER` varchar(128) NOT NULL,
+  `EXPIRE_TIME` bigint(20) NOT NULL,
+  PRIMARY KEY (`DOMAIN`,`LEASE_KEY`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- 已有 TCC_TRANSACTION 表升级，120 为恢复间隔(秒)
+-- ALTER TABLE `TCC_TRANSACTION` ADD COLUMN `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL, ADD COLUMN `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0, ADD KEY `IX_DOMAIN_NEXT_RETRY_TIME` (`DOMAIN`,`NEXT_RETRY_TIME`);
+-- 未设置重试时间的记录按 最后更新时间 + 恢复间隔 查询，也可执行以下语句补齐后使用索引
+-- UPDATE `TCC_TRANSACTION` SET `NEXT_RETRY_TIME` = UNIX_TIMESTAMP(`LAST_UPDATE_TIME`) * 1000 + 120 * 1000 WHERE `NEXT_RETRY_TIME` IS NULL;
@@ -14,10 +14,13 @@ public class ConfigurableCoordinatorAspect extends ResourceCoordinatorAspect imp
 
     private TransactionConfigurator transactionConfigurator;
 
+    private boolean invocationDescriptorEnabled = false;
+
     public void init() {
 
         ResourceCoordinatorInterceptor resourceCoordinatorInterceptor = new ResourceCoordinatorInterceptor();
         resourceCoordinatorInterceptor.setTransactionManager(transactionConfigurator.getTransactionManager());
+        resourceCoordinatorInterceptor.setInvocationDescriptorEnabled(invocationDescriptorEnabled);
         this.setResourceCoordinatorInterceptor(resourceCoordinatorInterceptor);
     }
 
@@ -29,4 +32,8 @@ public class ConfigurableCoordinatorAspect extends ResourceCoordinatorAspect imp
     public void setTransactionConfigurator(TransactionConfigurator transactionConfigurator) {
         this.transactionConfigurator = transactionConfigurator;
     }
+
+    public void setInvocationDescriptorEnabled(boolean invocationDescriptorEnabled) {
+        this.invocationDescriptorEnabled = invocationDescriptorEnabled;
+    }
 }
@@ -0,0 +1,49 @@
+package org.mengyun.tcctransaction.spring;
+
+import org.aspectj.lang.annotation.Aspect;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.interceptor.FusedCompensableAspect;
+import org.mengyun.tcctransaction.interceptor.FusedCompensableInterceptor;
+import org.mengyun.tcctransaction.interceptor.ResourceCoordinatorInterceptor;
+import org.mengyun.tcctransaction.support.TransactionConfigurator;
+import org.springframework.core.Ordered;
+
+/**
+ * 合并切面，使用 tcc-transaction-fused.xml 替代 tcc-transaction.xml 时启用
+ */
+@Aspect
+public class ConfigurableFusedAspect extends FusedCompensableAspect implements Ordered {
+
+    private TransactionConfigurator transactionConfigurator;
+
+    private boolean invocationDescriptorEnabled = false;
+
+    public void init() {
+
+        TransactionManager transactionManager = transactionConfigurator.getTransactionManager();
+
+        ResourceCoordinatorInterceptor resourceCoordinatorInterceptor = new ResourceCoordinatorInterceptor();
+        resourceCoordinatorInterceptor.setTransactionManager(transactionManager);
+        resourceCoordinatorInterceptor.setInvocationDescriptorEnabled(invocationDescriptorEnabled);
+
+        FusedCompensableInterceptor fusedCompensableInterceptor = new FusedCompensableInterceptor();
+        fusedCompensableInterceptor.setTransactionManager(transactionManager);
+        fusedCompensableInterceptor.setDelayCancelExceptions(transactionConfigurator.getRecoverConfig().getDelayCancelExceptions());
+        fusedCompensableInterceptor.setResourceCoordinatorInterceptor(resourceCoordinatorInterceptor);
+
+        this.setFusedCompensableInterceptor(fusedCompensableInterceptor);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    public void setTransactionConfigurator(TransactionConfigurator transactionConfigurator) {
+        this.transactionConfigurator = transactionConfigurator;
+    }
+
+    public void setInvocationDescriptorEnabled(boolean invocationDescriptorEnabled) {
+        this.invocationDescriptorEnabled = invocationDescriptorEnabled;
+    }
+}
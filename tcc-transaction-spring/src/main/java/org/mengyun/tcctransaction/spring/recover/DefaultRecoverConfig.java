@@ -37,6 +37,16 @@ public class DefaultRecoverConfig implements RecoverConfig {
 
     private Set<Class<? extends Exception>> delayCancelExceptions = new HashSet<Class<? extends Exception>>();
 
+    /**
+     * 恢复线程数量
+     */
+    private int recoverThreadPoolSize = 8;
+
+    /**
+     * 单个事务恢复的超时时间，单位：秒
+     */
+    private int recoverTimeout = 60;
+
     public DefaultRecoverConfig() {
         delayCancelExceptions.add(OptimisticLockException.class);
         delayCancelExceptions.add(SocketTimeoutException.class);
@@ -87,4 +97,22 @@ public class DefaultRecoverConfig implements RecoverConfig {
     public void setAsyncTerminateThreadPoolSize(int asyncTerminateThreadPoolSize) {
         this.asyncTerminateThreadPoolSize = asyncTerminateThreadPoolSize;
     }
+
+    @Override
+    public int getRecoverThreadPoolSize() {
+        return recoverThreadPoolSize;
+    }
+
+    public void setRecoverThreadPoolSize(int recoverThreadPoolSize) {
+        this.recoverThreadPoolSize = recoverThreadPoolSize;
+    }
+
+    @Override
+    public int getRecoverTimeout() {
+        return recoverTimeout;
+    }
+
+    public void setRecoverTimeout(int recoverTimeout) {
+        this.recoverTimeout = recoverTimeout;
+    }
 }
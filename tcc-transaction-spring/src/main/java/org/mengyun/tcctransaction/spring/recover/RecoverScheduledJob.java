@@ -1,14 +1,25 @@
 package org.mengyun.tcctransaction.spring.recover;
 
 import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.recover.RecoveryPartitioner;
+import org.mengyun.tcctransaction.recover.RecoveryThrottle;
+import org.mengyun.tcctransaction.recover.RetryBackoffPolicy;
+import org.mengyun.tcctransaction.recover.RetryScheduler;
 import org.mengyun.tcctransaction.recover.TransactionRecovery;
+import org.mengyun.tcctransaction.repository.JdbcRecoveryLeaseStore;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+import org.mengyun.tcctransaction.repository.RecoveryLeaseStore;
 import org.mengyun.tcctransaction.support.TransactionConfigurator;
+import org.mengyun.tcctransaction.utils.StringUtils;
 import org.quartz.Scheduler;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.quartz.CronTriggerFactoryBean;
 import org.springframework.scheduling.quartz.MethodInvokingJobDetailFactoryBean;
 
 /**
  * 事务恢复定时任务
+ * 配置 {@link RetryScheduler} 时，本节点已知的失败事务到期即重试，定时任务只作兜底，可调低频率
  * Created by changming.xie on 6/2/16.
  */
 public class RecoverScheduledJob {
@@ -19,8 +30,48 @@ public class RecoverScheduledJob {
 
     private Scheduler scheduler;
 
+    @Autowired(required = false)
+    private RecoveryPartitioner recoveryPartitioner;
+
+    @Autowired(required = false)
+    private RecoveryLeaseStore recoveryLeaseStore;
+
+    @Autowired(required = false)
+    private RetryBackoffPolicy retryBackoffPolicy;
+
+    @Autowired(required = false)
+    private RetryScheduler retryScheduler;
+
+    @Autowired(required = false)
+    private RecoveryThrottle recoveryThrottle;
+
     public void init() {
 
+        // 配置了租约存储时按分区恢复
+        if (recoveryPartitioner == null && recoveryLeaseStore != null) {
+            recoveryPartitioner = new RecoveryPartitioner();
+            recoveryPartitioner.setLeaseStore(recoveryLeaseStore);
+        }
+
+        if (recoveryPartitioner != null) {
+            checkLeaseStoreDomain(recoveryPartitioner.getLeaseStore());
+            transactionRecovery.setRecoveryPartitioner(recoveryPartitioner);
+        }
+
+        if (retryBackoffPolicy != null) {
+            transactionRecovery.setBackoffPolicy(retryBackoffPolicy);
+        }
+
+        if (recoveryThrottle != null) {
+            transactionRecovery.setRecoveryThrottle(recoveryThrottle);
+        }
+
+        if (retryScheduler != null) {
+            retryScheduler.setTransactionRecovery(transactionRecovery);
+            transactionRecovery.setRetryScheduler(retryScheduler);
+            transactionConfigurator.getTransactionManager().setRetryScheduler(retryScheduler);
+        }
+
         try {
             MethodInvokingJobDetailFactoryBean jobDetail = new MethodInvokingJobDetailFactoryBean();
             jobDetail.setTargetObject(transactionRecovery);
@@ -46,6 +97,27 @@ public class RecoverScheduledJob {
         }
     }
 
+    /**
+     * JDBC 租约按业务域区分，未设置时使用 JDBC 事务存储的业务域，都未设置时启动失败
+     */
+    private void checkLeaseStoreDomain(RecoveryLeaseStore leaseStore) {
+
+        if (!(leaseStore instanceof JdbcRecoveryLeaseStore)
+                || StringUtils.isNotEmpty(((JdbcRecoveryLeaseStore) leaseStore).getDomain())) {
+            return;
+        }
+
+        TransactionRepository transactionRepository = transactionConfigurator.getTransactionRepository();
+
+        if (transactionRepository instanceof JdbcTransactionRepository
+                && StringUtils.isNotEmpty(((JdbcTransactionRepository) transactionRepository).getDomain())) {
+            ((JdbcRecoveryLeaseStore) leaseStore).setDomain(((JdbcTransactionRepository) transactionRepository).getDomain());
+            return;
+        }
+
+        throw new SystemException("domain of JdbcRecoveryLeaseStore is required when the transaction repository has no domain");
+    }
+
     public void setTransactionRecovery(TransactionRecovery transactionRecovery) {
         this.transactionRecovery = transactionRecovery;
     }
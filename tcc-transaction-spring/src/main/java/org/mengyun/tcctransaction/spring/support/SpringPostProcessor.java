@@ -1,13 +1,19 @@
 package org.mengyun.tcctransaction.spring.support;
 
+import org.mengyun.tcctransaction.InvocationDescriptorRegistry;
+import org.mengyun.tcctransaction.api.Compensable;
 import org.mengyun.tcctransaction.support.BeanFactory;
 import org.mengyun.tcctransaction.support.FactoryBuilder;
+import org.mengyun.tcctransaction.utils.ReflectionUtils;
+import org.mengyun.tcctransaction.utils.StringUtils;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 
 import javax.annotation.PostConstruct;
+import java.lang.reflect.Method;
 
 /**
  * Created by changmingxie on 11/20/15.
@@ -21,5 +27,45 @@ public class SpringPostProcessor implements ApplicationListener<ContextRefreshed
         if (applicationContext.getParent() == null) {
             FactoryBuilder.registerBeanFactory(applicationContext.getBean(BeanFactory.class));
         }
+
+        registerInvocationDescriptors(applicationContext);
+    }
+
+    /**
+     * 注册 @Compensable 方法的确认、取消方法调用描述，恢复时可读取只保存调用描述编号的参与者
+     * 类的确定方式与 ResourceCoordinatorInterceptor 登记参与者时一致
+     */
+    private void registerInvocationDescriptors(ApplicationContext applicationContext) {
+
+        for (String beanName : applicationContext.getBeanDefinitionNames()) {
+
+            Class<?> beanType = applicationContext.getType(beanName);
+
+            if (beanType == null) {
+                continue;
+            }
+
+            Class<?> userClass = ClassUtils.getUserClass(beanType);
+
+            for (Method method : userClass.getMethods()) {
+
+                Compensable compensable = method.getAnnotation(Compensable.class);
+
+                if (compensable == null) {
+                    continue;
+                }
+
+                Class targetClass = userClass.isInterface() ? userClass
+                        : ReflectionUtils.getDeclaringType(userClass, method.getName(), method.getParameterTypes());
+
+                if (StringUtils.isNotEmpty(compensable.confirmMethod())) {
+                    InvocationDescriptorRegistry.register(targetClass, compensable.confirmMethod(), method.getParameterTypes());
+                }
+
+                if (StringUtils.isNotEmpty(compensable.cancelMethod())) {
+                    InvocationDescriptorRegistry.register(targetClass, compensable.cancelMethod(), method.getParameterTypes());
+                }
+            }
+        }
     }
 }
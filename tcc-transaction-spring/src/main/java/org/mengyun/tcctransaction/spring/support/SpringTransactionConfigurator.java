@@ -1,10 +1,16 @@
 package org.mengyun.tcctransaction.spring.support;
 
+import org.mengyun.tcctransaction.InvocationDescriptorRegistry;
 import org.mengyun.tcctransaction.TransactionManager;
 import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.api.XidGenerator;
 import org.mengyun.tcctransaction.recover.RecoverConfig;
 import org.mengyun.tcctransaction.repository.CachableTransactionRepository;
+import org.mengyun.tcctransaction.repository.InvocationDescriptorStore;
+import org.mengyun.tcctransaction.repository.LargeArgumentStore;
 import org.mengyun.tcctransaction.spring.recover.DefaultRecoverConfig;
+import org.mengyun.tcctransaction.support.LargeArguments;
 import org.mengyun.tcctransaction.support.TransactionConfigurator;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -24,10 +30,31 @@ public class SpringTransactionConfigurator implements TransactionConfigurator {
     @Autowired(required = false)
     private RecoverConfig recoverConfig = DefaultRecoverConfig.INSTANCE;
 
+    @Autowired(required = false)
+    private XidGenerator xidGenerator;
+
+    @Autowired(required = false)
+    private LargeArgumentStore largeArgumentStore;
+
+    @Autowired(required = false)
+    private InvocationDescriptorStore invocationDescriptorStore;
 
     private TransactionManager transactionManager;
 
     public void init() {
+
+        if (xidGenerator != null) {
+            TransactionXid.setXidGenerator(xidGenerator);
+        }
+
+        if (largeArgumentStore != null) {
+            LargeArguments.setStore(largeArgumentStore);
+        }
+
+        if (invocationDescriptorStore != null) {
+            InvocationDescriptorRegistry.setStore(invocationDescriptorStore);
+        }
+
         transactionManager = new TransactionManager();
         transactionManager.setTransactionRepository(transactionRepository);
 
@@ -49,6 +76,7 @@ public class SpringTransactionConfigurator implements TransactionConfigurator {
 
         if (transactionRepository instanceof CachableTransactionRepository) {
             ((CachableTransactionRepository) transactionRepository).setExpireDuration(recoverConfig.getRecoverDuration());
+            ((CachableTransactionRepository) transactionRepository).setRecoverDuration(recoverConfig.getRecoverDuration());
         }
     }
 
@@ -12,8 +12,11 @@ CREATE TABLE `TCC_TRANSACTION_CAP` (
   `CREATE_TIME` datetime DEFAULT NULL,
   `LAST_UPDATE_TIME` datetime DEFAULT NULL,
   `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0,
   PRIMARY KEY (`TRANSACTION_ID`),
-  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN_NEXT_RETRY_TIME` (`DOMAIN`,`NEXT_RETRY_TIME`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 CREATE TABLE `TCC_TRANSACTION_ORD` (
@@ -28,8 +31,11 @@ CREATE TABLE `TCC_TRANSACTION_ORD` (
   `CREATE_TIME` datetime DEFAULT NULL,
   `LAST_UPDATE_TIME` datetime DEFAULT NULL,
   `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0,
   PRIMARY KEY (`TRANSACTION_ID`),
-  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN_NEXT_RETRY_TIME` (`DOMAIN`,`NEXT_RETRY_TIME`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 CREATE TABLE `TCC_TRANSACTION_RED` (
@@ -44,8 +50,11 @@ CREATE TABLE `TCC_TRANSACTION_RED` (
   `CREATE_TIME` datetime DEFAULT NULL,
   `LAST_UPDATE_TIME` datetime DEFAULT NULL,
   `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0,
   PRIMARY KEY (`TRANSACTION_ID`),
-  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN_NEXT_RETRY_TIME` (`DOMAIN`,`NEXT_RETRY_TIME`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 
@@ -61,6 +70,81 @@ CREATE TABLE `TCC_TRANSACTION_UT` (
   `CREATE_TIME` datetime DEFAULT NULL,
   `LAST_UPDATE_TIME` datetime DEFAULT NULL,
   `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0,
   PRIMARY KEY (`TRANSACTION_ID`),
-  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8;
\ No newline at end of file
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN_NEXT_RETRY_TIME` (`DOMAIN`,`NEXT_RETRY_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `TCC_TRANSACTION_DEAD_LETTER_CAP` (
+  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
+  `DOMAIN` varchar(100) DEFAULT NULL,
+  `GLOBAL_TX_ID` varbinary(32) NOT NULL,
+  `BRANCH_QUALIFIER` varbinary(32) NOT NULL,
+  `CONTENT` varbinary(8000) DEFAULT NULL,
+  `STATUS` int(11) DEFAULT NULL,
+  `TRANSACTION_TYPE` int(11) DEFAULT NULL,
+  `RETRIED_COUNT` int(11) DEFAULT NULL,
+  `CREATE_TIME` datetime DEFAULT NULL,
+  `LAST_UPDATE_TIME` datetime DEFAULT NULL,
+  `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  PRIMARY KEY (`TRANSACTION_ID`),
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN` (`DOMAIN`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `TCC_TRANSACTION_DEAD_LETTER_ORD` (
+  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
+  `DOMAIN` varchar(100) DEFAULT NULL,
+  `GLOBAL_TX_ID` varbinary(32) NOT NULL,
+  `BRANCH_QUALIFIER` varbinary(32) NOT NULL,
+  `CONTENT` varbinary(8000) DEFAULT NULL,
+  `STATUS` int(11) DEFAULT NULL,
+  `TRANSACTION_TYPE` int(11) DEFAULT NULL,
+  `RETRIED_COUNT` int(11) DEFAULT NULL,
+  `CREATE_TIME` datetime DEFAULT NULL,
+  `LAST_UPDATE_TIME` datetime DEFAULT NULL,
+  `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  PRIMARY KEY (`TRANSACTION_ID`),
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN` (`DOMAIN`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `TCC_TRANSACTION_DEAD_LETTER_RED` (
+  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
+  `DOMAIN` varchar(100) DEFAULT NULL,
+  `GLOBAL_TX_ID` varbinary(32) NOT NULL,
+  `BRANCH_QUALIFIER` varbinary(32) NOT NULL,
+  `CONTENT` varbinary(8000) DEFAULT NULL,
+  `STATUS` int(11) DEFAULT NULL,
+  `TRANSACTION_TYPE` int(11) DEFAULT NULL,
+  `RETRIED_COUNT` int(11) DEFAULT NULL,
+  `CREATE_TIME` datetime DEFAULT NULL,
+  `LAST_UPDATE_TIME` datetime DEFAULT NULL,
+  `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  PRIMARY KEY (`TRANSACTION_ID`),
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN` (`DOMAIN`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `TCC_TRANSACTION_DEAD_LETTER_UT` (
+  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
+  `DOMAIN` varchar(100) DEFAULT NULL,
+  `GLOBAL_TX_ID` varbinary(32) NOT NULL,
+  `BRANCH_QUALIFIER` varbinary(32) NOT NULL,
+  `CONTENT` varbinary(8000) DEFAULT NULL,
+  `STATUS` int(11) DEFAULT NULL,
+  `TRANSACTION_TYPE` int(11) DEFAULT NULL,
+  `RETRIED_COUNT` int(11) DEFAULT NULL,
+  `CREATE_TIME` datetime DEFAULT NULL,
+  `LAST_UPDATE_TIME` datetime DEFAULT NULL,
+  `VERSION` int(11) DEFAULT NULL,
+  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,
+  PRIMARY KEY (`TRANSACTION_ID`),
+  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`),
+  KEY `IX_DOMAIN` (`DOMAIN`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
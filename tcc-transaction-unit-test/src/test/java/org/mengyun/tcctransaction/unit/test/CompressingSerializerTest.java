@@ -0,0 +1,209 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.serializer.CompressingSerializer;
+import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 压缩序列化：阈值、无收益回退、历史未压缩数据、损坏的头部
+ */
+public class CompressingSerializerTest {
+
+    @Test
+    public void testBelowThresholdNotCompressed() {
+
+        //given
+        KryoPoolSerializer<Object> kryo = new KryoPoolSerializer<Object>();
+        CompressingSerializer<Object> serializer = new CompressingSerializer<Object>(kryo);
+        serializer.setThreshold(512);
+
+        String value = repeat('a', 100);
+
+        //when
+        byte[] bytes = serializer.serialize(value);
+
+        //then
+        Assert.assertFalse(CompressingSerializer.isCompressed(bytes));
+        Assert.assertArrayEquals(kryo.serialize(value), bytes);
+        Assert.assertEquals(value, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void testAboveThresholdCompressed() {
+
+        //given
+        KryoPoolSerializer<Object> kryo = new KryoPoolSerializer<Object>();
+        CompressingSerializer<Object> serializer = new CompressingSerializer<Object>(kryo);
+        serializer.setThreshold(512);
+
+        String value = repeat('a', 10000);
+
+        //when
+        byte[] bytes = serializer.serialize(value);
+
+        //then
+        Assert.assertTrue(CompressingSerializer.isCompressed(bytes));
+        Assert.assertTrue(bytes.length < kryo.serialize(value).length);
+        Assert.assertEquals(value, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void testTransactionRoundTrip() {
+
+        //given
+        CompressingSerializer<Transaction> serializer = new CompressingSerializer<Transaction>();
+        serializer.setThreshold(64);
+
+        Transaction transaction = TransactionFixtures.buildTransaction(20);
+
+        //when
+        byte[] bytes = serializer.serialize(transaction);
+        Transaction loaded = serializer.deserialize(bytes);
+
+        //then
+        Assert.assertTrue(CompressingSerializer.isCompressed(bytes));
+        Assert.assertEquals(transaction.getXid(), loaded.getXid());
+        Assert.assertEquals(20, loaded.getParticipantCount());
+    }
+
+    @Test
+    public void testIncompressibleFallsBackToRaw() {
+
+        //given
+        KryoPoolSerializer<Object> kryo = new KryoPoolSerializer<Object>();
+        CompressingSerializer<Object> serializer = new CompressingSerializer<Object>(kryo);
+        serializer.setThreshold(512);
+
+        byte[] value = new byte[4096];
+        new Random(7).nextBytes(value);
+
+        //when
+        byte[] bytes = serializer.serialize(value);
+
+        //then
+        Assert.assertFalse(CompressingSerializer.isCompressed(bytes));
+        Assert.assertArrayEquals(kryo.serialize(value), bytes);
+        Assert.assertArrayEquals(value, (byte[]) serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void testReadUncompressedKryoData() {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(2);
+        byte[] raw = new KryoPoolSerializer<Transaction>().serialize(transaction);
+
+        //when
+        Transaction loaded = new CompressingSerializer<Transaction>().deserialize(raw);
+
+        //then
+        Assert.assertFalse(CompressingSerializer.isCompressed(raw));
+        Assert.assertEquals(transaction.getXid(), loaded.getXid());
+        Assert.assertEquals(2, loaded.getParticipantCount());
+    }
+
+    @Test
+    public void testReadUncompressedJdkData() {
+
+        //given
+        JdkSerializationSerializer<Transaction> jdk = new JdkSerializationSerializer<Transaction>();
+        Transaction transaction = TransactionFixtures.buildTransaction(2);
+        byte[] raw = jdk.serialize(transaction);
+
+        //when
+        Transaction loaded = new CompressingSerializer<Transaction>(jdk).deserialize(raw);
+
+        //then
+        Assert.assertFalse(CompressingSerializer.isCompressed(raw));
+        Assert.assertEquals(transaction.getXid(), loaded.getXid());
+        Assert.assertEquals(2, loaded.getParticipantCount());
+    }
+
+    @Test
+    public void testCorruptedOriginalLength() {
+
+        //given
+        byte[] bytes = compressedBytes();
+
+        //when
+        for (byte[] length : new byte[][]{{0x7F, -1, -1, -1}, {-128, 0, 0, 0}, {0, 0x10, 0, 0}}) {
+
+            byte[] corrupted = bytes.clone();
+            System.arraycopy(length, 0, corrupted, 2, 4);
+
+            try {
+                newSerializer().deserialize(corrupted);
+                Assert.fail();
+            } catch (SystemException e) {
+                //then
+                Assert.assertTrue(e.getMessage().contains("illegal original length"));
+            }
+        }
+    }
+
+    @Test(expected = SystemException.class)
+    public void testMaxDecompressedLength() {
+
+        //given
+        CompressingSerializer<Object> serializer = newSerializer();
+        serializer.setMaxDecompressedLength(1000);
+
+        //when
+        serializer.deserialize(compressedBytes());
+    }
+
+    @Test(expected = SystemException.class)
+    public void testTruncatedData() {
+
+        //given
+        byte[] bytes = compressedBytes();
+
+        //when
+        newSerializer().deserialize(Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    @Test(expected = SystemException.class)
+    public void testCorruptedData() {
+
+        //given
+        byte[] bytes = compressedBytes();
+        for (int i = 6; i < bytes.length; i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+
+        //when
+        newSerializer().deserialize(bytes);
+    }
+
+    private static CompressingSerializer<Object> newSerializer() {
+        CompressingSerializer<Object> serializer = new CompressingSerializer<Object>(new KryoPoolSerializer<Object>());
+        serializer.setThreshold(512);
+        return serializer;
+    }
+
+    private static byte[] compressedBytes() {
+
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            builder.append((char) ('a' + random.nextInt(4)));
+        }
+
+        byte[] bytes = newSerializer().serialize(builder.toString());
+        Assert.assertTrue(CompressingSerializer.isCompressed(bytes));
+        return bytes;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,195 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.support.TransactionConfigurator;
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+import org.mengyun.tcctransaction.unittest.entity.AccountRecord;
+import org.mengyun.tcctransaction.unittest.entity.AccountStatus;
+import org.mengyun.tcctransaction.unittest.entity.SubAccount;
+import org.mengyun.tcctransaction.unittest.repository.AccountRecordRepository;
+import org.mengyun.tcctransaction.unittest.repository.SubAccountRepository;
+import org.mengyun.tcctransaction.unittest.service.AccountService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.File;
+
+/**
+ * 使用 tcc-transaction-fused.xml 合并拦截器的转账测试
+ * 事务存储为临时目录下的文件存储
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {
+        "classpath:/tcc-transaction-unit-test.xml", "classpath:/tcc-transaction-fused.xml",
+        "classpath:/tcc-transaction-fused-unit-test.xml"})
+public class FusedTransferServiceTest {
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    SubAccountRepository subAccountRepository;
+
+    @Autowired
+    AccountRecordRepository accountRecordRepository;
+
+    @Autowired
+    TransactionConfigurator transactionConfigurator;
+
+    @BeforeClass
+    public static void cleanRootPath() {
+        File rootPath = new File(System.getProperty("java.io.tmpdir"), "tcc_fused_ut");
+        File[] files = rootPath.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testRootTransfer() {
+
+        //given
+        buildAccount();
+
+        //when
+        transferService.transfer(1, 2, 50);
+
+        //then 根事务确认自身及消费方添加的参与者
+        SubAccount subAccountFrom = subAccountRepository.findById(1L);
+        SubAccount subAccountTo = subAccountRepository.findById(2L);
+
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), subAccountFrom.getStatus());
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), subAccountTo.getStatus());
+
+        Assert.assertEquals(50, subAccountFrom.getBalanceAmount());
+        Assert.assertEquals(250, subAccountTo.getBalanceAmount());
+    }
+
+    @Test
+    public void testNestedConsumerEnlist() {
+
+        //given
+        buildAccount();
+
+        //when
+        transferService.transferWithMultipleTier(1, 2, 50);
+
+        //then 嵌套调用的 record 作为参与者添加到根事务并被确认
+        SubAccount subAccountFrom = subAccountRepository.findById(1L);
+        SubAccount subAccountTo = subAccountRepository.findById(2L);
+
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), subAccountFrom.getStatus());
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), subAccountTo.getStatus());
+        Assert.assertEquals(50, subAccountFrom.getBalanceAmount());
+        Assert.assertEquals(250, subAccountTo.getBalanceAmount());
+
+        AccountRecord accountRecordTo = accountRecordRepository.findById(2L);
+
+        Assert.assertEquals(50, accountRecordTo.getBalanceAmount());
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), accountRecordTo.getStatusId());
+    }
+
+    @Test
+    public void testProviderTryingAndConfirming() {
+
+        //given
+        buildAccount();
+
+        TransactionXid xid = new TransactionXid();
+
+        //when
+        accountService.transferTo(new TransactionContext(xid, TransactionStatus.TRYING.getId()), 2, 50);
+
+        //then 提供方发起分支事务并添加参与者
+        Transaction branch = getTransactionRepository().findByXid(xid);
+
+        Assert.assertNotNull(branch);
+        Assert.assertEquals(TransactionStatus.TRYING, branch.getStatus());
+        Assert.assertEquals(1, branch.getParticipants().size());
+
+        SubAccount subAccountTo = subAccountRepository.findById(2L);
+        Assert.assertEquals(AccountStatus.TRANSFERING.getId(), subAccountTo.getStatus());
+        Assert.assertEquals(250, subAccountTo.getBalanceAmount());
+
+        //when
+        accountService.transferTo(new TransactionContext(xid, TransactionStatus.CONFIRMING.getId()), 2, 50);
+
+        //then
+        Assert.assertNull(getTransactionRepository().findByXid(xid));
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), subAccountTo.getStatus());
+        Assert.assertEquals(250, subAccountTo.getBalanceAmount());
+    }
+
+    @Test
+    public void testProviderTryingAndCancelling() {
+
+        //given
+        buildAccount();
+
+        TransactionXid xid = new TransactionXid();
+
+        accountService.transferTo(new TransactionContext(xid, TransactionStatus.TRYING.getId()), 2, 50);
+
+        //when
+        accountService.transferTo(new TransactionContext(xid, TransactionStatus.CANCELLING.getId()), 2, 50);
+
+        //then
+        Assert.assertNull(getTransactionRepository().findByXid(xid));
+
+        SubAccount subAccountTo = subAccountRepository.findById(2L);
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), subAccountTo.getStatus());
+        Assert.assertEquals(200, subAccountTo.getBalanceAmount());
+    }
+
+    @Test
+    public void testProviderConfirmingWithoutBranch() {
+
+        //given
+        buildAccount();
+
+        //when 分支事务不存在时忽略
+        accountService.transferTo(new TransactionContext(new TransactionXid(), TransactionStatus.CONFIRMING.getId()), 2, 50);
+
+        //then
+        SubAccount subAccountTo = subAccountRepository.findById(2L);
+        Assert.assertEquals(AccountStatus.NORMAL.getId(), subAccountTo.getStatus());
+        Assert.assertEquals(200, subAccountTo.getBalanceAmount());
+    }
+
+    private TransactionRepository getTransactionRepository() {
+        return transactionConfigurator.getTransactionRepository();
+    }
+
+    private void buildAccount() {
+        SubAccount subAccountFrom = subAccountRepository.findById(1L);
+
+        subAccountFrom.setBalanceAmount(100);
+        subAccountFrom.setStatus(AccountStatus.NORMAL.getId());
+
+        SubAccount subAccountTo = subAccountRepository.findById(2L);
+        subAccountTo.setBalanceAmount(200);
+        subAccountTo.setStatus(AccountStatus.NORMAL.getId());
+
+        AccountRecord accountRecordFrom = accountRecordRepository.findById(1L);
+        accountRecordFrom.setBalanceAmount(0);
+        accountRecordFrom.setStatusId(AccountStatus.NORMAL.getId());
+
+        AccountRecord accountRecordTo = accountRecordRepository.findById(2L);
+        accountRecordTo.setBalanceAmount(0);
+        accountRecordTo.setStatusId(AccountStatus.NORMAL.getId());
+    }
+}
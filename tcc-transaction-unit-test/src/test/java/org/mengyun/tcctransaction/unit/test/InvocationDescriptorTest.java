@@ -0,0 +1,269 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.DescriptorInvocationContext;
+import org.mengyun.tcctransaction.InvocationDescriptor;
+import org.mengyun.tcctransaction.InvocationDescriptorRegistry;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.repository.InvocationDescriptorStore;
+import org.mengyun.tcctransaction.serializer.InvocationDescriptorKryoSerializer;
+import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
+
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 调用描述：Kryo、JDK 序列化读写，未注册编号按方法签名或调用描述存储加载
+ * 注册表为进程级，每个用例使用 Target 的不同方法，避免互相影响。
+ */
+public class InvocationDescriptorTest {
+
+    @After
+    public void after() {
+        InvocationDescriptorRegistry.setStore(null);
+    }
+
+    @Test
+    public void testKryoRoundTripWritesSignatureWithoutStore() throws Exception {
+
+        //given
+        InvocationDescriptor descriptor = InvocationDescriptorRegistry.register(Target.class, "confirm", new Class[]{String.class, int.class});
+
+        //when
+        byte[] bytes = write(new DescriptorInvocationContext(descriptor, "a", 1));
+        DescriptorInvocationContext loaded = read(bytes);
+
+        //then
+        Assert.assertTrue(contains(bytes, Target.class.getName()));
+        Assert.assertSame(descriptor, loaded.getDescriptor());
+        Assert.assertEquals("confirm", loaded.getMethodName());
+        Assert.assertArrayEquals(new Object[]{"a", 1}, loaded.getArgs());
+    }
+
+    @Test
+    public void testKryoWritesIdOnlyWhenSignatureStored() throws Exception {
+
+        //given
+        InvocationDescriptor descriptor = InvocationDescriptorRegistry.register(Target.class, "cancel", new Class[]{String.class, int.class});
+        byte[] withSignature = write(new DescriptorInvocationContext(descriptor, "a", 1));
+
+        MemoryStore store = new MemoryStore();
+        InvocationDescriptorRegistry.setStore(store);
+
+        //when
+        byte[] idOnly = write(new DescriptorInvocationContext(descriptor, "a", 1));
+        DescriptorInvocationContext loaded = read(idOnly);
+
+        //then
+        Assert.assertEquals(descriptor.getSignature(), store.signatures.get(descriptor.getId()));
+        Assert.assertFalse(contains(idOnly, Target.class.getName()));
+        Assert.assertTrue(withSignature.length - idOnly.length >= descriptor.getSignature().length());
+        Assert.assertSame(descriptor, loaded.getDescriptor());
+        Assert.assertArrayEquals(new Object[]{"a", 1}, loaded.getArgs());
+    }
+
+    @Test
+    public void testStoreFailureFallsBackToSignature() throws Exception {
+
+        //given
+        InvocationDescriptor descriptor = InvocationDescriptorRegistry.register(Target.class, "confirmFailed", new Class[]{long.class});
+
+        MemoryStore store = new MemoryStore();
+        store.unavailable = true;
+        InvocationDescriptorRegistry.setStore(store);
+
+        //when
+        byte[] bytes = write(new DescriptorInvocationContext(descriptor, 1L));
+
+        //then
+        Assert.assertTrue(contains(bytes, Target.class.getName()));
+        Assert.assertSame(descriptor, read(bytes).getDescriptor());
+    }
+
+    @Test
+    public void testUnknownIdResolvedFromSignature() throws Exception {
+
+        //given
+        String signature = Target.class.getName() + "#resolvedBySignature(java.lang.String,long)";
+
+        //when
+        DescriptorInvocationContext loaded = read(writeRaw(computeId(signature), signature, new Object[]{"a", 2L}));
+
+        //then
+        Assert.assertEquals(Target.class, loaded.getTargetClass());
+        Assert.assertEquals("resolvedBySignature", loaded.getMethodName());
+        Assert.assertArrayEquals(new Class[]{String.class, long.class}, loaded.getParameterTypes());
+        Assert.assertEquals(computeId(signature), loaded.getDescriptor().getId());
+        Assert.assertArrayEquals(new Object[]{"a", 2L}, loaded.getArgs());
+    }
+
+    @Test
+    public void testUnknownIdResolvedFromStore() throws Exception {
+
+        //given
+        String signature = Target.class.getName() + "#resolvedByStore(int)";
+
+        MemoryStore store = new MemoryStore();
+        store.signatures.put(computeId(signature), signature);
+        InvocationDescriptorRegistry.setStore(store);
+
+        //when
+        DescriptorInvocationContext loaded = read(writeRaw(computeId(signature), null, new Object[]{3}));
+
+        //then
+        Assert.assertEquals("resolvedByStore", loaded.getMethodName());
+        Assert.assertArrayEquals(new Class[]{int.class}, loaded.getParameterTypes());
+        Assert.assertArrayEquals(new Object[]{3}, loaded.getArgs());
+    }
+
+    @Test
+    public void testSignatureIdMismatch() throws Exception {
+
+        //given
+        String signature = Target.class.getName() + "#mismatched()";
+
+        //when
+        try {
+            read(writeRaw(computeId(signature) + 1, signature, new Object[0]));
+            Assert.fail();
+        } catch (SystemException e) {
+            //then
+            Assert.assertTrue(e.getMessage().contains("mismatch"));
+        }
+    }
+
+    @Test
+    public void testUnknownIdWithoutSignature() throws Exception {
+
+        //given
+        String signature = Target.class.getName() + "#neverRegistered()";
+        InvocationDescriptorRegistry.setStore(new MemoryStore());
+
+        //when
+        try {
+            read(writeRaw(computeId(signature), null, new Object[0]));
+            Assert.fail();
+        } catch (SystemException e) {
+            //then
+            Assert.assertTrue(e.getMessage().contains("not registered"));
+        }
+    }
+
+    @Test
+    public void testJdkRoundTrip() {
+
+        //given
+        InvocationDescriptor descriptor = InvocationDescriptorRegistry.register(Target.class, "confirmJdk", new Class[]{String.class});
+        JdkSerializationSerializer<DescriptorInvocationContext> serializer = new JdkSerializationSerializer<DescriptorInvocationContext>();
+
+        byte[] withSignature = serializer.serialize(new DescriptorInvocationContext(descriptor, "a"));
+
+        InvocationDescriptorRegistry.setStore(new MemoryStore());
+
+        //when
+        byte[] idOnly = serializer.serialize(new DescriptorInvocationContext(descriptor, "a"));
+
+        //then
+        Assert.assertTrue(idOnly.length < withSignature.length);
+        Assert.assertSame(descriptor, serializer.deserialize(withSignature).getDescriptor());
+        Assert.assertSame(descriptor, serializer.deserialize(idOnly).getDescriptor());
+        Assert.assertArrayEquals(new Object[]{"a"}, serializer.deserialize(idOnly).getArgs());
+    }
+
+    private static Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        InvocationDescriptorKryoSerializer.install(kryo);
+        return kryo;
+    }
+
+    private static byte[] write(DescriptorInvocationContext context) {
+        Output output = new Output(256, -1);
+        newKryo().writeObject(output, context);
+        return output.toBytes();
+    }
+
+    /**
+     * 按 InvocationDescriptorKryoSerializer 的格式直接写入，模拟其它节点写入、本节点未注册的编号
+     */
+    private static byte[] writeRaw(final int id, final String signature, final Object[] args) {
+        Output output = new Output(256, -1);
+        newKryo().writeObject(output, new Object(), new Serializer<Object>() {
+            @Override
+            public void write(Kryo kryo, Output output, Object object) {
+                output.writeInt(id, true);
+                kryo.writeObjectOrNull(output, signature, String.class);
+                kryo.writeClassAndObject(output, args);
+            }
+
+            @Override
+            public Object read(Kryo kryo, Input input, Class<Object> type) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        return output.toBytes();
+    }
+
+    private static DescriptorInvocationContext read(byte[] bytes) {
+        return newKryo().readObject(new Input(bytes), DescriptorInvocationContext.class);
+    }
+
+    /**
+     * 与 InvocationDescriptorRegistry 的编号算法一致：方法签名 MD5 的前 31 位
+     */
+    private static int computeId(String signature) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(signature.getBytes("UTF-8"));
+        return ((digest[0] & 0x7F) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8) | (digest[3] & 0xFF);
+    }
+
+    private static boolean contains(byte[] bytes, String text) throws Exception {
+        return new String(bytes, "ISO-8859-1").contains(text);
+    }
+
+    public static class Target {
+
+        public void confirm(String name, int amount) {
+        }
+
+        public void cancel(String name, int amount) {
+        }
+
+        public void confirmFailed(long amount) {
+        }
+
+        public void resolvedBySignature(String name, long amount) {
+        }
+
+        public void resolvedByStore(int amount) {
+        }
+
+        public void confirmJdk(String name) {
+        }
+    }
+
+    private static class MemoryStore implements InvocationDescriptorStore {
+
+        private final Map<Integer, String> signatures = new HashMap<Integer, String>();
+
+        private boolean unavailable;
+
+        @Override
+        public void save(int id, String signature) {
+            if (unavailable) {
+                throw new SystemException("store unavailable");
+            }
+            signatures.put(id, signature);
+        }
+
+        @Override
+        public String findSignature(int id) {
+            return signatures.get(id);
+        }
+    }
+}
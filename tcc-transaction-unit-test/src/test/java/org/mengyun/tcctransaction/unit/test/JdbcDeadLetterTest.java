@@ -0,0 +1,191 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionSummary;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+import org.mengyun.tcctransaction.repository.TransactionIOException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 死信事务：移入、放回
+ */
+public class JdbcDeadLetterTest extends AbstractTestCase {
+
+    private static final String TB_SUFFIX = "_DL_UT";
+
+    private static final String TRANSACTION_COLUMNS_DDL =
+            "  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT," +
+                    "  `DOMAIN` varchar(100) DEFAULT NULL," +
+                    "  `GLOBAL_TX_ID` varbinary(32) NOT NULL," +
+                    "  `BRANCH_QUALIFIER` varbinary(32) NOT NULL," +
+                    "  `CONTENT` varbinary(8000) DEFAULT NULL," +
+                    "  `STATUS` int(11) DEFAULT NULL," +
+                    "  `TRANSACTION_TYPE` int(11) DEFAULT NULL," +
+                    "  `RETRIED_COUNT` int(11) DEFAULT NULL," +
+                    "  `CREATE_TIME` datetime DEFAULT NULL," +
+                    "  `LAST_UPDATE_TIME` datetime DEFAULT NULL," +
+                    "  `VERSION` int(11) DEFAULT NULL," +
+                    "  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL,";
+
+    @Autowired
+    @Qualifier("tccDataSource")
+    private DataSource dataSource;
+
+    @Before
+    public void createTables() throws SQLException {
+
+        execute("CREATE TABLE IF NOT EXISTS `TCC_TRANSACTION" + TB_SUFFIX + "` (" +
+                TRANSACTION_COLUMNS_DDL +
+                "  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0," +
+                "  PRIMARY KEY (`TRANSACTION_ID`)," +
+                "  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+
+        execute("CREATE TABLE IF NOT EXISTS `TCC_TRANSACTION_DEAD_LETTER" + TB_SUFFIX + "` (" +
+                TRANSACTION_COLUMNS_DDL +
+                "  PRIMARY KEY (`TRANSACTION_ID`)," +
+                "  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+
+        execute("DELETE FROM `TCC_TRANSACTION" + TB_SUFFIX + "`");
+        execute("DELETE FROM `TCC_TRANSACTION_DEAD_LETTER" + TB_SUFFIX + "`");
+    }
+
+    @Test
+    public void testMoveToDeadLetterAndRequeue() {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(2);
+        transaction.addRetriedCount();
+        transaction.addRetriedCount();
+        transaction.setNextRetryTimeMillis(System.currentTimeMillis() + 3600 * 1000L);
+        createRepository().create(transaction);
+
+        TransactionXid xid = (TransactionXid) transaction.getXid();
+
+        //when
+        int moved = createRepository().moveToDeadLetter(new TransactionSummary(transaction));
+
+        //then
+        Assert.assertEquals(1, moved);
+        Assert.assertNull(createRepository().reloadByXid(xid));
+
+        //when
+        int requeued = createRepository().requeue(xid);
+
+        //then
+        Assert.assertEquals(1, requeued);
+
+        Transaction loaded = createRepository().reloadByXid(xid);
+        Assert.assertEquals(0, loaded.getRetriedCount());
+        Assert.assertEquals(0L, loaded.getNextRetryTimeMillis());
+        Assert.assertEquals(2, loaded.getParticipantCount());
+
+        // 放回后立即到达重试时间
+        Assert.assertTrue(containsXid(createRepository().findAllSummariesDueBefore(new Date(System.currentTimeMillis() + 1000)), xid));
+
+        // 死信区已不存在
+        Assert.assertEquals(0, createRepository().requeue(xid));
+    }
+
+    @Test
+    public void testMoveToDeadLetterWithStaleVersion() {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(1);
+        JdbcTransactionRepository repository = createRepository();
+        repository.create(transaction);
+
+        TransactionSummary staleSummary = new TransactionSummary(transaction);
+        repository.update(transaction);
+
+        //when
+        int moved = createRepository().moveToDeadLetter(staleSummary);
+
+        //then
+        Assert.assertEquals(0, moved);
+        Assert.assertNotNull(createRepository().reloadByXid((TransactionXid) transaction.getXid()));
+        Assert.assertEquals(0, createRepository().requeue((TransactionXid) transaction.getXid()));
+    }
+
+    @Test
+    public void testRequeueWhenAlreadyInQueue() {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(1);
+        createRepository().create(transaction);
+        createRepository().moveToDeadLetter(new TransactionSummary(transaction));
+
+        // 人工恢复前事务已重新写入恢复队列
+        createRepository().create(transaction);
+
+        //when
+        try {
+            createRepository().requeue((TransactionXid) transaction.getXid());
+            Assert.fail();
+        } catch (TransactionIOException e) {
+            // 唯一键冲突，回滚
+        }
+
+        //then
+        Assert.assertNotNull(createRepository().reloadByXid((TransactionXid) transaction.getXid()));
+        Assert.assertEquals(1, count("TCC_TRANSACTION_DEAD_LETTER" + TB_SUFFIX));
+    }
+
+    private JdbcTransactionRepository createRepository() {
+        JdbcTransactionRepository repository = new JdbcTransactionRepository();
+        repository.setDataSource(dataSource);
+        repository.setDomain("DL_UT");
+        repository.setTbSuffix(TB_SUFFIX);
+        return repository;
+    }
+
+    private static boolean containsXid(List<TransactionSummary> summaries, TransactionXid xid) {
+        for (TransactionSummary summary : summaries) {
+            if (summary.getXid().equals(xid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int count(String tableName) {
+
+        try {
+            Connection connection = dataSource.getConnection();
+
+            try {
+                ResultSet resultSet = connection.createStatement().executeQuery("SELECT COUNT(1) FROM `" + tableName + "`");
+                resultSet.next();
+                return resultSet.getInt(1);
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+
+        try {
+            connection.createStatement().execute(sql);
+        } finally {
+            connection.close();
+        }
+    }
+}
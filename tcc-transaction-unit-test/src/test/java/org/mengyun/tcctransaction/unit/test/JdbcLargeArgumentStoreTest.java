@@ -0,0 +1,121 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.repository.JdbcLargeArgumentStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * JDBC 大参数存储：写入、去重、刷新、清理
+ */
+public class JdbcLargeArgumentStoreTest extends AbstractTestCase {
+
+    private static final String TABLE_NAME = "TCC_LARGE_ARGUMENT_UT";
+
+    @Autowired
+    @Qualifier("tccDataSource")
+    private DataSource dataSource;
+
+    private JdbcLargeArgumentStore store;
+
+    @Before
+    public void createTable() throws SQLException {
+
+        execute("CREATE TABLE IF NOT EXISTS `" + TABLE_NAME + "` (" +
+                "  `ARGUMENT_HASH` varbinary(32) NOT NULL," +
+                "  `CONTENT` longblob NOT NULL," +
+                "  `CREATE_TIME` datetime NOT NULL," +
+                "  PRIMARY KEY (`ARGUMENT_HASH`)," +
+                "  KEY `IX_CREATE_TIME` (`CREATE_TIME`)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+
+        execute("DELETE FROM `" + TABLE_NAME + "`");
+
+        store = new JdbcLargeArgumentStore();
+        store.setDataSource(dataSource);
+        store.setTableName(TABLE_NAME);
+        store.setRetentionSeconds(3600);
+    }
+
+    @Test
+    public void testPutAndGet() {
+
+        byte[] hash = hash(1);
+
+        store.put(hash, new byte[]{1, 2, 3});
+
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, store.get(hash));
+        Assert.assertNull(store.get(hash(2)));
+    }
+
+    @Test
+    public void testPutExisting() {
+
+        byte[] hash = hash(1);
+
+        store.put(hash, new byte[]{1, 2, 3});
+        store.put(hash, new byte[]{1, 2, 3});
+
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, store.get(hash));
+    }
+
+    @Test
+    public void testRemoveExpired() throws SQLException {
+
+        //given 两个参数都已超过保留时间
+        byte[] referenced = hash(1);
+        byte[] unreferenced = hash(2);
+
+        store.put(referenced, new byte[]{1});
+        store.put(unreferenced, new byte[]{2});
+
+        setCreateTime(System.currentTimeMillis() - 7200 * 1000L);
+
+        //when 其中一个再次被引用
+        store.put(referenced, new byte[]{1});
+
+        //then
+        Assert.assertEquals(1, store.removeExpired());
+        Assert.assertNotNull(store.get(referenced));
+        Assert.assertNull(store.get(unreferenced));
+        Assert.assertEquals(0, store.removeExpired());
+    }
+
+    private byte[] hash(int value) {
+        byte[] hash = new byte[32];
+        hash[31] = (byte) value;
+        return hash;
+    }
+
+    private void setCreateTime(long time) throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+
+        try {
+            PreparedStatement stmt = connection.prepareStatement("UPDATE `" + TABLE_NAME + "` SET CREATE_TIME = ?");
+            stmt.setTimestamp(1, new Timestamp(time));
+            stmt.executeUpdate();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+
+        try {
+            connection.createStatement().execute(sql);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.OptimisticLockException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 参与者单独存储：写入、迁移
+ */
+public class JdbcParticipantTableTest extends AbstractTestCase {
+
+    private static final String TB_SUFFIX = "_PT_UT";
+
+    @Autowired
+    @Qualifier("tccDataSource")
+    private DataSource dataSource;
+
+    @Before
+    public void createTables() throws SQLException {
+
+        execute("CREATE TABLE IF NOT EXISTS `TCC_TRANSACTION" + TB_SUFFIX + "` (" +
+                "  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT," +
+                "  `DOMAIN` varchar(100) DEFAULT NULL," +
+                "  `GLOBAL_TX_ID` varbinary(32) NOT NULL," +
+                "  `BRANCH_QUALIFIER` varbinary(32) NOT NULL," +
+                "  `CONTENT` varbinary(8000) DEFAULT NULL," +
+                "  `STATUS` int(11) DEFAULT NULL," +
+                "  `TRANSACTION_TYPE` int(11) DEFAULT NULL," +
+                "  `RETRIED_COUNT` int(11) DEFAULT NULL," +
+                "  `CREATE_TIME` datetime DEFAULT NULL," +
+                "  `LAST_UPDATE_TIME` datetime DEFAULT NULL," +
+                "  `VERSION` int(11) DEFAULT NULL," +
+                "  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL," +
+                "  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0," +
+                "  PRIMARY KEY (`TRANSACTION_ID`)," +
+                "  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+
+        execute("CREATE TABLE IF NOT EXISTS `TCC_TRANSACTION_PARTICIPANT" + TB_SUFFIX + "` (" +
+                "  `PARTICIPANT_ID` int(11) NOT NULL AUTO_INCREMENT," +
+                "  `DOMAIN` varchar(100) DEFAULT NULL," +
+                "  `GLOBAL_TX_ID` varbinary(32) NOT NULL," +
+                "  `BRANCH_QUALIFIER` varbinary(32) NOT NULL," +
+                "  `SEQUENCE` int(11) NOT NULL," +
+                "  `CONTENT` varbinary(8000) DEFAULT NULL," +
+                "  `CREATE_TIME` datetime DEFAULT NULL," +
+                "  PRIMARY KEY (`PARTICIPANT_ID`)," +
+                "  UNIQUE KEY `UX_TX_BQ_SEQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`,`SEQUENCE`)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+
+        execute("DELETE FROM `TCC_TRANSACTION" + TB_SUFFIX + "`");
+        execute("DELETE FROM `TCC_TRANSACTION_PARTICIPANT" + TB_SUFFIX + "`");
+    }
+
+    @Test
+    public void testMigrateParticipants() throws SQLException {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(2);
+        createRepository(false).create(transaction);
+
+        JdbcTransactionRepository repository = createRepository(true);
+
+        //when
+        int migrated = repository.migrateParticipants();
+
+        //then
+        Assert.assertEquals(1, migrated);
+        Assert.assertEquals(2, countParticipantRows());
+
+        Transaction loaded = repository.reloadByXid((TransactionXid) transaction.getXid());
+        Assert.assertEquals(2, loaded.getParticipantCount());
+
+        Assert.assertEquals(0, repository.migrateParticipants());
+        Assert.assertEquals(2, repository.reloadByXid((TransactionXid) transaction.getXid()).getParticipantCount());
+    }
+
+    @Test
+    public void testMigrateParticipantsOnRead() throws SQLException {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(2);
+        createRepository(false).create(transaction);
+
+        JdbcTransactionRepository repository = createRepository(true);
+
+        //when
+        Transaction loaded = repository.findByXid((TransactionXid) transaction.getXid());
+
+        //then
+        Assert.assertEquals(2, loaded.getParticipantCount());
+        Assert.assertEquals(2, countParticipantRows());
+
+        // 事务内容已改写为不含参与者，再次读取不会重复
+        Assert.assertEquals(2, repository.reloadByXid((TransactionXid) transaction.getXid()).getParticipantCount());
+        Assert.assertEquals(0, createRepository(false).findByXid((TransactionXid) transaction.getXid()).getParticipantCount());
+    }
+
+    @Test
+    public void testAppendParticipant() throws SQLException {
+
+        //given
+        JdbcTransactionRepository repository = createRepository(true);
+
+        Transaction transaction = TransactionFixtures.buildTransaction(1);
+        repository.create(transaction);
+
+        Transaction staleTransaction = createRepository(true).findByXid((TransactionXid) transaction.getXid());
+
+        //when
+        transaction.enlistParticipant(TransactionFixtures.buildParticipant(transaction, 1));
+        repository.appendParticipant(transaction, transaction.getParticipants().get(1));
+
+        //then
+        Assert.assertEquals(2, transaction.getVersion());
+        Assert.assertEquals(2, countParticipantRows());
+
+        Transaction loaded = repository.reloadByXid((TransactionXid) transaction.getXid());
+        Assert.assertEquals(2, loaded.getVersion());
+        Assert.assertEquals(2, loaded.getParticipantCount());
+
+        staleTransaction.enlistParticipant(TransactionFixtures.buildParticipant(staleTransaction, 2));
+
+        try {
+            createRepository(true).appendParticipant(staleTransaction, staleTransaction.getParticipants().get(1));
+            Assert.fail();
+        } catch (OptimisticLockException e) {
+            Assert.assertEquals(1, staleTransaction.getVersion());
+        }
+
+        Assert.assertEquals(2, countParticipantRows());
+    }
+
+    private JdbcTransactionRepository createRepository(boolean participantTableEnabled) {
+        JdbcTransactionRepository repository = new JdbcTransactionRepository();
+        repository.setDataSource(dataSource);
+        repository.setDomain("PT_UT");
+        repository.setTbSuffix(TB_SUFFIX);
+        repository.setParticipantTableEnabled(participantTableEnabled);
+        return repository;
+    }
+
+    private int countParticipantRows() throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+
+        try {
+            Statement stmt = connection.createStatement();
+            ResultSet resultSet = stmt.executeQuery("SELECT COUNT(1) FROM `TCC_TRANSACTION_PARTICIPANT" + TB_SUFFIX + "`");
+            resultSet.next();
+            return resultSet.getInt(1);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+
+        try {
+            connection.createStatement().execute(sql);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 数据库事务摘要：只查询头部列，与完整事务一致，按重试时间过滤
+ */
+public class JdbcTransactionSummaryTest extends AbstractTestCase {
+
+    private static final String TB_SUFFIX = "_SUMMARY_UT";
+
+    @Autowired
+    @Qualifier("tccDataSource")
+    private DataSource dataSource;
+
+    @Before
+    public void createTable() throws SQLException {
+
+        execute("CREATE TABLE IF NOT EXISTS `TCC_TRANSACTION" + TB_SUFFIX + "` (" +
+                "  `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT," +
+                "  `DOMAIN` varchar(100) DEFAULT NULL," +
+                "  `GLOBAL_TX_ID` varbinary(32) NOT NULL," +
+                "  `BRANCH_QUALIFIER` varbinary(32) NOT NULL," +
+                "  `CONTENT` varbinary(8000) DEFAULT NULL," +
+                "  `STATUS` int(11) DEFAULT NULL," +
+                "  `TRANSACTION_TYPE` int(11) DEFAULT NULL," +
+                "  `RETRIED_COUNT` int(11) DEFAULT NULL," +
+                "  `CREATE_TIME` datetime DEFAULT NULL," +
+                "  `LAST_UPDATE_TIME` datetime DEFAULT NULL," +
+                "  `VERSION` int(11) DEFAULT NULL," +
+                "  `NEXT_RETRY_TIME` bigint(20) DEFAULT NULL," +
+                "  `RETRY_SCHEDULED` tinyint(1) NOT NULL DEFAULT 0," +
+                "  PRIMARY KEY (`TRANSACTION_ID`)," +
+                "  UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)," +
+                "  KEY `IX_DOMAIN_NEXT_RETRY_TIME` (`DOMAIN`,`NEXT_RETRY_TIME`)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+
+        execute("DELETE FROM `TCC_TRANSACTION" + TB_SUFFIX + "`");
+    }
+
+    @Test
+    public void testSummariesDueBefore() {
+        TransactionSummaryTest.assertSummariesDueBefore(createRepository(), createRepository());
+    }
+
+    @Test
+    public void testSummaryMatchesTransaction() {
+        TransactionSummaryTest.assertSummariesMatch(createRepository(), createRepository(), 1000);
+    }
+
+    private JdbcTransactionRepository createRepository() {
+        JdbcTransactionRepository repository = new JdbcTransactionRepository();
+        repository.setDataSource(dataSource);
+        repository.setDomain("SUMMARY_UT");
+        repository.setTbSuffix(TB_SUFFIX);
+        repository.setRecoverDuration(TransactionSummaryTest.RECOVER_DURATION);
+        return repository;
+    }
+
+    private void execute(String sql) throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+
+        try {
+            connection.createStatement().execute(sql);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.KryoRegistrationProfile;
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kryo 注册配置：引用跟踪、类型编号
+ */
+public class KryoRegistrationProfileTest {
+
+    @Test
+    public void testSharedArguments() {
+
+        //given
+        List<String> shared = new ArrayList<String>();
+        shared.add("a");
+
+        Transaction transaction = buildTransaction(shared, shared);
+
+        //when
+        Transaction loaded = roundTrip(createSerializer(false), transaction);
+
+        //then
+        Object[] args = loaded.getParticipants().get(0).getConfirmInvocationContext().getArgs();
+        Assert.assertEquals(shared, args[0]);
+        Assert.assertSame(args[0], args[1]);
+    }
+
+    @Test
+    public void testCyclicArguments() {
+
+        //given
+        Node node = new Node();
+        node.next = node;
+
+        List<Object> list = new ArrayList<Object>();
+        list.add(list);
+
+        Transaction transaction = buildTransaction(node, list);
+
+        //when
+        Transaction loaded = roundTrip(createSerializer(false), transaction);
+
+        //then
+        Object[] args = loaded.getParticipants().get(0).getConfirmInvocationContext().getArgs();
+
+        Node loadedNode = (Node) args[0];
+        Assert.assertSame(loadedNode, loadedNode.next);
+
+        List loadedList = (List) args[1];
+        Assert.assertSame(loadedList, loadedList.get(0));
+    }
+
+    @Test
+    public void testTransaction() {
+
+        //given
+        Transaction transaction = buildTransaction(1L, 2L);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        transaction.getAttachments().put("key", "value");
+
+        //when
+        Transaction loaded = roundTrip(createSerializer(false), transaction);
+
+        //then
+        Assert.assertEquals(transaction.getXid(), loaded.getXid());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, loaded.getStatus());
+        Assert.assertEquals(TransactionType.ROOT, loaded.getTransactionType());
+        Assert.assertEquals(transaction.getCreateTimeMillis(), loaded.getCreateTimeMillis());
+        Assert.assertEquals("value", loaded.getAttachments().get("key"));
+        Assert.assertEquals(1, loaded.getParticipantCount());
+
+        Participant participant = loaded.getParticipants().get(0);
+        Assert.assertEquals(transaction.getXid(), participant.getXid());
+        Assert.assertEquals(TransferService.class, participant.getConfirmInvocationContext().getTargetClass());
+        Assert.assertEquals("transferConfirm", participant.getConfirmInvocationContext().getMethodName());
+        Assert.assertEquals(2L, participant.getCancelInvocationContext().getArgs()[1]);
+    }
+
+    @Test
+    public void testRegisteredClassWithoutClassName() {
+
+        //given
+        Node node = new Node();
+        Transaction transaction = buildTransaction(node, null);
+
+        //when
+        byte[] registered = createSerializer(false).serialize(transaction);
+        byte[] unregistered = new KryoPoolSerializer<Transaction>().serialize(transaction);
+
+        //then
+        Assert.assertFalse(new String(registered).contains(Node.class.getName()));
+        Assert.assertTrue(new String(unregistered).contains(Node.class.getName()));
+        Assert.assertTrue(registered.length < unregistered.length);
+    }
+
+    @Test
+    public void testJdkReferencesDisabled() {
+
+        //given
+        List<String> shared = new ArrayList<String>();
+        shared.add("a");
+
+        Transaction transaction = buildTransaction(shared, shared);
+
+        //when
+        Transaction loaded = roundTrip(createSerializer(true), transaction);
+
+        //then
+        Object[] args = loaded.getParticipants().get(0).getConfirmInvocationContext().getArgs();
+        Assert.assertEquals(args[0], args[1]);
+        Assert.assertNotSame(args[0], args[1]);
+    }
+
+    private KryoPoolSerializer<Transaction> createSerializer(boolean jdkReferencesDisabled) {
+
+        List<Class> registeredClasses = new ArrayList<Class>();
+        registeredClasses.add(Node.class);
+
+        KryoRegistrationProfile profile = new KryoRegistrationProfile();
+        profile.setRegisteredClasses(registeredClasses);
+        profile.setJdkReferencesDisabled(jdkReferencesDisabled);
+
+        return new KryoPoolSerializer<Transaction>(profile);
+    }
+
+    private Transaction roundTrip(KryoPoolSerializer<Transaction> serializer, Transaction transaction) {
+        return serializer.deserialize(serializer.serialize(transaction));
+    }
+
+    private Transaction buildTransaction(Object firstArg, Object secondArg) {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        Class[] parameterTypes = new Class[]{Object.class, Object.class};
+
+        transaction.enlistParticipant(new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(TransferService.class, "transferConfirm", parameterTypes, firstArg, secondArg),
+                new InvocationContext(TransferService.class, "transferCancel", parameterTypes, firstArg, secondArg), null));
+
+        return transaction;
+    }
+
+    public static class Node {
+
+        private Node next;
+    }
+}
@@ -0,0 +1,207 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.ExternalArgument;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.repository.LargeArgumentStore;
+import org.mengyun.tcctransaction.support.LargeArguments;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 大参数单独存储：写入、去重、刷新、清理
+ */
+public class LargeArgumentsTest {
+
+    private MemoryLargeArgumentStore store;
+
+    @Before
+    public void setStore() {
+        store = new MemoryLargeArgumentStore();
+        LargeArguments.setStore(store);
+    }
+
+    @After
+    public void resetStore() {
+        LargeArguments.setStore(null);
+        LargeArguments.setRefreshSeconds(3600);
+        LargeArguments.setCleanupSeconds(3600);
+    }
+
+    @Test
+    public void testExternalizeAndResolve() {
+
+        //given
+        byte[] large = randomBytes(8192);
+        Object[] args = new Object[]{1L, large, "small"};
+
+        //when
+        Object[] externalized = LargeArguments.externalize(args);
+
+        //then
+        Assert.assertNotSame(args, externalized);
+        Assert.assertSame(large, args[1]);
+        Assert.assertEquals(1L, externalized[0]);
+        Assert.assertEquals("small", externalized[2]);
+        Assert.assertTrue(externalized[1] instanceof ExternalArgument);
+        Assert.assertEquals(1, store.putCount);
+
+        // 反序列化后参数值为空，从存储加载
+        ExternalArgument loaded = new ExternalArgument(((ExternalArgument) externalized[1]).getHash(), null);
+        Object[] resolved = LargeArguments.resolve(new Object[]{1L, loaded});
+
+        Assert.assertArrayEquals(large, (byte[]) resolved[1]);
+    }
+
+    @Test
+    public void testSmallArgumentsUnchanged() {
+
+        Object[] args = new Object[]{1L, "small", randomBytes(16)};
+
+        Assert.assertSame(args, LargeArguments.externalize(args));
+        Assert.assertSame(args, LargeArguments.resolve(args));
+        Assert.assertEquals(0, store.putCount);
+    }
+
+    @Test
+    public void testDeduplicate() {
+
+        //given
+        byte[] large = randomBytes(8192);
+
+        //when
+        Object[] first = LargeArguments.externalize(new Object[]{large});
+        Object[] second = LargeArguments.externalize(new Object[]{large.clone()});
+
+        //then
+        Assert.assertEquals(1, store.putCount);
+        Assert.assertEquals(1, store.contents.size());
+        Assert.assertArrayEquals(((ExternalArgument) first[0]).getHash(), ((ExternalArgument) second[0]).getHash());
+    }
+
+    @Test
+    public void testRefreshAfterInterval() throws InterruptedException {
+
+        //given
+        LargeArguments.setRefreshSeconds(1);
+        byte[] large = randomBytes(8192);
+
+        LargeArguments.externalize(new Object[]{large});
+
+        //when 超过刷新间隔后再次引用
+        Thread.sleep(1100);
+        LargeArguments.externalize(new Object[]{large});
+
+        //then 重新写入以刷新保留时间
+        Assert.assertEquals(2, store.putCount);
+        Assert.assertEquals(1, store.contents.size());
+    }
+
+    @Test
+    public void testReferencedArgumentNotRemoved() throws InterruptedException {
+
+        //given
+        LargeArguments.setRefreshSeconds(0);
+        LargeArguments.setCleanupSeconds(0);
+        store.retentionMillis = 500;
+
+        byte[] referenced = randomBytes(8192);
+        byte[] unreferenced = randomBytes(8192);
+
+        Object[] referencedArgs = LargeArguments.externalize(new Object[]{referenced});
+        Object[] unreferencedArgs = LargeArguments.externalize(new Object[]{unreferenced});
+
+        //when 新事务再次引用，之后清理
+        Thread.sleep(600);
+        LargeArguments.externalize(new Object[]{referenced});
+
+        //then
+        Assert.assertEquals(1, LargeArguments.removeExpired());
+        Assert.assertNotNull(store.get(((ExternalArgument) referencedArgs[0]).getHash()));
+        Assert.assertNull(store.get(((ExternalArgument) unreferencedArgs[0]).getHash()));
+    }
+
+    @Test
+    public void testCleanupInterval() {
+
+        LargeArguments.setCleanupSeconds(0);
+        LargeArguments.removeExpired();
+        LargeArguments.removeExpired();
+
+        Assert.assertEquals(2, store.removeCount);
+
+        // 清理间隔内跳过
+        LargeArguments.setCleanupSeconds(3600);
+        LargeArguments.removeExpired();
+
+        Assert.assertEquals(2, store.removeCount);
+    }
+
+    @Test(expected = SystemException.class)
+    public void testNotFound() {
+        LargeArguments.resolve(new Object[]{new ExternalArgument(new byte[32], null)});
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * 内存大参数存储，按最后写入时间过期
+     */
+    private static class MemoryLargeArgumentStore implements LargeArgumentStore {
+
+        private final Map<String, byte[]> contents = new HashMap<String, byte[]>();
+
+        private final Map<String, Long> referenceTimes = new HashMap<String, Long>();
+
+        private long retentionMillis = 60000;
+
+        private int putCount;
+
+        private int removeCount;
+
+        @Override
+        public synchronized void put(byte[] hash, byte[] content) {
+            putCount++;
+            contents.put(Arrays.toString(hash), content);
+            referenceTimes.put(Arrays.toString(hash), System.currentTimeMillis());
+        }
+
+        @Override
+        public synchronized byte[] get(byte[] hash) {
+            return contents.get(Arrays.toString(hash));
+        }
+
+        @Override
+        public synchronized int removeExpired() {
+
+            removeCount++;
+
+            int count = 0;
+            long expireTime = System.currentTimeMillis() - retentionMillis;
+
+            Iterator<Map.Entry<String, Long>> iterator = referenceTimes.entrySet().iterator();
+
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (entry.getValue() < expireTime) {
+                    contents.remove(entry.getKey());
+                    iterator.remove();
+                    count++;
+                }
+            }
+
+            return count;
+        }
+    }
+}
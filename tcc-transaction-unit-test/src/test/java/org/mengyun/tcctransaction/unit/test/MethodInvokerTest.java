@@ -0,0 +1,202 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.support.MethodInvoker;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 方法调用器：生成的字节码调用与反射调用结果一致
+ */
+public class MethodInvokerTest {
+
+    private static final String GENERATED = "GeneratedMethodInvoker";
+
+    private static final String REFLECTION = "ReflectionMethodInvoker";
+
+    @After
+    public void after() {
+        MethodInvoker.setGeneratedInvokerEnabled(true);
+    }
+
+    @Test
+    public void testPublicClass() throws Exception {
+
+        for (boolean generated : new boolean[]{true, false}) {
+
+            //given
+            MethodInvoker.setGeneratedInvokerEnabled(generated);
+
+            //when
+            MethodInvoker invoker = MethodInvoker.of(PublicTarget.class, "add", new Class[]{long.class, int.class});
+
+            //then
+            Assert.assertEquals(generated ? GENERATED : REFLECTION, invoker.getClass().getSimpleName());
+            Assert.assertEquals(3L, invoker.invoke(new PublicTarget(), new Object[]{1L, 2}));
+        }
+    }
+
+    @Test
+    public void testNonPublicClassUsesReflection() throws Exception {
+
+        //when
+        MethodInvoker invoker = MethodInvoker.of(PackagePrivateTarget.class, "add", new Class[]{long.class, int.class});
+
+        //then
+        Assert.assertEquals(REFLECTION, invoker.getClass().getSimpleName());
+        Assert.assertEquals(3L, invoker.invoke(new PackagePrivateTarget(), new Object[]{1L, 2}));
+    }
+
+    @Test
+    public void testStaticMethodUsesReflection() throws Exception {
+
+        //when
+        MethodInvoker invoker = MethodInvoker.of(PublicTarget.class, "staticAdd", new Class[]{long.class, int.class});
+
+        //then
+        Assert.assertEquals(REFLECTION, invoker.getClass().getSimpleName());
+        Assert.assertEquals(3L, invoker.invoke(null, new Object[]{1L, 2}));
+    }
+
+    @Test
+    public void testNonPublicMethodNotFound() {
+
+        try {
+            MethodInvoker.of(PublicTarget.class, "hidden", new Class[]{long.class, int.class});
+            Assert.fail();
+        } catch (NoSuchMethodException e) {
+            // 与 Class.getMethod 一致，只查找公有方法
+        }
+    }
+
+    @Test
+    public void testCglibProxyTarget() throws Exception {
+
+        for (boolean generated : new boolean[]{true, false}) {
+
+            //given
+            MethodInvoker.setGeneratedInvokerEnabled(generated);
+
+            final AtomicInteger intercepted = new AtomicInteger();
+
+            ProxyFactory proxyFactory = new ProxyFactory(new PublicTarget());
+            proxyFactory.setProxyTargetClass(true);
+            proxyFactory.addAdvice(new MethodInterceptor() {
+                @Override
+                public Object invoke(MethodInvocation invocation) throws Throwable {
+                    intercepted.incrementAndGet();
+                    return invocation.proceed();
+                }
+            });
+
+            Object proxy = proxyFactory.getProxy();
+
+            //when
+            MethodInvoker invoker = MethodInvoker.of(proxy.getClass(), "add", new Class[]{long.class, int.class});
+
+            //then 调用经过代理的切面
+            Assert.assertTrue(proxy.getClass() != PublicTarget.class);
+            Assert.assertEquals(3L, invoker.invoke(proxy, new Object[]{1L, 2}));
+            Assert.assertEquals(1, intercepted.get());
+        }
+    }
+
+    @Test
+    public void testBusinessExceptionWrapped() throws Exception {
+
+        for (boolean generated : new boolean[]{true, false}) {
+
+            //given
+            MethodInvoker.setGeneratedInvokerEnabled(generated);
+
+            MethodInvoker invoker = MethodInvoker.of(PublicTarget.class, "fail", new Class[]{String.class});
+
+            //when
+            try {
+                invoker.invoke(new PublicTarget(), new Object[]{"failed"});
+                Assert.fail();
+            } catch (InvocationTargetException e) {
+                //then 业务方法抛出的 IllegalArgumentException 同样包装
+                Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+                Assert.assertEquals("failed", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testIllegalArgumentsNotWrapped() throws Exception {
+
+        for (boolean generated : new boolean[]{true, false}) {
+
+            //given
+            MethodInvoker.setGeneratedInvokerEnabled(generated);
+
+            MethodInvoker invoker = MethodInvoker.of(PublicTarget.class, "add", new Class[]{long.class, int.class});
+
+            //then 与反射调用一致，参数不匹配时抛出 IllegalArgumentException
+            assertIllegalArgument(invoker, new PublicTarget(), new Object[]{1L});
+            assertIllegalArgument(invoker, new PublicTarget(), new Object[]{1L, "2"});
+            assertIllegalArgument(invoker, new PublicTarget(), new Object[]{1L, null});
+            assertIllegalArgument(invoker, new Object(), new Object[]{1L, 2});
+        }
+    }
+
+    @Test
+    public void testPrimitiveWidening() throws Exception {
+
+        for (boolean generated : new boolean[]{true, false}) {
+
+            //given
+            MethodInvoker.setGeneratedInvokerEnabled(generated);
+
+            MethodInvoker invoker = MethodInvoker.of(PublicTarget.class, "add", new Class[]{long.class, int.class});
+
+            //when Integer 传给 long 参数
+            Object result = invoker.invoke(new PublicTarget(), new Object[]{1, 2});
+
+            //then
+            Assert.assertEquals(3L, result);
+        }
+    }
+
+    private void assertIllegalArgument(MethodInvoker invoker, Object target, Object[] args) throws Exception {
+        try {
+            invoker.invoke(target, args);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 参数不匹配
+        }
+    }
+
+    public static class PublicTarget {
+
+        public static long staticAdd(long a, int b) {
+            return a + b;
+        }
+
+        public long add(long a, int b) {
+            return a + b;
+        }
+
+        public void fail(String message) {
+            throw new IllegalArgumentException(message);
+        }
+
+        long hidden(long a, int b) {
+            return a + b;
+        }
+    }
+
+    static class PackagePrivateTarget {
+
+        public long add(long a, int b) {
+            return a + b;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.recover.ParticipantThrottle;
+import org.mengyun.tcctransaction.recover.RecoveryThrottle;
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+
+/**
+ * 事务恢复限流：令牌桶、熔断
+ */
+public class ParticipantThrottleTest {
+
+    private RecoveryThrottle recoveryThrottle;
+
+    @Before
+    public void createThrottle() {
+        recoveryThrottle = new RecoveryThrottle();
+        recoveryThrottle.setInitialRate(2);
+        recoveryThrottle.setMinRate(1);
+        recoveryThrottle.setMaxRate(4);
+        recoveryThrottle.setRateIncrease(1);
+        recoveryThrottle.setRateDecreaseFactor(0.5);
+        recoveryThrottle.setSlowCallMillis(100);
+        recoveryThrottle.setFailureThreshold(3);
+        recoveryThrottle.setOpenSeconds(1);
+    }
+
+    @Test
+    public void testThrottlePerTarget() {
+
+        ParticipantThrottle confirmThrottle = getThrottle("transferConfirm");
+
+        Assert.assertSame(confirmThrottle, getThrottle("transferConfirm"));
+        Assert.assertNotSame(confirmThrottle, getThrottle("transferCancel"));
+        Assert.assertEquals(TransferService.class.getName() + "#transferConfirm", confirmThrottle.getKey());
+        Assert.assertEquals(2, recoveryThrottle.getThrottles().size());
+    }
+
+    @Test
+    public void testTokenBucket() throws InterruptedException {
+
+        //given
+        ParticipantThrottle throttle = getThrottle("transferConfirm");
+
+        //when
+        Assert.assertTrue(throttle.tryAcquire());
+
+        //then 速率为 2 时约 500ms 补充一个令牌
+        Assert.assertFalse(throttle.tryAcquire());
+
+        Thread.sleep(600);
+
+        Assert.assertTrue(throttle.tryAcquire());
+        Assert.assertFalse(throttle.tryAcquire());
+    }
+
+    @Test
+    public void testAcquireWait() throws InterruptedException {
+
+        //given
+        ParticipantThrottle throttle = getThrottle("transferConfirm");
+        Assert.assertTrue(throttle.tryAcquire());
+
+        //when
+        Assert.assertFalse(throttle.acquire(100));
+
+        long startTime = System.currentTimeMillis();
+
+        //then
+        Assert.assertTrue(throttle.acquire(2000));
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 1000);
+    }
+
+    @Test
+    public void testReleaseToken() {
+
+        //given
+        ParticipantThrottle throttle = getThrottle("transferConfirm");
+        Assert.assertTrue(throttle.tryAcquire());
+        Assert.assertFalse(throttle.tryAcquire());
+
+        //when
+        throttle.release();
+
+        //then
+        Assert.assertTrue(throttle.tryAcquire());
+        Assert.assertFalse(throttle.tryAcquire());
+    }
+
+    @Test
+    public void testRateAdjustment() {
+
+        ParticipantThrottle throttle = getThrottle("transferConfirm");
+
+        throttle.record(true, 10);
+        Assert.assertEquals(3, throttle.getRate(), 0.001);
+
+        throttle.record(true, 10);
+        throttle.record(true, 10);
+        Assert.assertEquals(4, throttle.getRate(), 0.001);
+
+        // 慢调用减半
+        throttle.record(true, 200);
+        Assert.assertEquals(2, throttle.getRate(), 0.001);
+
+        // 失败减半，不低于最小速率
+        throttle.record(false, 10);
+        throttle.record(false, 10);
+        Assert.assertEquals(1, throttle.getRate(), 0.001);
+        Assert.assertEquals(ParticipantThrottle.State.CLOSED, throttle.getState());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws InterruptedException {
+
+        //given
+        ParticipantThrottle throttle = getThrottle("transferConfirm");
+
+        //when
+        for (int i = 0; i < 3; i++) {
+            throttle.record(false, 10);
+        }
+
+        //then
+        Assert.assertEquals(ParticipantThrottle.State.OPEN, throttle.getState());
+        Assert.assertTrue(throttle.getRemainingOpenMillis() > 0);
+        Assert.assertFalse(throttle.tryAcquire());
+        Assert.assertFalse(throttle.acquire(2000));
+
+        //when 熔断到期，只放行一次探测
+        Thread.sleep(1100);
+
+        //then
+        Assert.assertEquals(0, throttle.getRemainingOpenMillis());
+        Assert.assertTrue(throttle.tryAcquire());
+        Assert.assertEquals(ParticipantThrottle.State.HALF_OPEN, throttle.getState());
+        Assert.assertFalse(throttle.tryAcquire());
+
+        //when 探测成功
+        throttle.record(true, 10);
+
+        //then 从最小速率重新增长
+        Assert.assertEquals(ParticipantThrottle.State.CLOSED, throttle.getState());
+        Assert.assertEquals(1, throttle.getRate(), 0.001);
+        Assert.assertFalse(throttle.tryAcquire());
+    }
+
+    @Test
+    public void testProbeFailed() throws InterruptedException {
+
+        //given
+        ParticipantThrottle throttle = getThrottle("transferConfirm");
+
+        for (int i = 0; i < 3; i++) {
+            throttle.record(false, 10);
+        }
+
+        Thread.sleep(1100);
+        Assert.assertTrue(throttle.tryAcquire());
+
+        //when
+        throttle.record(false, 10);
+
+        //then
+        Assert.assertEquals(ParticipantThrottle.State.OPEN, throttle.getState());
+        Assert.assertFalse(throttle.tryAcquire());
+    }
+
+    @Test
+    public void testReleaseProbe() throws InterruptedException {
+
+        //given
+        ParticipantThrottle throttle = getThrottle("transferConfirm");
+
+        for (int i = 0; i < 3; i++) {
+            throttle.record(false, 10);
+        }
+
+        Thread.sleep(1100);
+        Assert.assertTrue(throttle.tryAcquire());
+        Assert.assertFalse(throttle.tryAcquire());
+
+        //when 探测未执行
+        throttle.release();
+
+        //then
+        Assert.assertEquals(ParticipantThrottle.State.HALF_OPEN, throttle.getState());
+        Assert.assertTrue(throttle.tryAcquire());
+    }
+
+    private ParticipantThrottle getThrottle(String methodName) {
+        return recoveryThrottle.getThrottle(new InvocationContext(TransferService.class, methodName,
+                new Class[]{long.class, long.class, int.class}, 1L, 2L, 100));
+    }
+}
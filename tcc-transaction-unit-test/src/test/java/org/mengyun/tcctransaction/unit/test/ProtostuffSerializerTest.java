@@ -0,0 +1,173 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.serializer.ProtostuffSerializer;
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Protostuff 序列化：事务、参与者、其它类型、循环引用
+ */
+public class ProtostuffSerializerTest {
+
+    private static final byte TYPE_TRANSACTION = 1;
+
+    private static final byte TYPE_PARTICIPANT = 2;
+
+    private static final byte TYPE_OTHER = 3;
+
+    @Test
+    public void testTransaction() {
+
+        //given
+        ProtostuffSerializer<Transaction> serializer = new ProtostuffSerializer<Transaction>();
+
+        Transaction transaction = TransactionFixtures.buildTransaction(3);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        transaction.getAttachments().put("key", "value");
+
+        //when
+        byte[] bytes = serializer.serialize(transaction);
+        Transaction loaded = serializer.deserialize(bytes);
+
+        //then
+        Assert.assertEquals(TYPE_TRANSACTION, bytes[0]);
+        Assert.assertEquals(transaction.getXid(), loaded.getXid());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, loaded.getStatus());
+        Assert.assertEquals(transaction.getCreateTimeMillis(), loaded.getCreateTimeMillis());
+        Assert.assertEquals(transaction.getLastUpdateTimeMillis(), loaded.getLastUpdateTimeMillis());
+        Assert.assertEquals("value", loaded.getAttachments().get("key"));
+        Assert.assertEquals(3, loaded.getParticipantCount());
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertArrayEquals(transaction.getParticipants().get(i).getConfirmInvocationContext().getArgs(),
+                    loaded.getParticipants().get(i).getConfirmInvocationContext().getArgs());
+        }
+    }
+
+    @Test
+    public void testParticipant() {
+
+        //given
+        ProtostuffSerializer<Participant> serializer = new ProtostuffSerializer<Participant>();
+
+        Transaction transaction = TransactionFixtures.buildTransaction(0);
+        Participant participant = TransactionFixtures.buildParticipant(transaction, 1);
+
+        //when
+        byte[] bytes = serializer.serialize(participant);
+        Participant loaded = serializer.deserialize(bytes);
+
+        //then
+        Assert.assertEquals(TYPE_PARTICIPANT, bytes[0]);
+        Assert.assertEquals(transaction.getXid(), loaded.getXid());
+        Assert.assertEquals(TransferService.class, loaded.getConfirmInvocationContext().getTargetClass());
+        Assert.assertEquals("transferCancel", loaded.getCancelInvocationContext().getMethodName());
+        Assert.assertArrayEquals(new Class[]{long.class, long.class, int.class}, loaded.getCancelInvocationContext().getParameterTypes());
+        Assert.assertArrayEquals(new Object[]{1001L, 2000L, 100}, loaded.getCancelInvocationContext().getArgs());
+    }
+
+    @Test
+    public void testOther() {
+
+        //given 与 Map 格式事务存储相同的结构
+        ProtostuffSerializer<Map<String, Object>> serializer = new ProtostuffSerializer<Map<String, Object>>();
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("CONTENT", new byte[]{1, 2, 3});
+        map.put("RETRIED_COUNT", 2);
+        map.put("VERSION", 3L);
+        map.put("LAST_UPDATE_TIME", new Date(1000L));
+
+        //when
+        byte[] bytes = serializer.serialize(map);
+        Map<String, Object> loaded = serializer.deserialize(bytes);
+
+        //then
+        Assert.assertEquals(TYPE_OTHER, bytes[0]);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) loaded.get("CONTENT"));
+        Assert.assertEquals(2, loaded.get("RETRIED_COUNT"));
+        Assert.assertEquals(3L, loaded.get("VERSION"));
+        Assert.assertEquals(new Date(1000L), loaded.get("LAST_UPDATE_TIME"));
+
+        ProtostuffSerializer<TransactionXid> xidSerializer = new ProtostuffSerializer<TransactionXid>();
+        TransactionXid xid = new TransactionXid();
+        Assert.assertEquals(xid, xidSerializer.deserialize(xidSerializer.serialize(xid)));
+    }
+
+    @Test
+    public void testSharedAndCyclicArguments() {
+
+        //given
+        ProtostuffSerializer<Transaction> serializer = new ProtostuffSerializer<Transaction>();
+
+        Node node = new Node();
+        node.next = node;
+
+        List<Object> shared = new ArrayList<Object>();
+        shared.add("a");
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        Class[] parameterTypes = new Class[]{Object.class, Object.class, Object.class};
+
+        transaction.enlistParticipant(new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(TransferService.class, "transferConfirm", parameterTypes, node, shared, shared),
+                new InvocationContext(TransferService.class, "transferCancel", parameterTypes, node, shared, shared), null));
+
+        //when
+        Transaction loaded = serializer.deserialize(serializer.serialize(transaction));
+
+        //then
+        Object[] args = loaded.getParticipants().get(0).getConfirmInvocationContext().getArgs();
+
+        Node loadedNode = (Node) args[0];
+        Assert.assertSame(loadedNode, loadedNode.next);
+        Assert.assertEquals(shared, args[1]);
+        Assert.assertSame(args[1], args[2]);
+    }
+
+    @Test
+    public void testClone() {
+
+        ProtostuffSerializer<Transaction> serializer = new ProtostuffSerializer<Transaction>();
+        Transaction transaction = TransactionFixtures.buildTransaction(2);
+
+        Transaction cloned = serializer.clone(transaction);
+
+        Assert.assertNotSame(transaction, cloned);
+        Assert.assertEquals(transaction.getXid(), cloned.getXid());
+        Assert.assertEquals(2, cloned.getParticipantCount());
+    }
+
+    @Test
+    public void testNull() {
+        ProtostuffSerializer<Object> serializer = new ProtostuffSerializer<Object>();
+
+        Assert.assertNull(serializer.serialize(null));
+        Assert.assertNull(serializer.deserialize(null));
+        Assert.assertNull(serializer.deserialize(new byte[0]));
+    }
+
+    @Test(expected = SystemException.class)
+    public void testUnknownType() {
+        new ProtostuffSerializer<Object>().deserialize(new byte[]{9, 1, 2});
+    }
+
+    public static class Node {
+
+        private Node next;
+    }
+}
@@ -0,0 +1,237 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.recover.RecoveryPartitioner;
+import org.mengyun.tcctransaction.recover.RetryScheduler;
+import org.mengyun.tcctransaction.recover.TransactionRecovery;
+import org.mengyun.tcctransaction.repository.RecoveryLeaseStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 事务恢复分区：分配、租约
+ */
+public class RecoveryPartitionerTest {
+
+    private static final int PARTITION_COUNT = 8;
+
+    @Test
+    public void testSingleNode() {
+
+        //given
+        RecoveryPartitioner partitioner = createPartitioner(new MemoryLeaseStore(), "node-a", 300);
+
+        //when
+        Set<Integer> owned = partitioner.refresh();
+
+        //then
+        Assert.assertEquals(PARTITION_COUNT, owned.size());
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(partitioner.owns(new TransactionXid()));
+        }
+    }
+
+    @Test
+    public void testTwoNodes() {
+
+        //given
+        MemoryLeaseStore leaseStore = new MemoryLeaseStore();
+        RecoveryPartitioner nodeA = createPartitioner(leaseStore, "node-a", 300);
+        RecoveryPartitioner nodeB = createPartitioner(leaseStore, "node-b", 300);
+
+        nodeA.refresh();
+
+        //when
+        Set<Integer> ownedByB = nodeB.refresh();
+
+        //then 分区仍由 node-a 持有，node-b 需等待释放
+        Assert.assertTrue(ownedByB.isEmpty());
+
+        //when
+        Set<Integer> ownedByA = nodeA.refresh();
+        ownedByB = nodeB.refresh();
+
+        //then
+        Assert.assertEquals(PARTITION_COUNT / 2, ownedByA.size());
+        Assert.assertEquals(PARTITION_COUNT / 2, ownedByB.size());
+
+        Set<Integer> all = new HashSet<Integer>(ownedByA);
+        all.addAll(ownedByB);
+        Assert.assertEquals(PARTITION_COUNT, all.size());
+
+        for (int i = 0; i < 100; i++) {
+            TransactionXid xid = new TransactionXid();
+            Assert.assertEquals(nodeA.partitionOf(xid), nodeB.partitionOf(xid));
+            Assert.assertTrue(nodeA.owns(xid) ^ nodeB.owns(xid));
+        }
+    }
+
+    @Test
+    public void testLeave() {
+
+        //given
+        MemoryLeaseStore leaseStore = new MemoryLeaseStore();
+        RecoveryPartitioner nodeA = createPartitioner(leaseStore, "node-a", 300);
+        RecoveryPartitioner nodeB = createPartitioner(leaseStore, "node-b", 300);
+
+        nodeA.refresh();
+        nodeB.refresh();
+        nodeA.refresh();
+        nodeB.refresh();
+
+        //when
+        nodeA.leave();
+
+        //then
+        Assert.assertFalse(nodeA.owns(new TransactionXid()));
+        Assert.assertEquals(PARTITION_COUNT, nodeB.refresh().size());
+    }
+
+    @Test
+    public void testLeaseExpired() throws InterruptedException {
+
+        //given
+        MemoryLeaseStore leaseStore = new MemoryLeaseStore();
+        RecoveryPartitioner nodeA = createPartitioner(leaseStore, "node-a", 1);
+        RecoveryPartitioner nodeB = createPartitioner(leaseStore, "node-b", 1);
+
+        nodeA.refresh();
+
+        TransactionXid xid = new TransactionXid();
+        Assert.assertTrue(nodeA.owns(xid));
+
+        //when node-a 未能续约
+        Thread.sleep(1100);
+
+        //then
+        Assert.assertFalse(nodeA.owns(xid));
+        Assert.assertEquals(PARTITION_COUNT, nodeB.refresh().size());
+        Assert.assertTrue(nodeB.owns(xid));
+    }
+
+    @Test
+    public void testUnownedRetriesCancelled() throws InterruptedException {
+
+        //given
+        MemoryLeaseStore leaseStore = new MemoryLeaseStore();
+        RecoveryPartitioner partitioner = createPartitioner(leaseStore, "node-a", 1);
+
+        RetryScheduler retryScheduler = new RetryScheduler();
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setRecoveryPartitioner(partitioner);
+        transactionRecovery.setRetryScheduler(retryScheduler);
+        retryScheduler.setTransactionRecovery(transactionRecovery);
+
+        partitioner.refresh();
+
+        TransactionXid xid = new TransactionXid();
+        retryScheduler.schedule(xid, System.currentTimeMillis() + 60000);
+
+        //when 存储不可用，租约到期
+        leaseStore.unavailable = true;
+        Thread.sleep(1100);
+
+        transactionRecovery.startRecover();
+
+        //then
+        Assert.assertEquals(0, retryScheduler.getPendingCount());
+
+        // 不持有分区时直接忽略，不加载事务
+        transactionRecovery.recoverScheduled(xid);
+
+        retryScheduler.stop();
+    }
+
+    private RecoveryPartitioner createPartitioner(RecoveryLeaseStore leaseStore, String nodeId, int leaseSeconds) {
+        RecoveryPartitioner partitioner = new RecoveryPartitioner();
+        partitioner.setLeaseStore(leaseStore);
+        partitioner.setNodeId(nodeId);
+        partitioner.setPartitionCount(PARTITION_COUNT);
+        partitioner.setLeaseSeconds(leaseSeconds);
+        return partitioner;
+    }
+
+    /**
+     * 内存租约存储
+     */
+    private static class MemoryLeaseStore implements RecoveryLeaseStore {
+
+        private final Map<String, Long> nodes = new HashMap<String, Long>();
+
+        private final Map<Integer, Lease> leases = new HashMap<Integer, Lease>();
+
+        private volatile boolean unavailable;
+
+        @Override
+        public synchronized void heartbeat(String nodeId, long leaseMillis) {
+            if (unavailable) {
+                throw new IllegalStateException("lease store unavailable");
+            }
+            nodes.put(nodeId, System.currentTimeMillis() + leaseMillis);
+        }
+
+        @Override
+        public synchronized void removeNode(String nodeId) {
+            nodes.remove(nodeId);
+        }
+
+        @Override
+        public synchronized List<String> findLiveNodes() {
+
+            List<String> liveNodes = new ArrayList<String>();
+
+            for (Map.Entry<String, Long> entry : nodes.entrySet()) {
+                if (entry.getValue() > System.currentTimeMillis()) {
+                    liveNodes.add(entry.getKey());
+                }
+            }
+
+            return liveNodes;
+        }
+
+        @Override
+        public synchronized boolean tryAcquire(int partition, String nodeId, long leaseMillis) {
+
+            long now = System.currentTimeMillis();
+            Lease lease = leases.get(partition);
+
+            if (lease != null && !lease.owner.equals(nodeId) && lease.expireTime > now) {
+                return false;
+            }
+
+            leases.put(partition, new Lease(nodeId, now + leaseMillis));
+            return true;
+        }
+
+        @Override
+        public synchronized void release(int partition, String nodeId) {
+
+            Lease lease = leases.get(partition);
+
+            if (lease != null && lease.owner.equals(nodeId)) {
+                leases.remove(partition);
+            }
+        }
+    }
+
+    private static class Lease {
+
+        private final String owner;
+
+        private final long expireTime;
+
+        Lease(String owner, long expireTime) {
+            this.owner = owner;
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.recover.RetryScheduler;
+import org.mengyun.tcctransaction.recover.TransactionRecovery;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事务重试调度：时间轮
+ */
+public class RetrySchedulerTest {
+
+    private RetryScheduler retryScheduler;
+
+    private RecordingTransactionRecovery transactionRecovery;
+
+    @Before
+    public void createScheduler() {
+        transactionRecovery = new RecordingTransactionRecovery();
+
+        retryScheduler = new RetryScheduler();
+        retryScheduler.setTickMillis(10);
+        retryScheduler.setWheelSize(8);
+        retryScheduler.setTransactionRecovery(transactionRecovery);
+    }
+
+    @After
+    public void stopScheduler() {
+        retryScheduler.stop();
+    }
+
+    @Test
+    public void testFireWhenDue() throws InterruptedException {
+
+        //given
+        TransactionXid xid = new TransactionXid();
+        long dueTime = System.currentTimeMillis() + 100;
+
+        //when
+        Assert.assertTrue(retryScheduler.schedule(xid, dueTime));
+
+        //then
+        Assert.assertEquals(1, retryScheduler.getPendingCount());
+        Assert.assertTrue(retryScheduler.getPendingXids().contains(xid));
+
+        Assert.assertEquals(xid, transactionRecovery.fired.poll(2, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() >= dueTime - 10);
+        Assert.assertEquals(0, retryScheduler.getPendingCount());
+    }
+
+    @Test
+    public void testFireOverdue() throws InterruptedException {
+
+        TransactionXid xid = new TransactionXid();
+
+        retryScheduler.schedule(xid, System.currentTimeMillis() - 1000);
+
+        Assert.assertEquals(xid, transactionRecovery.fired.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFireAfterRounds() throws InterruptedException {
+
+        //given 8 格一圈为 80ms，需转多圈
+        TransactionXid xid = new TransactionXid();
+        long dueTime = System.currentTimeMillis() + 300;
+
+        //when
+        retryScheduler.schedule(xid, dueTime);
+
+        //then
+        Assert.assertNull(transactionRecovery.fired.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(xid, transactionRecovery.fired.poll(2, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() >= dueTime - 10);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+
+        //given
+        TransactionXid xid = new TransactionXid();
+        retryScheduler.schedule(xid, System.currentTimeMillis() + 100);
+
+        //when
+        retryScheduler.cancel(xid);
+
+        //then
+        Assert.assertEquals(0, retryScheduler.getPendingCount());
+        Assert.assertNull(transactionRecovery.fired.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testReschedule() throws InterruptedException {
+
+        //given
+        TransactionXid xid = new TransactionXid();
+        retryScheduler.schedule(xid, System.currentTimeMillis() + 50);
+
+        //when
+        long dueTime = System.currentTimeMillis() + 300;
+        retryScheduler.schedule(xid, dueTime);
+
+        //then 只保留最后一次调度
+        Assert.assertEquals(1, retryScheduler.getPendingCount());
+        Assert.assertEquals(xid, transactionRecovery.fired.poll(2, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() >= dueTime - 10);
+        Assert.assertNull(transactionRecovery.fired.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testMaxPendingRetries() {
+
+        retryScheduler.setMaxPendingRetries(2);
+
+        long dueTime = System.currentTimeMillis() + 60000;
+
+        TransactionXid xid = new TransactionXid();
+
+        Assert.assertTrue(retryScheduler.schedule(xid, dueTime));
+        Assert.assertTrue(retryScheduler.schedule(new TransactionXid(), dueTime));
+        Assert.assertFalse(retryScheduler.schedule(new TransactionXid(), dueTime));
+
+        // 已调度的事务可以改期
+        Assert.assertTrue(retryScheduler.schedule(xid, dueTime + 1000));
+        Assert.assertEquals(2, retryScheduler.getPendingCount());
+    }
+
+    @Test
+    public void testScheduleFailed() {
+
+        retryScheduler.setFirstRetryDelaySeconds(60);
+
+        Transaction rootTransaction = new Transaction(TransactionType.ROOT);
+        Transaction branchTransaction = new Transaction(new TransactionContext(new TransactionXid(), 1));
+
+        retryScheduler.scheduleFailed(rootTransaction);
+        retryScheduler.scheduleFailed(branchTransaction);
+
+        Assert.assertEquals(1, retryScheduler.getPendingCount());
+        Assert.assertTrue(retryScheduler.getPendingXids().contains(rootTransaction.getXid()));
+    }
+
+    @Test
+    public void testStop() {
+
+        retryScheduler.stop();
+
+        Assert.assertFalse(retryScheduler.schedule(new TransactionXid(), System.currentTimeMillis()));
+        Assert.assertEquals(0, retryScheduler.getPendingCount());
+    }
+
+    /**
+     * 记录到期事务，不执行恢复
+     */
+    private static class RecordingTransactionRecovery extends TransactionRecovery {
+
+        private final BlockingQueue<TransactionXid> fired = new LinkedBlockingQueue<TransactionXid>();
+
+        @Override
+        public void recoverScheduled(TransactionXid xid) {
+            fired.add(xid);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.mengyun.tcctransaction.serializer.ProtostuffSerializer;
+
+/**
+ * 事务序列化耗时、大小对比
+ * 只输出结果，不作为单元测试运行，需要时直接执行 main 方法。
+ */
+public class SerializerBenchmark {
+
+    public static void main(String[] args) {
+
+        Transaction transaction = TransactionFixtures.buildTransaction(3);
+
+        compareSerializer("kryo", new KryoPoolSerializer(), transaction);
+        compareSerializer("protostuff", new ProtostuffSerializer(), transaction);
+    }
+
+    private static void compareSerializer(String name, ObjectSerializer objectSerializer, Transaction transaction) {
+
+        byte[] bytes = objectSerializer.serialize(transaction);
+
+        for (int i = 0; i < 10000; i++) {
+            objectSerializer.deserialize(objectSerializer.serialize(transaction));
+        }
+
+        long currentTime = System.currentTimeMillis();
+
+        for (int i = 0; i < 100000; i++) {
+            objectSerializer.deserialize(objectSerializer.serialize(transaction));
+        }
+
+        System.out.println(name + " size:" + bytes.length + " cost time:" + (System.currentTimeMillis() - currentTime));
+    }
+}
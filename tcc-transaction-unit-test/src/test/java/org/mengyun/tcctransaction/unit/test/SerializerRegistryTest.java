@@ -0,0 +1,135 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.SerializerRegistry;
+
+/**
+ * 序列化注册表：编号前缀、兼容模式
+ */
+public class SerializerRegistryTest {
+
+    @Test
+    public void testLegacyByDefault() {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(3);
+        SerializerRegistry<Transaction> registry = new SerializerRegistry<Transaction>();
+
+        //when
+        byte[] bytes = registry.serialize(transaction);
+
+        //then
+        Assert.assertEquals(SerializerRegistry.LEGACY, registry.getCodecId());
+        Assert.assertFalse(SerializerRegistry.hasCodecId(bytes));
+        Assert.assertArrayEquals(new KryoPoolSerializer<Transaction>().serialize(transaction), bytes);
+        assertTransaction(transaction, registry.deserialize(bytes));
+    }
+
+    @Test
+    public void testKryoCodec() {
+        assertCodec(SerializerRegistry.KRYO);
+    }
+
+    @Test
+    public void testJdkCodec() {
+        assertCodec(SerializerRegistry.JDK);
+    }
+
+    @Test
+    public void testProtostuffCodec() {
+        assertCodec(SerializerRegistry.PROTOSTUFF);
+    }
+
+    @Test
+    public void testReadLegacyWithCodec() {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(3);
+        byte[] bytes = new KryoPoolSerializer<Transaction>().serialize(transaction);
+
+        SerializerRegistry<Transaction> registry = new SerializerRegistry<Transaction>();
+        registry.setCodecId(SerializerRegistry.JDK);
+
+        //when
+        Transaction loaded = registry.deserialize(bytes);
+
+        //then
+        assertTransaction(transaction, loaded);
+    }
+
+    @Test
+    public void testClone() {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(3);
+        SerializerRegistry<Transaction> registry = new SerializerRegistry<Transaction>();
+        registry.setCodecId(SerializerRegistry.KRYO);
+
+        //when
+        Transaction cloned = registry.clone(transaction);
+
+        //then
+        Assert.assertNotSame(transaction, cloned);
+        assertTransaction(transaction, cloned);
+    }
+
+    @Test(expected = SystemException.class)
+    public void testSerializeWithUnknownCodec() {
+
+        SerializerRegistry<Transaction> registry = new SerializerRegistry<Transaction>();
+        registry.setCodecId(9);
+
+        registry.serialize(TransactionFixtures.buildTransaction(3));
+    }
+
+    @Test(expected = SystemException.class)
+    public void testDeserializeWithUnknownCodec() {
+
+        SerializerRegistry<Transaction> registry = new SerializerRegistry<Transaction>();
+
+        registry.deserialize(new byte[]{0x00, (byte) (0x80 | 9), 1, 2, 3});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterInvalidCodecId() {
+        new SerializerRegistry<Transaction>().register(128, new KryoPoolSerializer());
+    }
+
+    private void assertCodec(int codecId) {
+
+        //given
+        Transaction transaction = TransactionFixtures.buildTransaction(3);
+
+        SerializerRegistry<Transaction> registry = new SerializerRegistry<Transaction>();
+        registry.setCodecId(codecId);
+
+        //when
+        byte[] bytes = registry.serialize(transaction);
+
+        //then
+        Assert.assertTrue(SerializerRegistry.hasCodecId(bytes));
+        Assert.assertEquals(0x00, bytes[0]);
+        Assert.assertEquals((byte) (0x80 | codecId), bytes[1]);
+
+        assertTransaction(transaction, registry.deserialize(bytes));
+
+        // 兼容模式的节点也能读取带编号的数据
+        assertTransaction(transaction, new SerializerRegistry<Transaction>().deserialize(bytes));
+    }
+
+    private void assertTransaction(Transaction expected, Transaction actual) {
+        Assert.assertEquals(expected.getXid(), actual.getXid());
+        Assert.assertEquals(expected.getStatus(), actual.getStatus());
+        Assert.assertEquals(expected.getVersion(), actual.getVersion());
+        Assert.assertEquals(expected.getParticipantCount(), actual.getParticipantCount());
+
+        for (int i = 0; i < expected.getParticipantCount(); i++) {
+            Assert.assertArrayEquals(expected.getParticipants().get(i).getConfirmInvocationContext().getArgs(),
+                    actual.getParticipants().get(i).getConfirmInvocationContext().getArgs());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.KryoRegistrationProfile;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 事务上下文：附带属性只读、序列化
+ */
+public class TransactionContextSerializationTest {
+
+    @Test
+    public void testKryo() {
+        assertRoundTrip(new KryoPoolSerializer<TransactionContext>());
+    }
+
+    @Test
+    public void testKryoRegistrationProfile() {
+        assertRoundTrip(new KryoPoolSerializer<TransactionContext>(new KryoRegistrationProfile()));
+    }
+
+    @Test
+    public void testJdk() {
+        assertRoundTrip(new JdkSerializationSerializer<TransactionContext>());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAttachmentsReadOnly() {
+        buildTransactionContext().getAttachments().put("key", "value");
+    }
+
+    @Test
+    public void testAttachmentsCopied() {
+
+        //given
+        Map<String, String> attachments = new HashMap<String, String>();
+        attachments.put("key", "value");
+
+        TransactionContext.Builder builder = new TransactionContext.Builder()
+                .setXid(new TransactionXid())
+                .setAttachments(attachments);
+
+        TransactionContext transactionContext = builder.build();
+
+        //when
+        attachments.put("key", "changed");
+        builder.setAttachment("other", "value");
+
+        //then
+        Assert.assertEquals(1, transactionContext.getAttachments().size());
+        Assert.assertEquals("value", transactionContext.getAttachments().get("key"));
+        Assert.assertTrue(new TransactionContext(new TransactionXid(), 1).getAttachments().isEmpty());
+    }
+
+    private void assertRoundTrip(ObjectSerializer<TransactionContext> serializer) {
+
+        //given
+        TransactionContext transactionContext = buildTransactionContext();
+
+        //when
+        TransactionContext loaded = serializer.deserialize(serializer.serialize(transactionContext));
+
+        //then
+        Assert.assertEquals(transactionContext.getXid(), loaded.getXid());
+        Assert.assertEquals(transactionContext.getStatus(), loaded.getStatus());
+        Assert.assertEquals(transactionContext.getAttachments(), loaded.getAttachments());
+
+        try {
+            loaded.getAttachments().put("key", "value");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(2, loaded.getAttachments().size());
+        }
+    }
+
+    private TransactionContext buildTransactionContext() {
+        return new TransactionContext.Builder()
+                .setXid(new TransactionXid())
+                .setStatus(TransactionStatus.CONFIRMING.getId())
+                .setAttachment("traceId", "t-1")
+                .setAttachment("tenant", "a")
+                .build();
+    }
+}
@@ -0,0 +1,38 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+
+/**
+ * 测试用事务、参与者
+ * 参与者为 TransferService 的 transferConfirm / transferCancel，参数为 (1000 + index, 2000, 100)
+ */
+public class TransactionFixtures {
+
+    private TransactionFixtures() {
+
+    }
+
+    public static Transaction buildTransaction(int participantCount) {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        for (int i = 0; i < participantCount; i++) {
+            transaction.enlistParticipant(buildParticipant(transaction, i));
+        }
+
+        return transaction;
+    }
+
+    public static Participant buildParticipant(Transaction transaction, int index) {
+        Class[] parameterTypes = new Class[]{long.class, long.class, int.class};
+        Object[] args = new Object[]{1000L + index, 2000L, 100};
+        return new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(TransferService.class, "transferConfirm", parameterTypes, args),
+                new InvocationContext(TransferService.class, "transferCancel", parameterTypes, args), null);
+    }
+}
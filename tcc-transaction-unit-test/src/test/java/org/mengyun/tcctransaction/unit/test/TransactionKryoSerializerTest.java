@@ -0,0 +1,163 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Terminator;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.KryoThreadLocalSerializer;
+import org.mengyun.tcctransaction.serializer.KryoTransactionSerializer;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 事务序列化结构、参与者列表
+ */
+public class TransactionKryoSerializerTest {
+
+    @Test
+    public void testKryoSerializersCompatible() {
+
+        //given
+        Transaction transaction = buildTransaction(3);
+
+        //when
+        byte[] poolBytes = new KryoPoolSerializer<Transaction>().serialize(transaction);
+        byte[] threadLocalBytes = new KryoThreadLocalSerializer<Transaction>().serialize(transaction);
+        byte[] transactionBytes = new KryoTransactionSerializer<Transaction>().serialize(transaction);
+
+        //then
+        Assert.assertArrayEquals(poolBytes, threadLocalBytes);
+        Assert.assertArrayEquals(poolBytes, transactionBytes);
+
+        assertTransaction(transaction, new KryoThreadLocalSerializer<Transaction>().deserialize(poolBytes));
+        assertTransaction(transaction, new KryoTransactionSerializer<Transaction>().deserialize(poolBytes));
+        assertTransaction(transaction, new KryoPoolSerializer<Transaction>().deserialize(transactionBytes));
+    }
+
+    @Test
+    public void testJdk() {
+        assertRoundTrip(new JdkSerializationSerializer<Transaction>());
+    }
+
+    @Test
+    public void testClone() {
+
+        //given
+        Transaction transaction = buildTransaction(2);
+
+        //when
+        Transaction cloned = new KryoPoolSerializer<Transaction>().clone(transaction);
+
+        //then
+        Assert.assertNotSame(transaction, cloned);
+        assertTransaction(transaction, cloned);
+    }
+
+    @Test
+    public void testEmptyTransaction() {
+        assertRoundTrip(new KryoPoolSerializer<Transaction>(), buildTransaction(0));
+    }
+
+    @Test
+    public void testParticipantsWriteThrough() {
+
+        //given
+        Transaction transaction = buildTransaction(2);
+        List<Participant> participants = transaction.getParticipants();
+
+        Participant first = participants.get(0);
+        Participant added = TransactionFixtures.buildParticipant(transaction, 9);
+
+        //when
+        participants.add(added);
+
+        //then
+        Assert.assertEquals(3, transaction.getParticipantCount());
+        Assert.assertSame(added, transaction.getParticipants().get(2));
+        Assert.assertSame(Terminator.INSTANCE, added.getTerminator());
+
+        //when
+        Participant replaced = participants.set(0, TransactionFixtures.buildParticipant(transaction, 8));
+
+        //then
+        Assert.assertSame(first, replaced);
+        Assert.assertNotSame(first, transaction.getParticipants().get(0));
+
+        //when
+        Assert.assertSame(added, participants.remove(2));
+        participants.add(0, added);
+
+        //then
+        Assert.assertEquals(3, transaction.getParticipantCount());
+        Assert.assertSame(added, transaction.getParticipants().get(0));
+
+        //when
+        Iterator<Participant> iterator = transaction.getParticipants().iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+
+        //then
+        Assert.assertEquals(0, transaction.getParticipantCount());
+        Assert.assertTrue(participants.isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testParticipantsAddOutOfBounds() {
+        Transaction transaction = buildTransaction(1);
+        transaction.getParticipants().add(2, TransactionFixtures.buildParticipant(transaction, 0));
+    }
+
+    private void assertRoundTrip(ObjectSerializer<Transaction> serializer) {
+        assertRoundTrip(serializer, buildTransaction(3));
+    }
+
+    private void assertRoundTrip(ObjectSerializer<Transaction> serializer, Transaction transaction) {
+        assertTransaction(transaction, serializer.deserialize(serializer.serialize(transaction)));
+    }
+
+    private void assertTransaction(Transaction expected, Transaction actual) {
+
+        Assert.assertEquals(expected.getXid(), actual.getXid());
+        Assert.assertEquals(expected.getStatus(), actual.getStatus());
+        Assert.assertEquals(expected.getTransactionType(), actual.getTransactionType());
+        Assert.assertEquals(expected.getRetriedCount(), actual.getRetriedCount());
+        Assert.assertEquals(expected.getVersion(), actual.getVersion());
+        Assert.assertEquals(expected.getCreateTimeMillis(), actual.getCreateTimeMillis());
+        Assert.assertEquals(expected.getLastUpdateTimeMillis(), actual.getLastUpdateTimeMillis());
+        Assert.assertEquals(expected.getAttachments(), actual.getAttachments());
+        Assert.assertEquals(expected.getParticipantCount(), actual.getParticipantCount());
+
+        for (int i = 0; i < expected.getParticipantCount(); i++) {
+
+            Participant participant = actual.getParticipants().get(i);
+
+            Assert.assertEquals(expected.getXid(), participant.getXid());
+            Assert.assertSame(Terminator.INSTANCE, participant.getTerminator());
+            Assert.assertArrayEquals(expected.getParticipants().get(i).getCancelInvocationContext().getArgs(),
+                    participant.getCancelInvocationContext().getArgs());
+        }
+    }
+
+    private Transaction buildTransaction(int participantCount) {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.changeStatus(TransactionStatus.CANCELLING);
+        transaction.addRetriedCount();
+        transaction.getAttachments().put("key", "value");
+
+        for (int i = 0; i < participantCount; i++) {
+            transaction.enlistParticipant(TransactionFixtures.buildParticipant(transaction, i));
+        }
+
+        return transaction;
+    }
+}
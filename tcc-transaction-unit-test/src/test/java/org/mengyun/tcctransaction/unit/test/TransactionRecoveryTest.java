@@ -0,0 +1,424 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.TransactionSummary;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.recover.ParticipantThrottle;
+import org.mengyun.tcctransaction.recover.RecoverConfig;
+import org.mengyun.tcctransaction.recover.RecoveryProgress;
+import org.mengyun.tcctransaction.recover.RecoveryThrottle;
+import org.mengyun.tcctransaction.recover.TransactionRecovery;
+import org.mengyun.tcctransaction.spring.recover.DefaultRecoverConfig;
+import org.mengyun.tcctransaction.support.TransactionConfigurator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 事务恢复：并行恢复、超时、进度、参与者限流
+ */
+public class TransactionRecoveryTest {
+
+    private MemoryTransactionRepository repository;
+
+    private DefaultRecoverConfig recoverConfig;
+
+    private TransactionRecovery transactionRecovery;
+
+    @Before
+    public void before() {
+
+        RecoveryTarget.reset();
+
+        repository = new MemoryTransactionRepository();
+
+        recoverConfig = new DefaultRecoverConfig();
+        recoverConfig.setRecoverThreadPoolSize(4);
+        recoverConfig.setRecoverTimeout(10);
+
+        transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(new TransactionConfigurator() {
+            @Override
+            public TransactionManager getTransactionManager() {
+                return null;
+            }
+
+            @Override
+            public TransactionRepository getTransactionRepository() {
+                return repository;
+            }
+
+            @Override
+            public RecoverConfig getRecoverConfig() {
+                return recoverConfig;
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        transactionRecovery.shutdown();
+    }
+
+    @Test
+    public void testParallelRecover() {
+
+        //given
+        for (int i = 0; i < 4; i++) {
+            repository.create(buildTransaction("sleep-300-" + i));
+        }
+
+        //when
+        long startTime = System.currentTimeMillis();
+        transactionRecovery.startRecover();
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        //then 顺序执行需要 1200ms
+        Assert.assertTrue("elapsed:" + elapsed, elapsed < 1000);
+        Assert.assertTrue(RecoveryTarget.maxRunning.get() > 1);
+        Assert.assertEquals(4, RecoveryTarget.confirmed.size());
+        Assert.assertEquals(0, repository.size());
+
+        RecoveryProgress progress = transactionRecovery.getCurrentProgress();
+        Assert.assertTrue(progress.isFinished());
+        Assert.assertEquals(4, progress.getTotal());
+        Assert.assertEquals(4, progress.getSucceeded());
+        Assert.assertEquals(4, progress.getCompleted());
+    }
+
+    @Test
+    public void testPoolSizeLimitsConcurrency() {
+
+        //given
+        recoverConfig.setRecoverThreadPoolSize(2);
+
+        for (int i = 0; i < 6; i++) {
+            repository.create(buildTransaction("sleep-100-" + i));
+        }
+
+        //when
+        transactionRecovery.startRecover();
+
+        //then
+        Assert.assertTrue(RecoveryTarget.maxRunning.get() <= 2);
+        Assert.assertEquals(6, transactionRecovery.getCurrentProgress().getSucceeded());
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+
+        //given 超时未结束线程数量上限与恢复线程数相同，两个线程时超时后仍可提交
+        recoverConfig.setRecoverThreadPoolSize(2);
+        recoverConfig.setRecoverTimeout(1);
+
+        repository.create(buildTransaction("block"));
+        repository.create(buildTransaction("fast"));
+
+        //when
+        long startTime = System.currentTimeMillis();
+        transactionRecovery.startRecover();
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        //then 超时后释放名额，不等待阻塞的任务
+        Assert.assertTrue("elapsed:" + elapsed, elapsed < 5000);
+
+        RecoveryProgress progress = transactionRecovery.getCurrentProgress();
+        Assert.assertEquals(1, progress.getTimedOut());
+        Assert.assertEquals(1, progress.getSucceeded());
+        Assert.assertEquals(2, progress.getCompleted());
+
+        // 超时中断阻塞的线程，线程退出后不再计入
+        waitUntilNoAbandonedWorker();
+        Assert.assertTrue(RecoveryTarget.interrupted.contains("block"));
+        Assert.assertFalse(RecoveryTarget.interrupted.contains("fast"));
+        Assert.assertTrue(RecoveryTarget.confirmed.contains("fast"));
+        Assert.assertEquals(1, repository.size());
+    }
+
+    @Test
+    public void testInterruptNotLeakedToNextTask() throws InterruptedException {
+
+        //given 单线程执行，超时中断的线程之后执行下一个任务
+        recoverConfig.setRecoverThreadPoolSize(1);
+        recoverConfig.setRecoverTimeout(1);
+
+        repository.create(buildTransaction("block"));
+
+        transactionRecovery.startRecover();
+        waitUntilNoAbandonedWorker();
+
+        Assert.assertTrue(RecoveryTarget.interrupted.contains("block"));
+
+        repository.clear();
+        repository.create(buildTransaction("sleep-300-0"));
+
+        //when
+        transactionRecovery.startRecover();
+
+        //then
+        Assert.assertFalse(RecoveryTarget.interrupted.contains("sleep-300-0"));
+        Assert.assertTrue(RecoveryTarget.confirmed.contains("sleep-300-0"));
+        Assert.assertEquals(1, transactionRecovery.getCurrentProgress().getSucceeded());
+    }
+
+    @Test
+    public void testProgressCountsSkippedAndFailed() {
+
+        //given
+        repository.create(buildTransaction("fast"));
+        repository.create(buildTransaction("fail"));
+
+        // 超过最大重试次数，存储不支持死信区时跳过
+        Transaction exhausted = buildTransaction("exhausted");
+        for (int i = 0; i <= recoverConfig.getMaxRetryCount(); i++) {
+            exhausted.addRetriedCount();
+        }
+        repository.create(exhausted);
+
+        // 未超过最大可重试时间的分支事务
+        Transaction branch = new Transaction(TransactionType.BRANCH);
+        branch.changeStatus(TransactionStatus.CONFIRMING);
+        repository.create(branch);
+
+        //when
+        transactionRecovery.startRecover();
+
+        //then
+        RecoveryProgress progress = transactionRecovery.getCurrentProgress();
+        Assert.assertEquals(4, progress.getTotal());
+        Assert.assertEquals(1, progress.getSucceeded());
+        Assert.assertEquals(1, progress.getFailed());
+        Assert.assertEquals(2, progress.getSkipped());
+        Assert.assertEquals(4, progress.getCompleted());
+        Assert.assertTrue(progress.isFinished());
+        Assert.assertFalse(RecoveryTarget.confirmed.contains("exhausted"));
+    }
+
+    @Test
+    public void testThrottleRecordedOncePerTarget() {
+
+        //given 同一目标的三个参与者
+        RecoveryThrottle recoveryThrottle = createThrottle();
+        transactionRecovery.setRecoveryThrottle(recoveryThrottle);
+
+        repository.create(buildTransaction("fast-0", "fast-1", "fast-2"));
+
+        //when
+        transactionRecovery.startRecover();
+
+        //then 只记录一次，速率增加一次
+        ParticipantThrottle throttle = getThrottle(recoveryThrottle, "confirm");
+
+        Assert.assertEquals(3, RecoveryTarget.confirmed.size());
+        Assert.assertEquals(2, throttle.getRate(), 0.001);
+        Assert.assertEquals(0, repository.size());
+    }
+
+    @Test
+    public void testThrottleReleasedWhenTargetNotReached() {
+
+        //given 第一个目标失败，第二个目标未调用
+        RecoveryThrottle recoveryThrottle = createThrottle();
+        transactionRecovery.setRecoveryThrottle(recoveryThrottle);
+
+        Transaction transaction = buildTransaction("fail");
+        enlistParticipant(transaction, "confirmOther", "other");
+        repository.create(transaction);
+
+        //when
+        transactionRecovery.startRecover();
+
+        //then 失败的目标速率减半，未调用的目标归还许可、不记录
+        ParticipantThrottle failedThrottle = getThrottle(recoveryThrottle, "confirm");
+        ParticipantThrottle otherThrottle = getThrottle(recoveryThrottle, "confirmOther");
+
+        Assert.assertEquals(1, transactionRecovery.getCurrentProgress().getFailed());
+        Assert.assertFalse(RecoveryTarget.confirmed.contains("other"));
+        Assert.assertEquals(0.5, failedThrottle.getRate(), 0.001);
+        Assert.assertEquals(1, otherThrottle.getRate(), 0.001);
+        Assert.assertTrue(otherThrottle.tryAcquire());
+    }
+
+    private RecoveryThrottle createThrottle() {
+        RecoveryThrottle recoveryThrottle = new RecoveryThrottle();
+        recoveryThrottle.setInitialRate(1);
+        recoveryThrottle.setMinRate(0.01);
+        recoveryThrottle.setMaxRate(10);
+        recoveryThrottle.setRateIncrease(1);
+        recoveryThrottle.setRateDecreaseFactor(0.5);
+        recoveryThrottle.setSlowCallMillis(1000);
+        recoveryThrottle.setFailureThreshold(3);
+        recoveryThrottle.setMaxWaitMillis(100);
+        return recoveryThrottle;
+    }
+
+    private ParticipantThrottle getThrottle(RecoveryThrottle recoveryThrottle, String method) {
+        return recoveryThrottle.getThrottle(new InvocationContext(RecoveryTarget.class, method, new Class[]{String.class}));
+    }
+
+    private void waitUntilNoAbandonedWorker() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (transactionRecovery.getAbandonedWorkerCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, transactionRecovery.getAbandonedWorkerCount());
+    }
+
+    /**
+     * 确认中的根事务，参与者为 {@link RecoveryTarget#confirm(String)}
+     */
+    static Transaction buildTransaction(String... keys) {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+
+        for (String key : keys) {
+            enlistParticipant(transaction, "confirm", key);
+        }
+
+        return transaction;
+    }
+
+    static void enlistParticipant(Transaction transaction, String confirmMethod, String key) {
+        transaction.enlistParticipant(new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(RecoveryTarget.class, confirmMethod, new Class[]{String.class}, key),
+                new InvocationContext(RecoveryTarget.class, "cancel", new Class[]{String.class}, key),
+                Compensable.NullableTransactionContextEditor.class));
+    }
+
+    /**
+     * 恢复调用的参与者，按参数决定行为：sleep-毫秒-序号 休眠，block 阻塞直到被中断，fail 抛出异常
+     */
+    public static class RecoveryTarget {
+
+        static final List<String> confirmed = Collections.synchronizedList(new ArrayList<String>());
+
+        static final List<String> interrupted = Collections.synchronizedList(new ArrayList<String>());
+
+        static final AtomicInteger running = new AtomicInteger();
+
+        static final AtomicInteger maxRunning = new AtomicInteger();
+
+        static void reset() {
+            confirmed.clear();
+            interrupted.clear();
+            running.set(0);
+            maxRunning.set(0);
+        }
+
+        public void confirm(String key) {
+
+            int current = running.incrementAndGet();
+
+            while (maxRunning.get() < current && !maxRunning.compareAndSet(maxRunning.get(), current)) {
+            }
+
+            try {
+                if (key.startsWith("sleep-")) {
+                    Thread.sleep(Long.parseLong(key.split("-")[1]));
+                } else if (key.equals("block")) {
+                    Thread.sleep(60000);
+                } else if (key.equals("fail")) {
+                    throw new IllegalStateException("confirm failed");
+                }
+
+                if (Thread.currentThread().isInterrupted()) {
+                    interrupted.add(key);
+                }
+
+                confirmed.add(key);
+
+            } catch (InterruptedException e) {
+                interrupted.add(key);
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        public void confirmOther(String key) {
+            confirm(key);
+        }
+
+        public void cancel(String key) {
+        }
+    }
+
+    /**
+     * 内存事务存储，所有事务均视为到期
+     */
+    static class MemoryTransactionRepository implements TransactionRepository {
+
+        private final Map<TransactionXid, Transaction> transactions = new ConcurrentHashMap<TransactionXid, Transaction>();
+
+        int size() {
+            return transactions.size();
+        }
+
+        void clear() {
+            transactions.clear();
+        }
+
+        @Override
+        public int create(Transaction transaction) {
+            transactions.put((TransactionXid) transaction.getXid(), transaction);
+            return 1;
+        }
+
+        @Override
+        public int update(Transaction transaction) {
+            transaction.updateVersion();
+            return 1;
+        }
+
+        @Override
+        public int appendParticipant(Transaction transaction, Participant participant) {
+            return update(transaction);
+        }
+
+        @Override
+        public int delete(Transaction transaction) {
+            return transactions.remove(transaction.getXid()) == null ? 0 : 1;
+        }
+
+        @Override
+        public Transaction findByXid(TransactionXid xid) {
+            return transactions.get(xid);
+        }
+
+        @Override
+        public List<Transaction> findAllUnmodifiedSince(Date date) {
+            return new ArrayList<Transaction>(transactions.values());
+        }
+
+        @Override
+        public List<TransactionSummary> findAllSummariesUnmodifiedSince(Date date) {
+            return findAllSummariesDueBefore(date);
+        }
+
+        @Override
+        public List<TransactionSummary> findAllSummariesDueBefore(Date date) {
+            List<TransactionSummary> summaries = new ArrayList<TransactionSummary>();
+            for (Transaction transaction : transactions.values()) {
+                summaries.add(new TransactionSummary(transaction));
+            }
+            return summaries;
+        }
+    }
+}
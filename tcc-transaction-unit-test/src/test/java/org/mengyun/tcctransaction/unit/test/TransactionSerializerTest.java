@@ -0,0 +1,169 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionSummary;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.repository.helper.TransactionSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 事务存储格式：Map 格式、带头部格式、摘要读取
+ */
+public class TransactionSerializerTest {
+
+    private final ObjectSerializer serializer = new KryoPoolSerializer();
+
+    @Test
+    public void testLegacyByDefault() {
+
+        //given
+        Transaction transaction = buildTransaction();
+
+        //when
+        byte[] bytes = TransactionSerializer.serialize(serializer, transaction);
+
+        //then 未升级的节点按 Map 读取
+        Map<String, Object> map = (Map<String, Object>) serializer.deserialize(bytes);
+        Assert.assertEquals(transaction.getRetriedCount(), map.get("RETRIED_COUNT"));
+        Assert.assertEquals(transaction.getVersion(), map.get("VERSION"));
+        Assert.assertEquals(transaction.getLastUpdateTime(), map.get("LAST_UPDATE_TIME"));
+
+        assertTransaction(transaction, TransactionSerializer.deserialize(serializer, bytes));
+    }
+
+    @Test
+    public void testEnvelope() {
+
+        //given
+        Transaction transaction = buildTransaction();
+
+        //when
+        byte[] bytes = TransactionSerializer.serialize(serializer, transaction, true);
+
+        //then
+        Assert.assertEquals('T', bytes[0]);
+        Assert.assertEquals('C', bytes[1]);
+        Assert.assertEquals('T', bytes[2]);
+        Assert.assertEquals('X', bytes[3]);
+
+        assertTransaction(transaction, TransactionSerializer.deserialize(serializer, bytes));
+    }
+
+    @Test
+    public void testReadLegacyMap() {
+
+        //given 旧版本写入的 Map，没有下次重试时间
+        Transaction transaction = buildTransaction();
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("GLOBAL_TX_ID", transaction.getXid().getGlobalTransactionId());
+        map.put("BRANCH_QUALIFIER", transaction.getXid().getBranchQualifier());
+        map.put("STATUS", transaction.getStatus().getId());
+        map.put("TRANSACTION_TYPE", transaction.getTransactionType().getId());
+        map.put("RETRIED_COUNT", transaction.getRetriedCount());
+        map.put("CREATE_TIME", transaction.getCreateTime());
+        map.put("LAST_UPDATE_TIME", transaction.getLastUpdateTime());
+        map.put("VERSION", transaction.getVersion());
+        map.put("CONTENT", serializer.serialize(transaction));
+
+        byte[] bytes = serializer.serialize(map);
+
+        //when
+        Transaction loaded = TransactionSerializer.deserialize(serializer, bytes);
+        TransactionSummary summary = TransactionSerializer.deserializeSummary(serializer, bytes);
+
+        //then
+        Assert.assertEquals(transaction.getXid(), loaded.getXid());
+        Assert.assertEquals(transaction.getRetriedCount(), loaded.getRetriedCount());
+        Assert.assertEquals(transaction.getVersion(), loaded.getVersion());
+        Assert.assertEquals(0L, loaded.getNextRetryTimeMillis());
+        Assert.assertEquals(transaction.getXid(), summary.getXid());
+        Assert.assertEquals(0L, summary.getNextRetryTimeMillis());
+    }
+
+    @Test
+    public void testDeserializeSummary() {
+
+        Transaction transaction = buildTransaction();
+
+        assertSummary(transaction, TransactionSerializer.deserializeSummary(serializer,
+                TransactionSerializer.serialize(serializer, transaction, true)));
+        assertSummary(transaction, TransactionSerializer.deserializeSummary(serializer,
+                TransactionSerializer.serialize(serializer, transaction, false)));
+    }
+
+    @Test
+    public void testVersionOneWithoutNextRetryTime() {
+
+        //given
+        Transaction transaction = buildTransaction();
+        byte[] bytes = TransactionSerializer.serialize(serializer, transaction, true);
+
+        // 版本 1 没有事务内容之后的下次重试时间
+        byte[] versionOne = Arrays.copyOf(bytes, bytes.length - 8);
+        versionOne[4] = 1;
+
+        //when
+        Transaction loaded = TransactionSerializer.deserialize(serializer, versionOne);
+        TransactionSummary summary = TransactionSerializer.deserializeSummary(serializer, versionOne);
+
+        //then
+        Assert.assertEquals(2, bytes[4]);
+        Assert.assertEquals(0L, loaded.getNextRetryTimeMillis());
+        Assert.assertEquals(0L, summary.getNextRetryTimeMillis());
+        Assert.assertEquals(transaction.getVersion(), loaded.getVersion());
+        Assert.assertEquals(transaction.getParticipantCount(), loaded.getParticipantCount());
+        Assert.assertEquals(transaction.getLastUpdateTime(), summary.getLastUpdateTime());
+    }
+
+    @Test(expected = SystemException.class)
+    public void testUnsupportedVersion() {
+
+        byte[] bytes = TransactionSerializer.serialize(serializer, buildTransaction(), true);
+        bytes[4] = 9;
+
+        TransactionSerializer.deserialize(serializer, bytes);
+    }
+
+    private Transaction buildTransaction() {
+        Transaction transaction = TransactionFixtures.buildTransaction(2);
+        transaction.changeStatus(TransactionStatus.CANCELLING);
+        transaction.addRetriedCount();
+        transaction.addRetriedCount();
+        transaction.setVersion(5);
+        transaction.setLastUpdateTimeMillis(transaction.getCreateTimeMillis() + 1000);
+        transaction.setNextRetryTimeMillis(transaction.getCreateTimeMillis() + 60000);
+        return transaction;
+    }
+
+    private void assertTransaction(Transaction expected, Transaction actual) {
+        Assert.assertEquals(expected.getXid(), actual.getXid());
+        Assert.assertEquals(expected.getStatus(), actual.getStatus());
+        Assert.assertEquals(expected.getTransactionType(), actual.getTransactionType());
+        Assert.assertEquals(expected.getRetriedCount(), actual.getRetriedCount());
+        Assert.assertEquals(expected.getCreateTimeMillis(), actual.getCreateTimeMillis());
+        Assert.assertEquals(expected.getLastUpdateTimeMillis(), actual.getLastUpdateTimeMillis());
+        Assert.assertEquals(expected.getVersion(), actual.getVersion());
+        Assert.assertEquals(expected.getNextRetryTimeMillis(), actual.getNextRetryTimeMillis());
+        Assert.assertEquals(expected.getParticipantCount(), actual.getParticipantCount());
+    }
+
+    private void assertSummary(Transaction expected, TransactionSummary summary) {
+        Assert.assertEquals(expected.getXid(), summary.getXid());
+        Assert.assertEquals(expected.getStatus(), summary.getStatus());
+        Assert.assertEquals(expected.getTransactionType(), summary.getTransactionType());
+        Assert.assertEquals(expected.getRetriedCount(), summary.getRetriedCount());
+        Assert.assertEquals(expected.getCreateTime(), summary.getCreateTime());
+        Assert.assertEquals(expected.getLastUpdateTime(), summary.getLastUpdateTime());
+        Assert.assertEquals(expected.getVersion(), summary.getVersion());
+        Assert.assertEquals(expected.getNextRetryTimeMillis(), summary.getNextRetryTimeMillis());
+    }
+}
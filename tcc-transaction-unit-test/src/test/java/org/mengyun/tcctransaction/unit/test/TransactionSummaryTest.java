@@ -0,0 +1,158 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.TransactionSummary;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.FileSystemTransactionRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 事务摘要：只读取头部信息，与完整事务一致，按重试时间过滤
+ */
+public class TransactionSummaryTest {
+
+    static final int RECOVER_DURATION = 60;
+
+    private File rootPath;
+
+    @Before
+    public void createRootPath() throws IOException {
+        rootPath = File.createTempFile("tcc_summary_ut", "");
+        rootPath.delete();
+        rootPath.mkdir();
+    }
+
+    @After
+    public void deleteRootPath() {
+        File[] files = rootPath.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        rootPath.delete();
+    }
+
+    @Test
+    public void testEnvelopeSummariesDueBefore() {
+        assertSummariesDueBefore(createRepository(true), createRepository(true));
+    }
+
+    @Test
+    public void testLegacySummariesDueBefore() {
+        assertSummariesDueBefore(createRepository(false), createRepository(false));
+    }
+
+    @Test
+    public void testEnvelopeSummaryMatchesTransaction() {
+        assertSummariesMatch(createRepository(true), createRepository(true), 0);
+    }
+
+    @Test
+    public void testLegacySummaryMatchesTransaction() {
+        assertSummariesMatch(createRepository(false), createRepository(false), 0);
+    }
+
+    private FileSystemTransactionRepository createRepository(boolean envelopeEnabled) {
+        FileSystemTransactionRepository repository = new FileSystemTransactionRepository();
+        repository.setRootPath(rootPath.getAbsolutePath());
+        repository.setRecoverDuration(RECOVER_DURATION);
+        repository.setEnvelopeEnabled(envelopeEnabled);
+        return repository;
+    }
+
+    /**
+     * 写入未安排重试、已到重试时间、未到重试时间三个事务，按不同时间查询
+     *
+     * @param repository 写入的存储
+     * @param reader     查询的存储，不使用写入时的缓存
+     */
+    static void assertSummariesDueBefore(TransactionRepository repository, TransactionRepository reader) {
+
+        //given
+        long now = System.currentTimeMillis();
+
+        Transaction unscheduled = TransactionFixtures.buildTransaction(1);
+        repository.create(unscheduled);
+
+        Transaction due = TransactionFixtures.buildTransaction(1);
+        due.setNextRetryTimeMillis(now - 1000);
+        repository.create(due);
+
+        Transaction notDue = TransactionFixtures.buildTransaction(1);
+        notDue.setNextRetryTimeMillis(now + RECOVER_DURATION * 10 * 1000L);
+        repository.create(notDue);
+
+        //when
+        Set<TransactionXid> dueNow = toXids(reader.findAllSummariesDueBefore(new Date(now)));
+        Set<TransactionXid> dueAfterRecoverDuration = toXids(reader.findAllSummariesDueBefore(new Date(now + (RECOVER_DURATION + 10) * 1000L)));
+
+        //then 未安排重试的事务在最后更新时间 + 恢复间隔后到期
+        Assert.assertEquals(1, dueNow.size());
+        Assert.assertTrue(dueNow.contains(due.getXid()));
+
+        Assert.assertEquals(2, dueAfterRecoverDuration.size());
+        Assert.assertTrue(dueAfterRecoverDuration.contains(unscheduled.getXid()));
+        Assert.assertTrue(dueAfterRecoverDuration.contains(due.getXid()));
+        Assert.assertFalse(dueAfterRecoverDuration.contains(notDue.getXid()));
+    }
+
+    /**
+     * 摘要与按编号读取的完整事务一致
+     *
+     * @param timeToleranceMillis 时间允许的误差，数据库 datetime 列只精确到秒
+     */
+    static void assertSummariesMatch(TransactionRepository repository, TransactionRepository reader, long timeToleranceMillis) {
+
+        //given
+        Transaction unscheduled = TransactionFixtures.buildTransaction(2);
+        repository.create(unscheduled);
+
+        Transaction scheduled = TransactionFixtures.buildTransaction(1);
+        scheduled.addRetriedCount();
+        scheduled.setNextRetryTimeMillis(System.currentTimeMillis() - 1000);
+        repository.create(scheduled);
+        repository.update(scheduled);
+
+        //when
+        List<TransactionSummary> summaries = reader.findAllSummariesUnmodifiedSince(new Date(Long.MAX_VALUE));
+
+        //then
+        Assert.assertEquals(2, summaries.size());
+
+        for (TransactionSummary summary : summaries) {
+            assertSummaryMatches(reader.findByXid(summary.getXid()), summary, timeToleranceMillis);
+        }
+    }
+
+    static void assertSummaryMatches(Transaction transaction, TransactionSummary summary, long timeToleranceMillis) {
+        Assert.assertNotNull(transaction);
+        Assert.assertEquals(transaction.getXid(), summary.getXid());
+        Assert.assertEquals(transaction.getStatus(), summary.getStatus());
+        Assert.assertEquals(transaction.getTransactionType(), summary.getTransactionType());
+        Assert.assertEquals(transaction.getRetriedCount(), summary.getRetriedCount());
+        Assert.assertEquals(transaction.getCreateTime().getTime(), summary.getCreateTime().getTime(), timeToleranceMillis);
+        Assert.assertEquals(transaction.getLastUpdateTime().getTime(), summary.getLastUpdateTime().getTime(), timeToleranceMillis);
+        Assert.assertEquals(transaction.getVersion(), summary.getVersion());
+        Assert.assertEquals(transaction.getNextRetryTimeMillis(), summary.getNextRetryTimeMillis());
+    }
+
+    private static Set<TransactionXid> toXids(List<TransactionSummary> summaries) {
+        Set<TransactionXid> xids = new HashSet<TransactionXid>();
+        for (TransactionSummary summary : summaries) {
+            xids.add(summary.getXid());
+        }
+        return xids;
+    }
+}